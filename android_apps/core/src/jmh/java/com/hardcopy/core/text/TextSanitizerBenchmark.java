@@ -0,0 +1,94 @@
+package com.hardcopy.core.text;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Feed text normalization over the RSS descriptions in src/jmh/resources/rss.
+ * Each invocation handles every description once, the way FeedParser does per refresh.
+ *
+ * The legacy methods are the per-item replaceAll() chain FeedParser used before,
+ * kept as a baseline (without Html.fromHtml(), which needs a device).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextSanitizerBenchmark {
+
+    private static final String[] FIXTURES = {"/rss/blog_cdata.xml", "/rss/news_escaped.xml"};
+    private static final Pattern RSS_SPLIT_TAG = Pattern.compile(Pattern.quote("[[:+:]]"));
+
+    private String[] descriptions;
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> list = new ArrayList<>();
+        for (String fixture : FIXTURES) {
+            String xml = readResource(fixture);
+            int from = Math.max(xml.indexOf("<item>"), 0);
+            while (true) {
+                int start = xml.indexOf("<description>", from);
+                if (start < 0) break;
+                start += "<description>".length();
+                int end = xml.indexOf("</description>", start);
+                from = end;
+                // Same value XmlPullParser hands to FeedParser: CDATA as is, or unescaped text
+                String text = xml.substring(start, end);
+                if (text.startsWith("<![CDATA[")) {
+                    text = text.substring("<![CDATA[".length(), text.length() - "]]>".length());
+                } else {
+                    text = text.replace("&lt;", "<").replace("&gt;", ">")
+                            .replace("&quot;", "\"").replace("&amp;", "&");
+                }
+                list.add(RSS_SPLIT_TAG.split(text)[0]);
+            }
+        }
+        descriptions = list.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void stripHtml(Blackhole bh) {
+        for (String s : descriptions) bh.consume(TextSanitizer.stripHtml(s));
+    }
+
+    @Benchmark
+    public void stripHtmlLegacy(Blackhole bh) {
+        for (String s : descriptions) bh.consume(s.replaceAll("\\<.*?\\>", "").replaceAll("\\n\\n", ""));
+    }
+
+    @Benchmark
+    public void removeSpecialChars(Blackhole bh) {
+        for (String s : descriptions) bh.consume(TextSanitizer.removeSpecialChars(s));
+    }
+
+    @Benchmark
+    public void removeSpecialCharsLegacy(Blackhole bh) {
+        for (String s : descriptions) bh.consume(s.replaceAll("[^\uAC00-\uD7A3xfe0-9a-zA-Z\\s]", " "));
+    }
+
+    private static String readResource(String name) throws IOException {
+        try (InputStream in = TextSanitizerBenchmark.class.getResourceAsStream(name)) {
+            if (in == null) throw new IOException("Missing fixture " + name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.hardcopy.smartglasses.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Frame encode and CRC cost per payload size.
+ * The "escaped" payload is made of SOF/EOF/ESC bytes only, the worst case for byte stuffing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProtoV2EncoderBenchmark {
+
+    @Param({"0", "16", "64"})
+    public int payloadSize;
+
+    @Param({"text", "escaped"})
+    public String payloadKind;
+
+    private byte[] payload;
+    private byte[] crcInput;
+    private byte seq;
+
+    @Setup
+    public void setup() {
+        payload = new byte[payloadSize];
+        if ("escaped".equals(payloadKind)) {
+            byte[] special = {ProtoV2.SOF, ProtoV2.EOF, ProtoV2.ESC};
+            for (int i = 0; i < payloadSize; i++) payload[i] = special[i % special.length];
+        } else {
+            byte[] text = "New message from Alice: are we still on for lunch today?"
+                    .getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < payloadSize; i++) payload[i] = text[i % text.length];
+        }
+
+        // CRC runs over VER TYPE FLAGS SEQ LEN PAYLOAD
+        crcInput = new byte[5 + payloadSize];
+        crcInput[0] = ProtoV2.VER;
+        crcInput[1] = ProtoV2.TYPE_NOTIFY;
+        crcInput[4] = (byte) payloadSize;
+        System.arraycopy(payload, 0, crcInput, 5, payloadSize);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return ProtoV2.encode(ProtoV2.TYPE_NOTIFY, ProtoV2.FLAG_ACK_REQ, seq++, payload);
+    }
+
+    @Benchmark
+    public int crc16() {
+        return ProtoV2.crc16CcittFalse(crcInput);
+    }
+}
@@ -0,0 +1,87 @@
+package com.hardcopy.smartglasses.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decode throughput of a recorded-like BT input stream: a burst of frames of mixed types,
+ * fed in reads of the given size. A read size of 1 is the byte at a time worst case.
+ * Scores are per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProtoV2StreamDecoderBenchmark {
+
+    private static final int FRAMES = 64;
+
+    @Param({"1", "64", "1024"})
+    public int readSize;
+
+    private byte[] stream;
+    private ProtoV2StreamDecoder decoder;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole bh) {
+        blackhole = bh;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] text = "Meeting moved to 3pm - room 4B".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < FRAMES; i++) {
+            byte[] frame;
+            switch (i % 4) {
+                case 0:
+                    frame = ProtoV2.encode(ProtoV2.TYPE_NOTIFY, ProtoV2.FLAG_ACK_REQ, (byte) i, text);
+                    break;
+                case 1:
+                    frame = ProtoV2.encode(ProtoV2.TYPE_TIME, (byte) 0, (byte) i,
+                            new byte[] {(byte) 0xEA, 0x07, 10, 19, 12, 30, 0});
+                    break;
+                case 2:
+                    frame = ProtoV2.encode(ProtoV2.TYPE_ACK, (byte) 0, (byte) i,
+                            new byte[] {ProtoV2.TYPE_NOTIFY, ProtoV2.SOF, 0});
+                    break;
+                default:
+                    frame = ProtoV2.encode(ProtoV2.TYPE_PING, (byte) 0, (byte) i, null);
+                    break;
+            }
+            out.write(frame, 0, frame.length);
+        }
+        stream = out.toByteArray();
+
+        decoder = new ProtoV2StreamDecoder(new ProtoV2StreamDecoder.Listener() {
+            @Override
+            public void onFrame(byte ver, byte type, byte flags, byte seq, byte[] payload) {
+                blackhole.consume(payload);
+            }
+
+            @Override
+            public void onBadFrame(String reason) {
+                throw new IllegalStateException(reason);
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void feedReads() {
+        byte[] read = new byte[readSize];
+        for (int offset = 0; offset < stream.length; offset += readSize) {
+            int len = Math.min(readSize, stream.length - offset);
+            System.arraycopy(stream, offset, read, 0, len);
+            decoder.feed(read, len);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.hardcopy.core.console;
+
+/**
+ * Fixed capacity ring of console lines. The oldest line is overwritten when full.
+ *
+ * Readers take immutable snapshots. The listener is called on the appending thread, once per
+ * change after the last snapshot, so a UI which snapshots on the next frame gets at most one
+ * callback per frame no matter how many lines are appended.
+ */
+public final class ConsoleBuffer {
+
+    public interface Listener {
+        void onConsoleChanged();
+    }
+
+    /** Lines oldest first. Line i has sequence number firstSeq + i. */
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(new String[0], 0, 0);
+
+        private final String[] lines;
+        private final long firstSeq;
+        private final long generation;
+
+        Snapshot(String[] lines, long firstSeq, long generation) {
+            this.lines = lines;
+            this.firstSeq = firstSeq;
+            this.generation = generation;
+        }
+
+        public int size() {
+            return lines.length;
+        }
+
+        public String get(int index) {
+            return lines[index];
+        }
+
+        public long getFirstSeq() {
+            return firstSeq;
+        }
+
+        /** Changes on clear(), so sequence numbers of different generations are not comparable. */
+        public long getGeneration() {
+            return generation;
+        }
+    }
+
+    private final String[] ring;
+    private int next;
+    private int count;
+    private long nextSeq;
+    private long generation;
+    private boolean dirty;
+    private Listener listener;
+
+    public ConsoleBuffer(int capacity) {
+        ring = new String[capacity];
+    }
+
+    public void setListener(Listener l) {
+        synchronized (this) {
+            listener = l;
+            dirty = false;
+        }
+        if (l != null) l.onConsoleChanged();
+    }
+
+    /** Appends one line per '\n' separated part. Empty trailing part is ignored. */
+    public void append(String text) {
+        if (text == null || text.isEmpty()) return;
+        Listener l;
+        synchronized (this) {
+            int start = 0;
+            int len = text.length();
+            while (start < len) {
+                int end = text.indexOf('\n', start);
+                if (end < 0) end = len;
+                add(text.substring(start, end));
+                start = end + 1;
+            }
+            l = markDirty();
+        }
+        if (l != null) l.onConsoleChanged();
+    }
+
+    public void clear() {
+        Listener l;
+        synchronized (this) {
+            for (int i = 0; i < ring.length; i++) ring[i] = null;
+            next = 0;
+            count = 0;
+            generation++;
+            l = markDirty();
+        }
+        if (l != null) l.onConsoleChanged();
+    }
+
+    public synchronized Snapshot snapshot() {
+        dirty = false;
+        String[] lines = new String[count];
+        int first = (next - count + ring.length) % ring.length;
+        for (int i = 0; i < count; i++) {
+            lines[i] = ring[(first + i) % ring.length];
+        }
+        return new Snapshot(lines, nextSeq - count, generation);
+    }
+
+    private void add(String line) {
+        ring[next] = line;
+        next = (next + 1) % ring.length;
+        if (count < ring.length) count++;
+        nextSeq++;
+    }
+
+    // Returns the listener to call outside the lock, or null if a callback is already pending
+    private Listener markDirty() {
+        if (dirty) return null;
+        dirty = true;
+        return listener;
+    }
+}
@@ -0,0 +1,129 @@
+package com.hardcopy.core.notification;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides at the notification listener whether a posted notification is worth forwarding.
+ *
+ * Apps repost the same notification all the time (progress, media sessions, group summaries).
+ * Posts carrying any of the policy flags are dropped, and every other post is compared against
+ * the fingerprint of the user-visible fields last forwarded for the same key. Identical content is
+ * dropped until the entry expires. The map is bounded and evicts least recently seen keys.
+ *
+ * Platform independent: the caller passes Notification.flags and the drop mask, and builds the
+ * fingerprint with {@link #mix(long, CharSequence)} starting from {@link #FINGERPRINT_SEED}.
+ */
+public final class NotificationIngestFilter {
+
+    public static final int RESULT_FORWARD = 0;
+    public static final int RESULT_DROP_POLICY = 1;
+    public static final int RESULT_DROP_DUPLICATE = 2;
+
+    // 64-bit FNV-1a
+    public static final long FINGERPRINT_SEED = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int dropFlags;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Fingerprint> fingerprints;
+
+    private long forwarded;
+    private long droppedByPolicy;
+    private long droppedDuplicate;
+
+    /**
+     * @param dropFlags  notification flags which are never forwarded, 0 to disable the policy
+     * @param maxEntries number of keys remembered
+     * @param ttlMillis  identical content is forwarded again after this time
+     */
+    public NotificationIngestFilter(int dropFlags, final int maxEntries, long ttlMillis) {
+        this.dropFlags = dropFlags;
+        this.ttlMillis = ttlMillis;
+        this.fingerprints = new LinkedHashMap<String, Fingerprint>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Fingerprint> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key         StatusBarNotification.getKey()
+     * @param flags       Notification.flags
+     * @param fingerprint hash of the fields that are shown downstream
+     * @param nowMillis   monotonic clock
+     * @return one of RESULT_*
+     */
+    public synchronized int accept(String key, int flags, long fingerprint, long nowMillis) {
+        if ((flags & dropFlags) != 0) {
+            droppedByPolicy++;
+            return RESULT_DROP_POLICY;
+        }
+
+        Fingerprint e = fingerprints.get(key);
+        if (e != null && e.fingerprint == fingerprint && nowMillis - e.forwardedAt < ttlMillis) {
+            droppedDuplicate++;
+            return RESULT_DROP_DUPLICATE;
+        }
+        if (e == null) {
+            e = new Fingerprint();
+            fingerprints.put(key, e);
+        }
+        e.fingerprint = fingerprint;
+        e.forwardedAt = nowMillis;
+        forwarded++;
+        return RESULT_FORWARD;
+    }
+
+    /** Call when the notification is removed, so the same content posted later is forwarded again. */
+    public synchronized void forget(String key) {
+        fingerprints.remove(key);
+    }
+
+    public synchronized void clear() {
+        fingerprints.clear();
+    }
+
+    public synchronized int size() {
+        return fingerprints.size();
+    }
+
+    public synchronized long getForwarded() {
+        return forwarded;
+    }
+
+    public synchronized long getDroppedByPolicy() {
+        return droppedByPolicy;
+    }
+
+    public synchronized long getDroppedDuplicate() {
+        return droppedDuplicate;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "forwarded=" + forwarded + ", dropped by policy=" + droppedByPolicy
+                + ", duplicates=" + droppedDuplicate + ", keys=" + fingerprints.size();
+    }
+
+    /**
+     * Mix one field into a fingerprint without converting it to a String.
+     * Null and empty values hash differently, and field boundaries are part of the hash.
+     */
+    public static long mix(long hash, CharSequence value) {
+        if (value == null) {
+            return (hash ^ 0xFFFF) * FNV_PRIME;
+        }
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return (hash ^ len ^ 0x10000) * FNV_PRIME;
+    }
+
+    private static final class Fingerprint {
+        long fingerprint;
+        long forwardedAt;
+    }
+}
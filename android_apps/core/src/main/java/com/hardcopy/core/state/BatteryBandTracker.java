@@ -0,0 +1,85 @@
+package com.hardcopy.core.state;
+
+/**
+ * Turns the battery broadcast stream into meaningful transitions.
+ *
+ * The battery service broadcasts on every voltage or temperature change. Only a change of charge
+ * state, crossing the low level, or moving into another band of {@code bandWidth} percent is
+ * reported. A band change, or leaving the low state, needs {@code hysteresis} percent past the
+ * boundary, so a level jittering around a boundary does not produce updates.
+ */
+public final class BatteryBandTracker {
+
+    public static final int UNKNOWN = -1;
+
+    private final int bandWidth;
+    private final int lowLevel;
+    private final int hysteresis;
+
+    private int percent = UNKNOWN;
+    private int chargeState = UNKNOWN;
+    private int band = UNKNOWN;
+    private boolean low;
+
+    /**
+     * @param bandWidth  band size in percent, e.g. 10
+     * @param lowLevel   levels below this are low
+     * @param hysteresis percent past a band boundary before the band changes
+     */
+    public BatteryBandTracker(int bandWidth, int lowLevel, int hysteresis) {
+        this.bandWidth = bandWidth;
+        this.lowLevel = lowLevel;
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * @param percent     0..100
+     * @param chargeState platform specific charge state
+     * @return true if this is a meaningful transition
+     */
+    public synchronized boolean update(int percent, int chargeState) {
+        this.percent = percent;
+        boolean changed = false;
+
+        if (chargeState != this.chargeState) {
+            this.chargeState = chargeState;
+            changed = true;
+        }
+
+        boolean nowLow = low ? percent < lowLevel + hysteresis : percent < lowLevel;
+        if (nowLow != low) {
+            low = nowLow;
+            changed = true;
+        }
+
+        int newBand = percent / bandWidth;
+        if (band == UNKNOWN) {
+            band = newBand;
+            changed = true;
+        } else if (newBand > band) {
+            if (percent >= newBand * bandWidth + hysteresis) {
+                band = newBand;
+                changed = true;
+            }
+        } else if (newBand < band) {
+            if (percent <= band * bandWidth - hysteresis) {
+                band = newBand;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /** Last reported level, not rounded to band. UNKNOWN before the first update. */
+    public synchronized int getPercent() {
+        return percent;
+    }
+
+    public synchronized int getChargeState() {
+        return chargeState;
+    }
+
+    public synchronized boolean isLow() {
+        return low;
+    }
+}
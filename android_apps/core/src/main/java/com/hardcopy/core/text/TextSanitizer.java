@@ -0,0 +1,212 @@
+package com.hardcopy.core.text;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Text normalization for feed contents.
+ * Each method scans the source once and writes into a per-thread reusable buffer,
+ * instead of running several regular expressions over the text.
+ *
+ * Named entities cover the full HTML 4 set (Latin-1, markup, typographic and symbols) plus &amp;apos;,
+ * so descriptions decode the same way Html.fromHtml() did.
+ */
+public final class TextSanitizer {
+
+    private static final int BUFFER_KEEP_MAX = 16 * 1024;       // Bigger buffer is not reused
+    private static final int ENTITY_NAME_MAX = 10;              // Longest name is "thetasym", longest numeric "#x10FFFF"
+
+    // U+00A0..U+00FF in code point order
+    private static final String[] LATIN1_ENTITIES = {
+            "nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect",
+            "uml", "copy", "ordf", "laquo", "not", "shy", "reg", "macr",
+            "deg", "plusmn", "sup2", "sup3", "acute", "micro", "para", "middot",
+            "cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34", "iquest",
+            "Agrave", "Aacute", "Acirc", "Atilde", "Auml", "Aring", "AElig", "Ccedil",
+            "Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml",
+            "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde", "Ouml", "times",
+            "Oslash", "Ugrave", "Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig",
+            "agrave", "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil",
+            "egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc", "iuml",
+            "eth", "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml", "divide",
+            "oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml"
+    };
+
+    private static final Map<String, Integer> ENTITIES = buildEntityTable();
+
+    private static final ThreadLocal<StringBuilder> sBuffer = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(1024);
+        }
+    };
+
+    private TextSanitizer() {
+    }
+
+    /**
+     * Convert HTML fragment to plain text in one pass.
+     * Tags (also the escaped ones like &amp;lt;b&amp;gt;) are removed, entities are decoded
+     * and every run of white spaces becomes a single space.
+     * A '&lt;' that is never closed is not a tag, so the rest is kept as (decoded) text.
+     */
+    public static String stripHtml(String src) {
+        if (src == null) return null;
+
+        StringBuilder sb = obtainBuffer();
+        final int length = src.length();
+        boolean tagsAllowed = true;
+        boolean inTag = false;
+        boolean pendingSpace = false;
+        int tagStart = 0;
+        int i = 0;
+        while (true) {
+            while (i < length) {
+                int start = i;
+                int c = src.charAt(i++);
+                if (c == '&') {
+                    int end = src.indexOf(';', i);
+                    int decoded = (end > i && end - i <= ENTITY_NAME_MAX) ? decodeEntity(src, i, end) : -1;
+                    if (decoded >= 0) {
+                        c = decoded;
+                        i = end + 1;
+                    }
+                }
+
+                if (inTag) {
+                    if (c == '>') {
+                        inTag = false;
+                        pendingSpace = true;        // <br>, <p>, <div> separate words
+                    }
+                    continue;
+                }
+                if (tagsAllowed && c == '<' && i < length && isTagStart(src.charAt(i))) {
+                    inTag = true;
+                    tagStart = start;
+                    continue;
+                }
+                if (Character.isWhitespace(c) || c == '\u00A0') {
+                    pendingSpace = true;
+                    continue;
+                }
+
+                if (pendingSpace && sb.length() > 0) sb.append(' ');
+                pendingSpace = false;
+                sb.appendCodePoint(c);
+            }
+
+            if (!inTag) break;
+
+            // Not a tag if it's never closed. Scan the rest again as text.
+            // pendingSpace is untouched inside a tag, so it is still the state at tagStart.
+            inTag = false;
+            tagsAllowed = false;
+            i = tagStart;
+        }
+        return releaseBuffer(sb);
+    }
+
+    /**
+     * Replace characters except Hangul syllables, alphabets, digits and white spaces with space.
+     */
+    public static String removeSpecialChars(String src) {
+        if (src == null) return null;
+
+        StringBuilder sb = obtainBuffer();
+        final int length = src.length();
+        for (int i = 0; i < length; i++) {
+            char c = src.charAt(i);
+            if ((c >= '\uAC00' && c <= '\uD7A3') || (c >= '0' && c <= '9')
+                    || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r')
+                sb.append(c);
+            else
+                sb.append(' ');
+        }
+        return releaseBuffer(sb);
+    }
+
+    private static StringBuilder obtainBuffer() {
+        StringBuilder sb = sBuffer.get();
+        sb.setLength(0);
+        return sb;
+    }
+
+    private static String releaseBuffer(StringBuilder sb) {
+        String result = sb.toString();
+        if (sb.capacity() > BUFFER_KEEP_MAX) sBuffer.set(new StringBuilder(1024));
+        return result;
+    }
+
+    private static boolean isTagStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '/' || c == '!' || c == '?';
+    }
+
+    // Decode entity between '&' and ';'. Returns the code point, or -1 if unknown.
+    private static int decodeEntity(String src, int start, int end) {
+        if (src.charAt(start) == '#') {
+            try {
+                int code;
+                if (end - start > 1 && (src.charAt(start + 1) == 'x' || src.charAt(start + 1) == 'X'))
+                    code = Integer.parseInt(src.substring(start + 2, end), 16);
+                else
+                    code = Integer.parseInt(src.substring(start + 1, end));
+                return (code > 0 && code <= Character.MAX_CODE_POINT
+                        && (code < Character.MIN_SURROGATE || code > Character.MAX_SURROGATE)) ? code : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        Integer code = ENTITIES.get(src.substring(start, end));
+        return code != null ? code : -1;
+    }
+
+    private static Map<String, Integer> buildEntityTable() {
+        Map<String, Integer> map = new HashMap<>(512);
+        for (int i = 0; i < LATIN1_ENTITIES.length; i++) {
+            map.put(LATIN1_ENTITIES[i], 0x00A0 + i);
+        }
+        map.put("quot", 0x0022); map.put("amp", 0x0026); map.put("apos", 0x0027); map.put("lt", 0x003C);
+        map.put("gt", 0x003E); map.put("OElig", 0x0152); map.put("oelig", 0x0153); map.put("Scaron", 0x0160);
+        map.put("scaron", 0x0161); map.put("Yuml", 0x0178); map.put("fnof", 0x0192); map.put("circ", 0x02C6);
+        map.put("tilde", 0x02DC); map.put("Alpha", 0x0391); map.put("Beta", 0x0392); map.put("Gamma", 0x0393);
+        map.put("Delta", 0x0394); map.put("Epsilon", 0x0395); map.put("Zeta", 0x0396); map.put("Eta", 0x0397);
+        map.put("Theta", 0x0398); map.put("Iota", 0x0399); map.put("Kappa", 0x039A); map.put("Lambda", 0x039B);
+        map.put("Mu", 0x039C); map.put("Nu", 0x039D); map.put("Xi", 0x039E); map.put("Omicron", 0x039F);
+        map.put("Pi", 0x03A0); map.put("Rho", 0x03A1); map.put("Sigma", 0x03A3); map.put("Tau", 0x03A4);
+        map.put("Upsilon", 0x03A5); map.put("Phi", 0x03A6); map.put("Chi", 0x03A7); map.put("Psi", 0x03A8);
+        map.put("Omega", 0x03A9); map.put("alpha", 0x03B1); map.put("beta", 0x03B2); map.put("gamma", 0x03B3);
+        map.put("delta", 0x03B4); map.put("epsilon", 0x03B5); map.put("zeta", 0x03B6); map.put("eta", 0x03B7);
+        map.put("theta", 0x03B8); map.put("iota", 0x03B9); map.put("kappa", 0x03BA); map.put("lambda", 0x03BB);
+        map.put("mu", 0x03BC); map.put("nu", 0x03BD); map.put("xi", 0x03BE); map.put("omicron", 0x03BF);
+        map.put("pi", 0x03C0); map.put("rho", 0x03C1); map.put("sigmaf", 0x03C2); map.put("sigma", 0x03C3);
+        map.put("tau", 0x03C4); map.put("upsilon", 0x03C5); map.put("phi", 0x03C6); map.put("chi", 0x03C7);
+        map.put("psi", 0x03C8); map.put("omega", 0x03C9); map.put("thetasym", 0x03D1); map.put("upsih", 0x03D2);
+        map.put("piv", 0x03D6); map.put("ensp", 0x2002); map.put("emsp", 0x2003); map.put("thinsp", 0x2009);
+        map.put("zwnj", 0x200C); map.put("zwj", 0x200D); map.put("lrm", 0x200E); map.put("rlm", 0x200F);
+        map.put("ndash", 0x2013); map.put("mdash", 0x2014); map.put("lsquo", 0x2018); map.put("rsquo", 0x2019);
+        map.put("sbquo", 0x201A); map.put("ldquo", 0x201C); map.put("rdquo", 0x201D); map.put("bdquo", 0x201E);
+        map.put("dagger", 0x2020); map.put("Dagger", 0x2021); map.put("bull", 0x2022); map.put("hellip", 0x2026);
+        map.put("permil", 0x2030); map.put("prime", 0x2032); map.put("Prime", 0x2033); map.put("lsaquo", 0x2039);
+        map.put("rsaquo", 0x203A); map.put("oline", 0x203E); map.put("frasl", 0x2044); map.put("euro", 0x20AC);
+        map.put("image", 0x2111); map.put("weierp", 0x2118); map.put("real", 0x211C); map.put("trade", 0x2122);
+        map.put("alefsym", 0x2135); map.put("larr", 0x2190); map.put("uarr", 0x2191); map.put("rarr", 0x2192);
+        map.put("darr", 0x2193); map.put("harr", 0x2194); map.put("crarr", 0x21B5); map.put("lArr", 0x21D0);
+        map.put("uArr", 0x21D1); map.put("rArr", 0x21D2); map.put("dArr", 0x21D3); map.put("hArr", 0x21D4);
+        map.put("forall", 0x2200); map.put("part", 0x2202); map.put("exist", 0x2203); map.put("empty", 0x2205);
+        map.put("nabla", 0x2207); map.put("isin", 0x2208); map.put("notin", 0x2209); map.put("ni", 0x220B);
+        map.put("prod", 0x220F); map.put("sum", 0x2211); map.put("minus", 0x2212); map.put("lowast", 0x2217);
+        map.put("radic", 0x221A); map.put("prop", 0x221D); map.put("infin", 0x221E); map.put("ang", 0x2220);
+        map.put("and", 0x2227); map.put("or", 0x2228); map.put("cap", 0x2229); map.put("cup", 0x222A);
+        map.put("int", 0x222B); map.put("there4", 0x2234); map.put("sim", 0x223C); map.put("cong", 0x2245);
+        map.put("asymp", 0x2248); map.put("ne", 0x2260); map.put("equiv", 0x2261); map.put("le", 0x2264);
+        map.put("ge", 0x2265); map.put("sub", 0x2282); map.put("sup", 0x2283); map.put("nsub", 0x2284);
+        map.put("sube", 0x2286); map.put("supe", 0x2287); map.put("oplus", 0x2295); map.put("otimes", 0x2297);
+        map.put("perp", 0x22A5); map.put("sdot", 0x22C5); map.put("lceil", 0x2308); map.put("rceil", 0x2309);
+        map.put("lfloor", 0x230A); map.put("rfloor", 0x230B); map.put("lang", 0x2329); map.put("rang", 0x232A);
+        map.put("loz", 0x25CA); map.put("spades", 0x2660); map.put("clubs", 0x2663); map.put("hearts", 0x2665);
+        map.put("diams", 0x2666);
+        return map;
+    }
+}
@@ -0,0 +1,156 @@
+package com.hardcopy.core.time;
+
+/**
+ * Decides when the phone has to send time to the device.
+ *
+ * The device shows minutes, so the displayed time is refreshed only at local minute boundaries.
+ * A full timestamp is sent on connect, when the local offset changes (timezone or DST), and when
+ * the estimated device clock error would exceed the drift budget. The error estimate is half of
+ * the ACK round trip of the last full sync plus {@code driftPpm} of the time elapsed since then.
+ * A sync which is not ACKed is assumed to be off by {@code unackedErrorMillis}.
+ *
+ * Wall clock values are epoch milliseconds, monotonic values are nanoseconds (System.nanoTime()).
+ */
+public final class TimeSyncScheduler {
+
+    public static final int ACTION_NONE = 0;
+    public static final int ACTION_MINUTE = 1;
+    public static final int ACTION_FULL = 2;
+
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long NO_OFFSET = Long.MIN_VALUE;
+
+    private final long driftBudgetMillis;
+    private final long driftPpm;
+    private final long unackedErrorMillis;
+
+    private boolean fullSyncRequested = true;
+    private long lastLocalMinute = -1;
+    private long lastOffsetMillis = NO_OFFSET;
+
+    // Last full sync
+    private long syncNanos;
+    private long syncErrorMillis;
+    private boolean syncPending;
+    private byte syncSeq;
+
+    // Statistics
+    private long fullSyncs;
+    private long minuteSyncs;
+    private long acks;
+    private long lastRttMillis = -1;
+
+    /**
+     * @param driftBudgetMillis  maximum tolerated device clock error
+     * @param driftPpm           assumed device oscillator error in parts per million
+     * @param unackedErrorMillis error assumed for a sync without ACK
+     */
+    public TimeSyncScheduler(long driftBudgetMillis, long driftPpm, long unackedErrorMillis) {
+        this.driftBudgetMillis = driftBudgetMillis;
+        this.driftPpm = driftPpm;
+        this.unackedErrorMillis = unackedErrorMillis;
+    }
+
+    /** Forgets the device state. Next poll asks for a full sync. */
+    public synchronized void reset() {
+        fullSyncRequested = true;
+        lastLocalMinute = -1;
+        lastOffsetMillis = NO_OFFSET;
+        syncPending = false;
+    }
+
+    /** Clock or timezone was changed by the user or the network. */
+    public synchronized void requestFullSync() {
+        fullSyncRequested = true;
+    }
+
+    /**
+     * @param wallMillis   current time
+     * @param offsetMillis current local offset from UTC, including DST
+     * @param nowNanos     monotonic time
+     * @return ACTION_FULL, ACTION_MINUTE or ACTION_NONE
+     */
+    public synchronized int poll(long wallMillis, long offsetMillis, long nowNanos) {
+        if (fullSyncRequested
+                || offsetMillis != lastOffsetMillis
+                || estimatedErrorMillis(nowNanos) >= driftBudgetMillis) {
+            return ACTION_FULL;
+        }
+        if (localMinute(wallMillis, offsetMillis) != lastLocalMinute) {
+            return ACTION_MINUTE;
+        }
+        return ACTION_NONE;
+    }
+
+    /**
+     * Call after the full timestamp frame was queued.
+     *
+     * @param seq frame sequence number, matched against the ACK
+     */
+    public synchronized void onFullSyncSent(byte seq, long wallMillis, long offsetMillis, long nowNanos) {
+        fullSyncRequested = false;
+        lastOffsetMillis = offsetMillis;
+        lastLocalMinute = localMinute(wallMillis, offsetMillis);
+        syncNanos = nowNanos;
+        syncErrorMillis = unackedErrorMillis;
+        syncPending = true;
+        syncSeq = seq;
+        fullSyncs++;
+    }
+
+    /** Call after the displayed minute was sent. */
+    public synchronized void onMinuteSent(long wallMillis, long offsetMillis) {
+        lastLocalMinute = localMinute(wallMillis, offsetMillis);
+        minuteSyncs++;
+    }
+
+    /**
+     * @return true if the ACK belongs to the last full sync
+     */
+    public synchronized boolean onAck(byte seq, long nowNanos) {
+        if (!syncPending || seq != syncSeq) return false;
+        long rttMillis = (nowNanos - syncNanos) / NANOS_PER_MILLI;
+        syncPending = false;
+        // Device set its clock somewhere within the round trip
+        syncErrorMillis = Math.min(unackedErrorMillis, (rttMillis + 1) / 2);
+        lastRttMillis = rttMillis;
+        acks++;
+        return true;
+    }
+
+    /**
+     * @return milliseconds until the next poll may return an action
+     */
+    public synchronized long nextDelayMillis(long wallMillis, long offsetMillis, long nowNanos) {
+        if (fullSyncRequested || offsetMillis != lastOffsetMillis) return 0;
+
+        long local = wallMillis + offsetMillis;
+        long delay = MINUTE_MILLIS - Math.floorMod(local, MINUTE_MILLIS);
+
+        long budgetLeft = driftBudgetMillis - estimatedErrorMillis(nowNanos);
+        if (driftPpm > 0) {
+            long untilBudget = budgetLeft <= 0 ? 0 : budgetLeft * 1000000L / driftPpm;
+            if (untilBudget < delay) delay = untilBudget;
+        }
+        return delay;
+    }
+
+    public synchronized long estimatedErrorMillis(long nowNanos) {
+        if (lastOffsetMillis == NO_OFFSET) return Long.MAX_VALUE;
+        long elapsedMillis = (nowNanos - syncNanos) / NANOS_PER_MILLI;
+        return syncErrorMillis + elapsedMillis * driftPpm / 1000000L;
+    }
+
+    public synchronized String dump() {
+        return "TimeSync: full=" + fullSyncs
+                + ", minute=" + minuteSyncs
+                + ", acks=" + acks
+                + ", lastRttMs=" + lastRttMillis
+                + ", errorMs=" + (lastOffsetMillis == NO_OFFSET ? -1 : syncErrorMillis);
+    }
+
+    private static long localMinute(long wallMillis, long offsetMillis) {
+        return Math.floorDiv(wallMillis + offsetMillis, MINUTE_MILLIS);
+    }
+}
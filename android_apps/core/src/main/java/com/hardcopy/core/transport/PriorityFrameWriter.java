@@ -0,0 +1,224 @@
+package com.hardcopy.core.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+
+/**
+ * Single writer thread for a device output stream with two lanes.
+ *
+ * Bulk frames (periodic syncs, notifications) are written in order. Priority frames (incoming
+ * calls) are taken before any queued bulk frame, so they wait at most for the frame which is
+ * being written at that moment. Frames are never split, which keeps the device parser in sync.
+ *
+ * Callers never block on the socket. Frame payloads must not be modified after enqueue.
+ */
+public final class PriorityFrameWriter {
+
+    public static final int DEFAULT_BULK_CAPACITY = 256;
+
+    public interface Listener {
+        /** Called on the writer thread. Durations are in nanoseconds. */
+        void onFrameWritten(Frame frame, long queuedNanos, long writeNanos);
+
+        /** Frame was cancelled or the writer stopped before writing it. */
+        void onFrameDropped(Frame frame);
+
+        /**
+         * Writing failed. The writer stops and drops the remaining frames.
+         * The failing writer is passed, so a late failure can be told apart from the current connection.
+         */
+        void onWriteFailed(PriorityFrameWriter writer, Frame frame, IOException e);
+    }
+
+    public static final class Frame {
+        private final byte[] data;
+        private final Object tag;
+        private final boolean priority;
+        private final long enqueuedAt;
+
+        Frame(byte[] data, Object tag, boolean priority, long enqueuedAt) {
+            this.data = data;
+            this.tag = tag;
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public Object getTag() {
+            return tag;
+        }
+
+        public boolean isPriority() {
+            return priority;
+        }
+    }
+
+    private final OutputStream out;
+    private final Listener listener;
+    private final int bulkCapacity;
+    private final Thread thread;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Frame> priorityQueue = new ArrayDeque<Frame>();
+    private final ArrayDeque<Frame> bulkQueue = new ArrayDeque<Frame>();
+    private boolean running = true;
+
+    // Statistics (guarded by lock)
+    private long written;
+    private long priorityWritten;
+    private long bulkCancelled;
+    private long bulkRejected;
+    private long maxPriorityWaitNanos;
+
+    public PriorityFrameWriter(OutputStream out, String name, Listener listener) {
+        this(out, name, listener, DEFAULT_BULK_CAPACITY);
+    }
+
+    public PriorityFrameWriter(OutputStream out, String name, Listener listener, int bulkCapacity) {
+        this.out = out;
+        this.listener = listener;
+        this.bulkCapacity = bulkCapacity;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /** Stop after the frame in flight. Queued frames are dropped. */
+    public void stop() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Queue a bulk frame.
+     * @return false if stopped or the bulk lane is full
+     */
+    public boolean enqueue(byte[] data, Object tag) {
+        synchronized (lock) {
+            if (!running) return false;
+            if (bulkQueue.size() >= bulkCapacity) {
+                bulkRejected++;
+                return false;
+            }
+            bulkQueue.addLast(new Frame(data, tag, false, System.nanoTime()));
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Queue a frame ahead of all bulk frames.
+     * @return false if stopped
+     */
+    public boolean enqueuePriority(byte[] data, Object tag) {
+        synchronized (lock) {
+            if (!running) return false;
+            priorityQueue.addLast(new Frame(data, tag, true, System.nanoTime()));
+            lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Drop bulk frames which are not written yet. The frame in flight is finished.
+     * @return number of dropped frames
+     */
+    public int cancelBulk() {
+        ArrayDeque<Frame> dropped;
+        synchronized (lock) {
+            if (bulkQueue.isEmpty()) return 0;
+            dropped = new ArrayDeque<Frame>(bulkQueue);
+            bulkQueue.clear();
+            bulkCancelled += dropped.size();
+        }
+        for (Frame f : dropped) {
+            listener.onFrameDropped(f);
+        }
+        return dropped.size();
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return priorityQueue.size() + bulkQueue.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return "written=" + written + ", priority=" + priorityWritten
+                    + ", max priority wait=" + (maxPriorityWaitNanos / 1000000) + "ms"
+                    + ", bulk cancelled=" + bulkCancelled + ", bulk rejected=" + bulkRejected
+                    + ", pending=" + (priorityQueue.size() + bulkQueue.size());
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Frame frame;
+            synchronized (lock) {
+                while (running && priorityQueue.isEmpty() && bulkQueue.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        running = false;
+                    }
+                }
+                if (!running) break;
+                frame = priorityQueue.isEmpty() ? bulkQueue.pollFirst() : priorityQueue.pollFirst();
+            }
+
+            long start = System.nanoTime();
+            try {
+                out.write(frame.data);
+                out.flush();
+            } catch (IOException e) {
+                synchronized (lock) {
+                    running = false;
+                }
+                listener.onWriteFailed(this, frame, e);
+                break;
+            }
+            long end = System.nanoTime();
+
+            synchronized (lock) {
+                written++;
+                if (frame.priority) {
+                    priorityWritten++;
+                    if (end - frame.enqueuedAt > maxPriorityWaitNanos) {
+                        maxPriorityWaitNanos = end - frame.enqueuedAt;
+                    }
+                }
+            }
+            listener.onFrameWritten(frame, start - frame.enqueuedAt, end - start);
+        }
+        dropAll();
+    }
+
+    private void dropAll() {
+        ArrayDeque<Frame> dropped;
+        synchronized (lock) {
+            dropped = new ArrayDeque<Frame>(priorityQueue);
+            dropped.addAll(bulkQueue);
+            priorityQueue.clear();
+            bulkQueue.clear();
+        }
+        for (Frame f : dropped) {
+            listener.onFrameDropped(f);
+        }
+    }
+}
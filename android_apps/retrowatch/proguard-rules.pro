@@ -2,7 +2,9 @@
 # By default, the flags in this file are appended to flags specified
 # in 'proguard-android-optimize.txt' which is shipped with the Android plugin.
 
-
-
-
-
+# Strip verbose/debug/info logging call sites when minification is enabled.
+-assumenosideeffects class com.hardcopy.retrowatch.utils.Logs {
+    public static void v(...);
+    public static void d(...);
+    public static void i(...);
+}
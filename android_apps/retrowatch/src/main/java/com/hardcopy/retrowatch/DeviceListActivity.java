@@ -172,7 +172,7 @@ public class DeviceListActivity extends Activity {
             String info = ((TextView) v).getText().toString();
             if(info != null && info.length() > 16) {
                 String address = info.substring(info.length() - 17);
-                Logs.d(TAG, "User selected device : " + address);
+                Logs.d(TAG, "User selected device : {}", address);
 
                 // Create the result Intent and include the MAC address
                 Intent intent = new Intent();
@@ -22,58 +22,72 @@ import com.hardcopy.retrowatch.contents.objects.FilterObject;
 import com.hardcopy.retrowatch.utils.Utils;
 
 import android.content.Context;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.View.OnTouchListener;
-import android.widget.ArrayAdapter;
 import android.widget.LinearLayout;
 import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
 
-public class FiltersAdapter extends ArrayAdapter<FilterObject> implements IDialogListener {
+/**
+ * Filter list shown on RecyclerView. Diff is calculated off the main thread by AsyncListDiffer.
+ * Submitted items are never modified; editing a filter replaces the item with a new object.
+ */
+public class FiltersAdapter extends RecyclerView.Adapter<FiltersAdapter.ViewHolder> implements IDialogListener {
 
 	public static final String tag = "FiltersAdapter";
 	
 	private Context mContext = null;
 	private IAdapterListener mAdapterListener = null;
 	
-	private ArrayList<FilterObject> mFilterList = null;
+	private ArrayList<FilterObject> mFilterList = new ArrayList<FilterObject>();	// Working list. Main thread only.
+	private final AsyncListDiffer<FilterObject> mDiffer = new AsyncListDiffer<FilterObject>(this, DIFF_CALLBACK);
 	
 	
-	public FiltersAdapter(Context c, int resId, ArrayList<FilterObject> itemList, IAdapterListener l) {
-		super(c, resId, itemList);
+	public FiltersAdapter(Context c, ArrayList<FilterObject> itemList, IAdapterListener l) {
 		mContext = c;
 		mAdapterListener = l;
+		setHasStableIds(true);
 		
-		if(itemList == null)
-			mFilterList = new ArrayList<FilterObject>();
-		else
-			mFilterList = itemList;
+		if(itemList != null)
+			addFilterAll(itemList);
 	}
 	
 	public void addFilter(FilterObject co) {
 		mFilterList.add(co);
+		submit();
 	}
 	
 	public void addFilterAll(ArrayList<FilterObject> itemList) {
 		if(itemList == null)
 			return;
 		for(int i=0; i<itemList.size(); i++)
-			addFilter(itemList.get(i));
+			mFilterList.add(itemList.get(i));
+		submit();
 	}
 	
 	public void editFilter(FilterObject co) {
-		for(FilterObject fo : mFilterList) {
+		for(int i = 0; i < mFilterList.size(); i++) {
+			FilterObject fo = mFilterList.get(i);
 			if(fo.mId == co.mId) {
-				fo.mId = co.mId;
-				fo.mType = co.mType;
-				fo.mCompareType = co.mCompareType;
-				fo.mReplaceType = co.mReplaceType;
-				fo.mOriginalString = co.mOriginalString;
-				fo.mReplaceString = co.mReplaceString;
+				FilterObject edited = new FilterObject();
+				edited.mId = co.mId;
+				edited.mType = co.mType;
+				edited.mIconType = co.mIconType;
+				edited.mCompareType = co.mCompareType;
+				edited.mReplaceType = co.mReplaceType;
+				edited.mOriginalString = co.mOriginalString;
+				edited.mReplaceString = co.mReplaceString;
+				mFilterList.set(i, edited);
 			}
 		}
+		submit();
 	}
 	
 	public void deleteFilter(int id) {
@@ -83,6 +97,7 @@ public class FiltersAdapter extends ArrayAdapter<FilterObject> implements IDialo
 				mFilterList.remove(i);
 			}
 		}
+		submit();
 	}
 	
 	public void deleteFilter(int type, String packageName) {
@@ -92,50 +107,43 @@ public class FiltersAdapter extends ArrayAdapter<FilterObject> implements IDialo
 				mFilterList.remove(i);
 			}
 		}
+		submit();
 	}
 	
 	public void deleteFilterAll() {
 		mFilterList.clear();
+		submit();
 	}
 	
-	@Override
-	public int getCount() {
-		return mFilterList.size();
+	public FilterObject getItem(int position) { 
+		return mDiffer.getCurrentList().get(position); 
 	}
+	
 	@Override
-	public FilterObject getItem(int position) { 
-		return mFilterList.get(position); 
+	public int getItemCount() {
+		return mDiffer.getCurrentList().size();
 	}
+	
 	@Override
 	public long getItemId(int position) {
-		return position;
+		return getStableId(getItem(position));
 	}
-
+	
+	@NonNull
 	@Override
-	public View getView(int position, View convertView, ViewGroup parent) {
-		ViewHolder holder;
-		View v = convertView;
+	public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+		View v = LayoutInflater.from(mContext).inflate(R.layout.list_filters, parent, false);
+		ViewHolder holder = new ViewHolder(v);
+		holder.mLayoutContainer.setOnTouchListener(mListItemTouchListener);
+		return holder;
+	}
+	
+	@Override
+	public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
 		FilterObject filter = getItem(position);
+		holder.mLayoutContainer.setTag(filter);
 		
-		if(v == null) {
-			LayoutInflater li = (LayoutInflater)mContext.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-			v = li.inflate(R.layout.list_filters, null);
-			holder = new ViewHolder();
-			
-			holder.mPosition = position;
-			holder.mLayoutContainer = (LinearLayout) v.findViewById(R.id.filter_item_container);
-			holder.mLayoutContainer.setTag(filter);
-			holder.mLayoutContainer.setOnTouchListener(mListItemTouchListener);
-			holder.mTextOrigin = (TextView) v.findViewById(R.id.filter_origin);
-			holder.mTextConverted = (TextView) v.findViewById(R.id.filter_converted);
-			
-			v.setTag(holder);
-		} else {
-			holder = (ViewHolder) v.getTag();
-			holder.mLayoutContainer.setTag(filter);
-		}
-		
-		if (filter != null && holder != null) {
+		if (filter != null) {
 			holder.mTextOrigin.setText(new StringBuilder()
 					.append(Utils.getFilterTypeString(filter.mType))
 					.append(", ")
@@ -148,9 +156,7 @@ public class FiltersAdapter extends ArrayAdapter<FilterObject> implements IDialo
 					+ mContext.getText(R.string.content_icon) + ": "
 					+ Utils.getIconTypeString(filter.mIconType + 1));
 		}
-		
-		return v;
-	}	// End of getView()
+	}	// End of onBindViewHolder()
 	
 	@Override
 	public void OnDialogCallback(int msgType, int arg0, int arg1, String arg2, String arg3, Object arg4) {
@@ -210,15 +216,48 @@ public class FiltersAdapter extends ArrayAdapter<FilterObject> implements IDialo
 		}
 	}
 	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	private void submit() {
+		// AsyncListDiffer keeps the submitted list, so hand over a copy
+		mDiffer.submitList(new ArrayList<FilterObject>(mFilterList));
+	}
+	
+	// Filter ID is the database primary key. Type can change on edit, so it is not part of the key.
+	private static long getStableId(FilterObject filter) {
+		return filter.mId;
+	}
+	
+	private static final DiffUtil.ItemCallback<FilterObject> DIFF_CALLBACK = new DiffUtil.ItemCallback<FilterObject>() {
+		@Override
+		public boolean areItemsTheSame(@NonNull FilterObject oldItem, @NonNull FilterObject newItem) {
+			return getStableId(oldItem) == getStableId(newItem);
+		}
+		
+		@Override
+		public boolean areContentsTheSame(@NonNull FilterObject oldItem, @NonNull FilterObject newItem) {
+			return oldItem.mIconType == newItem.mIconType
+					&& oldItem.mCompareType == newItem.mCompareType
+					&& TextUtils.equals(oldItem.mOriginalString, newItem.mOriginalString);
+		}
+	};
+	
 	/**
 	 * Hold every child view of each list item.
 	 */
-	public class ViewHolder {
-		public int mPosition = -1;
+	public static class ViewHolder extends RecyclerView.ViewHolder {
 		public LinearLayout mLayoutContainer = null;
 		public TextView mTextOrigin = null;
 		public TextView mTextConverted = null;
+		
+		public ViewHolder(View v) {
+			super(v);
+			mLayoutContainer = (LinearLayout) v.findViewById(R.id.filter_item_container);
+			mTextOrigin = (TextView) v.findViewById(R.id.filter_origin);
+			mTextConverted = (TextView) v.findViewById(R.id.filter_converted);
+		}
 	}
 	
 }
-
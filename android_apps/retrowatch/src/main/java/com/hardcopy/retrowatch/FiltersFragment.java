@@ -34,9 +34,10 @@ import android.widget.AdapterView.OnItemSelectedListener;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
-import android.widget.ListView;
 import android.widget.Spinner;
 import android.widget.Toast;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 /**
  * This fragment shows user defined message filters.
@@ -50,7 +51,7 @@ public class FiltersFragment extends Fragment implements OnClickListener, IAdapt
 	private IFragmentListener mFragmentListener;
 	
 	// View
-	private ListView mListFilter = null;
+	private RecyclerView mListFilter = null;
 	private FiltersAdapter mFiltersAdapter = null;
 	private Spinner mSpinnerIconType = null;
 	private EditText mEditOrigin = null;
@@ -72,13 +73,14 @@ public class FiltersFragment extends Fragment implements OnClickListener, IAdapt
 		
 		View rootView = inflater.inflate(R.layout.fragment_filters, container, false);
 		
-		mListFilter = (ListView) rootView.findViewById(R.id.list_filters);
+		mListFilter = (RecyclerView) rootView.findViewById(R.id.list_filters);
+		mListFilter.setLayoutManager(new LinearLayoutManager(mContext));
+		mListFilter.addItemDecoration(new ListDividerDecoration());
 		if(mFiltersAdapter == null)
-			mFiltersAdapter = new FiltersAdapter(mContext, R.layout.list_filters, null, this);
+			mFiltersAdapter = new FiltersAdapter(mContext, null, this);
 		mListFilter.setAdapter(mFiltersAdapter);
 		if(mFiltersCache != null) {
 			mFiltersAdapter.addFilterAll(mFiltersCache);
-			mFiltersAdapter.notifyDataSetChanged();
 			mFiltersCache = null;
 		}
 		
@@ -199,7 +201,6 @@ public class FiltersFragment extends Fragment implements OnClickListener, IAdapt
 	public void addFilter(FilterObject object) {
 		if(object != null && mFiltersAdapter != null) {
 			mFiltersAdapter.addFilter(object);
-			mFiltersAdapter.notifyDataSetChanged();
 			if(object.mId == mCurrentFilterObject.mId)
 				makeDefaultFilterObject();		// Make new filter object and set data on widget
 		}
@@ -216,7 +217,6 @@ public class FiltersFragment extends Fragment implements OnClickListener, IAdapt
 		}
 		if(objList != null) {
 			mFiltersAdapter.addFilterAll(objList);
-			mFiltersAdapter.notifyDataSetChanged();
 		}
 	}
 	
@@ -227,7 +227,6 @@ public class FiltersFragment extends Fragment implements OnClickListener, IAdapt
 	public void editFilter(FilterObject object) {
 		if(object != null && mFiltersAdapter != null) {
 			mFiltersAdapter.editFilter(object);
-			mFiltersAdapter.notifyDataSetChanged();
 			if(object.mId == mCurrentFilterObject.mId)
 				setFilterInfoOnWidget(object);
 		}
@@ -239,7 +238,6 @@ public class FiltersFragment extends Fragment implements OnClickListener, IAdapt
 	 */
 	public void deleteFilter(int id) {
 		mFiltersAdapter.deleteFilter(id);
-		mFiltersAdapter.notifyDataSetChanged();
 		if(id == mCurrentFilterObject.mId)
 			makeDefaultFilterObject();		// Make new filter object and set data on widget
 	}
@@ -251,7 +249,6 @@ public class FiltersFragment extends Fragment implements OnClickListener, IAdapt
 	 */
 	public void deleteFilter(int type, String packageName) {
 		mFiltersAdapter.deleteFilter(type, packageName);
-		mFiltersAdapter.notifyDataSetChanged();
 		makeDefaultFilterObject();		// Make new filter object and set data on widget
 	}
 	
@@ -260,7 +257,6 @@ public class FiltersFragment extends Fragment implements OnClickListener, IAdapt
 	 */
 	public void deleteFilterAll() {
 		mFiltersAdapter.deleteFilterAll();
-		mFiltersAdapter.notifyDataSetChanged();
 	}
 	
 	
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hardcopy.retrowatch;
+
+import android.graphics.Rect;
+import android.view.View;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * 1px gap below each row. List background shows through the gap,
+ * same as divider of AppTheme.List on ListView.
+ */
+public class ListDividerDecoration extends RecyclerView.ItemDecoration {
+	
+	private static final int DIVIDER_HEIGHT = 1;		// px
+	
+	@Override
+	public void getItemOffsets(@NonNull Rect outRect, @NonNull View view, 
+			@NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+		outRect.set(0, 0, 0, DIVIDER_HEIGHT);
+	}
+	
+}
@@ -23,31 +23,39 @@ import com.hardcopy.retrowatch.contents.objects.FilterObject;
 import com.hardcopy.retrowatch.utils.Utils;
 
 import android.content.Context;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.View.OnTouchListener;
-import android.widget.ArrayAdapter;
 import android.widget.LinearLayout;
 import android.widget.TextView;
+import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
 
-public class MessageListAdapter extends ArrayAdapter<ContentObject> implements IDialogListener {
+/**
+ * Message list shown on RecyclerView.
+ * Every change submits a copy of the working list to AsyncListDiffer. Diff is calculated
+ * on a background thread and only changed rows are bound. While a diff is running, newer
+ * submission replaces the older one, so a burst of notifications ends in a single update.
+ */
+public class MessageListAdapter extends RecyclerView.Adapter<MessageListAdapter.ViewHolder> implements IDialogListener {
 
 	public static final String TAG = "MessageListAdapter";
 	
 	private Context mContext = null;
-	private ArrayList<ContentObject> mMessageList = null;
+	private ArrayList<ContentObject> mMessageList = new ArrayList<ContentObject>();	// Working list. Main thread only.
+	private final AsyncListDiffer<ContentObject> mDiffer = new AsyncListDiffer<ContentObject>(this, DIFF_CALLBACK);
 	private IAdapterListener mAdapterListener = null;
 	
-	public MessageListAdapter(Context c, int resId, ArrayList<ContentObject> itemList) {
-		super(c, resId, itemList);
+	public MessageListAdapter(Context c, ArrayList<ContentObject> itemList) {
 		mContext = c;
-		if(itemList == null)
-			mMessageList = new ArrayList<ContentObject>();
-		else
-			mMessageList = itemList;
+		if(itemList != null)
+			addMessageAll(itemList);
 	}
 	
 	public void setAdapterParams(IAdapterListener l) {
@@ -55,14 +63,20 @@ public class MessageListAdapter extends ArrayAdapter<ContentObject> implements I
 	}
 	
 	public void addMessage(ContentObject co) {
+		if(co == null)
+			return;
 		mMessageList.add(co);
+		submit();
 	}
 	
 	public void addMessageAll(ArrayList<ContentObject> itemList) {
 		if(itemList == null)
 			return;
-		for(int i=0; i<itemList.size(); i++)
-			addMessage(itemList.get(i));
+		for(int i=0; i<itemList.size(); i++) {
+			if(itemList.get(i) != null)
+				mMessageList.add(itemList.get(i));
+		}
+		submit();
 	}
 	
 	public void deleteMessage(int id) {
@@ -72,6 +86,7 @@ public class MessageListAdapter extends ArrayAdapter<ContentObject> implements I
 				mMessageList.remove(i);
 			}
 		}
+		submit();
 	}
 	
 	public void deleteMessageByType(int type) {
@@ -81,6 +96,7 @@ public class MessageListAdapter extends ArrayAdapter<ContentObject> implements I
 				mMessageList.remove(i);
 			}
 		}
+		submit();
 	}
 	
 	public void deleteMessageByTypeAndName(int type, String packageName) {
@@ -91,50 +107,47 @@ public class MessageListAdapter extends ArrayAdapter<ContentObject> implements I
 					mMessageList.remove(i);
 			}
 		}
+		submit();
 	}
 	
 	public void deleteMessageAll() {
 		mMessageList.clear();
+		submit();
+	}
+	
+	public ContentObject getItem(int position) { 
+		return mDiffer.getCurrentList().get(position); 
 	}
 	
 	@Override
-	public int getCount() {
-		return mMessageList.size();
+	public int getItemCount() {
+		return mDiffer.getCurrentList().size();
 	}
+	
+	/**
+	 * Rows are recycled per content type
+	 */
 	@Override
-	public ContentObject getItem(int position) { 
-		return mMessageList.get(position); 
+	public int getItemViewType(int position) {
+		return getItem(position).mContentType;
 	}
+	
+	@NonNull
 	@Override
-	public long getItemId(int position) {
-		return position;
+	public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+		View v = LayoutInflater.from(mContext).inflate(R.layout.list_message_list, parent, false);
+		ViewHolder holder = new ViewHolder(v);
+		holder.mItemContainer.setTag(holder);
+		holder.mItemContainer.setOnTouchListener(mListItemTouchListener);
+		return holder;
 	}
-
+	
 	@Override
-	public View getView(int position, View convertView, ViewGroup parent) {
-		ViewHolder holder;
-		View v = convertView;
+	public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
 		ContentObject co = getItem(position);
-		
-		if(v == null) {
-			LayoutInflater li = (LayoutInflater)mContext.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-			v = li.inflate(R.layout.list_message_list, null);
-			holder = new ViewHolder();
-			
-			holder.mItemContainer = (LinearLayout) v.findViewById(R.id.msg_item_container);
-			holder.mItemContainer.setOnTouchListener(mListItemTouchListener);
-			holder.mTextInfo = (TextView) v.findViewById(R.id.msg_info);
-			holder.mTextOrigin = (TextView) v.findViewById(R.id.msg_origin);
-			holder.mTextConverted = (TextView) v.findViewById(R.id.msg_converted);
-			
-			v.setTag(holder);
-		} else {
-			holder = (ViewHolder) v.getTag();
-		}
-		
 		holder.mContentObject = co;
 		
-		if (co != null && holder != null) {
+		if (co != null) {
 			if(co.mIsEnabled)
 				holder.mItemContainer.setBackgroundColor(ContextCompat.getColor(mContext, R.color.lightblue1));
 			else
@@ -152,9 +165,7 @@ public class MessageListAdapter extends ArrayAdapter<ContentObject> implements I
 				holder.mTextConverted.setText("");
 			}
 		}
-		
-		return v;
-	}	// End of getView()
+	}	// End of onBindViewHolder()
 	
 	@Override
 	public void OnDialogCallback(int msgType, int arg0, int arg1, String arg2, String arg3, Object arg4) {
@@ -237,13 +248,49 @@ public class MessageListAdapter extends ArrayAdapter<ContentObject> implements I
 		}
 	}
 	
-	public class ViewHolder {
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	private void submit() {
+		// AsyncListDiffer keeps the submitted list, so hand over a copy
+		mDiffer.submitList(new ArrayList<ContentObject>(mMessageList));
+	}
+	
+	/**
+	 * Content type and ID are not unique (notifications share one ID, feeds use the feed type),
+	 * so a row is identified by its object. Lists keep the same instances between submissions.
+	 */
+	private static final DiffUtil.ItemCallback<ContentObject> DIFF_CALLBACK = new DiffUtil.ItemCallback<ContentObject>() {
+		@Override
+		public boolean areItemsTheSame(@NonNull ContentObject oldItem, @NonNull ContentObject newItem) {
+			return oldItem == newItem;
+		}
+		
+		@Override
+		public boolean areContentsTheSame(@NonNull ContentObject oldItem, @NonNull ContentObject newItem) {
+			return oldItem.mIsEnabled == newItem.mIsEnabled
+					&& TextUtils.equals(oldItem.mPackageName, newItem.mPackageName)
+					&& TextUtils.equals(oldItem.mOriginalString, newItem.mOriginalString)
+					&& TextUtils.equals(oldItem.mFilteredString, newItem.mFilteredString);
+		}
+	};
+	
+	public static class ViewHolder extends RecyclerView.ViewHolder {
 		public LinearLayout mItemContainer = null;
 		public TextView mTextInfo = null;
 		public TextView mTextOrigin = null;
 		public TextView mTextConverted = null;
 		
 		public ContentObject mContentObject = null;
+		
+		public ViewHolder(View v) {
+			super(v);
+			mItemContainer = (LinearLayout) v.findViewById(R.id.msg_item_container);
+			mTextInfo = (TextView) v.findViewById(R.id.msg_info);
+			mTextOrigin = (TextView) v.findViewById(R.id.msg_origin);
+			mTextConverted = (TextView) v.findViewById(R.id.msg_converted);
+		}
 	}
 	
 }
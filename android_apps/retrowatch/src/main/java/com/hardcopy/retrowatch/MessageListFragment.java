@@ -27,7 +27,8 @@ import androidx.fragment.app.Fragment;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ListView;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 /**
  * This fragment shows messages to be sent to watch.
@@ -39,7 +40,7 @@ public class MessageListFragment extends Fragment implements IAdapterListener {
 	private Context mContext = null;
 	private IFragmentListener mFragmentListener;
 	
-	private ListView mListMessage = null;
+	private RecyclerView mListMessage = null;
 	private MessageListAdapter mMessageListAdapter = null;
 	
 	public MessageListFragment(Context c, IFragmentListener l) {
@@ -53,9 +54,11 @@ public class MessageListFragment extends Fragment implements IAdapterListener {
 		
 		View rootView = inflater.inflate(R.layout.fragment_message_list, container, false);
 
-		mListMessage = (ListView) rootView.findViewById(R.id.list_message);
+		mListMessage = (RecyclerView) rootView.findViewById(R.id.list_message);
+		mListMessage.setLayoutManager(new LinearLayoutManager(mContext));
+		mListMessage.addItemDecoration(new ListDividerDecoration());
 		if(mMessageListAdapter == null)
-			mMessageListAdapter = new MessageListAdapter(mContext, R.layout.list_message_list, null);
+			mMessageListAdapter = new MessageListAdapter(mContext, null);
 		mMessageListAdapter.setAdapterParams(this);
 		mListMessage.setAdapter(mMessageListAdapter);
 		
@@ -77,7 +80,6 @@ public class MessageListFragment extends Fragment implements IAdapterListener {
 		if(mMessageListAdapter == null) return;
 		if(object != null) {
 			mMessageListAdapter.addMessage(object);
-			mMessageListAdapter.notifyDataSetChanged();
 		}
 	}
 	
@@ -85,32 +87,27 @@ public class MessageListFragment extends Fragment implements IAdapterListener {
 		if(mMessageListAdapter == null) return;
 		if(objList != null) {
 			mMessageListAdapter.addMessageAll(objList);
-			mMessageListAdapter.notifyDataSetChanged();
 		}
 	}
 	
 	public void deleteMessage(int id) {
 		if(mMessageListAdapter == null) return;
 		mMessageListAdapter.deleteMessage(id);
-		mMessageListAdapter.notifyDataSetChanged();
 	}
 	
 	public void deleteMessageByType(int type) {
 		if(mMessageListAdapter == null) return;
 		mMessageListAdapter.deleteMessageByType(type);
-		mMessageListAdapter.notifyDataSetChanged();
 	}
 	
 	public void deleteMessageByTypeAndName(int type, String packageName) {
 		if(mMessageListAdapter == null) return;
 		mMessageListAdapter.deleteMessageByTypeAndName(type, packageName);
-		mMessageListAdapter.notifyDataSetChanged();
 	}
 	
 	public void deleteMessageAll() {
 		if(mMessageListAdapter == null) return;
 		mMessageListAdapter.deleteMessageAll();
-		mMessageListAdapter.notifyDataSetChanged();
 	}
 	
 }
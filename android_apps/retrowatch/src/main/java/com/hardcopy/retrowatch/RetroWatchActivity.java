@@ -25,6 +25,7 @@ import com.hardcopy.retrowatch.contents.objects.ContentObject;
 import com.hardcopy.retrowatch.contents.objects.FilterObject;
 import com.hardcopy.retrowatch.service.RetroWatchService;
 import com.hardcopy.retrowatch.utils.Constants;
+import com.hardcopy.retrowatch.utils.LatencyTracer;
 import com.hardcopy.retrowatch.utils.Logs;
 import com.hardcopy.retrowatch.utils.RecycleUtils;
 import com.hardcopy.retrowatch.utils.Utils;
@@ -32,10 +33,12 @@ import com.hardcopy.retrowatch.utils.Utils;
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
 import android.content.ComponentName;
+import android.content.DialogInterface;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.res.Configuration;
+import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
@@ -50,11 +53,13 @@ import androidx.core.content.ContextCompat;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.FragmentActivity;
 import androidx.fragment.app.FragmentManager;
 import androidx.viewpager.widget.ViewPager;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.widget.HorizontalScrollView;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -380,6 +385,10 @@ public class RetroWatchActivity extends AppCompatActivity implements IFragmentLi
 			// Send all available contents to watch
 			mService.reserveRemoteUpdate(100);
 			return true;
+		} else if (id == R.id.action_latency) {
+			// Show notification latency statistics
+			showLatencyStatistics();
+			return true;
 		}
 		/* Disabled:
 		if (id == R.id.action_discoverable) {
@@ -504,12 +513,6 @@ public class RetroWatchActivity extends AppCompatActivity implements IFragmentLi
 			}
 			break;
 			
-		case IFragmentListener.CALLBACK_REQUEST_RUN_IN_BACKGROUND:
-			if(mService != null) {
-				mService.startServiceMonitoring();
-			}
-			break;
-			
 		case IFragmentListener.CALLBACK_REQUEST_CONNECT:
 			if(mService == null) {
 				Toast.makeText(this, "Service not available. Please wait for service to start.", Toast.LENGTH_LONG).show();
@@ -698,6 +701,33 @@ public class RetroWatchActivity extends AppCompatActivity implements IFragmentLi
 		startActivity(intent);
 	}
 	
+	/**
+	 * Debug screen: per-stage latency of notifications (same as dumpsys output)
+	 */
+	private void showLatencyStatistics() {
+		TextView textView = new TextView(this);
+		textView.setTypeface(Typeface.MONOSPACE);
+		textView.setTextSize(11);
+		int padding = (int) (12 * getResources().getDisplayMetrics().density);
+		textView.setPadding(padding, padding, padding, padding);
+		textView.setText(LatencyTracer.getReport());
+		
+		HorizontalScrollView scrollView = new HorizontalScrollView(this);
+		scrollView.addView(textView);
+		
+		new AlertDialog.Builder(this)
+			.setTitle(R.string.latency_title)
+			.setView(scrollView)
+			.setPositiveButton(R.string.close, null)
+			.setNeutralButton(R.string.latency_reset, new DialogInterface.OnClickListener() {
+				@Override
+				public void onClick(DialogInterface dialog, int which) {
+					LatencyTracer.reset();
+				}
+			})
+			.show();
+	}
+	
 	/**
 	 * Ensure this device is discoverable by others
 	 */
@@ -752,7 +782,7 @@ public class RetroWatchActivity extends AppCompatActivity implements IFragmentLi
 	 * Receives result from external activity
 	 */
 	public void onActivityResult(int requestCode, int resultCode, Intent data) {
-		Logs.d(TAG, "onActivityResult " + resultCode);
+		Logs.d(TAG, "onActivityResult {}", resultCode);
 		
 		switch(requestCode) {
 		case Constants.REQUEST_CONNECT_DEVICE:
@@ -859,6 +889,16 @@ public class RetroWatchActivity extends AppCompatActivity implements IFragmentLi
 				break;
 			}
 			
+			case Constants.MESSAGE_ADD_NOTIFICATION_LIST:
+			{
+				@SuppressWarnings("unchecked")
+				ArrayList<ContentObject> list = (ArrayList<ContentObject>)msg.obj;
+				MessageListFragment frg = (MessageListFragment) mSectionsPagerAdapter.getItem(RetroWatchFragmentAdapter.FRAGMENT_POS_MESSAGE_LIST);
+				if(frg != null)
+					frg.addMessageAll(list);
+				break;
+			}
+			
 			case Constants.MESSAGE_DELETE_NOTIFICATION:
 			{
 				int _id = msg.arg1;
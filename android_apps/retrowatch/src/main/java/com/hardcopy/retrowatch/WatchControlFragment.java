@@ -132,8 +132,8 @@ public class WatchControlFragment extends Fragment {
 		mCheckBackground.setOnCheckedChangeListener(new OnCheckedChangeListener() {
 			@Override
 			public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+				// Service follows this setting through Settings listener
 				Settings.getInstance(mContext).setRunInBackground(isChecked);
-				mFragmentListener.OnFragmentCallback(IFragmentListener.CALLBACK_REQUEST_RUN_IN_BACKGROUND, 0, 0, null, null,null);
 			}
 		});
 		
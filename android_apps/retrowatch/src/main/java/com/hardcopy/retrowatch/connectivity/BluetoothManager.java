@@ -23,7 +23,9 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
 
+import com.hardcopy.core.transport.PriorityFrameWriter;
 import com.hardcopy.retrowatch.utils.Constants;
+import com.hardcopy.retrowatch.utils.LatencyTracer;
 import com.hardcopy.retrowatch.utils.Logs;
 
 import android.Manifest;
@@ -114,7 +116,7 @@ public class BluetoothManager {
      * @param state  An integer defining the current connection state
      */
     private synchronized void setState(int state) {
-        Logs.d(TAG, "setState() " + mState + " -> " + state);
+        Logs.d(TAG, "setState() {} -> {}", mState, state);
         mState = state;
         
         if(mState == STATE_CONNECTED)
@@ -163,7 +165,7 @@ public class BluetoothManager {
                 mAcceptThread = new AcceptThread();
                 mAcceptThread.start();
             } catch (SecurityException e) {
-                Logs.e(TAG, "SecurityException when starting AcceptThread: " + e.getMessage());
+                Logs.e(TAG, "SecurityException when starting AcceptThread: {}", e.getMessage());
                 Message msg = mHandler.obtainMessage(MESSAGE_TOAST);
                 Bundle bundle = new Bundle();
                 bundle.putString(Constants.SERVICE_HANDLER_MSG_KEY_TOAST, "Bluetooth permission denied");
@@ -181,7 +183,7 @@ public class BluetoothManager {
      * @param device  The BluetoothDevice to connect
      */
     public synchronized void connect(BluetoothDevice device) {
-        Logs.d(TAG, "Connecting to: " + device);
+        Logs.d(TAG, "Connecting to: {}", device);
         
         // Check for Bluetooth permission
         if (!hasBluetoothPermission()) {
@@ -207,7 +209,7 @@ public class BluetoothManager {
             mConnectThread.start();
             setState(STATE_CONNECTING);
         } catch (SecurityException e) {
-            Logs.e(TAG, "SecurityException when connecting: " + e.getMessage());
+            Logs.e(TAG, "SecurityException when connecting: {}", e.getMessage());
             connectionFailed();
         }
     }
@@ -246,7 +248,7 @@ public class BluetoothManager {
                 bundle.putString(Constants.SERVICE_HANDLER_MSG_KEY_DEVICE_NAME, "Unknown Device");
             }
         } catch (SecurityException e) {
-            Logs.e(TAG, "SecurityException getting device name: " + e.getMessage());
+            Logs.e(TAG, "SecurityException getting device name: {}", e.getMessage());
             bundle.putString(Constants.SERVICE_HANDLER_MSG_KEY_DEVICE_NAME, "Unknown Device");
         }
         msg.setData(bundle);
@@ -270,20 +272,49 @@ public class BluetoothManager {
     }
 
     /**
-     * Write to the ConnectedThread in an unsynchronized manner
+     * Queue a frame to the ConnectedThread. Frames are written in order by the writer thread.
      * @param out The bytes to write
-     * @see ConnectedThread#write(byte[])
+     * @param trace Finished when the frame is written, discarded if it is dropped. Can be null.
+     * @return true if frame is queued
+     * @see ConnectedThread#write(byte[], LatencyTracer.Trace, boolean)
      */
-    public void write(byte[] out) {
-        // Create temporary object
+    public boolean write(byte[] out, LatencyTracer.Trace trace) {
         ConnectedThread r;
-        // Synchronize a copy of the ConnectedThread
         synchronized (this) {
-            if (mState != STATE_CONNECTED) return;
+            if (mState != STATE_CONNECTED) return false;
             r = mConnectedThread;
         }
-        // Perform the write unsynchronized
-        r.write(out);
+        return r.write(out, trace, false);
+    }
+    
+    public boolean write(byte[] out) {
+        return write(out, null);
+    }
+    
+    /**
+     * Queue a frame ahead of every normal frame. Used for incoming call.
+     * Waits only for the frame which is being written.
+     */
+    public boolean writePriority(byte[] out, LatencyTracer.Trace trace) {
+        ConnectedThread r;
+        synchronized (this) {
+            if (mState != STATE_CONNECTED) return false;
+            r = mConnectedThread;
+        }
+        return r.write(out, trace, true);
+    }
+    
+    /**
+     * Drop normal frames not written yet. Frame in flight is completed.
+     * @return number of dropped frames
+     */
+    public int cancelPendingWrites() {
+        ConnectedThread r;
+        synchronized (this) {
+            if (mState != STATE_CONNECTED) return 0;
+            r = mConnectedThread;
+        }
+        return r.cancelPendingWrites();
     }
 
     /**
@@ -374,15 +405,15 @@ public class BluetoothManager {
                     Logs.e(TAG, "Cannot create server socket: Missing BLUETOOTH_CONNECT permission");
                 }
             } catch (IOException e) {
-                Logs.e(TAG, "listen() failed" + e.toString());
+                Logs.e(TAG, "listen() failed: {}", e);
             } catch (SecurityException e) {
-                Logs.e(TAG, "SecurityException in AcceptThread: " + e.getMessage());
+                Logs.e(TAG, "SecurityException in AcceptThread: {}", e.getMessage());
             }
             mmServerSocket = tmp;
         }
 
         public void run() {
-            Logs.d(TAG, "BEGIN mAcceptThread" + this);
+            Logs.d(TAG, "BEGIN mAcceptThread {}", this);
             setName("AcceptThread");
             BluetoothSocket socket = null;
 
@@ -424,12 +455,12 @@ public class BluetoothManager {
         }
 
         public void cancel() {
-            Logs.d(TAG, "cancel " + this);
+            Logs.d(TAG, "cancel {}", this);
             try {
             	if(mmServerSocket != null)
             		mmServerSocket.close();
             } catch (IOException e) {
-                Logs.e(TAG, "close() of server failed" + e.toString());
+                Logs.e(TAG, "close() of server failed: {}", e);
             }
         }
     }	// End of class AcceptThread
@@ -527,6 +558,7 @@ public class BluetoothManager {
         private final BluetoothSocket mmSocket;
         private final InputStream mmInStream;
         private final OutputStream mmOutStream;
+        private final PriorityFrameWriter mmWriter;
 
         public ConnectedThread(BluetoothSocket socket) {
             Log.d(TAG, "create ConnectedThread");
@@ -544,10 +576,12 @@ public class BluetoothManager {
 
             mmInStream = tmpIn;
             mmOutStream = tmpOut;
+            mmWriter = new PriorityFrameWriter(mmOutStream, "BluetoothWriter", mWriteListener);
         }
 
         public void run() {
             Log.i(TAG, "BEGIN mConnectedThread");
+            mmWriter.start();
             byte[] buffer = new byte[1024];
             int bytes;
 
@@ -562,6 +596,7 @@ public class BluetoothManager {
                             .sendToTarget();
                 } catch (IOException e) {
                     Log.e(TAG, "disconnected", e);
+                    mmWriter.stop();
                     connectionLost();
                     break;
                 }
@@ -569,22 +604,22 @@ public class BluetoothManager {
         }
 
         /**
-         * Write to the connected OutStream.
+         * Queue to the writer thread of connected OutStream.
          * @param buffer  The bytes to write
+         * @return false if writer is stopped or full
          */
-        public void write(byte[] buffer) {
-            try {
-                mmOutStream.write(buffer);
-
-                // Disabled: Share the sent message back to the main thread
-                // mHandler.obtainMessage(Constants.MESSAGE_WRITE, -1, -1, buffer)
-                //        .sendToTarget();
-            } catch (IOException e) {
-                Logs.e(TAG, "Exception during write");
-            }
+        public boolean write(byte[] buffer, LatencyTracer.Trace trace, boolean priority) {
+            if(priority)
+                return mmWriter.enqueuePriority(buffer, trace);
+            return mmWriter.enqueue(buffer, trace);
+        }
+        
+        public int cancelPendingWrites() {
+            return mmWriter.cancelBulk();
         }
 
         public void cancel() {
+            mmWriter.stop();
             try {
                 mmSocket.close();
             } catch (IOException e) {
@@ -594,6 +629,31 @@ public class BluetoothManager {
         
     }	// End of class ConnectedThread
     
+    /**
+     * Results from writer thread
+     */
+    private final PriorityFrameWriter.Listener mWriteListener = new PriorityFrameWriter.Listener() {
+        @Override
+        public void onFrameWritten(PriorityFrameWriter.Frame frame, long queuedNanos, long writeNanos) {
+            LatencyTracer.recordWrite(writeNanos, true);
+            if(frame.getTag() != null)
+                ((LatencyTracer.Trace) frame.getTag()).finish();
+        }
+        
+        @Override
+        public void onFrameDropped(PriorityFrameWriter.Frame frame) {
+            if(frame.getTag() != null)
+                ((LatencyTracer.Trace) frame.getTag()).discard();
+        }
+        
+        @Override
+        public void onWriteFailed(PriorityFrameWriter writer, PriorityFrameWriter.Frame frame, IOException e) {
+            Logs.e(TAG, "Exception during write");
+            LatencyTracer.recordWrite(0, false);
+            onFrameDropped(frame);
+        }
+    };
+    
     /**
      * Auto connect timer
      */
@@ -16,40 +16,43 @@
 
 package com.hardcopy.retrowatch.connectivity;
 
-import com.hardcopy.retrowatch.utils.Constants;
+import com.hardcopy.retrowatch.utils.Settings;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 
 public class ConnectionInfo {
 	
 	// Instance
-	private static ConnectionInfo mInstance = null;
+	private static volatile ConnectionInfo mInstance = null;
 	
-	private Context mContext;
+	private final Settings mSettings;
 	
 	// Target device's MAC address
-	private String mDeviceAddress = null;
+	private volatile String mDeviceAddress = null;
 	// Name of the connected device
-	private String mDeviceName = null; 
+	private volatile String mDeviceName = null; 
 	
 	
 	private ConnectionInfo(Context c) {
-		mContext = c;
-		
-		SharedPreferences prefs = mContext.getSharedPreferences(Constants.PREFERENCE_NAME, Context.MODE_PRIVATE);
-		mDeviceAddress = prefs.getString(Constants.PREFERENCE_CONN_INFO_ADDRESS, null);
-		mDeviceName = prefs.getString(Constants.PREFERENCE_CONN_INFO_NAME, null);
+		mSettings = Settings.getInstance(c);
+		mDeviceAddress = mSettings.getDeviceAddress();
+		mDeviceName = mSettings.getDeviceName();
 	}
 	
-	public synchronized static ConnectionInfo getInstance(Context c) {
-		if(mInstance == null) {
-			if(c != null)
-				mInstance = new ConnectionInfo(c);
-			else
+	public static ConnectionInfo getInstance(Context c) {
+		ConnectionInfo info = mInstance;
+		if(info == null) {
+			if(c == null)
 				return null;
+			synchronized(ConnectionInfo.class) {
+				info = mInstance;
+				if(info == null) {
+					info = new ConnectionInfo(c);
+					mInstance = info;
+				}
+			}
 		}
-		return mInstance;
+		return info;
 	}
 	
 	public void resetConnectionInfo() {
@@ -65,12 +68,8 @@ public class ConnectionInfo {
 		mDeviceName = name;
 		
 		// At this time, connection is established successfully.
-		// Save connection info in shared preference.
-		SharedPreferences prefs = mContext.getSharedPreferences(Constants.PREFERENCE_NAME, Context.MODE_PRIVATE);
-		SharedPreferences.Editor editor = prefs.edit();
-		editor.putString(Constants.PREFERENCE_CONN_INFO_ADDRESS, mDeviceAddress);
-		editor.putString(Constants.PREFERENCE_CONN_INFO_NAME, mDeviceName);
-		editor.commit();
+		// Save connection info. Disk write is done in background.
+		mSettings.setConnectionInfo(mDeviceAddress, mDeviceName);
 	}
 	
 	public String getDeviceAddress() {
@@ -19,8 +19,7 @@ package com.hardcopy.retrowatch.connectivity;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.hardcopy.retrowatch.utils.Logs;
 
@@ -32,7 +31,6 @@ public class HttpAsyncTask implements HttpInterface
 {
 	// Global variables
 	public static final String tag = "HttpAsyncTask";
-	private static final Executor executor = Executors.newSingleThreadExecutor();
 	private static final Handler handler = new Handler(Looper.getMainLooper());
 	
 //	private Map<String, String> mMap;	// Disabled
@@ -40,9 +38,14 @@ public class HttpAsyncTask implements HttpInterface
 	private String mURL = null;
 	private int mResultStatus = MSG_HTTP_RESULT_CODE_OK;
 	private int mRequestType = REQUEST_TYPE_GET;
+	private int mConnectTimeout = 0;		// 0 : use HttpClient default
+	private int mReadTimeout = 0;
+	private volatile boolean mCanceled = false;
+	private final HttpRequester mRequester = new HttpRequester();
 	
 	// Context, system
 	private HttpListener mListener;
+	private HttpStreamConsumer mStreamConsumer = null;
 	
 	// Constructor
 	public HttpAsyncTask(HttpListener listener, int type, String url, int requestType) {
@@ -52,25 +55,76 @@ public class HttpAsyncTask implements HttpInterface
 		mRequestType = requestType;
 	}
 	
+	/**
+	 * Response stream is passed to consumer on worker thread instead of building result string.
+	 * Result of consumer is sent with HttpListener.OnReceiveHttpStreamResult()
+	 */
+	public HttpAsyncTask(HttpListener listener, HttpStreamConsumer consumer, int type, String url, int requestType) {
+		this(listener, type, url, requestType);
+		mStreamConsumer = consumer;
+	}
+	
+	/**
+	 * Set timeout of this request. Must be called before execute()
+	 */
+	public HttpAsyncTask setTimeout(int connectTimeout, int readTimeout) {
+		mConnectTimeout = connectTimeout;
+		mReadTimeout = readTimeout;
+		return this;
+	}
+	
 	/**
 	 * Execute the HTTP request asynchronously
 	 */
 	public void execute() {
-		executor.execute(this::doInBackground);
+		try {
+			HttpClient.execute(this::doInBackground);
+		} catch (RejectedExecutionException e) {
+			Logs.d(tag, "###### Error!!! : Too many requests are waiting. Request is rejected ");
+			mResultStatus = MSG_HTTP_RESULT_CODE_REJECTED;
+			if(mStreamConsumer != null)
+				onPostStreamResult(null);
+			else
+				onPostExecute("");
+		}
+	}
+	
+	/**
+	 * Cancel request. Listener is not called after cancel.
+	 */
+	public void cancel() {
+		mCanceled = true;
+		mRequester.cancel();
+	}
+	
+	public boolean isCanceled() {
+		return mCanceled;
+	}
+	
+	/**
+	 * Freshness lifetime declared by server (Cache-Control max-age or Expires) in second.
+	 * -1 if not declared. Valid after response is received.
+	 */
+	public int getMaxAge() {
+		return mRequester.getMaxAge();
 	}
 
 	private void doInBackground() 
 	{
 		Logs.d(tag, "###### HttpAsyncTask :: Starting HTTP request task ");
 		String resultString = null;
-		HttpRequester httpRequester = new HttpRequester();
+		HttpRequester httpRequester = mRequester;
+		httpRequester.setTimeout(mConnectTimeout, mReadTimeout);
+		
+		if(mCanceled)
+			return;
 		
 		if(mListener==null || mURL==null) { 
 			Logs.d(tag, "###### Error!!! : mListener==null or mURL==null ");
 			onPostExecute(null);
 			return; 
 		} else {
-			Logs.d(tag, "###### Request URL = "+mURL);
+			Logs.d(tag, "###### Request URL = {}", mURL);
 		}
 		
 		URL url = null;
@@ -94,19 +148,14 @@ public class HttpAsyncTask implements HttpInterface
 		else
 			reqType = REQUEST_TYPE_GET_STRING;
 		
-		// TODO: Manually set response encoding type.
-		// Some page doesn't support UTF-8
-		String encType = null;
-		if(true) {
-			encType = ENCODING_TYPE_UTF_8;
-		} 
-//		else if(  ) {
-//			encType = ENCODING_TYPE_EUC_KR;
-//		}
+		if(mStreamConsumer != null) {
+			requestStream(httpRequester, url, reqType);
+			return;
+		}
 		
-		// Request
+		// Request. Response encoding is detected by HttpRequester
 		try {
-			resultString = httpRequester.request(url, encType, reqType, null);
+			resultString = httpRequester.request(url, null, reqType, null);
 			// publishProgress(int);
 		} catch (IOException e) { 
 			e.printStackTrace();
@@ -128,16 +177,48 @@ public class HttpAsyncTask implements HttpInterface
 		onPostExecute(resultString);
 	}
 
+	private void requestStream(HttpRequester httpRequester, URL url, String reqType) 
+	{
+		Object result = null;
+		try {
+			result = httpRequester.requestStream(url, reqType, null, mType, mStreamConsumer);
+		} catch (IOException e) { 
+			e.printStackTrace();
+			mResultStatus = MSG_HTTP_RESULT_CODE_ERROR_REQUEST_EXCEPTION;
+			Logs.d(tag, "###### Error!!! : HttpRequester makes IOException ");
+			onPostStreamResult(null);
+			return;
+		}
+		
+		if(result == null) {
+			mResultStatus = MSG_HTTP_RESULT_CODE_ERROR_UNKNOWN;
+			Logs.d(tag, "###### Error!!! : stream consumer returns invalid result ");
+		} else {
+			mResultStatus = MSG_HTTP_RESULT_CODE_OK;
+		}
+		onPostStreamResult(result);
+	}
+
 	private void onPostExecute(String result) {
 		// Post to UI thread using handler
 		final String finalResult = result;
 		final int finalStatus = mResultStatus;
 		handler.post(() -> {
-			if(mListener != null) {
+			if(mListener != null && !mCanceled) {
 				mListener.OnReceiveHttpResponse(mType, finalResult, finalStatus);
 			}
 		});
 	}
 
+	private void onPostStreamResult(Object result) {
+		final Object finalResult = result;
+		final int finalStatus = mResultStatus;
+		handler.post(() -> {
+			if(mListener != null && !mCanceled) {
+				mListener.OnReceiveHttpStreamResult(mType, finalResult, finalStatus);
+			}
+		});
+	}
+
 	
 }
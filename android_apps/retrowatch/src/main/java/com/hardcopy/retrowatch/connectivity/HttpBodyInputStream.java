@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hardcopy.retrowatch.connectivity;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response body stream which
+ * 	- keeps first bytes of the body to detect charset before consumer starts reading.
+ * 	- throws IOException when body exceeds size limit.
+ * Head buffer is borrowed from HttpRequester buffer pool and returned on close().
+ */
+class HttpBodyInputStream extends FilterInputStream {
+	
+	private final long mLimit;
+	private long mCount = 0;
+	
+	private byte[] mHead;
+	private int mHeadLength = 0;
+	private int mHeadPos = 0;
+	
+	
+	HttpBodyInputStream(InputStream in, long limit, int headSize) throws IOException {
+		super(in);
+		mLimit = limit;
+		mHead = HttpRequester.obtainBuffer();
+		
+		int size = Math.min(headSize, mHead.length);
+		while(mHeadLength < size) {
+			int readlen = in.read(mHead, mHeadLength, size - mHeadLength);
+			if(readlen < 1)
+				break;
+			mHeadLength += readlen;
+		}
+		addCount(mHeadLength);
+	}
+	
+	byte[] getHead() {
+		return mHead;
+	}
+	
+	int getHeadLength() {
+		return mHeadLength;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		if(mHeadPos < mHeadLength)
+			return mHead[mHeadPos++] & 0xFF;
+		
+		int b = in.read();
+		if(b >= 0)
+			addCount(1);
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] buffer, int offset, int count) throws IOException {
+		if(count == 0)
+			return 0;
+		
+		if(mHeadPos < mHeadLength) {
+			int len = Math.min(count, mHeadLength - mHeadPos);
+			System.arraycopy(mHead, mHeadPos, buffer, offset, len);
+			mHeadPos += len;
+			return len;
+		}
+		
+		int readlen = in.read(buffer, offset, count);
+		if(readlen > 0)
+			addCount(readlen);
+		return readlen;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		if(n <= 0)
+			return 0;
+		
+		long skipped = 0;
+		if(mHeadPos < mHeadLength) {
+			int len = (int) Math.min(n, mHeadLength - mHeadPos);
+			mHeadPos += len;
+			skipped = len;
+		}
+		if(skipped < n) {
+			long len = in.skip(n - skipped);
+			if(len > 0) {
+				addCount(len);
+				skipped += len;
+			}
+		}
+		return skipped;
+	}
+	
+	@Override
+	public int available() throws IOException {
+		return (mHeadLength - mHeadPos) + in.available();
+	}
+	
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			if(mHead != null) {
+				HttpRequester.recycleBuffer(mHead);
+				mHead = null;
+				mHeadLength = 0;
+				mHeadPos = 0;
+			}
+		}
+	}
+	
+	private void addCount(long len) throws IOException {
+		mCount += len;
+		if(mCount > mLimit)
+			throw new IOException("Response body exceeds limit : " + mLimit + " bytes");
+	}
+	
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hardcopy.retrowatch.connectivity;
+
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds charset of HTTP response body.
+ * Order : Content-Type header -> XML prolog -> byte sniffing (BOM, UTF-8 validation)
+ * Invalid UTF-8 sequence is treated as EUC-KR which is used by old Korean portal pages.
+ */
+public class HttpCharsetDetector {
+	
+	public static final String CHARSET_UTF_8 = "UTF-8";
+	public static final String CHARSET_EUC_KR = "EUC-KR";
+	public static final String CHARSET_UTF_16BE = "UTF-16BE";
+	public static final String CHARSET_UTF_16LE = "UTF-16LE";
+	public static final String CHARSET_ISO_8859_1 = "ISO-8859-1";
+	
+	private static final int XML_PROLOG_MAX = 256;
+	private static final String XML_PROLOG_START = "<?xml";
+	private static final String XML_PROLOG_END = "?>";
+	private static final Pattern PATTERN_XML_ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._:\\-]+)[\"']");
+	
+	
+	/**
+	 * @param headerCharset		charset parameter of Content-Type header. Can be null.
+	 * @param data				first bytes (or whole) of the body
+	 * @param length			valid length of data
+	 * @return	Java charset name. Never null.
+	 */
+	public static String detect(String headerCharset, byte[] data, int length) {
+		String charset = getSupportedCharset(headerCharset);
+		if(charset != null)
+			return charset;
+		
+		charset = getXmlPrologCharset(data, length);
+		if(charset != null)
+			return charset;
+		
+		return sniff(data, length);
+	}
+	
+	/**
+	 * Returns canonical name if charset is supported on this device. Or returns null.
+	 */
+	public static String getSupportedCharset(String name) {
+		if(name == null || name.length() < 1)
+			return null;
+		try {
+			if(Charset.isSupported(name))
+				return Charset.forName(name).name();
+		} catch(IllegalArgumentException e) {
+			// IllegalCharsetNameException
+		}
+		return null;
+	}
+	
+	public static String getXmlPrologCharset(byte[] data, int length) {
+		if(data == null || length < 1)
+			return null;
+		
+		int start = 0;
+		if(hasUtf8Bom(data, length))
+			start = 3;
+		
+		int end = Math.min(length, start + XML_PROLOG_MAX);
+		if(end - start < XML_PROLOG_START.length())
+			return null;
+		
+		// Prolog is ASCII in every ASCII compatible charset
+		String head = new String(data, start, end - start, Charset.forName(CHARSET_ISO_8859_1));
+		if(!head.startsWith(XML_PROLOG_START))
+			return null;
+		int prologEnd = head.indexOf(XML_PROLOG_END);
+		if(prologEnd < 0)
+			return null;
+		
+		Matcher m = PATTERN_XML_ENCODING.matcher(head.substring(0, prologEnd));
+		if(m.find())
+			return getSupportedCharset(m.group(1));
+		return null;
+	}
+	
+	public static String sniff(byte[] data, int length) {
+		if(data == null || length < 1)
+			return CHARSET_UTF_8;
+		
+		if(hasUtf8Bom(data, length))
+			return CHARSET_UTF_8;
+		if(length >= 2) {
+			int b0 = data[0] & 0xFF;
+			int b1 = data[1] & 0xFF;
+			if(b0 == 0xFE && b1 == 0xFF)
+				return CHARSET_UTF_16BE;
+			if(b0 == 0xFF && b1 == 0xFE)
+				return CHARSET_UTF_16LE;
+		}
+		
+		return isValidUtf8(data, length) ? CHARSET_UTF_8 : CHARSET_EUC_KR;
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	private static boolean hasUtf8Bom(byte[] data, int length) {
+		return length >= 3 
+				&& (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF;
+	}
+	
+	/**
+	 * Sequence cut at the end of data is regarded as valid. (data could be first part of the body)
+	 */
+	private static boolean isValidUtf8(byte[] data, int length) {
+		int i = 0;
+		while(i < length) {
+			int b = data[i] & 0xFF;
+			int trail;
+			if(b < 0x80) {
+				i++;
+				continue;
+			}
+			else if(b >= 0xC2 && b <= 0xDF) trail = 1;
+			else if(b >= 0xE0 && b <= 0xEF) trail = 2;
+			else if(b >= 0xF0 && b <= 0xF4) trail = 3;
+			else return false;
+			
+			for(int j = 1; j <= trail; j++) {
+				if(i + j >= length)
+					return true;
+				int c = data[i + j] & 0xFF;
+				if(c < 0x80 || c > 0xBF)
+					return false;
+			}
+			i += trail + 1;
+		}
+		return true;
+	}
+	
+}
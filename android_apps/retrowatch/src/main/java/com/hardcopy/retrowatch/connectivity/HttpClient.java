@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hardcopy.retrowatch.connectivity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shared HTTP layer used by every HTTP task.
+ * 	- Bounded worker thread pool
+ * 	- Keep-alive : connections are returned to HttpURLConnection's pool (per host) instead of disconnect()
+ * 	- gzip/deflate transfer encoding
+ */
+public class HttpClient {
+	
+	public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+	public static final int DEFAULT_READ_TIMEOUT = 5000;
+	
+	private static final int THREAD_POOL_CORE_SIZE = 2;
+	private static final int THREAD_POOL_MAX_SIZE = 4;
+	private static final int THREAD_POOL_QUEUE_SIZE = 32;
+	private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+	
+	private static final int KEEP_ALIVE_MAX_CONNECTIONS = 5;		// Idle connections kept per host
+	private static final int DRAIN_LIMIT = 8192;		// Unread body smaller than this is drained to reuse connection
+	
+	private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	private static final String ENCODING_GZIP = "gzip";
+	private static final String ENCODING_DEFLATE = "deflate";
+	
+	private static final ThreadPoolExecutor sExecutor;
+	
+	static {
+		System.setProperty("http.keepAlive", "true");
+		System.setProperty("http.maxConnections", String.valueOf(KEEP_ALIVE_MAX_CONNECTIONS));
+		
+		sExecutor = new ThreadPoolExecutor(THREAD_POOL_CORE_SIZE, THREAD_POOL_MAX_SIZE,
+				THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(THREAD_POOL_QUEUE_SIZE),
+				new ThreadFactory() {
+					private final AtomicInteger mCount = new AtomicInteger(1);
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "HttpClient #" + mCount.getAndIncrement());
+						t.setPriority(Thread.NORM_PRIORITY - 1);
+						return t;
+					}
+				});
+		sExecutor.allowCoreThreadTimeOut(true);
+	}
+	
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	/**
+	 * Run HTTP job on shared worker pool.
+	 * @throws RejectedExecutionException	when too many requests are waiting
+	 */
+	public static void execute(Runnable job) {
+		sExecutor.execute(job);
+	}
+	
+	/**
+	 * Open connection with keep-alive and compressed transfer enabled.
+	 * Response stream must be opened with getInputStream(HttpURLConnection) to decode body.
+	 */
+	public static HttpURLConnection openConnection(URL url, String method, int connectTimeout, int readTimeout) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		con.setRequestMethod(method);
+		con.setConnectTimeout(connectTimeout > 0 ? connectTimeout : DEFAULT_CONNECT_TIMEOUT);
+		con.setReadTimeout(readTimeout > 0 ? readTimeout : DEFAULT_READ_TIMEOUT);
+		con.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP + ", " + ENCODING_DEFLATE);
+		return con;
+	}
+	
+	/**
+	 * Returns response body stream decoded with Content-Encoding.
+	 */
+	public static InputStream getInputStream(HttpURLConnection con) throws IOException {
+		return decode(con, con.getInputStream());
+	}
+	
+	/**
+	 * Returns error body stream decoded with Content-Encoding. Can be null.
+	 */
+	public static InputStream getErrorStream(HttpURLConnection con) throws IOException {
+		InputStream err = con.getErrorStream();
+		if(err == null)
+			return null;
+		return decode(con, err);
+	}
+	
+	/**
+	 * Close response and keep the connection alive if it can be reused.
+	 * @param completed		true if body was read to the end.
+	 */
+	public static void release(HttpURLConnection con, InputStream in, boolean completed) {
+		boolean reusable = completed;
+		if(in != null) {
+			try {
+				if(!reusable)
+					reusable = drain(in);
+				in.close();
+			} catch (IOException e) {
+				reusable = false;
+			}
+		}
+		if(!reusable && con != null)
+			con.disconnect();
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	private static InputStream decode(HttpURLConnection con, InputStream in) throws IOException {
+		String encoding = con.getContentEncoding();
+		if(encoding == null)
+			return in;
+		
+		encoding = encoding.trim();
+		if(ENCODING_GZIP.equalsIgnoreCase(encoding))
+			return new GZIPInputStream(in);
+		if(ENCODING_DEFLATE.equalsIgnoreCase(encoding))
+			return new InflaterInputStream(in, new Inflater(false));
+		return in;
+	}
+	
+	/**
+	 * Read rest of the small body. Returns true if stream reached the end.
+	 */
+	private static boolean drain(InputStream in) throws IOException {
+		byte[] buf = HttpRequester.obtainBuffer();
+		try {
+			int total = 0;
+			while(total <= DRAIN_LIMIT) {
+				int readlen = in.read(buf);
+				if(readlen < 0)
+					return true;
+				total += readlen;
+			}
+			return false;
+		} finally {
+			HttpRequester.recycleBuffer(buf);
+		}
+	}
+	
+}
@@ -23,8 +23,7 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.hardcopy.retrowatch.utils.Logs;
 import com.hardcopy.retrowatch.utils.Utils;
@@ -36,7 +35,6 @@ import android.os.Looper;
 public class HttpFileAsyncTask implements HttpInterface {
 	// Global variables
 	public static final String tag = "HttpFileAsyncTask";
-	private static final Executor executor = Executors.newSingleThreadExecutor();
 	private static final Handler handler = new Handler(Looper.getMainLooper());
 	
 	private int mType;
@@ -66,7 +64,12 @@ public class HttpFileAsyncTask implements HttpInterface {
 	 * Execute the HTTP file download asynchronously
 	 */
 	public void execute() {
-		executor.execute(this::doInBackground);
+		try {
+			HttpClient.execute(this::doInBackground);
+		} catch (RejectedExecutionException e) {
+			mResultStatus = MSG_HTTP_RESULT_CODE_REJECTED;
+			onPostExecute(null);
+		}
 	}
 	
 	private void doInBackground() 
@@ -84,7 +87,7 @@ public class HttpFileAsyncTask implements HttpInterface {
 		catch (MalformedURLException e1) { 
 			e1.printStackTrace();
 			mResultStatus = MSG_HTTP_RESULT_CODE_ERROR_REQUEST_EXCEPTION;
-			Logs.d(tag, "# URL = "+url);
+			Logs.d(tag, "# URL = {}", url);
 			//Logs.d(tag, "###### Error!!! : MalformedURLException ");
 			onPostExecute(null);
 			return;
@@ -96,28 +99,32 @@ public class HttpFileAsyncTask implements HttpInterface {
 		}
 		String filePathAndName = new String(mDir+"/"+mFileName);
 
+		HttpURLConnection conn = null;
+		InputStream inputStream = null;
+		boolean completed = false;
+		byte[] buf = HttpRequester.obtainBuffer();
 		try {
-			// Set up connection
-			HttpURLConnection conn= (HttpURLConnection)url.openConnection(); 
-			conn.setConnectTimeout(CONNECTION_TIMEOUT);
-			conn.setReadTimeout(CONNECTION_TIMEOUT);
+			// Set up connection (keep-alive, shared with other requests)
+			conn = HttpClient.openConnection(url, REQUEST_TYPE_GET_STRING, CONNECTION_TIMEOUT, CONNECTION_TIMEOUT);
 			conn.connect(); 
 			
 			// Copy input stream (one is for calculate bitmap size and another is for decode bitmap)
-			InputStream inputStream = conn.getInputStream();
+			inputStream = HttpClient.getInputStream(conn);
 			
 			// Make file and output stream
 			File file = new File(filePathAndName);
 			OutputStream outStream = new FileOutputStream(file);
 			
-			byte[] buf = new byte[1024];
 			int len = 0;
 			
-			while ((len = inputStream.read(buf)) > 0) {
-				outStream.write(buf, 0, len);
+			try {
+				while ((len = inputStream.read(buf)) > 0) {
+					outStream.write(buf, 0, len);
+				}
+			} finally {
+				outStream.close();
 			}
-			outStream.close();
-			inputStream.close();
+			completed = true;
  			
 			mResultStatus = MSG_HTTP_RESULT_CODE_OK;
  			
@@ -127,6 +134,9 @@ public class HttpFileAsyncTask implements HttpInterface {
 			e.printStackTrace();
 			onPostExecute(null);
 			return; 
+		} finally {
+			HttpRequester.recycleBuffer(buf);
+			HttpClient.release(conn, inputStream, completed);
 		}
 
 		onPostExecute(filePathAndName);
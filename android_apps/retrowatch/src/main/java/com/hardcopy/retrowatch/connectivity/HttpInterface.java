@@ -38,6 +38,7 @@ public interface HttpInterface {
 	public static final int MSG_HTTP_RESULT_CODE_INTERNAL_SERVER_ERROR = 5;
 	public static final int MSG_HTTP_RESULT_CODE_ERROR_UNKNOWN = 6;
 	public static final int MSG_HTTP_RESULT_CODE_ERROR_REQUEST_EXCEPTION = 7;
+	public static final int MSG_HTTP_RESULT_CODE_REJECTED = 8;		// Not sent. Local worker queue is full
 	
 	//---------- Request type (GET or POST or FILE)
 	public static final int REQUEST_TYPE_GET = 1;
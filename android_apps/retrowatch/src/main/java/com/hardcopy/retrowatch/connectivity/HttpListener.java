@@ -19,6 +19,7 @@ package com.hardcopy.retrowatch.connectivity;
 public interface HttpListener {
 	// Callback methods
 	public void OnReceiveHttpResponse(int type, String strResult, int resultCode);
+	public void OnReceiveHttpStreamResult(int type, Object result, int resultCode);
 	public void OnReceiveFileResponse(int type, String id, String filepath, String url, int resultCode);
 	
 }
@@ -8,6 +8,7 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.ArrayDeque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -31,19 +32,75 @@ import android.util.Log;
 public class HttpRequester 
 {
 	public String m_request ;						/// 리퀘스트 내용을 통채로 저장할 스트링
-	private HttpURLConnection m_con ;		/// http방식으로 연결을 유지할 커넥션
+	private volatile HttpURLConnection m_con ;		/// http방식으로 연결을 유지할 커넥션
 	String m_cookies = "" ;							/// 세션 유지에 필요한 쿠키
 	boolean m_session = false ;					/// 로그인 해서 세션 가지고 있는지 여부
 	long m_sessionLimitTime = 600000 ; 		/// 세션 시간제한 (밀리세컨드)
 	long m_sessionTime = 0 ;						/// 세션을 얻은 시간
 	
-	private static final String ENCODING_TYPE_UTF_8 = "UTF-8";
-	private static final String ENCODING_TYPE_EUC_KR = "EUC-KR";
-	private static int TIMEOUT_VALUE = 5000;
+	private int m_connectTimeout = HttpClient.DEFAULT_CONNECT_TIMEOUT ;
+	private int m_readTimeout = HttpClient.DEFAULT_READ_TIMEOUT ;
+	private volatile boolean m_canceled = false ;
+	private volatile int m_maxAge = -1 ;			/// Freshness lifetime from Cache-Control/Expires (second). -1 if not declared
+	
+	private static final int MAX_BODY_SIZE = 1024 * 1024;		/// Hard limit of response body
+	private static final int CHARSET_SNIFF_SIZE = 4096;		/// Bytes to inspect before passing stream to consumer
+	private static final int POOL_BUFFER_SIZE = 8192;
+	private static final int POOL_BUFFER_MAX = 4;
+	private static final ArrayDeque<byte[]> sBufferPool = new ArrayDeque<byte[]>();
 
 	HttpRequester( )				/// 생성자
 	{}
 	
+	/// Per request timeout (milliseconds). 0 means default value.
+	public void setTimeout( int connectTimeout, int readTimeout ) 
+	{
+		m_connectTimeout = connectTimeout ;
+		m_readTimeout = readTimeout ;
+	}
+	
+	/// Can be called from another thread. Blocked read/connect in progress fails with IOException.
+	public void cancel( ) 
+	{
+		m_canceled = true ;
+		HttpURLConnection con = m_con ;
+		if( con != null )
+			con.disconnect( ) ;
+	}
+	
+	public boolean isCanceled( ) 
+	{
+		return m_canceled ;
+	}
+	
+	/// Freshness lifetime of last response in second. -1 if server didn't declare it.
+	public int getMaxAge( ) 
+	{
+		return m_maxAge ;
+	}
+	
+	
+	/// Read buffers are shared between requests to avoid allocation per request.
+	static byte[] obtainBuffer( ) 
+	{
+		synchronized( sBufferPool ) {
+			byte[] buf = sBufferPool.poll( ) ;
+			if( buf != null )
+				return buf ;
+		}
+		return new byte[POOL_BUFFER_SIZE] ;
+	}
+	
+	static void recycleBuffer( byte[] buf ) 
+	{
+		if( buf == null || buf.length != POOL_BUFFER_SIZE )
+			return ;
+		synchronized( sBufferPool ) {
+			if( sBufferPool.size( ) < POOL_BUFFER_MAX )
+				sBufferPool.offer( buf ) ;
+		}
+	}
+	
 	
 	/// 1. 세션이 유지되고있는지 체크
 	/// 2. 시간을 넘겼어도 세션 제거하고 false~
@@ -86,20 +143,137 @@ public class HttpRequester
 	
 	
 	/// 리퀘스트 받아오는 함수
-	/// ( URL주소, 방식(GET or POST), 변수명+변수값 ) ;
+	/// ( URL주소, 인코딩(null이면 자동 감지), 방식(GET or POST), 변수명+변수값 ) ;
 	protected String request( URL url, String encType, String method, Map<String, Object> params) throws IOException 
 	{
 		if(url == null) return "";
 		
 		InputStream in = null ;			/// 받아올 인풋스트림
-		OutputStream out = null ;		/// POST방식일 경우 데이터를 전송할 아웃풋 스트림
+		byte[] buf = null ;				/// 리퀘스트 데이터를 저장할 버퍼 (pool)
+		boolean completed = false ;		/// 끝까지 읽은 연결은 keep-alive pool로 돌려보냄
+	
+		openConnection( url, method, params ) ;
+		
+		try 
+		{
+			in = HttpClient.getInputStream( m_con ) ;			/// 인풋스트림 생성 (gzip/deflate 해제)
+			m_maxAge = getHeaderMaxAge( ) ;
+			//Log.d( "---recTime---", "" + (System.currentTimeMillis( ) - ti) ) ; /// == 시간 체크용 == inputstream얻는 요기서 시간 10초이상 넘어가면 큰일남
+																				/// 갤럭시 S에서 어떤앱은 WebView라던가 Http통신에서 15초인가 넘어가면 세션 끊기는
+																				/// 원인을 알 수 없는 경우도 있었음 다른기기 다 잘되는데 오로지 갤럭시 S만!!! 그랬음 참고 바람요
+
+			buf = obtainBuffer( ) ;
+			ResponseBuffer bos = readBody( in, buf, m_con.getContentLength( ) ) ;
+			completed = true ;
+			
+			// Decode only once with detected charset : forced type -> Content-Type -> XML prolog -> byte sniffing
+			String encodingType = HttpCharsetDetector.getSupportedCharset( encType ) ;
+			if( encodingType == null )
+				encodingType = HttpCharsetDetector.detect( getHeaderCharset( ), bos.getBuffer( ), bos.size( ) ) ;
+			
+			m_request = bos.toString( encodingType ) ;
+			return m_request ;
+		} 
+		catch (IOException e) 
+		{
+			/// 리퀘스트 받다가 에러가 나면 에러나면서 받은 메세지를 읽는다.
+			if(m_con != null && m_con.getResponseCode() == 500) 
+			{
+				/// 에러값 받을 인풋스트림 생성해서 에러메세지 얻기
+				InputStream err = HttpClient.getErrorStream( m_con ) ;
+				if( err != null ) 
+				{
+					if( buf == null )
+						buf = obtainBuffer( ) ;
+					try {
+						ResponseBuffer bos = readBody( err, buf, -1 ) ;
+						String output = bos.toString( HttpCharsetDetector.detect( getHeaderCharset( ), bos.getBuffer( ), bos.size( ) ) ) ;
+						
+						/// 읽은 에러메세지를 출력한다.
+						System.err.println(output);
+					} finally {
+						err.close( ) ;
+					}
+				}
+			}
+			throw e;
+		} 
+		finally /// 에러가 났거나 다 못 읽은 경우에만 접속을 끊는다
+		{
+			recycleBuffer( buf ) ;
+			HttpClient.release( m_con, in, completed ) ;
+		}
+	}
+	
+	/// Response stream is not copied to string but passed to consumer directly with detected charset.
+	/// Consumer can stop reading at any time, remaining body is discarded when connection is closed.
+	protected Object requestStream( URL url, String method, Map<String, Object> params, int type, HttpStreamConsumer consumer ) throws IOException 
+	{
+		if(url == null || consumer == null) return null;
+		
+		HttpBodyInputStream in = null ;
+		boolean failed = true ;
+		
+		openConnection( url, method, params ) ;
+		
+		try 
+		{
+			in = new HttpBodyInputStream( HttpClient.getInputStream( m_con ), MAX_BODY_SIZE, CHARSET_SNIFF_SIZE ) ;
+			m_maxAge = getHeaderMaxAge( ) ;
+			String charset = HttpCharsetDetector.detect( getHeaderCharset( ), in.getHead( ), in.getHeadLength( ) ) ;
+			Object result = consumer.OnReceiveHttpStream( type, in, charset ) ;
+			failed = false ;
+			return result ;
+		} 
+		finally 
+		{
+			if( failed ) {
+				if ( in != null )
+					in.close( ) ;
+				if ( m_con != null )
+					m_con.disconnect( ) ;
+			} else {
+				HttpClient.release( m_con, in, false ) ;		/// Small remaining body is drained to keep connection alive
+			}
+		}
+	}
 	
-		/// 연결하고 메소드 셋팅함
-		m_con = (HttpURLConnection) url.openConnection( ) ;
+	/// Read whole body. Throws IOException if body is larger than MAX_BODY_SIZE
+	private ResponseBuffer readBody( InputStream in, byte[] buf, int contentLength ) throws IOException 
+	{
+		int initialSize = buf.length ;
+		if( contentLength > 0 )
+			initialSize = Math.min( contentLength, MAX_BODY_SIZE ) ;
+		ResponseBuffer bos = new ResponseBuffer( initialSize ) ;
+		
+		/// 루프를 돌면서 리퀘스트로 받은내용을 저장한다.
+		while (true) 
+		{
+			int readlen = in.read(buf);
+			if (readlen < 1)
+				break;
+			if( bos.size( ) + readlen > MAX_BODY_SIZE )
+				throw new IOException( "Response body exceeds limit : " + MAX_BODY_SIZE + " bytes" ) ;
+			bos.write(buf, 0, readlen);
+		}
+		return bos ;
+	}
+	
+	/// 연결하고 메소드 셋팅, POST방식이면 변수 전송까지 하는 함수
+	private void openConnection( URL url, String method, Map<String, Object> params ) throws IOException 
+	{
+		OutputStream out = null ;		/// POST방식일 경우 데이터를 전송할 아웃풋 스트림
+		
+		if( m_canceled )
+			throw new IOException( "Request canceled" ) ;
+		
+		/// 연결하고 메소드 셋팅함 (keep-alive, gzip)
+		m_con = HttpClient.openConnection( url, method, m_connectTimeout, m_readTimeout ) ;
+		if( m_canceled ) {
+			m_con.disconnect( ) ;
+			throw new IOException( "Request canceled" ) ;
+		}
 		///String wwwstring = URLEncoder.encode( url.toString() ) ;
-		m_con.setRequestMethod(method);
-		m_con.setConnectTimeout(TIMEOUT_VALUE);
-		m_con.setReadTimeout(TIMEOUT_VALUE);
 	
 		/// 인코딩 정의 HTTP방식으로 전송할때는 urlencoded방식으로 인코딩해서 전송해야한다.
 		m_con.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
@@ -125,83 +299,55 @@ public class HttpRequester
 			out.close( ) ;									/// 스트림 닫기
 			// Log.d( "jsonPrint", "post succes" ) ;			/// 로그출력
 		}
+	}
+	
+	/// Returns charset parameter of Content-Type header. null if not declared.
+	private String getHeaderCharset( ) 
+	{
+		String headerType = m_con.getContentType( ) ;
+		if( headerType == null )
+			return null ;
 		
-		// SuhYB. Find encoding type to prevent broken 2-byte character
-		String encodingType = ENCODING_TYPE_EUC_KR;
-		try {
-			String headerType = m_con.getContentType();
-			if(encType!=null && encType.length()>0)
-				encodingType = encType;
-			if(headerType !=null && headerType.toUpperCase().indexOf(ENCODING_TYPE_UTF_8) != -1) {
-				encodingType = ENCODING_TYPE_UTF_8;
+		String[] values = headerType.split( ";" ) ;
+		for( String value : values ) {
+			value = value.trim( ) ;
+			if( value.toLowerCase( ).startsWith( "charset=" ) ) {
+				String charset = value.substring( 8 ).trim( ).replace( "\"", "" ) ;
+				if( charset.length( ) > 0 )
+					return charset ;
 			}
-		} catch(Exception e) {
-			e.printStackTrace();
-			encodingType = ENCODING_TYPE_UTF_8;
 		}
+		return null ;
+	}
 	
-		/// 받아온 데이터를 씍위한 스트림
-		ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		
-		/// 리퀘스트 데이터를 저장할 버퍼
-		byte[] buf = new byte[131072];
-		try 
-		{
-			in = m_con.getInputStream();						/// 인풋스트림 생성
-			//Log.d( "---recTime---", "" + (System.currentTimeMillis( ) - ti) ) ; /// == 시간 체크용 == inputstream얻는 요기서 시간 10초이상 넘어가면 큰일남
-																				/// 갤럭시 S에서 어떤앱은 WebView라던가 Http통신에서 15초인가 넘어가면 세션 끊기는
-																				/// 원인을 알 수 없는 경우도 있었음 다른기기 다 잘되는데 오로지 갤럭시 S만!!! 그랬음 참고 바람요
-
-			/// 루프를 돌면서 리퀘스트로 받은내용을 저장한다.
-			while (true) 
-			{
-				int readlen = in.read(buf);
-				if (readlen < 1)
-					break;
-				bos.write(buf, 0, readlen);
-			}
-			
-			m_request = new String( bos.toByteArray( ), encodingType ) ;				// SuhYB. 특정 페이지들의 글자 깨짐 방지를 위해 지정한 인코딩 타입으로 수신
-			/////// 리퀘스트 받은 내용을 UTF-8로 변경해서 문자열로 저장 /////////////////
-			/*
-			File fl = new File( "/sdcard/rec.txt" ) ;
-			FileOutputStream fos = new FileOutputStream( fl ) ;
-			fos.write( bos.toByteArray( ) ) ;
-			/**/
-			
-			return m_request ;
-		} 
-		catch (IOException e) 
-		{
-			/// 리퀘스트 받다가 에러가 나면 에러나면서 받은 메세지를 읽는다.
-			if(m_con != null && m_con.getResponseCode() == 500) 
-			{
-				/// 버퍼 리셋하고 에러값 받을 인풋스트림 생성해서 레어메세지 얻기
-				bos.reset();
-				InputStream err = m_con.getErrorStream();
-				while (true) 
-				{
-					int readlen = err.read( buf ) ;
-					if ( readlen < 1 )
+	/// Returns max-age of Cache-Control header, or remaining time of Expires header in second. -1 if not declared.
+	private int getHeaderMaxAge( ) 
+	{
+		String cacheControl = m_con.getHeaderField( "Cache-Control" ) ;
+		if( cacheControl != null ) {
+			String[] directives = cacheControl.split( "," ) ;
+			for( String directive : directives ) {
+				directive = directive.trim( ).toLowerCase( ) ;
+				if( directive.equals( "no-cache" ) || directive.equals( "no-store" ) )
+					return 0 ;
+				if( directive.startsWith( "max-age=" ) ) {
+					try {
+						return Math.max( 0, Integer.parseInt( directive.substring( 8 ).replace( "\"", "" ).trim( ) ) ) ;
+					} catch( NumberFormatException e ) {
 						break ;
-					bos.write( buf, 0, readlen ) ;
+					}
 				}
-				
-				/// 에러메세지를 문자열로 저장
-				String output = new String(bos.toByteArray(), "UTF-8");
-				
-				/// 읽은 에러메세지를 출력한다.
-				System.err.println(output);
 			}
-			throw e;
-		} 
-		finally /// 500에러도 아니면 그냥 접속 끊어버림.... -_- 안되는데 답있나?
-		{
-			if ( in != null )
-				in.close( ) ;
-			if ( m_con != null )
-				m_con.disconnect( ) ;
 		}
+		
+		long expires = m_con.getExpiration( ) ;		/// 0 if not declared
+		if( expires > 0 ) {
+			long date = m_con.getDate( ) ;
+			if( date <= 0 )
+				date = System.currentTimeMillis( ) ;
+			return (int) Math.max( 0, (expires - date) / 1000 ) ;
+		}
+		return -1 ;
 	}
 	
 	/// 파라메터 받은 값을  "변수명=변수값&" 형식의 텍스트로 변환해주는 함수
@@ -225,4 +371,16 @@ public class HttpRequester
 		return sb.toString();
 	}
 	
+	/// ByteArrayOutputStream which exposes internal buffer to detect charset without copy
+	private static class ResponseBuffer extends ByteArrayOutputStream 
+	{
+		ResponseBuffer( int size ) {
+			super( size ) ;
+		}
+		
+		byte[] getBuffer( ) {
+			return buf ;
+		}
+	}
+	
 }
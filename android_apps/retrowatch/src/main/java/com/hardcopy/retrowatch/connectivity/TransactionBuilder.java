@@ -21,6 +21,7 @@ import java.util.Calendar;
 import android.os.Handler;
 
 import com.hardcopy.retrowatch.utils.Constants;
+import com.hardcopy.retrowatch.utils.LatencyTracer;
 import com.hardcopy.retrowatch.utils.Logs;
 
 public class TransactionBuilder {
@@ -119,6 +120,8 @@ public class TransactionBuilder {
 		private byte mDateMinute = 0x00;
 		
 		private String mMsg = null;
+		private LatencyTracer.Trace mTrace = null;
+		private boolean mIsPriority = false;
 		
 		
 		public void begin() {
@@ -135,6 +138,7 @@ public class TransactionBuilder {
 			mDateHour = 0x00;
 			mDateMinute = 0x00;
 			mMsg = null;
+			mIsPriority = false;
 			
 			mBuffer = null;
 		}
@@ -324,14 +328,28 @@ public class TransactionBuilder {
 			return null;
 		}
 		
+		public void setTrace(LatencyTracer.Trace trace) {
+			mTrace = trace;
+		}
+		
+		/**
+		 * Send ahead of normal transactions. (ex: incoming call)
+		 */
+		public void setPriority(boolean priority) {
+			mIsPriority = priority;
+		}
+		
 		public boolean sendTransaction() {
+			if(mTrace != null)
+				mTrace.mark(LatencyTracer.STAGE_TRANSACTION);
+			
 			if(mBuffer == null) {
 				Logs.e(TAG, "##### Ooooooops!! No sending buffer!! Check command!!");
 				return false;
 			}
 			
 			// For debug
-			if(mBuffer.length > 0) {
+			if(Logs.ENABLED && Logs.isLoggable(TAG, Logs.LEVEL_DEBUG) && mBuffer.length > 0) {
 				StringBuilder sb = new StringBuilder();
 				
 				switch(mBuffer[1]) {
@@ -405,11 +423,14 @@ public class TransactionBuilder {
 					if (mBTManager.getState() == BluetoothManager.STATE_CONNECTED) {
 						// Check that there's actually something to send
 						if (mBuffer.length > 0) {
-							// Get the message bytes and tell the BluetoothChatService to write
-							mBTManager.write(mBuffer);
-							
-							mState = STATE_TRANSFERED;
-							return true;
+							// Get the message bytes and tell the BluetoothChatService to write.
+							// Trace is finished by writer thread.
+							boolean queued = mIsPriority ? mBTManager.writePriority(mBuffer, mTrace) 
+									: mBTManager.write(mBuffer, mTrace);
+							if(queued) {
+								mState = STATE_TRANSFERED;
+								return true;
+							}
 						}
 						mState = STATE_ERROR;
 					}
@@ -16,21 +16,10 @@
 
 package com.hardcopy.retrowatch.contents;
 
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 
-import android.accounts.Account;
-import android.accounts.AccountManager;
-import android.accounts.AccountManagerCallback;
-import android.accounts.AccountManagerFuture;
-import android.accounts.AuthenticatorException;
-import android.accounts.OperationCanceledException;
 import android.content.Context;
 import android.database.Cursor;
-import android.net.Uri;
-import android.net.wifi.WifiInfo;
-import android.net.wifi.WifiManager;
 
 import com.hardcopy.retrowatch.R;
 import com.hardcopy.retrowatch.contents.objects.CPObject;
@@ -60,6 +49,7 @@ public class ContentManager {
 	private IContentManagerListener mContentManagerListener;
 	private DBHelper mDB = null;
 	private FeedManager mFeedManager;
+	private final FeedDeduplicator mFeedDeduplicator = new FeedDeduplicator();
 	
 	private ArrayList<ContentObject> mContentList;		// Cache every type of contents
 	
@@ -70,17 +60,15 @@ public class ContentManager {
 	private ArrayList<FilterObject> mFilterList;
 	
 	private int mRFStatus = EmergencyObject.RF_STATE_IN_SERVICE;
-	private int mWiFiStatus = EmergencyObject.WIFI_STATE_ACTIVATED;
+	private int mWiFiStatus = EmergencyObject.WIFI_STATE_DISABLED;		// Until network callback reports a WiFi network
 	private int mBatteryGauge = 0;
 	private int mBatteryCharging = EmergencyObject.BATT_STATE_UNKNOWN;
 	
 	
-	// For Gmail info: Get the account list
+	// For Gmail info
 	private String mGmailAddress = null;
-	final String ACCOUNT_TYPE_GOOGLE = "com.google";
-	final String[] FEATURES_MAIL = {"service_mail"};
-	
-	private int mGmailUnreadCount = 0;
+	private GmailUnreadObserver mGmailObserver;
+	private int mGmailUnreadCount = GmailUnreadObserver.UNREAD_UNKNOWN;
 	
 	
 	
@@ -105,6 +93,8 @@ public class ContentManager {
 		getFiltersFromDB();
 		
 		mGmailAddress = Settings.getInstance(mContext).getGmailAddress();
+		mGmailObserver = new GmailUnreadObserver(mContext, mGmailListener);
+		mGmailObserver.setAddress(mGmailAddress);
 	}
 	
 	public synchronized static ContentManager getInstance(Context c, IContentManagerListener l) {
@@ -123,6 +113,10 @@ public class ContentManager {
 		if(mFeedManager != null) {
 			mFeedManager.finalize();
 		}
+		if(mGmailObserver != null) {
+			mGmailObserver.stop();
+			mGmailObserver = null;
+		}
 	}
 
 	
@@ -419,35 +413,6 @@ public class ContentManager {
 		return strResult;
 	}
 	
-	private int onAccountResults(Account[] accounts) {
-		Logs.d(TAG, "received accounts: " + Arrays.toString(accounts));
-		int unreadCount = 0;
-		
-		if (mGmailAddress != null && !mGmailAddress.isEmpty() && accounts != null && accounts.length > 0) {
-			// Pick the the user specified account
-			for(int i=0; i<accounts.length; i++) {
-				if(accounts[i].name.equalsIgnoreCase(mGmailAddress)) {
-					// Query for the list of labels
-					final Uri labelsUri = GmailContract.Labels.getLabelsUri(accounts[i].name);
-					Cursor labelsCursor = mContext.getContentResolver().query(labelsUri, null, null, null, null);
-					
-					if (labelsCursor != null) {
-						int unreadColumn = labelsCursor.getColumnIndex(GmailContract.Labels.NUM_UNREAD_CONVERSATIONS);
-						int nameColumn = labelsCursor.getColumnIndex(GmailContract.Labels.CANONICAL_NAME);
-						while (labelsCursor.moveToNext()) {
-							String name = labelsCursor.getString(nameColumn);
-							if (GmailContract.Labels.LabelCanonicalNames.CANONICAL_NAME_INBOX_CATEGORY_PRIMARY.equals(name)) {
-								unreadCount = labelsCursor.getInt(unreadColumn);
-							}
-						}
-						labelsCursor.close();
-					}
-				}
-			}	// End of for() loop
-		}
-		return unreadCount;
-	}
-	
 	private void removeContentObject(int type) {
 		for(int i = mContentList.size() - 1; i > -1; i--) {
 			ContentObject obj = mContentList.get(i);
@@ -578,12 +543,12 @@ public class ContentManager {
 		// Refresh feed list
 		refreshFeedList();
 		
-		// Get gmail unread count. This method makes asynchronous call.
-		// Result should be handled in addGmailToContentList()
-		queryGmailLabels();
+		// Rebuild gmail object from cached unread count. Changes are pushed by GmailUnreadObserver.
+		if(mGmailUnreadCount != GmailUnreadObserver.UNREAD_UNKNOWN)
+			makeGmailObject(mGmailUnreadCount);
 		
-		// Query WiFi status
-		queryWiFiStatus();
+		// Rebuild WiFi object from cached state. Changes are pushed by SystemStateMonitor.
+		makeWiFiObject();
 		
 		return mContentList;
 	}
@@ -594,7 +559,13 @@ public class ContentManager {
 		if(feedList != null) {
 			array = new ArrayList<ContentObject>();
 			
-			for(FeedObject feed : feedList) {
+			// Same story from several providers is sent only once
+			ArrayList<FeedObject> uniqueList = null;
+			synchronized(feedList) {
+				uniqueList = mFeedDeduplicator.deduplicate(feedList, System.currentTimeMillis());
+			}
+			
+			for(FeedObject feed : uniqueList) {
 				ContentObject content = applyFilters(feed);
 				if(content == null)
 					continue;
@@ -605,18 +576,20 @@ public class ContentManager {
 		return array;
 	}
 	
-	public void queryWiFiStatus() {
-		WifiManager wManager;
-		wManager = (WifiManager) mContext.getSystemService(Context.WIFI_SERVICE);
-		WifiInfo wInfo = wManager.getConnectionInfo();
-		if (wManager.isWifiEnabled() == true && wInfo.getSSID() != null) {
-			// WiFi activated
+	/**
+	 * Update cached WiFi status and rebuild WiFi object
+	 * @param isConnected	WiFi network is available
+	 * @return	new WiFi object or null if filtered out
+	 */
+	public synchronized ContentObject setWiFiStatus(boolean isConnected) {
+		if(isConnected)
 			mWiFiStatus = EmergencyObject.WIFI_STATE_ACTIVATED;
-		} else {
-			// Cannot use wifi
+		else
 			mWiFiStatus = EmergencyObject.WIFI_STATE_DISABLED;
-		}
-		
+		return makeWiFiObject();
+	}
+	
+	private ContentObject makeWiFiObject() {
 		removeContentObject(ContentObject.CONTENT_TYPE_MESSAGING, ContentObject.WIFI_PACKAGE_NAME);	// Remove from content object list
 		removeContentObject(ContentObject.CONTENT_TYPE_MESSAGING, 
 				ContentObject.WIFI_PACKAGE_NAME, mMessagingList);	// Remove from messaging list
@@ -630,8 +603,9 @@ public class ContentManager {
 				wifi_msg,	// Default message string
 				ContentObject.WIFI_PACKAGE_NAME);
 		
+		ContentObject obj = null;
 		if(strResult != null && !strResult.isEmpty()) {
-			ContentObject obj = new ContentObject(ContentObject.CONTENT_TYPE_MESSAGING, 
+			obj = new ContentObject(ContentObject.CONTENT_TYPE_MESSAGING, 
 					ContentObject.MESSAGING_ID_WIFI, 					// Fixed ID
 					wifi_msg, 	// Default message string
 					strResult);			// Set replace message. This message will be sent to remote
@@ -647,6 +621,7 @@ public class ContentManager {
 			mContentList.add(obj);
 			mMessagingList.add(obj);
 		}
+		return obj;
 	}
 	
 	public int getWiFiStatus() {
@@ -657,43 +632,26 @@ public class ContentManager {
 		Settings settings = Settings.getInstance(mContext);
 		settings.setGmailAddress(addr);
 		mGmailAddress = addr;
+		mGmailObserver.setAddress(addr);
 	}
 	
-	public synchronized void queryGmailLabels() {
-		// Get the account list, and pick the user specified address.
-		// NOTE: This can throw SecurityException (GET_ACCOUNTS) on modern Android if not granted.
-		try {
-			AccountManager.get(mContext).getAccountsByTypeAndFeatures(ACCOUNT_TYPE_GOOGLE, FEATURES_MAIL,
-					new AccountManagerCallback<Account[]>() {
-			@Override
-			public void run(AccountManagerFuture<Account[]> future) {
-				Account[] accounts = null;
-				try {
-					accounts = future.getResult();
-				} catch (SecurityException se) {
-					Logs.e(TAG, "Gmail query blocked by permission: " + se.toString());
-					// Degrade gracefully (avoid crashing the app/service).
-					addGmailToContentList(0);
-					return;
-				} catch (OperationCanceledException oce) {
-					Logs.e(TAG, "Got OperationCanceledException: "+oce.toString());
-				} catch (IOException ioe) {
-					Logs.e(TAG, "Got OperationCanceledException: "+ioe.toString());
-				} catch (AuthenticatorException ae) {
-					Logs.e(TAG, "Got OperationCanceledException: "+ae.toString());
-				}
-				mGmailUnreadCount = onAccountResults(accounts);
-				addGmailToContentList(mGmailUnreadCount);
-				Logs.d(TAG, "# Gmail unread count = "+ mGmailUnreadCount);
-			}
-		}, null /* handler */);
-		} catch (SecurityException se) {
-			Logs.e(TAG, "Gmail query blocked by permission: " + se.toString());
-			addGmailToContentList(0);
-		}
+	/**
+	 * Unread count is observed by GmailUnreadObserver. Use this to force query.
+	 */
+	public void queryGmailLabels() {
+		mGmailObserver.requery();
 	}
 	
 	public synchronized void addGmailToContentList(int unreadCount) {
+		mGmailUnreadCount = unreadCount;
+		ContentObject obj = makeGmailObject(unreadCount);
+		
+		// This method runs in asynchronous mode
+		// So we have to notify to callback
+		mContentManagerListener.OnContentCallback(IContentManagerListener.CALLBACK_GMAIL_UPDATED, 0, 0, null, null, obj);
+	}
+	
+	private ContentObject makeGmailObject(int unreadCount) {
 		ContentObject obj = null;
 		
 		removeContentObject(ContentObject.CONTENT_TYPE_MESSAGING, ContentObject.GMAIL_PACKAGE_NAME);	// Remove from content object list
@@ -731,10 +689,7 @@ public class ContentManager {
 			mContentList.add(obj);
 			mMessagingList.add(obj);
 		}
-		
-		// This method runs in asynchronous mode
-		// So we have to notify to callback
-		mContentManagerListener.OnContentCallback(IContentManagerListener.CALLBACK_GMAIL_UPDATED, 0, 0, null, null, obj);
+		return obj;
 	}
 	
 	@Deprecated
@@ -772,7 +727,7 @@ public class ContentManager {
 	}
 	
 	public synchronized ContentObject addCallObject(int state, String number) {
-		Logs.d(TAG, "# Call state changed to "+state+", number="+number);
+		Logs.d(TAG, "# Call state changed to {}, number={}", state, number);
 		ContentObject obj = null;
 		
 		// Delete cached contents
@@ -823,7 +778,7 @@ public class ContentManager {
 	}
 	
 	public synchronized ContentObject addBatteryObject(int state, int level) {
-		Logs.d(TAG, "# Battery state changed to "+state+", level="+level);
+		Logs.d(TAG, "# Battery state changed to {}, level={}", state, level);
 		ContentObject obj = null;
 		
 		// Delete cached contents
@@ -861,7 +816,7 @@ public class ContentManager {
 	}
 	
 	public synchronized ContentObject addRFStateObject(int state) {
-		Logs.d(TAG, "# RF state changed to "+state);
+		Logs.d(TAG, "# RF state changed to {}", state);
 		ContentObject obj = null;
 		
 		mRFStatus = state;
@@ -917,6 +872,25 @@ public class ContentManager {
 		return content;
 	}
 	
+	/**
+	 * Add a batch of notifications in one pass.
+	 * @return	content objects which passed the filters
+	 */
+	public synchronized ArrayList<ContentObject> addNotifications(ArrayList<NotificationObject> notiList) {
+		ArrayList<ContentObject> contents = new ArrayList<ContentObject>(notiList.size());
+		for(NotificationObject noti : notiList) {
+			if(noti.mId < 0 || noti.mPackageName == null || noti.mPackageName.length() < 1)
+				continue;
+			mNotificationList.add(noti);
+			
+			ContentObject content = applyFilters(noti);
+			if(content != null)
+				contents.add(content);
+		}
+		mContentList.addAll(contents);
+		return contents;
+	}
+	
 	public synchronized void deleteNotification(int id) {
 		for(int i = mNotificationList.size() - 1; i > -1; i--) {
 			NotificationObject noti = mNotificationList.get(i);
@@ -1059,6 +1033,13 @@ public class ContentManager {
 			
 		}	// End of OnFeedCallback()
 	};
+	
+	private GmailUnreadObserver.IGmailUnreadListener mGmailListener = new GmailUnreadObserver.IGmailUnreadListener() {
+		@Override
+		public void OnGmailUnreadChanged(int unreadCount) {
+			addGmailToContentList(unreadCount);
+		}
+	};
 
 	
 	
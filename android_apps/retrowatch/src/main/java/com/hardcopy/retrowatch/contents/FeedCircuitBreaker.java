@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hardcopy.retrowatch.contents;
+
+import java.util.HashMap;
+
+import com.hardcopy.retrowatch.contents.objects.CPObject;
+import com.hardcopy.retrowatch.utils.Logs;
+
+import android.net.Uri;
+
+/**
+ * Circuit breaker of content providers.
+ * After consecutive failures a provider (or every provider of a host) is not requested
+ * until cool-down time passes. Then one probe request is allowed (half-open),
+ * and cool-down time doubles on each failed probe. A blocked host lets one provider probe it,
+ * others wait for the result.
+ * Provider state is kept in CPObject and saved in DB by caller. Host state is kept in memory.
+ */
+public class FeedCircuitBreaker {
+	
+	private static final String TAG = "FeedCircuitBreaker";
+	
+	public static final int STATE_CLOSED = 0;
+	public static final int STATE_OPEN = 1;
+	public static final int STATE_HALF_OPEN = 2;
+	
+	public static final int FAILURE_THRESHOLD = 3;			// Consecutive failures to open
+	public static final int HOST_FAILURE_THRESHOLD = 5;		// Consecutive failures of providers on same host
+	public static final long COOL_DOWN_BASE = 10*60*1000;		// First cool-down time
+	public static final long COOL_DOWN_MAX = 24*60*60*1000;
+	public static final long HOST_PROBE_TIMEOUT = COOL_DOWN_BASE;	// Another provider can probe if no result until then
+	
+	private final HashMap<String, HostState> mHostStates = new HashMap<String, HostState>();
+	
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	/**
+	 * Returns true if request can be sent. Open breaker turns into half-open after cool-down.
+	 */
+	public synchronized boolean allowRequest(CPObject cp, long now) {
+		HostState host = getHostState(cp);
+		if(host != null && host.mOpenUntil > now
+				&& (host.mState == STATE_OPEN || host.mProbeType != cp.mId)) {
+			Logs.d(TAG, "# Host is blocked : type={}, remain={}s", cp.mId, (host.mOpenUntil - now) / 1000);
+			return false;
+		}
+		
+		if(cp.mBreakerState == STATE_OPEN) {
+			if(cp.mBreakerOpenUntil > now)
+				return false;
+			cp.mBreakerState = STATE_HALF_OPEN;		// Send a probe
+			Logs.d(TAG, "# Half-open : type={}", cp.mId);
+		}
+		
+		if(host != null && host.mState != STATE_CLOSED && host.mProbeType != cp.mId) {
+			// Cool-down passed, or previous probe got no result. This provider probes the host.
+			host.mState = STATE_HALF_OPEN;
+			host.mProbeType = cp.mId;
+			host.mOpenUntil = now + HOST_PROBE_TIMEOUT;
+			Logs.d(TAG, "# Host half-open : type={}", cp.mId);
+		}
+		return true;
+	}
+	
+	/**
+	 * @return	true if provider state has changed and should be saved
+	 */
+	public synchronized boolean onSuccess(CPObject cp) {
+		HostState host = getHostState(cp);
+		if(host != null) {
+			host.mState = STATE_CLOSED;
+			host.mProbeType = -1;
+			host.mFailureCount = 0;
+			host.mOpenUntil = 0;
+		}
+		
+		if(cp.mFailureCount == 0 && cp.mBreakerState == STATE_CLOSED)
+			return false;
+		cp.mFailureCount = 0;
+		cp.mBreakerState = STATE_CLOSED;
+		cp.mBreakerOpenUntil = 0;
+		Logs.d(TAG, "# Closed : type={}", cp.mId);
+		return true;
+	}
+	
+	/**
+	 * @return	true if provider state has changed and should be saved
+	 */
+	public synchronized boolean onFailure(CPObject cp, long now) {
+		HostState host = getHostState(cp);
+		if(host != null) {
+			host.mFailureCount++;
+			if(host.mFailureCount >= HOST_FAILURE_THRESHOLD) {
+				host.mState = STATE_OPEN;
+				host.mProbeType = -1;
+				host.mOpenUntil = now + getCoolDown(host.mFailureCount - HOST_FAILURE_THRESHOLD);
+			}
+		}
+		
+		cp.mFailureCount++;
+		if(cp.mBreakerState == STATE_HALF_OPEN || cp.mFailureCount >= FAILURE_THRESHOLD) {
+			cp.mBreakerState = STATE_OPEN;
+			cp.mBreakerOpenUntil = now + getCoolDown(cp.mFailureCount - FAILURE_THRESHOLD);
+			Logs.d(TAG, "# Open : type={}, failures={}, cool-down={}s", cp.mId, cp.mFailureCount, (cp.mBreakerOpenUntil - now) / 1000);
+		}
+		return true;
+	}
+	
+	// Time when next request can be sent. 0 if not blocked.
+	public synchronized long getBlockedUntil(CPObject cp) {
+		long until = (cp.mBreakerState == STATE_OPEN ? cp.mBreakerOpenUntil : 0);
+		HostState host = getHostState(cp);
+		if(host != null && host.mOpenUntil > until && (host.mState == STATE_OPEN || host.mProbeType != cp.mId))
+			until = host.mOpenUntil;
+		return until;
+	}
+	
+	/**
+	 * Breaker state is saved in content_provider table as "state,open until" string
+	 */
+	public static String encodeState(CPObject cp) {
+		return cp.mBreakerState + "," + cp.mBreakerOpenUntil;
+	}
+	
+	public static void decodeState(CPObject cp, int failureCount, String state) {
+		cp.mFailureCount = failureCount;
+		cp.mBreakerState = STATE_CLOSED;
+		cp.mBreakerOpenUntil = 0;
+		if(state == null || state.length() < 1)
+			return;
+		
+		String[] values = state.split(",");
+		try {
+			cp.mBreakerState = Integer.parseInt(values[0]);
+			if(values.length > 1)
+				cp.mBreakerOpenUntil = Long.parseLong(values[1]);
+		} catch(NumberFormatException e) {
+			cp.mBreakerState = STATE_CLOSED;
+		}
+		if(cp.mBreakerState == STATE_HALF_OPEN)		// Probe was not finished
+			cp.mBreakerState = STATE_OPEN;
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	// Doubles on each failure after opened
+	private static long getCoolDown(int trips) {
+		long coolDown = COOL_DOWN_BASE << Math.min(Math.max(trips, 0), 16);
+		return Math.min(coolDown, COOL_DOWN_MAX);
+	}
+	
+	private HostState getHostState(CPObject cp) {
+		if(cp.mURL == null)
+			return null;
+		String host = Uri.parse(cp.mURL).getHost();
+		if(host == null)
+			return null;
+		
+		HostState state = mHostStates.get(host);
+		if(state == null) {
+			state = new HostState();
+			mHostStates.put(host, state);
+		}
+		return state;
+	}
+	
+	private static class HostState {
+		int mState = STATE_CLOSED;
+		int mProbeType = -1;		// Provider ID of the probe when half-open
+		int mFailureCount = 0;
+		long mOpenUntil = 0;		// End of cool-down when open, probe timeout when half-open
+	}
+}
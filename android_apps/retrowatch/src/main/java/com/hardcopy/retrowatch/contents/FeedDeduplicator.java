@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hardcopy.retrowatch.contents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.hardcopy.retrowatch.contents.objects.FeedObject;
+import com.hardcopy.retrowatch.utils.Logs;
+
+/**
+ * Collapses near-duplicate feed items across content providers.
+ * Each item has a 64bit SimHash fingerprint of its normalized text. Items whose fingerprints differ
+ * in HAMMING_THRESHOLD bits or less, and which were first seen within DUPLICATE_WINDOW,
+ * are the same story. Only the item with best rank info is kept.
+ */
+public class FeedDeduplicator {
+	
+	private static final String TAG = "FeedDeduplicator";
+	
+	public static final int HAMMING_THRESHOLD = 3;
+	public static final long DUPLICATE_WINDOW = 6*60*60*1000;
+	
+	private static final int SHINGLE_SIZE = 3;			// Character n-gram. Works without word boundary (Korean keywords)
+	private static final int FIRST_SEEN_MAX = 1000;
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	
+	private final HashMap<String, Long> mFirstSeen = new HashMap<String, Long>();	// type:id -> time
+	private int mSuppressedCount = 0;
+	
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	/**
+	 * Returns items without near-duplicates. Order of items is kept.
+	 */
+	public synchronized ArrayList<FeedObject> deduplicate(List<FeedObject> feedList, long now) {
+		ArrayList<FeedObject> result = new ArrayList<FeedObject>();
+		if(feedList == null || feedList.size() < 1)
+			return result;
+		
+		final int count = feedList.size();
+		final FeedObject[] feeds = feedList.toArray(new FeedObject[count]);
+		final int[] scores = new int[count];
+		long[] firstSeen = new long[count];
+		Integer[] order = new Integer[count];
+		for(int i = 0; i < count; i++) {
+			FeedObject feed = feeds[i];
+			if(feed.mFingerprint == 0L)
+				feed.mFingerprint = simHash(getText(feed));
+			scores[i] = getScore(feed);
+			firstSeen[i] = getFirstSeen(feed, now);
+			order[i] = i;
+		}
+		
+		// Best representative first
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return scores[b] - scores[a];
+			}
+		});
+		
+		boolean[] dropped = new boolean[count];
+		int[] kept = new int[count];
+		int keptCount = 0;
+		int suppressed = 0;
+		for(Integer index : order) {
+			for(int k = 0; k < keptCount; k++) {
+				int other = kept[k];
+				if(Math.abs(firstSeen[index] - firstSeen[other]) <= DUPLICATE_WINDOW
+						&& Long.bitCount(feeds[index].mFingerprint ^ feeds[other].mFingerprint) <= HAMMING_THRESHOLD) {
+					dropped[index] = true;
+					break;
+				}
+			}
+			if(dropped[index])
+				suppressed++;
+			else
+				kept[keptCount++] = index;
+		}
+		
+		for(int i = 0; i < count; i++) {
+			if(!dropped[i])
+				result.add(feeds[i]);
+		}
+		
+		mSuppressedCount += suppressed;
+		if(suppressed > 0)
+			Logs.d(TAG, "# Suppressed {} duplicated items of {}", suppressed, count);
+		pruneFirstSeen(now);
+		return result;
+	}
+	
+	public synchronized int getSuppressedCount() {
+		return mSuppressedCount;
+	}
+	
+	/**
+	 * 64bit SimHash of character shingles of normalized text
+	 */
+	public static long simHash(String text) {
+		String normalized = normalize(text);
+		if(normalized.length() < 1)
+			return 0L;
+		
+		int[] weights = new int[64];
+		int shingles = Math.max(1, normalized.length() - SHINGLE_SIZE + 1);
+		for(int i = 0; i < shingles; i++) {
+			int end = Math.min(normalized.length(), i + SHINGLE_SIZE);
+			long hash = FNV_OFFSET;
+			for(int j = i; j < end; j++) {
+				hash ^= normalized.charAt(j);
+				hash *= FNV_PRIME;
+			}
+			for(int bit = 0; bit < 64; bit++) {
+				if(((hash >>> bit) & 1L) != 0)
+					weights[bit]++;
+				else
+					weights[bit]--;
+			}
+		}
+		
+		long fingerprint = 0L;
+		for(int bit = 0; bit < 64; bit++) {
+			if(weights[bit] > 0)
+				fingerprint |= (1L << bit);
+		}
+		return (fingerprint == 0L ? 1L : fingerprint);		// 0 means 'not calculated'
+	}
+	
+	// Higher is better
+	public static int getScore(FeedObject feed) {
+		int score = feed.mCommentCount * 10 + Math.max(0, feed.mRankUpAndDown) * 2;
+		if(feed.mRankType == FeedObject.RANK_TYPE_NEW)
+			score += 5;
+		return score;
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	// Same text with the one sent to watch
+	private static String getText(FeedObject feed) {
+		if(feed.mKeyword != null && feed.mKeyword.length() > 0)
+			return feed.mKeyword;
+		return feed.mContent;
+	}
+	
+	// Lower case letters and digits only
+	private static String normalize(String text) {
+		if(text == null)
+			return "";
+		StringBuilder sb = new StringBuilder(text.length());
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(Character.isLetterOrDigit(c))
+				sb.append(Character.toLowerCase(c));
+		}
+		return sb.toString();
+	}
+	
+	private long getFirstSeen(FeedObject feed, long now) {
+		String key = feed.mType + ":" + feed.mId;
+		Long time = mFirstSeen.get(key);
+		if(time == null) {
+			time = now;
+			mFirstSeen.put(key, time);
+		}
+		return time;
+	}
+	
+	private void pruneFirstSeen(long now) {
+		if(mFirstSeen.size() <= FIRST_SEEN_MAX)
+			return;
+		for(Iterator<Map.Entry<String, Long>> it = mFirstSeen.entrySet().iterator(); it.hasNext();) {
+			if(now - it.next().getValue() > DUPLICATE_WINDOW * 2)
+				it.remove();
+		}
+	}
+}
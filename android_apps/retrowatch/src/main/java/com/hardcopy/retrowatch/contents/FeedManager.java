@@ -16,25 +16,31 @@
 
 package com.hardcopy.retrowatch.contents;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.HashMap;
+import java.util.HashSet;
 
 import com.hardcopy.retrowatch.connectivity.HttpAsyncTask;
 import com.hardcopy.retrowatch.connectivity.HttpInterface;
 import com.hardcopy.retrowatch.connectivity.HttpListener;
+import com.hardcopy.retrowatch.connectivity.HttpStreamConsumer;
 import com.hardcopy.retrowatch.contents.objects.CPObject;
+import com.hardcopy.retrowatch.contents.objects.FeedDiffObject;
 import com.hardcopy.retrowatch.contents.objects.FeedObject;
 import com.hardcopy.retrowatch.database.DBHelper;
 import com.hardcopy.retrowatch.utils.Constants;
 import com.hardcopy.retrowatch.utils.Logs;
+import com.hardcopy.retrowatch.utils.Settings;
 
-import android.app.ActivityManager;
-import android.app.ActivityManager.RunningTaskInfo;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 
 public class FeedManager {
 	
@@ -42,25 +48,37 @@ public class FeedManager {
 	public static final String TAG = "FeedManager";
 	
 	public static final long TIME_INTERVAL_UPDATE_REQUEST = 1000;
-	public static final long REMOVE_CACHE_TIME = 2*24*60*60*1000;	// Cache data erasing time
+	public static final long FEED_MAX_AGE = 7*24*60*60*1000L;		// Items of a provider not updated for this long are evicted
+	public static final long EVICTION_INTERVAL = 60*60*1000;
+	public static final int EVICTION_BATCH_SIZE = 20;		// Rows deleted in a transaction
 	
 	public static final int DB_QUERY_LIMIT_DEFAULT = 20;
+	public static final int FEED_CACHE_MAX_COUNT = 200;		// Shared by providers. Older items stay in DB only. Use makeContentsFromDB()
+	public static final int FEED_LOAD_PAGE_SIZE = 10;		// Rows materialized at once while loading cache of a provider
 	
-	private long mLastFeedInitTime = 0L;
+	private long mLastEvictionTime = 0L;
+	private int mEvictionRunCount = 0;
+	private int mEvictedByAgeCount = 0;
+	private int mEvictedByCountCount = 0;
 	private long mLastUpdateRequestTime = 0L;				// To prevent duplicated update request
 
 	private ArrayList<CPObject> mCPObjectList = new ArrayList<CPObject>();
-	private ArrayList<FeedObject> mFeedList = new ArrayList<FeedObject>();
+	private ArrayList<FeedObject> mFeedList = new ArrayList<FeedObject>();		// Oldest first in each provider
+	private HashSet<Integer> mCachedTypes = new HashSet<Integer>();		// Providers loaded into mFeedList. Guarded by mFeedList
+	private volatile boolean mFeedCacheReady = false;
 
 	
 	// Context, system
 	private Context mContext;
 	private DBHelper mDB;
-	private HttpListener mHTTPListener;		// To receive HTTP response result
+	private HttpResponseListener mHTTPListener;		// To receive HTTP response result
 	private IFeedListener mFeedListener;	// Send callback to		
+	private final Handler mHandler = new Handler(Looper.getMainLooper());	// Callback is called on UI thread
 
 	private FeedParser mParser;
+	private final FeedCircuitBreaker mCircuitBreaker = new FeedCircuitBreaker();
 	private DataExtractThread mThread;
+	private final SparseArray<HttpAsyncTask> mRequestTasks = new SparseArray<HttpAsyncTask>();	// Running request per content provider
 	
 	
 	// Constructor
@@ -80,25 +98,18 @@ public class FeedManager {
 		mDB = new DBHelper(mContext);
 		mDB.openWritable();
 		
-		// 1. get last updated time
-		SharedPreferences prefs = mContext.getSharedPreferences(Constants.PREFERENCE_NAME, Context.MODE_PRIVATE);
-		mLastFeedInitTime = prefs.getLong(Constants.PREFERENCE_KEY_LAST_LAST_INIT_TIME, 0);
-		
-		// 2. Check preference
-		boolean isFirstExec = prefs.getBoolean(Constants.PREFERENCE_KEY_IS_FIRST_EXEC, true);		// Is this first time?
-		if(isFirstExec) {
+		// 1. Check preference
+		Settings settings = Settings.getInstance(mContext);
+		if(settings.isFirstExec()) {		// Is this first time?
 			setupApplicationData();
-			
-			SharedPreferences.Editor editor = prefs.edit();
-			editor.putBoolean(Constants.PREFERENCE_KEY_IS_FIRST_EXEC, false);
-			editor.commit();
+			settings.setFirstExec(false);
 		}
 		
-		// 3. Get contents from DB (and caching it)
-		makeAllContentsFromDB();
+		// 2. Get content providers from DB. Feed items are loaded by worker thread.
+		makeContentProvidersFromDB();
 		
-		// 4. Start thread. 
-		// This thread send HTTP requests periodically.
+		// 3. Start thread. 
+		// This thread loads cached feed and send HTTP requests periodically.
 		restartDataExtractThread();
 	}
 	
@@ -118,6 +129,11 @@ public class FeedManager {
 		return mFeedList;		// Use this read-only. Or could cause concurrent modification exception
 	}
 	
+	// False until cached feed items of every provider are loaded from DB
+	public boolean isFeedCacheReady() {
+		return mFeedCacheReady;
+	}
+	
 	public void deleteCachedFeed(int type) {
 		synchronized(mFeedList) {
 			// Delete cached feed
@@ -131,6 +147,36 @@ public class FeedManager {
 		}
 	}
 	
+	/**
+	 * Apply merge result to cache. Unchanged items are kept as is.
+	 */
+	public void applyCachedFeedDiff(FeedDiffObject diff) {
+		if(diff == null || mFeedList == null)
+			return;
+		
+		synchronized(mFeedList) {
+			if(diff.mRemovedIds.size() > 0 || diff.mUpdated.size() > 0) {
+				HashSet<String> removed = new HashSet<String>(diff.mRemovedIds);
+				HashMap<String, FeedObject> updated = new HashMap<String, FeedObject>();
+				for(FeedObject feed : diff.mUpdated)
+					updated.put(feed.mId, feed);
+				
+				for(int i = mFeedList.size() - 1; i > -1; i--) {
+					FeedObject feed = mFeedList.get(i);
+					if(feed.mType != diff.mType)
+						continue;
+					if(removed.contains(feed.mId))
+						mFeedList.remove(i);
+					else if(updated.containsKey(feed.mId))
+						mFeedList.set(i, updated.get(feed.mId));
+				}
+			}
+			for(int i = diff.mAdded.size() - 1; i > -1; i--)		// Recent first. Append oldest first.
+				mFeedList.add(diff.mAdded.get(i));
+			trimCachedFeed();
+		}
+	}
+	
 	/**
 	 * Update content provider
 	 */
@@ -202,7 +248,7 @@ public class FeedManager {
 		try {
 			if(mDB != null) {
 				cursor = mDB.selectFeed(type, ( count<1 ? DB_QUERY_LIMIT_DEFAULT : count ) );
-				if(cursor != null) Logs.d(TAG, "# Query result count =" + cursor.getCount());
+				if(cursor != null) Logs.d(TAG, "# Query result count = {}", cursor.getCount());
 				else Logs.d(TAG, "# Query result count = null");
 			}
 		} 
@@ -218,15 +264,15 @@ public class FeedManager {
 		return feedList;
 	}	// End of makeContentsFromDB(int type)
 	
-	public void makeAllContentsFromDB()
+	public void makeContentProvidersFromDB()
 	{
-		Logs.d(TAG, "# makeAllContentsFromDB() starts........");
+		Logs.d(TAG, "# makeContentProvidersFromDB() starts........");
 		
 		Cursor c = null; 
 		try {
 			if(mDB != null) {
 				c = mDB.selectCP();
-				if(c != null) Logs.d(TAG, "# Query result count =" + c.getCount());
+				if(c != null) Logs.d(TAG, "# Query result count = {}", c.getCount());
 				else Logs.d(TAG, "# Query result count = null");
 			}
 		} 
@@ -246,35 +292,67 @@ public class FeedManager {
 				mCPObjectList.add(cpo);
 			} // End of for loop
 		} // End of if()
+	}	// End of makeContentProvidersFromDB()
+	
+	/**
+	 * Load recent feed items of a content provider into cache, if not loaded yet.
+	 * Only rows the cache keeps are read (see getCacheLimit()), page by page from the oldest one.
+	 * Called on DataExtractThread when it visits the provider first time, before the first update request.
+	 */
+	private void loadCachedFeed(CPObject cp)
+	{
+		synchronized(mFeedList) {
+			if(!mCachedTypes.add(cp.mId))
+				return;
+		}
 		
+		long start = System.currentTimeMillis();
+		Cursor cursor = null;
+		try {
+			if(mDB != null)
+				cursor = mDB.selectFeed(cp.mId, getCacheLimit(cp));		// Recent first
+		}
+		catch (IllegalStateException e) { e.printStackTrace(); }		// DB could be closed while loading
+		if(cursor == null)
+			return;
 		
-		Cursor cursor = null; 
+		int loaded = 0;
 		try {
-			if(mDB != null) {
-				cursor = mDB.selectFeedAll();
-				if(cursor != null) Logs.d(TAG, "# Query result count =" + cursor.getCount());
-				else Logs.d(TAG, "# Query result count = null");
+			cursor.moveToPosition(cursor.getCount());		// Read backward, so oldest one comes first
+			ArrayList<FeedObject> page = extractFeedPage(cursor, FEED_LOAD_PAGE_SIZE);
+			while(page.size() > 0) {
+				synchronized(mFeedList) {
+					mFeedList.addAll(page);
+				}
+				loaded += page.size();
+				page = extractFeedPage(cursor, FEED_LOAD_PAGE_SIZE);
 			}
-		} 
-		catch (IllegalStateException e) { e.printStackTrace(); }		// HTTP Task could access this query even though application is terminated.
-		
-		ArrayList<FeedObject> feedList = null;
-		if(cursor != null && cursor.getCount() > 0) {
-			feedList = extractFeedFromCursor(cursor);		// Convert cursor to feedList
+		}
+		catch (IllegalStateException e) { e.printStackTrace(); }
+		finally {
 			cursor.close();
-		} else {
-			if( cursor != null ) cursor.close();
 		}
 		
-		synchronized(mFeedList) {
-			if(mFeedList != null && feedList != null) {
-				for(int i=feedList.size()-1; i>-1; i--) {
-					FeedObject pro = feedList.get(i);
-					mFeedList.add(pro);
-				} // End of for loop
-			} // End of if()
-		}
-	}	// End of makeAllContentsFromDB()
+		Logs.d(TAG, "# Feed cache loaded : type={}, count={}, {}ms", cp.mId, loaded, System.currentTimeMillis() - start);
+		if(loaded > 0)
+			postFeedCallback(cp.mId, PARSING_RESULT_OK, null);
+	}
+	
+	// Cache share of a provider. Each provider keeps its own recent items, so busy one cannot starve others.
+	private int getCacheLimit(CPObject cp) {
+		int providers = Math.max(1, mCPObjectList.size());
+		return Math.min((cp.mVisibleCount < 1 ? DB_QUERY_LIMIT_DEFAULT : cp.mVisibleCount), 
+				Math.max(1, FEED_CACHE_MAX_COUNT / providers));
+	}
+	
+	private void postFeedCallback(final int type, final int resultCode, final FeedDiffObject diff) {
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				mFeedListener.OnFeedCallback(IFeedListener.MSG_FEED_UPDATED, type, resultCode, null, null, diff);
+			}
+		});
+	}
 	
 	
 	/**
@@ -325,6 +403,17 @@ public class FeedManager {
 			}
 			mThread = null;
 		}
+		cancelRequests();
+	}
+	
+	public void cancelRequests() 
+	{
+		synchronized(mRequestTasks) {
+			for(int i=0; i<mRequestTasks.size(); i++) {
+				mRequestTasks.valueAt(i).cancel();
+			}
+			mRequestTasks.clear();
+		}
 	}
 	
 	
@@ -335,6 +424,25 @@ public class FeedManager {
 	private void addFeed(FeedObject feed) {
 		synchronized(mFeedList) {
 			mFeedList.add(feed);
+			trimCachedFeed();
+		}
+	}
+	
+	// Drop oldest items of providers over their cache share. They are still in DB.
+	private void trimCachedFeed() {
+		SparseIntArray limits = new SparseIntArray();
+		for(CPObject cp : mCPObjectList)
+			limits.put(cp.mId, getCacheLimit(cp));
+		
+		synchronized(mFeedList) {
+			SparseIntArray counts = new SparseIntArray();
+			for(int i = mFeedList.size() - 1; i > -1; i--) {		// Recent one is counted first
+				int type = mFeedList.get(i).mType;
+				int count = counts.get(type) + 1;
+				counts.put(type, count);
+				if(count > limits.get(type, DB_QUERY_LIMIT_DEFAULT))
+					mFeedList.remove(i);
+			}
 		}
 	}
 	
@@ -356,6 +464,7 @@ public class FeedManager {
 						cp.mNewItemCount = count+prevCount;
 					}
 				}
+				count += prevCount;
 			}
 			else {			// if false, set count
 				for( int index=mCPObjectList.size()-1; index >= 0; index-- ) {
@@ -375,6 +484,8 @@ public class FeedManager {
 			if(cp.mId == type) {
 				cp.mLastUpdated = time;
 				cp.mNewItemCount = newItemCount;
+				if(updateDB)
+					cp.mLastSeenTime = time;		// Called with true after merge only
 			}
 		}
 		
@@ -383,39 +494,71 @@ public class FeedManager {
 		}
 	}	// End of setUpdateStatus()
 	
-	private void removeOldData() 
+	/**
+	 * Evict feed items of providers which have not been updated for FEED_MAX_AGE, and items over caching count
+	 * of each content provider. Merge already deletes items which left the feed, so cached items of a provider
+	 * updated recently are all live and age eviction skips it.
+	 * Rows are deleted in small batches so HTTP responses can write DB in between.
+	 */
+	private void evictOldFeed() 
 	{
 		long current = System.currentTimeMillis();
-		if(current - mLastFeedInitTime > REMOVE_CACHE_TIME) {
-			if(current - mLastFeedInitTime < REMOVE_CACHE_TIME * 2) {
-				// Do not erase DB when activity is running
-				ActivityManager activityManager = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
-				List<RunningTaskInfo> info = activityManager.getRunningTasks(20);
-				
-				for (Iterator<RunningTaskInfo> iterator = info.iterator(); iterator.hasNext();) {
-					RunningTaskInfo runningTaskInfo = (RunningTaskInfo) iterator.next();
-					String pkgName = runningTaskInfo.topActivity.getPackageName();
-					String className = runningTaskInfo.topActivity.getClassName();
-					if( pkgName.equals("com.tortuga.hotclip") && className.equals("com.tortuga.hotclip.HotClipMain") ) {
-						return;
-					}
-				}
-			}
-			
-			if(mDB == null) return;
+		if(current - mLastEvictionTime < EVICTION_INTERVAL || mDB == null)
+			return;
+		mLastEvictionTime = current;
+		
+		ArrayList<CPObject> cpList = null;
+		synchronized (mCPObjectList) {
+			cpList = new ArrayList<CPObject>(mCPObjectList);
+		}
+		
+		int byAge = 0;
+		int byCount = 0;
+		for(CPObject cp : cpList) {
+			FeedDiffObject diff = new FeedDiffObject(cp.mId);
+			int maxCount = (cp.mCachingCount < 1 ? DB_QUERY_LIMIT_DEFAULT : cp.mCachingCount);
 			
-			// 1. Erase DB
-			mDB.deleteFeedAll();
-			// 2. Erase image files
-			// Utils.initFileDirectory();
-			// 3. Set updated time as 0 to trigger update
-			mLastFeedInitTime = current;
+			if(cp.mLastSeenTime < current - FEED_MAX_AGE)
+				byAge += evictFeedInBatches(cp.mId, current - FEED_MAX_AGE, -1, diff.mRemovedIds);
+			byCount += evictFeedInBatches(cp.mId, 0, maxCount, diff.mRemovedIds);
 			
-			SharedPreferences prefs = mContext.getSharedPreferences(Constants.PREFERENCE_NAME, Context.MODE_PRIVATE);
-			SharedPreferences.Editor editor = prefs.edit();
-			editor.putLong(Constants.PREFERENCE_KEY_LAST_LAST_INIT_TIME, mLastFeedInitTime);
-			editor.commit();
+			if(diff.mRemovedIds.size() > 0)
+				applyCachedFeedDiff(diff);
 		}
+		
+		mEvictionRunCount++;
+		mEvictedByAgeCount += byAge;
+		mEvictedByCountCount += byCount;
+		Logs.d(TAG, "# Evicted feed : age={}, count={}, {}ms", byAge, byCount, System.currentTimeMillis() - current);
+	}
+	
+	// Evict by age if maxCount < 0, or by count. Returns deleted item count.
+	private int evictFeedInBatches(int type, long time, int maxCount, ArrayList<String> removedIds) 
+	{
+		int deleted = 0;
+		ArrayList<String> batch = null;
+		do {
+			try {
+				if(mDB == null)
+					break;
+				if(maxCount < 0)
+					batch = mDB.evictFeedOlderThan(type, time, EVICTION_BATCH_SIZE);
+				else
+					batch = mDB.evictFeedOverCount(type, maxCount, EVICTION_BATCH_SIZE);
+			} 
+			catch (IllegalStateException e) { e.printStackTrace(); break; }		// DB could be closed
+			
+			if(batch == null)
+				break;
+			removedIds.addAll(batch);
+			deleted += batch.size();
+		} while(batch.size() >= EVICTION_BATCH_SIZE);
+		return deleted;
+	}
+	
+	public String getEvictionStats() {
+		return "runs=" + mEvictionRunCount + ", evicted by age=" + mEvictedByAgeCount
+				+ ", evicted by count=" + mEvictedByCountCount + ", last run=" + mLastEvictionTime;
 	}
 	
 	private ArrayList<CPObject> extractCPFromCursor(Cursor cursor) 
@@ -439,6 +582,7 @@ public class FeedManager {
 				obj.mLastUpdated = Long.parseLong( updated );
 			else 
 				obj.mLastUpdated = 0L;
+			obj.mLastSeenTime = obj.mLastUpdated;		// Saved only on successful update
 			obj.mTTL = cursor.getInt(DBHelper.INDEX_CP_TTL);
 			obj.mVisible = ( cursor.getInt(DBHelper.INDEX_CP_VISIBLE) == 0 ? false : true );
 			obj.mVisibleCount = cursor.getInt(DBHelper.INDEX_CP_VISIBLE_COUNT);
@@ -453,6 +597,8 @@ public class FeedManager {
 			obj.mShowInWidget = ( cursor.getInt(DBHelper.INDEX_CP_WIDGET_ITEM) == 0 ? false : true );
 			obj.mNewItemCount = cursor.getInt(DBHelper.INDEX_CP_ARG0);		// New item count
 			obj.mLogoImage = cursor.getString(DBHelper.INDEX_CP_ARG2);		// Logo image
+			FeedCircuitBreaker.decodeState(obj, cursor.getInt(DBHelper.INDEX_CP_ARG1), cursor.getString(DBHelper.INDEX_CP_ARG3));
+			FeedPollScheduler.decodeState(obj, cursor.getString(DBHelper.INDEX_CP_POLL_STATE));
 			
 			cpList.add(obj);
 			cursor.moveToNext();
@@ -470,31 +616,8 @@ public class FeedManager {
 		cursor.moveToFirst();
 		while(!cursor.isAfterLast())
 		{
-			int requestType = cursor.getInt(DBHelper.INDEX_FEED_TYPE);
-			String id = cursor.getString(DBHelper.INDEX_FEED_IDSTRING);		// WARNING: BE CAREFUL !!! (Not ID...., IDString)
-			String name = cursor.getString(DBHelper.INDEX_FEED_NAME);
-			String link = cursor.getString(DBHelper.INDEX_FEED_LINK);
-			String keyword = cursor.getString(DBHelper.INDEX_FEED_KEYWORD);
-			String content = cursor.getString(DBHelper.INDEX_FEED_CONTENT);
-			String thumbnail = cursor.getString(DBHelper.INDEX_FEED_THUMBNAILURL);
-			String date = cursor.getString(DBHelper.INDEX_FEED_DATE);
-			int status = cursor.getInt(DBHelper.INDEX_FEED_STATUS);
-			int rankUpAndDown = cursor.getInt(DBHelper.INDEX_FEED_RANK);
-			int commentCount = cursor.getInt(DBHelper.INDEX_FEED_CLICK);
-			int rankType = cursor.getInt(DBHelper.INDEX_FEED_ARG0);
-			int version = cursor.getInt(DBHelper.INDEX_FEED_ARG1);
-			String fullImage = cursor.getString(DBHelper.INDEX_FEED_ARG2);
-			
-			FeedObject feed = new FeedObject(requestType, id, link, keyword, content, thumbnail);
-			feed.mName = name;
-			feed.mDate = date;
-			feed.mDownloadStatus = status;
-			feed.setRankInfo(rankType, rankUpAndDown, commentCount);
-			feed.setVersion(version);
-			if(fullImage != null && fullImage.length() > 0)
-				feed.setFullSizeImageURL(fullImage);
-			
-			if(id != null && id.length() > 0)	// Add object to list. Beware that adding sequence is same with recent date order
+			FeedObject feed = makeFeedFromCursor(cursor);
+			if(feed != null)	// Add object to list. Beware that adding sequence is same with recent date order
 				feedList.add(feed);
 			
 			cursor.moveToNext();
@@ -503,6 +626,50 @@ public class FeedManager {
 		return feedList;
 	}
 	
+	// Reads previous rows from current cursor position
+	private ArrayList<FeedObject> extractFeedPage(Cursor cursor, int pageSize) 
+	{
+		ArrayList<FeedObject> feedList = new ArrayList<FeedObject>(pageSize);
+		while(feedList.size() < pageSize && cursor.moveToPrevious())
+		{
+			FeedObject feed = makeFeedFromCursor(cursor);
+			if(feed != null)
+				feedList.add(feed);
+		}
+		return feedList;
+	}
+	
+	private FeedObject makeFeedFromCursor(Cursor cursor) 
+	{
+		int requestType = cursor.getInt(DBHelper.INDEX_FEED_TYPE);
+		String id = cursor.getString(DBHelper.INDEX_FEED_IDSTRING);		// WARNING: BE CAREFUL !!! (Not ID...., IDString)
+		String name = cursor.getString(DBHelper.INDEX_FEED_NAME);
+		String link = cursor.getString(DBHelper.INDEX_FEED_LINK);
+		String keyword = cursor.getString(DBHelper.INDEX_FEED_KEYWORD);
+		String content = cursor.getString(DBHelper.INDEX_FEED_CONTENT);
+		String thumbnail = cursor.getString(DBHelper.INDEX_FEED_THUMBNAILURL);
+		String date = cursor.getString(DBHelper.INDEX_FEED_DATE);
+		int status = cursor.getInt(DBHelper.INDEX_FEED_STATUS);
+		int rankUpAndDown = cursor.getInt(DBHelper.INDEX_FEED_RANK);
+		int commentCount = cursor.getInt(DBHelper.INDEX_FEED_CLICK);
+		int rankType = cursor.getInt(DBHelper.INDEX_FEED_ARG0);
+		int version = cursor.getInt(DBHelper.INDEX_FEED_ARG1);
+		String fullImage = cursor.getString(DBHelper.INDEX_FEED_ARG2);
+		
+		FeedObject feed = new FeedObject(requestType, id, link, keyword, content, thumbnail);
+		feed.mName = name;
+		feed.mDate = date;
+		feed.mDownloadStatus = status;
+		feed.setRankInfo(rankType, rankUpAndDown, commentCount);
+		feed.setVersion(version);
+		if(fullImage != null && fullImage.length() > 0)
+			feed.setFullSizeImageURL(fullImage);
+		
+		if(id == null || id.length() < 1)
+			return null;
+		return feed;
+	}
+	
 	
 	/*****************************************************
 	 *		Etc
@@ -530,21 +697,18 @@ public class FeedManager {
 	public static final int PARSING_RESULT_NO_NEW_ITEM = -4;
 	public static final int PARSING_RESULT_CANNOT_FIND_SETTING = -5;
 	
-	class HttpResponseListener implements HttpListener 
+	class HttpResponseListener implements HttpListener, HttpStreamConsumer 
 	{
 		@Override
 		public void OnReceiveHttpResponse(int type, String strResult, int resultCode) 
 		{
 			int resultCodeToUI = PARSING_RESULT_OK;
+			HttpAsyncTask task = removeRequestTask(type);
 			
 			if(strResult != null && strResult.length() > 0 
 					&& resultCode == HttpInterface.MSG_HTTP_RESULT_CODE_OK){
 				// 1. Get content provider setting
-				CPObject cp_obj = null;
-				for(CPObject cp : mCPObjectList) {
-					if(cp.mId == type)
-						cp_obj = cp;
-				}
+				CPObject cp_obj = findContentProvider(type);
 				
 				if(cp_obj == null) {
 					resultCodeToUI = PARSING_RESULT_CANNOT_FIND_SETTING;
@@ -552,59 +716,143 @@ public class FeedManager {
 				} else {
 					// 2. parse result string
 					ArrayList<FeedObject> feedList = mParser.parseResultString(cp_obj, strResult);
-						
-					if(feedList != null && feedList.size() > 0) 
-					{
-						try {
-							if(mDB != null) {
-								// 3. Delete previous and insert contents to DB
-								mDB.deleteFeedWithType( type );
-								mDB.insertBulkItems( feedList );
-								
-								synchronized(mFeedList) {
-									// 4. Delete previous cached
-//									for(FeedObject _feed: mFeedList) {
-//										if(_feed.mType == cp_obj.mId) {
-//											mFeedList.remove(_feed);
-//										}
-//									}
-									deleteCachedFeed(type);
-									
-									// 5. Update status
-									setUpdateStatus(true, type, cp_obj.mParsingType, feedList.size(), cp_obj.mLogoImage);
-									
-									// 6. Add new items to cache
-									mFeedList.addAll(feedList);
-								}
-								
-								// 9. Send message to callback
-								resultCodeToUI = PARSING_RESULT_OK;
-								mFeedListener.OnFeedCallback(IFeedListener.MSG_FEED_UPDATED, type, PARSING_RESULT_OK, null, null, feedList);
-							}
-							else {
-								Logs.d(TAG, "###### DBHelper is null...");
-								resultCodeToUI = PARSING_RESULT_INSERT_DB_ERROR;
-							}
-
-						} catch (Exception e) {
-							e.printStackTrace(); 
-							resultCodeToUI = PARSING_RESULT_INSERT_DB_ERROR; 
-						}
-					}
-					else {
-						Logs.d(TAG, "###### Cannot parse result...");
-						resultCodeToUI = PARSING_RESULT_PARSING_ERROR; 
-					}
+					resultCodeToUI = updateFeed(type, cp_obj, feedList, getMaxAge(task));
 				}
 			}
 			else {
 				Logs.d(TAG, "###### Result string is null. Cannot show keyword result...");
 				resultCodeToUI = PARSING_RESULT_NO_RESULT_DATA;
 			}
+			
+			updateCircuitBreaker(type, resultCode, resultCodeToUI);
 
 
 		}	// End of OnReceiveHttpRequestResult()
 		
+		/**
+		 * XML contents are parsed on HTTP worker thread while downloading.
+		 */
+		@Override
+		public Object OnReceiveHttpStream(int type, InputStream in, String charset) throws IOException 
+		{
+			CPObject cp_obj = findContentProvider(type);
+			if(cp_obj == null) {
+				Logs.d(TAG, "###### Cannot find Content Provider object...");
+				return null;
+			}
+			return mParser.parseResultStream(cp_obj, in, charset);
+		}
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		public void OnReceiveHttpStreamResult(int type, Object result, int resultCode) 
+		{
+			int resultCodeToUI = PARSING_RESULT_OK;
+			HttpAsyncTask task = removeRequestTask(type);
+			
+			if(result != null && resultCode == HttpInterface.MSG_HTTP_RESULT_CODE_OK) {
+				CPObject cp_obj = findContentProvider(type);
+				
+				if(cp_obj == null) {
+					resultCodeToUI = PARSING_RESULT_CANNOT_FIND_SETTING;
+					Logs.d(TAG, "###### Cannot find Content Provider object...");
+				} else {
+					resultCodeToUI = updateFeed(type, cp_obj, (ArrayList<FeedObject>) result, getMaxAge(task));
+				}
+			}
+			else {
+				Logs.d(TAG, "###### Parsed result is null. Cannot show keyword result...");
+				resultCodeToUI = PARSING_RESULT_NO_RESULT_DATA;
+			}
+			
+			updateCircuitBreaker(type, resultCode, resultCodeToUI);
+		}
+		
+		private HttpAsyncTask removeRequestTask(int type) {
+			synchronized(mRequestTasks) {
+				HttpAsyncTask task = mRequestTasks.get(type);
+				mRequestTasks.remove(type);
+				return task;
+			}
+		}
+		
+		// Count failures of provider. Dead providers are not requested until cool-down time passes.
+		private void updateCircuitBreaker(int type, int httpResultCode, int parsingResult) {
+			if(httpResultCode == HttpInterface.MSG_HTTP_RESULT_CODE_REJECTED)
+				return;		// Request was not sent
+			CPObject cp_obj = findContentProvider(type);
+			if(cp_obj == null)
+				return;
+			
+			boolean changed = false;
+			if(parsingResult == PARSING_RESULT_OK || parsingResult == PARSING_RESULT_NO_NEW_ITEM)
+				changed = mCircuitBreaker.onSuccess(cp_obj);
+			else if(parsingResult == PARSING_RESULT_NO_RESULT_DATA || parsingResult == PARSING_RESULT_PARSING_ERROR)
+				changed = mCircuitBreaker.onFailure(cp_obj, System.currentTimeMillis());
+			
+			if(changed && mDB != null)
+				mDB.updateCPBreakerState(cp_obj.mId, cp_obj.mFailureCount, FeedCircuitBreaker.encodeState(cp_obj));
+		}
+		
+		private int getMaxAge(HttpAsyncTask task) {
+			return (task == null ? -1 : task.getMaxAge());
+		}
+		
+		private CPObject findContentProvider(int type) {
+			CPObject cp_obj = null;
+			for(CPObject cp : mCPObjectList) {
+				if(cp.mId == type)
+					cp_obj = cp;
+			}
+			return cp_obj;
+		}
+		
+		private int updateFeed(int type, CPObject cp_obj, ArrayList<FeedObject> feedList, int maxAge) 
+		{
+			int resultCodeToUI = PARSING_RESULT_OK;
+			
+			if(feedList != null && feedList.size() > 0) 
+			{
+				try {
+					if(mDB != null) {
+						// 3. Merge contents to DB. Only added, changed and vanished items are written.
+						FeedDiffObject diff = mDB.mergeFeedItems(type, feedList);
+						if(diff == null)
+							return PARSING_RESULT_INSERT_DB_ERROR;
+
+						synchronized(mFeedList) {
+							// 4. Apply diff to cache
+							applyCachedFeedDiff(diff);
+
+							// 5. Update status with real new item count
+							setUpdateStatus(true, type, cp_obj.mParsingType, diff.getNewItemCount(), cp_obj.mLogoImage);
+						}
+
+						// 6. Adjust update interval with change history and server freshness
+						FeedPollScheduler.onFeedPolled(cp_obj, diff.hasChanges(), maxAge, System.currentTimeMillis());
+						mDB.updateCPPollState(type, FeedPollScheduler.encodeState(cp_obj));
+						
+						// 9. Send message to callback
+						resultCodeToUI = (diff.hasChanges() ? PARSING_RESULT_OK : PARSING_RESULT_NO_NEW_ITEM);
+						postFeedCallback(type, resultCodeToUI, diff);
+					}
+					else {
+						Logs.d(TAG, "###### DBHelper is null...");
+						resultCodeToUI = PARSING_RESULT_INSERT_DB_ERROR;
+					}
+
+				} catch (Exception e) {
+					e.printStackTrace(); 
+					resultCodeToUI = PARSING_RESULT_INSERT_DB_ERROR; 
+				}
+			}
+			else {
+				Logs.d(TAG, "###### Cannot parse result...");
+				resultCodeToUI = PARSING_RESULT_PARSING_ERROR; 
+			}
+			return resultCodeToUI;
+		}
+		
 		@Override
 		public void OnReceiveFileResponse(int type, String id, String filepath, String url, int resultCode) {
 			// Disabled
@@ -646,7 +894,7 @@ public class FeedManager {
 				int tcount = getTextContents();
 				// int mcount = checkAndRequestMediaDownload();		// Disabled
 				
-				Logs.d(TAG, "# Requested "+tcount+" contents");
+				Logs.d(TAG, "# Requested {} contents", tcount);
 
 				if(tcount > 0) {		// Images are downloading. Wait a moment and run again 
 					mStatus = THREAD_STATUS_WAITING;
@@ -673,9 +921,8 @@ public class FeedManager {
 					mSleepTime+=THREAD_WAITING_TIME_UNIT;
 				}
 				
-				// Delete caching file and DB, once a day
-				if(mSleepTime > EXTRACT_THREAD_SLEEP_TIME)
-					removeOldData();
+				// Delete old or overflowed items. Runs once per EVICTION_INTERVAL
+				evictOldFeed();
 				
 				mSleepTime = 0;					// Initialize sleep time.
 				mTextRequestReceived = false;
@@ -696,12 +943,16 @@ public class FeedManager {
 			for(int i=mCPObjectList.size()-1; i>-1; i--) 
 			{
 				CPObject obj = mCPObjectList.get(i);
-				Logs.d(TAG, "# Time interval="+((now - obj.mLastUpdated)/1000)+", TTL="+obj.mTTL);
+				loadCachedFeed(obj);		// Warm start. Cached feed is loaded here, not in constructor.
+				if(Logs.ENABLED && Logs.isLoggable(TAG, Logs.LEVEL_DEBUG)) {
+					Logs.d(TAG, "# Time interval={}, TTL={}, poll interval={}", 
+							(now - obj.mLastUpdated)/1000, obj.mTTL, FeedPollScheduler.getPollInterval(obj));
+				}
 				Logs.d(TAG, "# ");
 				
-				if(now - obj.mLastUpdated > obj.mTTL * 1000)
+				if(FeedPollScheduler.isUpdateRequired(obj, now) && mCircuitBreaker.allowRequest(obj, now))
 				{
-					if( requestContentsWithType(obj.mId, obj.mURL) ) {
+					if( requestContentsWithType(obj.mId, obj.mParsingType, obj.mURL) ) {
 						setUpdatedTime(obj.mId, now, obj.mNewItemCount, obj.mLogoImage, false);		// Set update time to prevent recursive request
 						
 						try {
@@ -717,13 +968,14 @@ public class FeedManager {
 					}
 				}
 			}
+			mFeedCacheReady = true;
 			
 			return count;
 		}
 		
 		private int Type = FeedObject.REQUEST_TYPE_NONE;
 		private String URL = null;
-		private boolean requestContentsWithType(int type, String requestURL)
+		private boolean requestContentsWithType(int type, int parsingType, String requestURL)
 		{
 
 			if(requestURL == null || requestURL.length() < 1)
@@ -731,9 +983,20 @@ public class FeedManager {
 			
 			Type = type;
 			URL = requestURL;
-			Logs.d(TAG, "# HTTP Request... type = "+Type);
+			Logs.d(TAG, "# HTTP Request... type = {}", Type);
 			
-			HttpAsyncTask task = new HttpAsyncTask(mHTTPListener, type, requestURL, HttpInterface.REQUEST_TYPE_GET);
+			HttpAsyncTask task = null;
+			if(FeedParser.isStreamParsingType(parsingType))		// XML is parsed while downloading
+				task = new HttpAsyncTask(mHTTPListener, mHTTPListener, type, requestURL, HttpInterface.REQUEST_TYPE_GET);
+			else
+				task = new HttpAsyncTask(mHTTPListener, type, requestURL, HttpInterface.REQUEST_TYPE_GET);
+			
+			synchronized(mRequestTasks) {
+				HttpAsyncTask prev = mRequestTasks.get(type);
+				if(prev != null)
+					prev.cancel();		// Previous request of same provider is obsolete
+				mRequestTasks.put(type, task);
+			}
 			task.execute();
 			
 			try {
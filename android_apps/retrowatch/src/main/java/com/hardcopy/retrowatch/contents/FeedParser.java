@@ -16,29 +16,26 @@
 
 package com.hardcopy.retrowatch.contents;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.regex.Pattern;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import com.hardcopy.retrowatch.contents.objects.CPObject;
 import com.hardcopy.retrowatch.contents.objects.FeedObject;
 import com.hardcopy.retrowatch.utils.Logs;
+import com.hardcopy.core.text.TextSanitizer;
 
-import android.text.Html;
 import android.util.Log;
+import android.util.Xml;
 
 public class FeedParser {
 
@@ -69,6 +66,7 @@ public class FeedParser {
 	private static final String PARSING_TAG_IMAGES = "images";
 	private static final String PARSING_TAG_THUMBNAIL_URL = "thumbnailUrl";
 	private static final String PARSING_TAG_CHANNEL = "channel";
+	private static final String PARSING_TAG_TTL = "ttl";
 	private static final String PARSING_TAG_TITLE = "title";
 	private static final String PARSING_TAG_DESCRIPTION = "description";
 	private static final String PARSING_TAG_FROM_USER_NAME = "from_user_name";
@@ -105,11 +103,7 @@ public class FeedParser {
 	
 	private static final int PARSER_ID_SUBSTRING_MAX = 240;
 	
-	private static final String REG_EXP_REMOVE_TAG = "\\<.*?\\>";
-	private static final String REG_EXP_URL = "((http|https|ftp|mms):\\/\\/[0-9a-z-]+(\\.[_0-9a-z-]+)+(:[0-9]{2,4})?\\/?)";
-	private static final String REG_EXP_IMAGE_URL = "(?i)http://[a-zA-Z0-9_.\\-%&=?!:;@\"'/]*(?i)(.gif|.jpg|.png|.jpeg)";
-	private static final String REG_EXP_REMOVE_NEWLINE = "\\n\\n";
-	private static final String STRING_RSS_SPLIT_TAG = "\\[\\[:\\+:\\]\\]";
+	private static final Pattern PATTERN_RSS_SPLIT_TAG = Pattern.compile(Pattern.quote("[[:+:]]"));
 	
 	// Context, system
 	
@@ -129,152 +123,20 @@ public class FeedParser {
 		int type = CpObj.mId;
 		ArrayList<FeedObject> feedList = new ArrayList<FeedObject>();
 		
-		Logs.d(TAG, "# Parsing string :: CP type = "+CpObj.mId+", parsing type = "+CpObj.mParsingType);
+		Logs.d(TAG, "# Parsing string :: CP type = {}, parsing type = {}", CpObj.mId, CpObj.mParsingType);
 		
 		switch(CpObj.mParsingType)
 		{
 			case FeedObject.REQUEST_TYPE_DAUM_REALTIME_KEYWORDS:
-			{
-				try{
-					DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-					DocumentBuilder db = factory.newDocumentBuilder();
-					
-					InputSource is = new InputSource();
-					is.setCharacterStream(new StringReader(strResult));
-					
-					Document doc = db.parse(is); 
-					Element element = doc.getDocumentElement();
-
-					NodeList items = element.getElementsByTagName(PARSING_TAG_WORD);	// <realtime/>[ <word/> {<rank/><keyword/><value/><type/><linkurl/>} ]
-
-					for(int i=0 ; i < items.getLength() ; i++)
-					{
-						String link = null;
-						String keyword = null;
-						String content = null;
-						String thumbnail = null;
-						int rankType = RANK_TYPE_NONE;
-						int rankUpAndDown = 0;
-						int commentCount = 0;
-						
-						Node item = items.item(i);					// 알고 싶은 Node의 인덱스 번호를 전달한다.
-						NodeList children = item.getChildNodes();	// 자식 Node를 가져옴
-						
-						for(int j=0; j < children.getLength(); j++)
-						{
-							Node child = children.item(j);
-							String nodeName = child.getNodeName();
-							if(nodeName.equalsIgnoreCase(PARSING_TAG_KEYWORD)) {
-								String temp = child.getFirstChild().getNodeValue();
-								if(temp != null)
-									keyword = new String( temp.getBytes() );
-							}
-							else if(nodeName.equalsIgnoreCase(PARSING_TAG_LINKURL)) {
-								String temp = child.getFirstChild().getNodeValue();
-								if(temp != null)
-									link = new String( temp.getBytes(), ENCODING_TYPE_UTF_8 );
-							}
-							else if(nodeName.equalsIgnoreCase(PARSING_TAG_TYPE)) {
-								String temp = child.getFirstChild().getNodeValue();
-								if(temp != null) {
-									String temp2 = new String( temp.getBytes(), ENCODING_TYPE_UTF_8 );		// <type> value : "new" or "++"
-									if(temp2.equalsIgnoreCase(PARSING_TAG_NEW))	
-										rankType = RANK_TYPE_NEW;
-								}
-							}
-							else if(nodeName.equalsIgnoreCase(PARSING_TAG_VALUE)) {
-								try {
-									String temp = child.getFirstChild().getNodeValue();
-									if(temp != null && temp.length() > 0) {
-										String temp2 = new String( temp.getBytes(), ENCODING_TYPE_UTF_8 );	// <value> : 
-										rankUpAndDown = Integer.parseInt(temp2) / RANK_MODIFIER_DAUM_REALTIME_KEYWORD;	// TODO:
-										if( rankUpAndDown > 10 ) rankUpAndDown = 10;
-									}
-								} catch (Exception e) {}
-							}
-						}	// End of for loop
-						
-						if(keyword!=null && link!=null) 
-						{
-							String idStr = keyword;
-							FeedObject feed = new FeedObject(type, idStr, link, keyword, null, null);
-							feed.mDownloadStatus = FeedObject.CONTENT_DOWNLOAD_STATUS_INIT;
-							feed.setRankInfo(rankType, rankUpAndDown, commentCount);
-							feedList.add(feed);
-						}
-						
-						if(i >= CpObj.mCachingCount - 1) {		// Break loop if count has reached caching count
-							break;
-						}
-					}	// End of for loop
-
-				}catch (Exception e) {
-					Logs.d(TAG, e.getMessage()==null ? "Unknown error while parsing xml" : e.getMessage() );
-					e.printStackTrace();
-					feedList = null;
-				}
-				break;
-			}
-			
 			case FeedObject.REQUEST_TYPE_NAVER_REALTIME_KEYWORDS:
+			case FeedObject.REQUEST_TYPE_NAVER_RELATED_KEYWORDS:
+			case FeedObject.REQUEST_TYPE_RSS_DEFAULT:
+			case FeedObject.REQUEST_TYPE_RSS_FEED43:
 			{
 				try{
-					DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-					DocumentBuilder db = factory.newDocumentBuilder();
-					
-					InputSource is = new InputSource();
-					is.setCharacterStream(new StringReader(strResult));
-					
-					Document doc = db.parse(is); 
-					Element element = doc.getDocumentElement();
-
-					NodeList temp = element.getElementsByTagName(PARSING_TAG_ITEM);		// result -> item 
-					NodeList items = temp.item(0).getChildNodes();			// List contains R1, R2...
-
-					//반복문을 돌면서 각각의 Node 읽어오기
-					for(int i=0 ; i < items.getLength() ; i++)
-					{
-						String link = null;
-						String keyword = null;
-						String content = null;
-						String thumbnail = null;
-						int rankType = RANK_TYPE_NONE;
-						int rankUpAndDown = 0;
-						int commentCount = 0;
-						
-						Node item = items.item(i);								// <Rn> : 	n-th R tag
-						NodeList children = item.getChildNodes();		// <k> <s> <v>
-						
-						for(int j=0; j < children.getLength(); j++)
-						{
-							Node child = children.item(j);
-							String nodeName = child.getNodeName();
-							if(nodeName.equalsIgnoreCase(PARSING_TAG_K)) {
-								String tempStr = child.getFirstChild().getNodeValue();
-								if(tempStr != null)
-									keyword = new String( tempStr.getBytes() );
-							}
-							else if(nodeName.equalsIgnoreCase(PARSING_TAG_V)) {
-								String tempStr = child.getFirstChild().getNodeValue();
-								rankUpAndDown = Integer.parseInt(tempStr) / RANK_MODIFIER_NAVER_REALTIME_KEYWORD;	// TODO: 
-								if( rankUpAndDown > 10 ) rankUpAndDown = 10;
-							}
-						}
-						
-						if(keyword!=null) 
-						{
-							String idStr = keyword;
-							FeedObject feed = new FeedObject(type, idStr, null, keyword, null, null);
-							feed.mDownloadStatus = FeedObject.CONTENT_DOWNLOAD_STATUS_INIT;
-							feed.setRankInfo(rankType, rankUpAndDown, commentCount);
-							feedList.add(feed);
-						}
-						
-						if(i >= CpObj.mCachingCount - 1) {		// Break loop if count has reached caching count
-							break;
-						}
-					}	// End of for loop
-					
+					XmlPullParser parser = Xml.newPullParser();
+					parser.setInput(new StringReader(strResult));
+					feedList = parseXml(CpObj, parser);
 				}catch (Exception e) {
 					Logs.d(TAG, e.getMessage()==null ? "Unknown error while parsing xml" : e.getMessage() );
 					e.printStackTrace();
@@ -388,49 +250,6 @@ public class FeedParser {
 				break;
 			}
 			
-			case FeedObject.REQUEST_TYPE_NAVER_RELATED_KEYWORDS:
-			{
-				try{
-					DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-					DocumentBuilder db = factory.newDocumentBuilder();
-					
-					InputSource is = new InputSource();
-					is.setCharacterStream(new StringReader(strResult));
-					
-					// Document와 Element 는 w3c dom에 있는것을 임포트 한다.
-					Document doc = db.parse(is); 
-					Element element = doc.getDocumentElement();
-
-					NodeList temp = element.getElementsByTagName(PARSING_TAG_ITEM);		// result -> item 
-
-					//반복문을 돌면서 각각의 Node 읽어오기
-					for(int i=0 ; i < temp.getLength() ; i++)
-					{
-						String keyword = null;
-						Node item = temp.item(i);
-						String tempStr = item.getFirstChild().getNodeValue();
-						if(tempStr != null && tempStr.length() > 0)
-							keyword = new String( tempStr.getBytes() );
-						
-						if(keyword!=null) 
-						{
-							FeedObject feed = new FeedObject(type, keyword, null, keyword, null, null);
-							feedList.add(feed);
-						}
-						
-						if(i >= CpObj.mCachingCount - 1) {		// Break loop if count has reached caching count
-							break;
-						}
-					}	// End of for loop
-
-				}catch (Exception e) {
-					Logs.d(TAG, e.getMessage()==null ? "Unknown error while parsing xml" : e.getMessage() );
-					e.printStackTrace();
-					feedList = null;
-				}
-				break;
-			}
-			
 			case FeedObject.REQUEST_TYPE_9GAG_HOT:
 			case FeedObject.REQUEST_TYPE_9GAG_TREND:
 			{
@@ -523,207 +342,439 @@ public class FeedParser {
 				break;
 			}
 			
-			case FeedObject.REQUEST_TYPE_RSS_DEFAULT:
-			case FeedObject.REQUEST_TYPE_RSS_FEED43:
+
+		}	// End of switch(type)
+		
+		return feedList;
+		
+	}	// End of parseResultString()
+
+	/**
+	 * Parse XML response directly from HTTP input stream.
+	 * Parsing stops as soon as caching count of items are extracted. Remaining stream is not read.
+	 * @param encoding		detected charset of the stream. If null, parser uses XML prolog.
+	 */
+	public ArrayList<FeedObject> parseResultStream(CPObject CpObj, InputStream in, String encoding)
+	{
+		if(CpObj == null || in == null) return null;
+
+		ArrayList<FeedObject> feedList = null;
+		try {
+			XmlPullParser parser = Xml.newPullParser();
+			parser.setInput(in, encoding);
+			feedList = parseXml(CpObj, parser);
+		} catch (Exception e) {
+			Logs.d(TAG, e.getMessage()==null ? "Unknown error while parsing xml" : e.getMessage() );
+			e.printStackTrace();
+			feedList = null;
+		}
+		return feedList;
+	}
+
+	/**
+	 * Returns true if response of this parsing type is XML and can be parsed from stream.
+	 */
+	public static boolean isStreamParsingType(int parsingType) {
+		switch(parsingType) {
+		case FeedObject.REQUEST_TYPE_DAUM_REALTIME_KEYWORDS:
+		case FeedObject.REQUEST_TYPE_NAVER_REALTIME_KEYWORDS:
+		case FeedObject.REQUEST_TYPE_NAVER_RELATED_KEYWORDS:
+		case FeedObject.REQUEST_TYPE_RSS_DEFAULT:
+		case FeedObject.REQUEST_TYPE_RSS_FEED43:
+			return true;
+		}
+		return false;
+	}
+
+	public static String removeSpecialChars(String str) {
+		return TextSanitizer.removeSpecialChars(str);
+	}
+
+
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+
+	private ArrayList<FeedObject> parseXml(CPObject CpObj, XmlPullParser parser) throws XmlPullParserException, IOException
+	{
+		Logs.d(TAG, "# Parsing XML :: CP type = {}, parsing type = {}", CpObj.mId, CpObj.mParsingType);
+
+		ArrayList<FeedObject> feedList = new ArrayList<FeedObject>();
+
+		switch(CpObj.mParsingType)
+		{
+		case FeedObject.REQUEST_TYPE_DAUM_REALTIME_KEYWORDS:
+			parseDaumRealtimeKeywords(CpObj, parser, feedList);
+			break;
+		case FeedObject.REQUEST_TYPE_NAVER_REALTIME_KEYWORDS:
+			parseNaverRealtimeKeywords(CpObj, parser, feedList);
+			break;
+		case FeedObject.REQUEST_TYPE_NAVER_RELATED_KEYWORDS:
+			parseNaverRelatedKeywords(CpObj, parser, feedList);
+			break;
+		case FeedObject.REQUEST_TYPE_RSS_DEFAULT:
+		case FeedObject.REQUEST_TYPE_RSS_FEED43:
+			parseRss(CpObj, parser, feedList);
+			break;
+		default:
+			return null;
+		}
+
+		return feedList;
+	}
+
+	// <realtime/>[ <word/> {<rank/><keyword/><value/><type/><linkurl/>} ]
+	private void parseDaumRealtimeKeywords(CPObject CpObj, XmlPullParser parser, ArrayList<FeedObject> feedList) throws XmlPullParserException, IOException
+	{
+		int type = CpObj.mId;
+		int count = 0;
+
+		int event = parser.getEventType();
+		while(event != XmlPullParser.END_DOCUMENT)
+		{
+			if(event == XmlPullParser.START_TAG && PARSING_TAG_WORD.equalsIgnoreCase(parser.getName()))
 			{
-				try{
-					DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-					DocumentBuilder db = factory.newDocumentBuilder();
-					
-					InputSource is = new InputSource();
-					is.setCharacterStream(new StringReader(strResult));
-					
-					// Document와 Element 는 w3c dom에 있는것을 임포트 한다.
-					Document doc = db.parse(is);
-					Element element = doc.getDocumentElement();
+				String link = null;
+				String keyword = null;
+				int rankType = RANK_TYPE_NONE;
+				int rankUpAndDown = 0;
+				int commentCount = 0;
 
-					// Extract logo image
-					try {
-						NodeList logoImage = element.getElementsByTagName(PARSING_TAG_IMAGE);
-						if(logoImage != null && logoImage.getLength() > 0) {
-							Node logoitem = logoImage.item(0);
-							NodeList logochildren = logoitem.getChildNodes();
-							for(int j=0; j < logochildren.getLength(); j++) {
-								Node logochild = logochildren.item(j);
-								String logoName = logochild.getNodeName();
-								if(logoName.equalsIgnoreCase(PARSING_TAG_URL)) {
-									String tempStr = logochild.getFirstChild().getNodeValue();
-									if(tempStr != null && tempStr.length() > 0)
-										CpObj.mLogoImage = tempStr;
-								}
+				int depth = parser.getDepth();
+				while(nextChildTag(parser, depth))
+				{
+					String nodeName = parser.getName();
+					if(nodeName.equalsIgnoreCase(PARSING_TAG_KEYWORD)) {
+						keyword = readText(parser);
+					}
+					else if(nodeName.equalsIgnoreCase(PARSING_TAG_LINKURL)) {
+						link = readText(parser);
+					}
+					else if(nodeName.equalsIgnoreCase(PARSING_TAG_TYPE)) {
+						String temp = readText(parser);		// <type> value : "new" or "++"
+						if(temp != null && temp.equalsIgnoreCase(PARSING_TAG_NEW))
+							rankType = RANK_TYPE_NEW;
+					}
+					else if(nodeName.equalsIgnoreCase(PARSING_TAG_VALUE)) {
+						try {
+							String temp = readText(parser);
+							if(temp != null) {
+								rankUpAndDown = Integer.parseInt(temp) / RANK_MODIFIER_DAUM_REALTIME_KEYWORD;	// TODO:
+								if( rankUpAndDown > 10 ) rankUpAndDown = 10;
 							}
-						}
-					} catch(Exception e) {}
-					
-					NodeList temp = element.getElementsByTagName(PARSING_TAG_ITEM);		// channel -> item 
+						} catch (NumberFormatException e) {}
+					}
+					else {
+						skip(parser);
+					}
+				}	// End of while loop
 
-					long current = System.currentTimeMillis();
-					for(int i=0 ; i < temp.getLength() ; i++)
-					{
-						int version = 0;
-						String guid = null;
-						String name = null;
-						String date = null;
-						String link = null;
-						String keyword = null;
-						String content = null;
-						String thumbnail = null;
-						Node item = temp.item(i);							// <item> : 	n-th item tag
-						NodeList children = item.getChildNodes();			// <title> <author> <link> <description> <pubDate>
-						
-						for(int j=0; j < children.getLength(); j++)
-						{
-							try {		// If error occurs in this block, skip current item parsing and go next
-								Node child = children.item(j);
-								String nodeName = child.getNodeName();
-								if(nodeName.equalsIgnoreCase(PARSING_TAG_LINK)) {
-									String tempStr = child.getFirstChild().getNodeValue();
-									if(tempStr != null)
-										link = new String( tempStr.getBytes() );
-								}
-								else if(nodeName.equalsIgnoreCase(PARSING_TAG_TITLE)) {
-									String tempStr = child.getFirstChild().getNodeValue();
-									if(tempStr != null) {
-										keyword = new String( tempStr.getBytes() );
-									}
-								} 
-								else if(nodeName.equalsIgnoreCase(PARSING_TAG_DESCRIPTION)) {
-									String tempStr = child.getFirstChild().getNodeValue();
-									if(tempStr != null) {
-										String[] strArray = tempStr.split(STRING_RSS_SPLIT_TAG);
-										if(strArray[0] != null && strArray[0].length() > 0) {
-											strArray[0] = Html.fromHtml(strArray[0]).toString();
-											strArray[0] = strArray[0].replaceAll(REG_EXP_REMOVE_TAG, "");
-											strArray[0] = strArray[0].replaceAll(REG_EXP_REMOVE_NEWLINE, "");
-											content = strArray[0];
-										}
-										if(strArray.length > 1 && strArray[1] != null && strArray[1].length() > 0) {
-											thumbnail = strArray[1];
-										}
-									}
-								}
-								else if(nodeName.equalsIgnoreCase(PARSING_TAG_AUTHOR)) {
-									if(child != null && child.getFirstChild() != null) {
-										String tempStr = child.getFirstChild().getNodeValue();
-										if(tempStr != null)
-											name = new String( tempStr.getBytes() );
-									}
-								}
-								else if(nodeName.equalsIgnoreCase(PARSING_TAG_PUBDATE)) {
-									if(child != null && child.getFirstChild() != null) {
-										String tempStr = child.getFirstChild().getNodeValue();
-										if(tempStr != null)
-											date = new String( tempStr.getBytes() );
-									}
-								}
-								else if(nodeName.equalsIgnoreCase(PARSING_TAG_GUID)) {
-									if(child != null && child.getFirstChild() != null) {
-										String tempStr = child.getFirstChild().getNodeValue();
-										if(tempStr != null)
-											guid = new String( tempStr.getBytes() );
-									}
-								}
-								else if(nodeName.equalsIgnoreCase(PARSING_TAG_APP_VERSION)) {
-									if(child != null && child.getFirstChild() != null) {
-										String tempStr = child.getFirstChild().getNodeValue();
-										if(tempStr != null && tempStr.length() > 0)
-											version = Integer.parseInt(tempStr);
-									}
-								}
-								else if(nodeName.contains(PARSING_TAG_THUMBNAIL)) {
-									try {
-										if(child != null && child.hasAttributes()) {
-											NamedNodeMap attrs = child.getAttributes();
-											for(int k=0; k<attrs.getLength(); k++) {
-												Node attr = attrs.item(k);
-												if(attr.getNodeName().equalsIgnoreCase(PARSING_TAG_URL)) {
-													thumbnail = attr.getNodeValue();
-												}
-											}
-										}
-									} catch(Exception e) {
-										thumbnail = null;
-									}
+				if(keyword!=null && link!=null)
+				{
+					FeedObject feed = new FeedObject(type, keyword, link, keyword, null, null);
+					feed.mDownloadStatus = FeedObject.CONTENT_DOWNLOAD_STATUS_INIT;
+					feed.setRankInfo(rankType, rankUpAndDown, commentCount);
+					feedList.add(feed);
+				}
 
-								}
-								else if(nodeName.contains(PARSING_TAG_ENCLOSURE)) {
-									try {
-										if(child != null && child.hasAttributes()) {
-											NamedNodeMap attrs = child.getAttributes();
-											for(int k=0; k<attrs.getLength(); k++) {
-												Node attr = attrs.item(k);
-												if(attr.getNodeName().equalsIgnoreCase(PARSING_TAG_URL)) {
-													thumbnail = attr.getNodeValue();
-												}
-											}
-										}
-									} catch(Exception e) {
-										thumbnail = null;
-									}
+				if(++count >= CpObj.mCachingCount) {		// Stop parsing if count has reached caching count
+					break;
+				}
+			}
+			event = parser.next();
+		}	// End of while loop
+	}
+
+	// <result/>[ <item/> {<R1/>{<K/><S/><V/>} <R2/> ...} ]
+	private void parseNaverRealtimeKeywords(CPObject CpObj, XmlPullParser parser, ArrayList<FeedObject> feedList) throws XmlPullParserException, IOException
+	{
+		int type = CpObj.mId;
+		int count = 0;
 
+		int event = parser.getEventType();
+		while(event != XmlPullParser.END_DOCUMENT)
+		{
+			if(event == XmlPullParser.START_TAG && PARSING_TAG_ITEM.equalsIgnoreCase(parser.getName()))
+			{
+				int depth = parser.getDepth();
+				while(nextChildTag(parser, depth))		// <Rn> : n-th R tag
+				{
+					String keyword = null;
+					int rankUpAndDown = 0;
+
+					int rDepth = parser.getDepth();
+					while(nextChildTag(parser, rDepth))		// <k> <s> <v>
+					{
+						String nodeName = parser.getName();
+						if(nodeName.equalsIgnoreCase(PARSING_TAG_K)) {
+							keyword = readText(parser);
+						}
+						else if(nodeName.equalsIgnoreCase(PARSING_TAG_V)) {
+							try {
+								String temp = readText(parser);
+								if(temp != null) {
+									rankUpAndDown = Integer.parseInt(temp) / RANK_MODIFIER_NAVER_REALTIME_KEYWORD;	// TODO:
+									if( rankUpAndDown > 10 ) rankUpAndDown = 10;
 								}
-								
-							}
-							catch(Exception e) {
-								Logs.d(TAG, e.getMessage()==null ? "Unknown error while parsing xml" : e.getMessage() );
-								e.printStackTrace();
-							}
-							
-						}	// End of for loop.... parsing each item
-						
-						if(link != null && keyword != null && content != null) 
-						{
-							StringBuilder sb = new StringBuilder();
-							if(guid != null) {
-								sb.append("rss_").append(removeSpecialChars(guid));
-							} 
-							else if(date != null) {
-								sb.append("rss_").append(date.replace(",", "").replace(":", "").trim());
-							} else {
-								String temp1 = null;
-								if(keyword.length() > 50) temp1 = keyword.substring(0, 50);
-								else temp1 = keyword;
-								temp1 = URLEncoder.encode(temp1, ENCODING_TYPE_UTF_8).replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
-								if(temp1.length() > PARSER_ID_SUBSTRING_MAX)
-									temp1 = temp1.substring(0, PARSER_ID_SUBSTRING_MAX - 1);
-								temp1 = temp1.trim();
-								sb.append("rss_").append(temp1);
-							}
-							
-							FeedObject feed = new FeedObject(type, sb.toString(), link, keyword, content, thumbnail);
-							feed.mDownloadStatus = FeedObject.CONTENT_DOWNLOAD_STATUS_INIT;
-							feed.setDate(date);
-							feed.setName(name);
-							if(CpObj.mParsingType == FeedObject.REQUEST_TYPE_NOTICE && version > 0)
-								feed.setVersion(version);
-							feedList.add(feed);
+							} catch (NumberFormatException e) {}
 						}
-						
-						if(i >= CpObj.mCachingCount - 1) {		// Break loop if count has reached caching count
-							break;
+						else {
+							skip(parser);
 						}
-					}	// End of for loop
+					}
 
-				}catch (Exception e) {
-					Logs.d(TAG, e.getMessage()==null ? "Unknown error while parsing xml" : e.getMessage() );
-					e.printStackTrace();
-					feedList = null;
+					if(keyword!=null)
+					{
+						FeedObject feed = new FeedObject(type, keyword, null, keyword, null, null);
+						feed.mDownloadStatus = FeedObject.CONTENT_DOWNLOAD_STATUS_INIT;
+						feed.setRankInfo(RANK_TYPE_NONE, rankUpAndDown, 0);
+						feedList.add(feed);
+					}
+
+					if(++count >= CpObj.mCachingCount) {		// Stop parsing if count has reached caching count
+						break;
+					}
+				}	// End of while loop
+
+				break;		// Only first <item> has keyword list
+			}
+			event = parser.next();
+		}	// End of while loop
+	}
+
+	// <result/>[ <item/> ]
+	private void parseNaverRelatedKeywords(CPObject CpObj, XmlPullParser parser, ArrayList<FeedObject> feedList) throws XmlPullParserException, IOException
+	{
+		int type = CpObj.mId;
+		int count = 0;
+
+		int event = parser.getEventType();
+		while(event != XmlPullParser.END_DOCUMENT)
+		{
+			if(event == XmlPullParser.START_TAG && PARSING_TAG_ITEM.equalsIgnoreCase(parser.getName()))
+			{
+				String keyword = readText(parser);
+				if(keyword!=null)
+				{
+					FeedObject feed = new FeedObject(type, keyword, null, keyword, null, null);
+					feedList.add(feed);
+				}
+
+				if(++count >= CpObj.mCachingCount) {		// Stop parsing if count has reached caching count
+					break;
+				}
+			}
+			event = parser.next();
+		}	// End of while loop
+	}
+
+	// <rss/>[ <channel/> {<image/>{<url/>} <item/>{<title/><link/><description/><author/><pubDate/>...} ...} ]
+	private void parseRss(CPObject CpObj, XmlPullParser parser, ArrayList<FeedObject> feedList) throws XmlPullParserException, IOException
+	{
+		int count = 0;
+		boolean logoParsed = false;
+		CpObj.mFeedTTL = 0;
+
+		int event = parser.getEventType();
+		while(event != XmlPullParser.END_DOCUMENT)
+		{
+			if(event == XmlPullParser.START_TAG)
+			{
+				String tagName = parser.getName();
+				if(PARSING_TAG_ITEM.equalsIgnoreCase(tagName))
+				{
+					FeedObject feed = parseRssItem(CpObj, parser);
+					if(feed != null)
+						feedList.add(feed);
+
+					if(++count >= CpObj.mCachingCount) {		// Stop parsing if count has reached caching count
+						break;
+					}
+				}
+				else if(PARSING_TAG_TTL.equalsIgnoreCase(tagName))
+				{
+					// <channel/><ttl/> : minutes to cache
+					String tempStr = readText(parser);
+					try {
+						if(tempStr != null)
+							CpObj.mFeedTTL = Integer.parseInt(tempStr.trim()) * 60;
+					} catch(NumberFormatException e) {
+						Logs.d(TAG, "# Invalid ttl : {}", tempStr);
+					}
+				}
+				else if(!logoParsed && PARSING_TAG_IMAGE.equalsIgnoreCase(tagName))
+				{
+					// Extract logo image
+					logoParsed = true;
+					int depth = parser.getDepth();
+					while(nextChildTag(parser, depth)) {
+						if(PARSING_TAG_URL.equalsIgnoreCase(parser.getName())) {
+							String tempStr = readText(parser);
+							if(tempStr != null)
+								CpObj.mLogoImage = tempStr;
+						} else {
+							skip(parser);
+						}
+					}
 				}
+			}
+			event = parser.next();
+		}	// End of while loop
+	}
+
+	private FeedObject parseRssItem(CPObject CpObj, XmlPullParser parser) throws XmlPullParserException, IOException
+	{
+		int version = 0;
+		String guid = null;
+		String name = null;
+		String date = null;
+		String link = null;
+		String keyword = null;
+		String content = null;
+		String thumbnail = null;
+
+		int depth = parser.getDepth();
+		while(nextChildTag(parser, depth))		// <title> <author> <link> <description> <pubDate>
+		{
+			String nodeName = parser.getName();
+			if(nodeName.equalsIgnoreCase(PARSING_TAG_LINK)) {
+				link = readText(parser);
+			}
+			else if(nodeName.equalsIgnoreCase(PARSING_TAG_TITLE)) {
+				keyword = readText(parser);
+			}
+			else if(nodeName.equalsIgnoreCase(PARSING_TAG_DESCRIPTION)) {
+				String tempStr = readText(parser);
+				if(tempStr != null) {
+					String[] strArray = PATTERN_RSS_SPLIT_TAG.split(tempStr);
+					if(strArray[0] != null && strArray[0].length() > 0) {
+						content = TextSanitizer.stripHtml(strArray[0]);
+					}
+					if(strArray.length > 1 && strArray[1] != null && strArray[1].length() > 0) {
+						thumbnail = strArray[1];
+					}
+				}
+			}
+			else if(nodeName.equalsIgnoreCase(PARSING_TAG_AUTHOR)) {
+				name = readText(parser);
+			}
+			else if(nodeName.equalsIgnoreCase(PARSING_TAG_PUBDATE)) {
+				date = readText(parser);
+			}
+			else if(nodeName.equalsIgnoreCase(PARSING_TAG_GUID)) {
+				guid = readText(parser);
+			}
+			else if(nodeName.equalsIgnoreCase(PARSING_TAG_APP_VERSION)) {
+				try {
+					String tempStr = readText(parser);
+					if(tempStr != null)
+						version = Integer.parseInt(tempStr);
+				} catch (NumberFormatException e) {}
+			}
+			else if(nodeName.contains(PARSING_TAG_THUMBNAIL) || nodeName.contains(PARSING_TAG_ENCLOSURE)) {
+				String url = getAttributeValue(parser, PARSING_TAG_URL);
+				if(url != null)
+					thumbnail = url;
+				skip(parser);
+			}
+			else {
+				skip(parser);
+			}
+		}	// End of while loop.... parsing each item
+
+		if(link == null || keyword == null || content == null)
+			return null;
+
+		StringBuilder sb = new StringBuilder();
+		if(guid != null) {
+			sb.append("rss_").append(removeSpecialChars(guid));
+		}
+		else if(date != null) {
+			sb.append("rss_").append(date.replace(",", "").replace(":", "").trim());
+		} else {
+			String temp1 = null;
+			if(keyword.length() > 50) temp1 = keyword.substring(0, 50);
+			else temp1 = keyword;
+			temp1 = URLEncoder.encode(temp1, ENCODING_TYPE_UTF_8).replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+			if(temp1.length() > PARSER_ID_SUBSTRING_MAX)
+				temp1 = temp1.substring(0, PARSER_ID_SUBSTRING_MAX - 1);
+			temp1 = temp1.trim();
+			sb.append("rss_").append(temp1);
+		}
+
+		FeedObject feed = new FeedObject(CpObj.mId, sb.toString(), link, keyword, content, thumbnail);
+		feed.mDownloadStatus = FeedObject.CONTENT_DOWNLOAD_STATUS_INIT;
+		feed.setDate(date);
+		feed.setName(name);
+		if(CpObj.mParsingType == FeedObject.REQUEST_TYPE_NOTICE && version > 0)
+			feed.setVersion(version);
+		return feed;
+	}
+
+	/**
+	 * Move to next child element of the element at given depth.
+	 * Returns false when end tag of the element is reached.
+	 */
+	private static boolean nextChildTag(XmlPullParser parser, int depth) throws XmlPullParserException, IOException
+	{
+		while(true) {
+			int event = parser.next();
+			if(event == XmlPullParser.END_DOCUMENT)
+				return false;
+			if(event == XmlPullParser.END_TAG && parser.getDepth() == depth)
+				return false;
+			if(event == XmlPullParser.START_TAG && parser.getDepth() == depth + 1)
+				return true;
+		}
+	}
+
+	/**
+	 * Returns text of current element (text in child elements is ignored).
+	 * Parser stays at the end tag of current element.
+	 */
+	private static String readText(XmlPullParser parser) throws XmlPullParserException, IOException
+	{
+		StringBuilder sb = null;
+		int depth = parser.getDepth();
+		while(true) {
+			int event = parser.next();
+			if(event == XmlPullParser.END_DOCUMENT)
+				break;
+			if(event == XmlPullParser.END_TAG && parser.getDepth() == depth)
 				break;
-			}	// End of default block
+			if(event == XmlPullParser.TEXT && parser.getDepth() == depth) {
+				if(sb == null) sb = new StringBuilder();
+				sb.append(parser.getText());
+			}
+		}
+		if(sb == null || sb.length() < 1)
+			return null;
+		return sb.toString();
+	}
 
-		}	// End of switch(type)
-		
-		return feedList;
-		
-	}	// End of parseResultString()
-	
-	public static String removeSpecialChars(String str) {
-		String match = "[^\uAC00-\uD7A3xfe0-9a-zA-Z\\s]";
-		str =str.replaceAll(match, " ");
-		return str;
+	/**
+	 * Skip current element and its children.
+	 */
+	private static void skip(XmlPullParser parser) throws XmlPullParserException, IOException
+	{
+		int depth = parser.getDepth();
+		while(true) {
+			int event = parser.next();
+			if(event == XmlPullParser.END_DOCUMENT)
+				return;
+			if(event == XmlPullParser.END_TAG && parser.getDepth() == depth)
+				return;
+		}
+	}
+
+	private static String getAttributeValue(XmlPullParser parser, String attrName)
+	{
+		for(int i=0; i<parser.getAttributeCount(); i++) {
+			if(attrName.equalsIgnoreCase(parser.getAttributeName(i)))
+				return parser.getAttributeValue(i);
+		}
+		return null;
 	}
 
-	
 }
 
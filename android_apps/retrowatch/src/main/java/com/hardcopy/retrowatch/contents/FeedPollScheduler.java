@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hardcopy.retrowatch.contents;
+
+import com.hardcopy.retrowatch.contents.objects.CPObject;
+import com.hardcopy.retrowatch.utils.Logs;
+
+/**
+ * Decides update interval of each content provider.
+ * Interval follows the observed change cadence of the feed (EWMA of intervals between changes),
+ * never goes below freshness lifetime declared by server (Cache-Control, Expires, RSS ttl),
+ * and is kept in bounds derived from user setting (CPObject.mTTL).
+ * Providers blocked by FeedCircuitBreaker are skipped.
+ */
+public class FeedPollScheduler {
+	
+	private static final String TAG = "FeedPollScheduler";
+	
+	public static final int POLL_INTERVAL_MIN = 5*60;			// Absolute bounds in second
+	public static final int POLL_INTERVAL_MAX = 24*60*60;
+	public static final int TTL_BOUND_FACTOR = 4;				// Interval is kept in [mTTL / 4, mTTL * 4]
+	
+	private static final float EWMA_WEIGHT = 0.3f;				// Weight of new sample
+	
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	public static boolean isUpdateRequired(CPObject cp, long now) {
+		if(cp.mBreakerState == FeedCircuitBreaker.STATE_OPEN && cp.mBreakerOpenUntil > now)
+			return false;		// Failing provider. Wait until cool-down time
+		return now - cp.mLastUpdated > getPollInterval(cp) * 1000L;
+	}
+	
+	// Effective update interval in second
+	public static int getPollInterval(CPObject cp) {
+		return (cp.mPollInterval > 0 ? cp.mPollInterval : cp.mTTL);
+	}
+	
+	/**
+	 * Learn from response of a content provider and recalculate interval
+	 * @param cp				content provider
+	 * @param changed			true if items are added, changed or removed
+	 * @param serverMaxAge		freshness lifetime declared in HTTP header (second). -1 if not declared
+	 * @param now				response time in milli-second
+	 */
+	public static void onFeedPolled(CPObject cp, boolean changed, int serverMaxAge, long now) {
+		cp.mServerMaxAge = serverMaxAge;
+		
+		if(cp.mLastChangedTime <= 0) {
+			// First poll. Start from user setting and measure from now.
+			cp.mChangeInterval = cp.mTTL * 1000L;
+			cp.mLastChangedTime = now;
+		} else if(changed) {
+			cp.mChangeInterval = average(cp.mChangeInterval, now - cp.mLastChangedTime);
+			cp.mLastChangedTime = now;
+		} else {
+			// Feed is quiet longer than expected. Let the average grow.
+			long quiet = now - cp.mLastChangedTime;
+			if(quiet > cp.mChangeInterval)
+				cp.mChangeInterval = average(cp.mChangeInterval, quiet);
+		}
+		
+		cp.mPollInterval = calculateInterval(cp);
+		Logs.d(TAG, "# Poll interval : type={}, interval={}s, changed={}, change interval={}s, server={}s, ttl={}s", 
+				cp.mId, cp.mPollInterval, changed, cp.mChangeInterval/1000, serverMaxAge, cp.mFeedTTL);
+	}
+	
+	/**
+	 * Change history is saved in content_provider table as "last changed time,change interval" string
+	 */
+	public static String encodeState(CPObject cp) {
+		return cp.mLastChangedTime + "," + cp.mChangeInterval;
+	}
+	
+	public static void decodeState(CPObject cp, String state) {
+		cp.mLastChangedTime = 0L;
+		cp.mChangeInterval = 0L;
+		if(state == null || state.length() < 1)
+			return;
+		
+		String[] values = state.split(",");
+		try {
+			cp.mLastChangedTime = Long.parseLong(values[0]);
+			if(values.length > 1)
+				cp.mChangeInterval = Long.parseLong(values[1]);
+		} catch(NumberFormatException e) {
+			cp.mLastChangedTime = 0L;
+			cp.mChangeInterval = 0L;
+		}
+		cp.mPollInterval = calculateInterval(cp);
+	}
+	
+	public static int getLowerBound(CPObject cp) {
+		return Math.max(POLL_INTERVAL_MIN, cp.mTTL / TTL_BOUND_FACTOR);
+	}
+	
+	public static int getUpperBound(CPObject cp) {
+		return Math.max(getLowerBound(cp), Math.min(POLL_INTERVAL_MAX, cp.mTTL * TTL_BOUND_FACTOR));
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	private static long average(long average, long sample) {
+		if(average <= 0)
+			return sample;
+		return (long)(EWMA_WEIGHT * sample + (1 - EWMA_WEIGHT) * average);
+	}
+	
+	private static int calculateInterval(CPObject cp) {
+		int interval = cp.mTTL;
+		if(cp.mChangeInterval > 0)
+			interval = (int)(cp.mChangeInterval / 2000);		// Poll twice per change
+		
+		int serverTTL = Math.max(cp.mServerMaxAge, cp.mFeedTTL);
+		if(serverTTL > interval)
+			interval = serverTTL;		// Server says it is still fresh
+		
+		return Math.min(getUpperBound(cp), Math.max(getLowerBound(cp), interval));
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hardcopy.retrowatch.contents;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.accounts.AccountManagerCallback;
+import android.accounts.AccountManagerFuture;
+import android.accounts.OnAccountsUpdateListener;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.hardcopy.retrowatch.utils.Logs;
+
+/**
+ * Keeps Gmail unread count of primary inbox up to date without polling.
+ * Google account is resolved once and cached until the address or the account list changes.
+ * A ContentObserver on the labels URI triggers a provider query only when Gmail reports a change,
+ * and listener is called only when the count really changed.
+ * Every query runs on its own worker thread.
+ */
+public class GmailUnreadObserver {
+	
+	private static final String TAG = "GmailUnreadObserver";
+	
+	private static final String ACCOUNT_TYPE_GOOGLE = "com.google";
+	private static final String[] FEATURES_MAIL = {"service_mail"};
+	
+	// Gmail changes labels several times while syncing. Query once after it settles.
+	private static final long QUERY_DELAY = 500;
+	
+	public static final int UNREAD_UNKNOWN = -1;
+	
+	private final Context mContext;
+	private final IGmailUnreadListener mListener;
+	private final HandlerThread mThread;
+	private final Handler mHandler;
+	private final ContentObserver mLabelsObserver;
+	
+	// Accessed on worker thread only
+	private String mAddress = null;
+	private Account mAccount = null;			// Cached result of account enumeration
+	private Uri mObservedUri = null;
+	private boolean mAccountsListenerAdded = false;
+	private boolean mForceNotify = true;
+	
+	private volatile int mUnreadCount = UNREAD_UNKNOWN;
+	
+	
+	public GmailUnreadObserver(Context c, IGmailUnreadListener l) {
+		mContext = c;
+		mListener = l;
+		mThread = new HandlerThread(TAG);
+		mThread.start();
+		mHandler = new Handler(mThread.getLooper());
+		mLabelsObserver = new ContentObserver(mHandler) {
+			@Override
+			public void onChange(boolean selfChange) {
+				scheduleQuery();
+			}
+		};
+	}
+	
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	/**
+	 * Set (or change) Gmail address to watch. Resolves the account and queries the count once.
+	 */
+	public void setAddress(final String address) {
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				mAddress = address;
+				mForceNotify = true;
+				invalidateAccount();
+				resolveAccount();
+			}
+		});
+	}
+	
+	/**
+	 * Query again with cached account. Normally not needed, changes are observed.
+	 */
+	public void requery() {
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				if(mAccount == null)
+					resolveAccount();
+				else
+					queryUnreadCount();
+			}
+		});
+	}
+	
+	/**
+	 * @return	last known unread count, UNREAD_UNKNOWN before the first query
+	 */
+	public int getUnreadCount() {
+		return mUnreadCount;
+	}
+	
+	public void stop() {
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				invalidateAccount();
+				if(mAccountsListenerAdded) {
+					try {
+						AccountManager.get(mContext).removeOnAccountsUpdatedListener(mAccountsListener);
+					} catch(Exception e) {
+						e.printStackTrace();
+					}
+					mAccountsListenerAdded = false;
+				}
+				mThread.quit();
+			}
+		});
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	private void invalidateAccount() {
+		mHandler.removeCallbacks(mQueryRunnable);
+		if(mObservedUri != null) {
+			mContext.getContentResolver().unregisterContentObserver(mLabelsObserver);
+			mObservedUri = null;
+		}
+		mAccount = null;
+	}
+	
+	private void resolveAccount() {
+		if(mAddress == null || mAddress.isEmpty()) {
+			publish(0);
+			return;
+		}
+		
+		// NOTE: This can throw SecurityException (GET_ACCOUNTS) on modern Android if not granted.
+		try {
+			if(!mAccountsListenerAdded) {
+				AccountManager.get(mContext).addOnAccountsUpdatedListener(mAccountsListener, mHandler, false);
+				mAccountsListenerAdded = true;
+			}
+			AccountManager.get(mContext).getAccountsByTypeAndFeatures(ACCOUNT_TYPE_GOOGLE, FEATURES_MAIL,
+					new AccountManagerCallback<Account[]>() {
+				@Override
+				public void run(AccountManagerFuture<Account[]> future) {
+					Account[] accounts = null;
+					try {
+						accounts = future.getResult();
+					} catch (SecurityException se) {
+						Logs.e(TAG, "Gmail query blocked by permission: {}", se);
+					} catch (Exception e) {
+						Logs.e(TAG, "Account query failed: {}", e);
+					}
+					onAccountResults(accounts);
+				}
+			}, mHandler);
+		} catch (SecurityException se) {
+			Logs.e(TAG, "Gmail query blocked by permission: {}", se);
+			publish(0);
+		}
+	}
+	
+	private void onAccountResults(Account[] accounts) {
+		if(accounts != null && mAddress != null) {
+			for(Account account : accounts) {
+				if(account.name.equalsIgnoreCase(mAddress)) {
+					mAccount = account;
+					break;
+				}
+			}
+		}
+		if(mAccount == null) {
+			publish(0);
+			return;
+		}
+		
+		Uri labelsUri = GmailContract.Labels.getLabelsUri(mAccount.name);
+		try {
+			mContext.getContentResolver().registerContentObserver(labelsUri, true, mLabelsObserver);
+			mObservedUri = labelsUri;
+		} catch (SecurityException se) {
+			Logs.e(TAG, "Cannot observe Gmail labels: {}", se);
+		}
+		queryUnreadCount();
+	}
+	
+	private void scheduleQuery() {
+		mHandler.removeCallbacks(mQueryRunnable);
+		mHandler.postDelayed(mQueryRunnable, QUERY_DELAY);
+	}
+	
+	private void queryUnreadCount() {
+		if(mAccount == null)
+			return;
+		
+		int unreadCount = 0;
+		Cursor labelsCursor = null;
+		try {
+			labelsCursor = mContext.getContentResolver().query(
+					GmailContract.Labels.getLabelsUri(mAccount.name), 
+					new String[] {GmailContract.Labels.CANONICAL_NAME, GmailContract.Labels.NUM_UNREAD_CONVERSATIONS}, 
+					null, null, null);
+			if (labelsCursor != null) {
+				while (labelsCursor.moveToNext()) {
+					if (GmailContract.Labels.LabelCanonicalNames.CANONICAL_NAME_INBOX_CATEGORY_PRIMARY.equals(labelsCursor.getString(0))) {
+						unreadCount = labelsCursor.getInt(1);
+						break;
+					}
+				}
+			}
+		} catch (SecurityException se) {
+			Logs.e(TAG, "Gmail query blocked by permission: {}", se);
+		} finally {
+			if(labelsCursor != null)
+				labelsCursor.close();
+		}
+		publish(unreadCount);
+	}
+	
+	private void publish(int unreadCount) {
+		if(unreadCount == mUnreadCount && !mForceNotify)
+			return;
+		mForceNotify = false;
+		mUnreadCount = unreadCount;
+		Logs.d(TAG, "# Gmail unread count = {}", unreadCount);
+		mListener.OnGmailUnreadChanged(unreadCount);
+	}
+	
+	private final Runnable mQueryRunnable = new Runnable() {
+		@Override
+		public void run() {
+			queryUnreadCount();
+		}
+	};
+	
+	private final OnAccountsUpdateListener mAccountsListener = new OnAccountsUpdateListener() {
+		@Override
+		public void onAccountsUpdated(Account[] accounts) {
+			// Cached account may be removed or added
+			invalidateAccount();
+			resolveAccount();
+		}
+	};
+	
+	
+	public interface IGmailUnreadListener {
+		public void OnGmailUnreadChanged(int unreadCount);
+	}
+	
+}
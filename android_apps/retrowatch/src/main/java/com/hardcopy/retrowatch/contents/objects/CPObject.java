@@ -42,6 +42,19 @@ public class CPObject {
 	
 	public int mNewItemCount = 0;
 	public String mLogoImage = null;
+	public long mLastSeenTime = 0L;		// Last successful update. Cached items were in the feed at this time. In milli-second
+	
+	// Adaptive polling. Change history is saved in DB, others are runtime only (see FeedPollScheduler)
+	public int mPollInterval = 0;			// Effective update interval in second. 0 means mTTL
+	public int mServerMaxAge = -1;		// Cache-Control max-age or Expires of last response in second
+	public int mFeedTTL = 0;				// RSS <ttl> in second
+	public long mLastChangedTime = 0L;	// Last time when items have changed. In milli-second
+	public long mChangeInterval = 0L;		// EWMA of intervals between changes. In milli-second
+	
+	// Circuit breaker. Saved in DB (see FeedCircuitBreaker)
+	public int mFailureCount = 0;			// Consecutive failures
+	public int mBreakerState = 0;			// FeedCircuitBreaker.STATE_XXX
+	public long mBreakerOpenUntil = 0L;	// In milli-second
 	
 	public void softCopy(CPObject cp) {
 		this.mURL = cp.mURL;
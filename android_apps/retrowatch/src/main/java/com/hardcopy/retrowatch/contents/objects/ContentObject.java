@@ -16,6 +16,8 @@
 
 package com.hardcopy.retrowatch.contents.objects;
 
+import com.hardcopy.retrowatch.utils.LatencyTracer;
+
 public class ContentObject {
 	
 	public static final int CONTENT_TYPE_NOTIFICATION = 1;
@@ -57,6 +59,7 @@ public class ContentObject {
 	public String mFilteredString;		// String to be shown on remote device
 	public String mExtraData = null;	// Extra data defined by each content type
 	public String mPackageName = null;
+	public LatencyTracer.Trace mTrace = null;	// Latency trace of the notification waiting to be sent
 	
 	
 	public ContentObject(int type, int id, String strOrigin, String strFiltered) {
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hardcopy.retrowatch.contents.objects;
+
+import java.util.ArrayList;
+
+/**
+ * Result of merging freshly parsed feed items of one content provider with the DB.
+ * Unchanged items are not rewritten, so only added/updated/removed items cost a write.
+ */
+public class FeedDiffObject {
+	public int mType = FeedObject.REQUEST_TYPE_NONE;	// Content provider ID
+	
+	public ArrayList<FeedObject> mAdded = new ArrayList<FeedObject>();		// Not in DB before
+	public ArrayList<FeedObject> mUpdated = new ArrayList<FeedObject>();	// Same ID, contents changed
+	public ArrayList<String> mRemovedIds = new ArrayList<String>();		// Vanished from the feed
+	public int mUnchangedCount = 0;
+	
+	public FeedDiffObject(int type) {
+		mType = type;
+	}
+	
+	public int getNewItemCount() {
+		return mAdded.size();
+	}
+	
+	public boolean hasChanges() {
+		return mAdded.size() > 0 || mUpdated.size() > 0 || mRemovedIds.size() > 0;
+	}
+	
+	@Override
+	public String toString() {
+		return "type=" + mType + ", added=" + mAdded.size() + ", updated=" + mUpdated.size()
+				+ ", removed=" + mRemovedIds.size() + ", unchanged=" + mUnchangedCount;
+	}
+}
@@ -75,6 +75,7 @@ public class FeedObject {
 	public int mVersion = 0;
 	
 	public String mFullSizeImageURL = null;
+	public long mFingerprint = 0L;		// SimHash of text. 0 if not calculated (FeedDeduplicator)
 	
 	// Constructor
 	public FeedObject(int type, String id, String link, String keyword, String content, String thumbnail) {
@@ -114,7 +115,7 @@ public class FeedObject {
 	}
 	
 	public void printLog() {
-		Logs.d(TAG, "[+] mType = " + mType);
-		Logs.d(TAG, "[+] mId = " + mId);
+		Logs.d(TAG, "[+] mType = {}", mType);
+		Logs.d(TAG, "[+] mId = {}", mId);
 	}
 }
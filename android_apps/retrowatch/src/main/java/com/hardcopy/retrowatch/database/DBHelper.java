@@ -17,9 +17,12 @@
 package com.hardcopy.retrowatch.database;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 
 import com.hardcopy.retrowatch.connectivity.HttpInterface;
 import com.hardcopy.retrowatch.contents.objects.CPObject;
+import com.hardcopy.retrowatch.contents.objects.FeedDiffObject;
 import com.hardcopy.retrowatch.contents.objects.FeedObject;
 import com.hardcopy.retrowatch.contents.objects.FilterObject;
 import com.hardcopy.retrowatch.utils.Logs;
@@ -27,18 +30,18 @@ import com.hardcopy.retrowatch.utils.Logs;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.DatabaseUtils.InsertHelper;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 
 public class DBHelper {
 	
 	private static final String TAG  ="DBHelper";
 	
-	private static final int DATABASE_VERSION = 4;
+	private static final int DATABASE_VERSION = 8;
 	public static final String DATABASE_NAME = "retrowatch";
 
 	//----------- Filters table parameters
@@ -82,6 +85,9 @@ public class DBHelper {
 													+ KEY_FILTER_ARG3 + " Text"
 													+ ")";
 	private static final String DATABASE_DROP_FILTERS_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME_FILTERS;
+	// deleteFilterWithType(), deleteFilterWithPackageName()
+	private static final String DATABASE_CREATE_FILTERS_TYPE_INDEX = "CREATE INDEX IF NOT EXISTS idx_filters_type_original ON "
+													+ TABLE_NAME_FILTERS + "(" + KEY_FILTER_TYPE + ", " + KEY_FILTER_ORIGINAL + ")";
 	//----------- End of Filters table parameters
 
 	//----------- Feed Item table
@@ -106,6 +112,7 @@ public class DBHelper {
 	public static final String KEY_FEED_ARG1 = "arg1";		// int 
 	public static final String KEY_FEED_ARG2 = "arg2";		// string
 	public static final String KEY_FEED_ARG3 = "arg3";		// string
+	public static final String KEY_FEED_INSERTED = "inserted";		// int		last time the item was inserted or changed, in milli-second
 	
 	public static final int INDEX_FEED_ID = 0;				// int
 	public static final int INDEX_FEED_TYPE = 1;		// int			not null
@@ -126,6 +133,7 @@ public class DBHelper {
 	public static final int INDEX_FEED_ARG1 = 16;		// int 
 	public static final int INDEX_FEED_ARG2 = 17;		// string
 	public static final int INDEX_FEED_ARG3 = 18;		// string
+	public static final int INDEX_FEED_INSERTED = 19;		// int
 	
 	private static final String DATABASE_CREATE_FEED = "CREATE TABLE " +TABLE_NAME_FEED_ITEM+ "("
 													+ KEY_FEED_ID +" Integer primary key autoincrement, "
@@ -146,9 +154,41 @@ public class DBHelper {
 													+ KEY_FEED_ARG0 + " integer, " 	// Keyword result uses this field as <Rank type>
 													+ KEY_FEED_ARG1 + " integer, "	// Notice uses this as <version info>
 													+ KEY_FEED_ARG2 + " Text, "		// 9 Gag object uses this field as <Full size image url>
-													+ KEY_FEED_ARG3 + " Text"
+													+ KEY_FEED_ARG3 + " Text, "
+													+ KEY_FEED_INSERTED + " Integer"		// Used by eviction
 													+ ")";
 	private static final String DATABASE_DROP_FEED_ITEM_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME_FEED_ITEM;
+	// An item is identified by (content provider, ID string). Used by mergeFeedItems()
+	private static final String DATABASE_CREATE_FEED_ID_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS idx_feed_type_idstring ON "
+													+ TABLE_NAME_FEED_ITEM + "(" + KEY_FEED_TYPE + ", " + KEY_FEED_IDSTRING + ")";
+	// Queries on type (selectFeed, deleteFeedWithType, getFeedCountWithType) use the leading column of above index.
+	// deleteFeedWithID() looks up ID string only.
+	private static final String DATABASE_CREATE_FEED_IDSTRING_INDEX = "CREATE INDEX IF NOT EXISTS idx_feed_idstring ON "
+													+ TABLE_NAME_FEED_ITEM + "(" + KEY_FEED_IDSTRING + ")";
+	// evictFeedOlderThan()
+	private static final String DATABASE_CREATE_FEED_INSERTED_INDEX = "CREATE INDEX IF NOT EXISTS idx_feed_type_inserted ON "
+													+ TABLE_NAME_FEED_ITEM + "(" + KEY_FEED_TYPE + ", " + KEY_FEED_INSERTED + ")";
+	private static final String SQL_NOW_MILLIS = "(CAST(strftime('%s', 'now') AS INTEGER) * 1000)";
+	
+	// Precompiled statements. Column order of binding is same with the column list.
+	private static final String SQL_INSERT_FEED = "INSERT INTO " + TABLE_NAME_FEED_ITEM + "("
+													+ KEY_FEED_TYPE + ", " + KEY_FEED_STATUS + ", " + KEY_FEED_IDSTRING + ", "
+													+ KEY_FEED_NAME + ", " + KEY_FEED_LINK + ", " + KEY_FEED_KEYWORD + ", "
+													+ KEY_FEED_CONTENT + ", " + KEY_FEED_THUMBNAILURL + ", " + KEY_FEED_RANK + ", "
+													+ KEY_FEED_CLICK + ", " + KEY_FEED_ARG0 + ", " + KEY_FEED_ARG1 + ", "
+													+ KEY_FEED_ARG2 + ", " + KEY_FEED_DATE + ", " + KEY_FEED_INSERTED
+													+ ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " + SQL_NOW_MILLIS + ")";
+	private static final String SQL_UPDATE_FEED = "UPDATE " + TABLE_NAME_FEED_ITEM + " SET "
+													+ KEY_FEED_TYPE + "=?, " + KEY_FEED_STATUS + "=?, " + KEY_FEED_IDSTRING + "=?, "
+													+ KEY_FEED_NAME + "=?, " + KEY_FEED_LINK + "=?, " + KEY_FEED_KEYWORD + "=?, "
+													+ KEY_FEED_CONTENT + "=?, " + KEY_FEED_THUMBNAILURL + "=?, " + KEY_FEED_RANK + "=?, "
+													+ KEY_FEED_CLICK + "=?, " + KEY_FEED_ARG0 + "=?, " + KEY_FEED_ARG1 + "=?, "
+													+ KEY_FEED_ARG2 + "=?, " + KEY_FEED_DATE + "=COALESCE(?, " + KEY_FEED_DATE + "), "	// Keep date if null
+													+ KEY_FEED_INSERTED + "=" + SQL_NOW_MILLIS
+													+ " WHERE " + KEY_FEED_ID + "=?";
+	private static final String SQL_DELETE_FEED_ROW = "DELETE FROM " + TABLE_NAME_FEED_ITEM + " WHERE " + KEY_FEED_ID + "=?";
+	private static final String SQL_COUNT_FEED_WITH_TYPE = "SELECT count(*) FROM " + TABLE_NAME_FEED_ITEM + " WHERE " + KEY_FEED_TYPE + "=?";
+	private static final int FEED_BIND_COUNT = 14;		// Bind index of WHERE clause in update statement is FEED_BIND_COUNT + 1
 	//----------- End of Feed table parameters
 	
 	//----------- Content Provider table
@@ -176,6 +216,7 @@ public class DBHelper {
 	public static final String KEY_CP_ARG1 = "arg1";		// int 
 	public static final String KEY_CP_ARG2 = "arg2";		// string
 	public static final String KEY_CP_ARG3 = "arg3";		// string
+	public static final String KEY_CP_POLL_STATE = "pollstate";		// string	FeedPollScheduler.encodeState()
 	
 	public static final int INDEX_CP_ID = 0;					// int
 	public static final int INDEX_CP_URL  = 1;				// String
@@ -199,6 +240,7 @@ public class DBHelper {
 	public static final int INDEX_CP_ARG1 = 19;		// int 
 	public static final int INDEX_CP_ARG2 = 20;		// string
 	public static final int INDEX_CP_ARG3 = 21;		// string
+	public static final int INDEX_CP_POLL_STATE = 22;		// string
 	
 	private static final String DATABASE_CREATE_CP = "CREATE TABLE " +TABLE_NAME_CONTENT_PROVIDER+ "("
 													+ KEY_CP_ID +" Integer primary key autoincrement, "
@@ -220,9 +262,10 @@ public class DBHelper {
 													+ KEY_CP_SYS_PROP + " Integer, "
 													+ KEY_CP_WIDGET_ITEM + " Integer, "
 													+ KEY_CP_ARG0 + " integer, "						// New item count
-													+ KEY_CP_ARG1 + " integer, "
+													+ KEY_CP_ARG1 + " integer, "						// Circuit breaker : consecutive failures
 													+ KEY_CP_ARG2 + " Text, "			// Logo image URL
-													+ KEY_CP_ARG3 + " Text"
+													+ KEY_CP_ARG3 + " Text, "			// Circuit breaker : state
+													+ KEY_CP_POLL_STATE + " Text"		// Adaptive polling : change history
 													+ ")";
 	private static final String DATABASE_DROP_CONTENT_PROVIDER_TABLE = "DROP TABLE IF EXISTS " + TABLE_NAME_CONTENT_PROVIDER;
 	//----------- End of Content provider table parameters
@@ -233,6 +276,12 @@ public class DBHelper {
 	private SQLiteDatabase mDb;
 	private DatabaseHelper mDbHelper;
 	
+	// Compiled once per opened DB, and used in synchronized(mDb) block only
+	private SQLiteStatement mInsertFeedStatement;
+	private SQLiteStatement mUpdateFeedStatement;
+	private SQLiteStatement mDeleteFeedRowStatement;
+	private SQLiteStatement mCountFeedStatement;
+	
 	// Constructor
 	public DBHelper(Context context) {
 		this.mContext = context;
@@ -258,6 +307,7 @@ public class DBHelper {
 	
 	// Terminate DB
 	public void close() {
+		closeStatements();
 		if(mDb != null) {
 			mDb.close();
 			mDb = null;
@@ -289,9 +339,9 @@ public class DBHelper {
 //		insertValues.put(KEY_FILTER_ARG2, "");
 //		insertValues.put(KEY_FILTER_ARG3, "");
 		
-		Logs.d(TAG, "+ Insert filter: type="+filter.mType+", icon="+filter.mIconType
-				+", compare="+filter.mCompareType+", replace type"+filter.mReplaceType
-				+", original="+filter.mOriginalString+", replace="+filter.mReplaceString);
+		Logs.d(TAG, "+ Insert filter: type={}, icon={}, compare={}, replace type={}, original={}, replace={}",
+				filter.mType, filter.mIconType, filter.mCompareType, filter.mReplaceType,
+				filter.mOriginalString, filter.mReplaceString);
 		
 		synchronized (mDb) {
 			if(mDb == null) 
@@ -306,7 +356,7 @@ public class DBHelper {
 				|| feed.mId==null || feed.mId.length() < 1)
 			return -1;
 		
-		Logs.d(TAG, "# insert new content item : type = "+feed.mType);
+		Logs.d(TAG, "# insert new content item : type = {}", feed.mType);
 		
 		boolean isDataExist = false;
 		ContentValues insertInitialValues = new ContentValues();
@@ -338,6 +388,7 @@ public class DBHelper {
 		insertInitialValues.put(KEY_FEED_ARG0, feed.mRankType);
 		insertInitialValues.put(KEY_FEED_ARG1, feed.mVersion);
 		insertInitialValues.put(KEY_FEED_ARG2, feed.mFullSizeImageURL);
+		insertInitialValues.put(KEY_FEED_INSERTED, System.currentTimeMillis());
 		
 		synchronized (mDb) {
 			if(isDataExist == false) return -1;
@@ -352,7 +403,7 @@ public class DBHelper {
 		if(cp.mName==null || cp.mName.length() < 1)
 			return -1;
 		
-		Logs.d(TAG, "# insert new content provider : type = "+cp.mParsingType);
+		Logs.d(TAG, "# insert new content provider : type = {}", cp.mParsingType);
 		
 		boolean isDataExist = false;
 		ContentValues insertInitialValues = new ContentValues();
@@ -398,85 +449,205 @@ public class DBHelper {
 
 	}
 	
-	public boolean insertBulkItems(ArrayList<FeedObject> feedList) 
+	//----------------------------------------------------------------------------------
+	// Merge
+	//----------------------------------------------------------------------------------
+	private static final String[] MERGE_COLUMNS = new String[] {
+		KEY_FEED_ID, KEY_FEED_IDSTRING, KEY_FEED_NAME, KEY_FEED_LINK, KEY_FEED_KEYWORD, KEY_FEED_CONTENT,
+		KEY_FEED_THUMBNAILURL, KEY_FEED_DATE, KEY_FEED_RANK, KEY_FEED_CLICK, KEY_FEED_ARG0, KEY_FEED_ARG1, KEY_FEED_ARG2
+	};
+
+	/**
+	 * Merge parsed feed items of a content provider into DB in a single transaction.
+	 * New items are inserted, changed items are updated in place, unchanged items are not touched
+	 * and items which are not in the list anymore are deleted. Insert time is stamped on
+	 * inserted and changed rows only, so unchanged items cost no write.
+	 * @param type		content provider ID
+	 * @param feedList	parsed items. First one is recent one.
+	 * @return			diff result, or null if transaction failed
+	 */
+	public FeedDiffObject mergeFeedItems(int type, ArrayList<FeedObject> feedList)
 	{
+		if(feedList == null)
+			return null;
+
 		long start = System.currentTimeMillis();
 		int time = (int)(start / 1000);
-		if(feedList==null || feedList.size()<1) 
-			return false;
-		
-		Logs.d(TAG, "# Insert bulk : type="+feedList.get(0).mType+", item count = "+feedList.size());
+		FeedDiffObject diff = new FeedDiffObject(type);
 
-		InsertHelper iHelp = new InsertHelper(mDb, TABLE_NAME_FEED_ITEM);
-		int ktype 		= iHelp.getColumnIndex(KEY_FEED_TYPE);
-		int kstatus 	= iHelp.getColumnIndex(KEY_FEED_STATUS);
-		int kid 			= iHelp.getColumnIndex(KEY_FEED_IDSTRING);
-		int kname 			= iHelp.getColumnIndex(KEY_FEED_NAME);
-		int klink 		= iHelp.getColumnIndex(KEY_FEED_LINK);
-		int kkeyword 	= iHelp.getColumnIndex(KEY_FEED_KEYWORD);
-		int kcontent 	= iHelp.getColumnIndex(KEY_FEED_CONTENT);
-		int kthumbnail 	= iHelp.getColumnIndex(KEY_FEED_THUMBNAILURL);
-		int kdate 			= iHelp.getColumnIndex(KEY_FEED_DATE);
-		int krank 			= iHelp.getColumnIndex(KEY_FEED_RANK);
-		int kclick 			= iHelp.getColumnIndex(KEY_FEED_CLICK);
-		int kranktype	= iHelp.getColumnIndex(KEY_FEED_ARG0);
-		int kversion	= iHelp.getColumnIndex(KEY_FEED_ARG1);
-		int kfullimage	= iHelp.getColumnIndex(KEY_FEED_ARG2);
-		
 		synchronized (mDb) {
-			if(mDb == null) return false;
-			try
-			{
-				mDb.beginTransaction();
-				// First one is recent one. So insert oldest first.
-				for(int i = feedList.size()-1 ; -1<i ; i--)
-				{
-					FeedObject feed = feedList.get(i);
-					// need to tell the helper you are inserting (rather than replacing)
-					iHelp.prepareForInsert();
+			if(mDb == null) return null;
+			SQLiteStatement insert = getStatement(SQL_INSERT_FEED);
+			SQLiteStatement update = getStatement(SQL_UPDATE_FEED);
+			SQLiteStatement delete = getStatement(SQL_DELETE_FEED_ROW);
 
-					// do the equivalent of ContentValues.put("field","value") here
-					iHelp.bind(ktype, feed.mType);
-					iHelp.bind(kstatus, feed.mDownloadStatus);
-					iHelp.bind(kid, feed.mId);
-					if(feed.mName != null)
-						iHelp.bind(kname, feed.mName);
-					if(feed.mLink != null)
-						iHelp.bind(klink, feed.mLink);
-					if(feed.mKeyword != null)
-						iHelp.bind(kkeyword, feed.mKeyword);
-					if(feed.mContent != null)
-						iHelp.bind(kcontent, feed.mContent);
-					if(feed.mThumbnailUrl != null)
-						iHelp.bind(kthumbnail, feed.mThumbnailUrl);
-					if(feed.mDate != null)
-						iHelp.bind(kdate, feed.mDate);
-					else
-						iHelp.bind(kdate, time);
+			mDb.beginTransaction();
+			try {
+				// 1. Read current rows of this type. (idstring -> row id)
+				HashMap<String, Long> rowIds = new HashMap<String, Long>();
+				HashSet<String> changed = new HashSet<String>();
+				HashMap<String, FeedObject> incoming = new HashMap<String, FeedObject>();
+				for(FeedObject feed : feedList) {
+					if(feed.mId != null && feed.mId.length() > 0 && !incoming.containsKey(feed.mId))
+						incoming.put(feed.mId, feed);
+				}
 
-					iHelp.bind(krank, feed.mRankUpAndDown);
-					iHelp.bind(kclick, feed.mCommentCount);
-					iHelp.bind(kranktype, feed.mRankType);
-					iHelp.bind(kversion, feed.mVersion);
+				Cursor c = mDb.query(TABLE_NAME_FEED_ITEM, MERGE_COLUMNS,
+						KEY_FEED_TYPE + "=" + Integer.toString(type), null, null, null, null);
+				try {
+					while(c.moveToNext()) {
+						String idString = c.getString(1);
+						rowIds.put(idString, c.getLong(0));
+						FeedObject feed = incoming.get(idString);
+						if(feed != null && isFeedRowChanged(c, feed))
+							changed.add(idString);
+					}
+				} finally {
+					c.close();
+				}
 
-					if(feed.mFullSizeImageURL != null)
-						iHelp.bind(kfullimage, feed.mFullSizeImageURL);
-					
-					//the db.insert() equilvalent
-					iHelp.execute();
+				// 2. Insert or update. Oldest first, to keep (ID DESC) order same with recent order.
+				HashSet<String> handled = new HashSet<String>();
+				for(int i = feedList.size()-1 ; -1<i ; i--) {
+					FeedObject feed = feedList.get(i);
+					if(feed.mId == null || feed.mId.length() < 1 || !handled.add(feed.mId))
+						continue;
+
+					Long rowId = rowIds.get(feed.mId);
+					if(rowId == null) {
+						bindFeed(insert, feed, time, true);
+						if(insert.executeInsert() < 0)
+							throw new SQLException("Cannot insert feed item : id=" + feed.mId);
+						diff.mAdded.add(0, feed);
+					} else if(changed.contains(feed.mId)) {
+						bindFeed(update, feed, time, false);
+						update.bindLong(FEED_BIND_COUNT + 1, rowId);
+						update.executeUpdateDelete();
+						diff.mUpdated.add(0, feed);
+					} else {
+						diff.mUnchangedCount++;
+					}
+				}
+
+				// 3. Delete vanished items
+				for(String idString : rowIds.keySet()) {
+					if(!handled.contains(idString)) {
+						delete.bindLong(1, rowIds.get(idString));
+						delete.executeUpdateDelete();
+						diff.mRemovedIds.add(idString);
+					}
 				}
+
 				mDb.setTransactionSuccessful();
 			}
-			catch(Exception e) {
+			catch(SQLException e) {
+				Logs.e(TAG, "# Merge feed failed : type={}, {}", type, e);
+				e.printStackTrace();
+				diff = null;
 			}
 			finally	{
 				mDb.endTransaction();
 			}
 		}
 
-		return true;
+		if(diff != null)
+			Logs.d(TAG, "# Merge feed : {}", diff);
+		logTiming("mergeFeedItems", start, feedList.size());
+		return diff;
+	}
+
+	/**
+	 * Bind feed to SQL_INSERT_FEED or SQL_UPDATE_FEED statement.
+	 * When defaultDate is false and feed has no date, date is bound as null.
+	 */
+	private void bindFeed(SQLiteStatement statement, FeedObject feed, int time, boolean defaultDate)
+	{
+		statement.clearBindings();
+		statement.bindLong(1, feed.mType);
+		statement.bindLong(2, feed.mDownloadStatus);
+		bindString(statement, 3, feed.mId);
+		bindString(statement, 4, feed.mName);
+		bindString(statement, 5, feed.mLink);
+		bindString(statement, 6, feed.mKeyword);
+		bindString(statement, 7, feed.mContent);
+		bindString(statement, 8, feed.mThumbnailUrl);
+		statement.bindLong(9, feed.mRankUpAndDown);
+		statement.bindLong(10, feed.mCommentCount);
+		statement.bindLong(11, feed.mRankType);
+		statement.bindLong(12, feed.mVersion);
+		bindString(statement, 13, feed.mFullSizeImageURL);
+		if(feed.mDate != null)
+			statement.bindString(14, feed.mDate);
+		else if(defaultDate)
+			statement.bindLong(14, time);
+	}
+	
+	private static void bindString(SQLiteStatement statement, int index, String value) {
+		if(value == null)
+			statement.bindNull(index);
+		else
+			statement.bindString(index, value);
+	}
+	
+	// Must be called in synchronized(mDb) block
+	private SQLiteStatement getStatement(String sql) {
+		if(SQL_INSERT_FEED.equals(sql)) {
+			if(mInsertFeedStatement == null) mInsertFeedStatement = mDb.compileStatement(sql);
+			return mInsertFeedStatement;
+		} else if(SQL_UPDATE_FEED.equals(sql)) {
+			if(mUpdateFeedStatement == null) mUpdateFeedStatement = mDb.compileStatement(sql);
+			return mUpdateFeedStatement;
+		} else if(SQL_DELETE_FEED_ROW.equals(sql)) {
+			if(mDeleteFeedRowStatement == null) mDeleteFeedRowStatement = mDb.compileStatement(sql);
+			return mDeleteFeedRowStatement;
+		} else if(SQL_COUNT_FEED_WITH_TYPE.equals(sql)) {
+			if(mCountFeedStatement == null) mCountFeedStatement = mDb.compileStatement(sql);
+			return mCountFeedStatement;
+		}
+		return mDb.compileStatement(sql);
 	}
 	
+	private void closeStatements() {
+		SQLiteStatement[] statements = new SQLiteStatement[] {
+				mInsertFeedStatement, mUpdateFeedStatement, mDeleteFeedRowStatement, mCountFeedStatement };
+		for(SQLiteStatement statement : statements) {
+			if(statement != null)
+				statement.close();
+		}
+		mInsertFeedStatement = null;
+		mUpdateFeedStatement = null;
+		mDeleteFeedRowStatement = null;
+		mCountFeedStatement = null;
+	}
+	
+	private void logTiming(String operation, long start, int rows) {
+		if(Logs.ENABLED)
+			Logs.d(TAG, "# [DB] {} : rows={}, {}ms", operation, rows, System.currentTimeMillis() - start);
+	}
+
+	// Cursor must be queried with MERGE_COLUMNS
+	private boolean isFeedRowChanged(Cursor c, FeedObject feed)
+	{
+		if(!isSameString(c.getString(2), feed.mName)
+				|| !isSameString(c.getString(3), feed.mLink)
+				|| !isSameString(c.getString(4), feed.mKeyword)
+				|| !isSameString(c.getString(5), feed.mContent)
+				|| !isSameString(c.getString(6), feed.mThumbnailUrl)
+				|| !isSameString(c.getString(12), feed.mFullSizeImageURL))
+			return true;
+		// Date is generated when feed has no date. Compare only when feed has one.
+		if(feed.mDate != null && !feed.mDate.equals(c.getString(7)))
+			return true;
+		return c.getInt(8) != feed.mRankUpAndDown || c.getInt(9) != feed.mCommentCount
+				|| c.getInt(10) != feed.mRankType || c.getInt(11) != feed.mVersion;
+	}
+
+	private static boolean isSameString(String a, String b) {
+		if(a == null || a.length() < 1)
+			return b == null || b.length() < 1;
+		return a.equals(b);
+	}
+
 	//----------------------------------------------------------------------------------
 	// SELECT
 	//----------------------------------------------------------------------------------
@@ -580,7 +751,7 @@ public class DBHelper {
 		if(cp.mId <= FeedObject.REQUEST_TYPE_NONE || cp.mURL==null || cp.mURL.length() < 1)
 			return 0;
 		
-		Logs.d(TAG, "# insert new content provider : type = "+cp.mId);
+		Logs.d(TAG, "# insert new content provider : type = {}", cp.mId);
 		
 		boolean isDataExist = false;
 		ContentValues insertValues = new ContentValues();
@@ -633,8 +804,8 @@ public class DBHelper {
 		if(type != FeedObject.REQUEST_TYPE_NONE)
 			where = KEY_CP_ID + "='" + type + "'";
 		
-		Logs.d(TAG, "# update content provider table : type = "+type);
-		Logs.d(TAG, "# query : "+where);
+		Logs.d(TAG, "# update content provider table : type = {}", type);
+		Logs.d(TAG, "# query : {}", where);
 		
 		ContentValues insertValues = new ContentValues();
 		insertValues.put(KEY_CP_LAST_UPDATED, time);
@@ -649,6 +820,22 @@ public class DBHelper {
 		}
 	}
 	
+	// state : FeedCircuitBreaker.encodeState()
+	public int updateCPBreakerState(int id, int failureCount, String state) 
+	{
+		ContentValues insertValues = new ContentValues();
+		insertValues.put(KEY_CP_ARG1, failureCount);
+		insertValues.put(KEY_CP_ARG3, state);
+		
+		synchronized (mDb) {
+			if(mDb == null) return -1;
+			return mDb.update( TABLE_NAME_CONTENT_PROVIDER,		// table
+									insertValues, 	// values
+									KEY_CP_ID + "=" + id, 			// whereClause
+									null ); 		// whereArgs
+		}
+	}
+	
 	//----------------------------------------------------------------------------------
 	// Delete
 	//----------------------------------------------------------------------------------
@@ -660,7 +847,7 @@ public class DBHelper {
 			int count = mDb.delete(TABLE_NAME_FILTERS, 
 					KEY_FILTER_ID + "=" + id, // whereClause
 					null); 			// whereArgs
-			Logs.d(TAG, "- Delete filter : id="+id+", count="+count);
+			Logs.d(TAG, "- Delete filter : id={}, count={}", id, count);
 		}
 	}
 	
@@ -671,7 +858,7 @@ public class DBHelper {
 			int count = mDb.delete(TABLE_NAME_FILTERS, 
 					KEY_FILTER_TYPE + "='" + type + "' AND " +KEY_FILTER_ORIGINAL + "='" + packageName + "'", // whereClause
 					null); 			// whereArgs
-			Logs.d(TAG, "- Delete filter : type="+type+", package name="+packageName+", count="+count);
+			Logs.d(TAG, "- Delete filter : type={}, package name={}, count={}", type, packageName, count);
 		}
 	}
 	
@@ -682,7 +869,7 @@ public class DBHelper {
 			int count = mDb.delete(TABLE_NAME_FILTERS, 
 					KEY_FILTER_TYPE + "='" + type + "'", // whereClause
 					null); 			// whereArgs
-			Logs.d(TAG, "- Delete filter : type="+type+", count="+count);
+			Logs.d(TAG, "- Delete filter : type={}, count={}", type, count);
 		}
 	}
 	
@@ -695,11 +882,13 @@ public class DBHelper {
 	}
 	
 	public void deleteFeedWithType(int type) {	// Delete records that has same type
+		long start = System.currentTimeMillis();
 		synchronized (mDb) {
 			if(mDb == null) return;
-			mDb.delete(TABLE_NAME_FEED_ITEM, 
-								KEY_FEED_TYPE + "='" + Integer.toString(type) + "'",
+			int count = mDb.delete(TABLE_NAME_FEED_ITEM, 
+								KEY_FEED_TYPE + "=" + Integer.toString(type),
 								null);
+			logTiming("deleteFeedWithType", start, count);
 		}
 	}
 	public void deleteFeedWithID(String id) {	// Delete a record that has same ID
@@ -710,12 +899,6 @@ public class DBHelper {
 								null);
 		}
 	}
-	public void deleteFeedAll(){				// Delete all items.
-		synchronized (mDb) {
-			if(mDb == null) return;
-			mDb.delete(TABLE_NAME_FEED_ITEM, null, null);
-		}
-	}
 	
 	public void deleteCP(int id) {				// Delete a record that has same ID
 		synchronized (mDb) {
@@ -726,6 +909,90 @@ public class DBHelper {
 		}
 	}
 	
+	// state : FeedPollScheduler.encodeState()
+	public int updateCPPollState(int id, String state) 
+	{
+		ContentValues insertValues = new ContentValues();
+		insertValues.put(KEY_CP_POLL_STATE, state);
+		
+		synchronized (mDb) {
+			if(mDb == null) return -1;
+			return mDb.update( TABLE_NAME_CONTENT_PROVIDER,		// table
+									insertValues, 	// values
+									KEY_CP_ID + "=" + id, 			// whereClause
+									null ); 		// whereArgs
+		}
+	}
+	
+	//----------------------------------------------------------------------------------
+	// Eviction
+	//----------------------------------------------------------------------------------
+	/**
+	 * Delete at most batchSize items of the type which were inserted or changed before the time.
+	 * Caller runs this only for providers which have not been merged since the time (see FeedManager.evictOldFeed()).
+	 * @return	ID strings of deleted items. Empty if nothing to delete, null on error.
+	 */
+	public ArrayList<String> evictFeedOlderThan(int type, long time, int batchSize) {
+		synchronized (mDb) {
+			if(mDb == null) return null;
+			Cursor c = mDb.query(TABLE_NAME_FEED_ITEM, 
+					new String[] {KEY_FEED_ID, KEY_FEED_IDSTRING}, 
+					KEY_FEED_TYPE + "=" + type + " AND " + KEY_FEED_INSERTED + "<" + time,
+					null, null, null, null, 
+					Integer.toString(batchSize));
+			return deleteFeedRows(c, "evictFeedOlderThan");
+		}
+	}
+	
+	/**
+	 * Delete at most batchSize items of the type except recent maxCount items.
+	 * @return	ID strings of deleted items. Empty if nothing to delete, null on error.
+	 */
+	public ArrayList<String> evictFeedOverCount(int type, int maxCount, int batchSize) {
+		synchronized (mDb) {
+			if(mDb == null) return null;
+			Cursor c = mDb.query(TABLE_NAME_FEED_ITEM, 
+					new String[] {KEY_FEED_ID, KEY_FEED_IDSTRING}, 
+					KEY_FEED_TYPE + "=" + type,
+					null, null, null, 
+					KEY_FEED_ID + " DESC",
+					maxCount + "," + batchSize);		// Skip recent items (OFFSET,LIMIT)
+			return deleteFeedRows(c, "evictFeedOverCount");
+		}
+	}
+	
+	// Cursor has (id, idstring) columns. Must be called in synchronized(mDb) block.
+	private ArrayList<String> deleteFeedRows(Cursor c, String operation) {
+		long start = System.currentTimeMillis();
+		ArrayList<String> deleted = new ArrayList<String>();
+		if(c == null)
+			return deleted;
+		
+		SQLiteStatement delete = getStatement(SQL_DELETE_FEED_ROW);
+		mDb.beginTransaction();
+		try {
+			while(c.moveToNext()) {
+				delete.bindLong(1, c.getLong(0));
+				delete.executeUpdateDelete();
+				deleted.add(c.getString(1));
+			}
+			mDb.setTransactionSuccessful();
+		}
+		catch(SQLException e) {
+			Logs.e(TAG, "# {} failed : {}", operation, e);
+			e.printStackTrace();
+			deleted = null;
+		}
+		finally {
+			mDb.endTransaction();
+			c.close();
+		}
+		
+		if(deleted != null && deleted.size() > 0)
+			logTiming(operation, start, deleted.size());
+		return deleted;
+	}
+	
 	//----------------------------------------------------------------------------------
 	// Count
 	//----------------------------------------------------------------------------------
@@ -739,12 +1006,11 @@ public class DBHelper {
 	}
 	
 	public int getFeedCountWithType(int type) {
-		String query = "select count(*) from " + TABLE_NAME_FEED_ITEM + " where " + KEY_FEED_TYPE + "=" + Integer.toString(type);
-		Cursor c = mDb.rawQuery(query, null);
-		c.moveToFirst();
-		int count = c.getInt(0);
-		c.close();
-		return count;
+		synchronized (mDb) {
+			SQLiteStatement count = getStatement(SQL_COUNT_FEED_WITH_TYPE);
+			count.bindLong(1, type);
+			return (int)count.simpleQueryForLong();
+		}
 	}
 	
 	public int getFeedCount() {
@@ -774,7 +1040,8 @@ public class DBHelper {
 		// Constructor
 		public DatabaseHelper(Context context) {
 			super(context, DATABASE_NAME, null, DATABASE_VERSION);
-			// TODO Auto-generated constructor stub
+			// Readers (UI, service) don't block feed writer thread
+			setWriteAheadLoggingEnabled(true);
 		}
 
 		// Will be called one time at first access
@@ -783,12 +1050,31 @@ public class DBHelper {
 			db.execSQL(DATABASE_CREATE_FILTERS);
 			db.execSQL(DATABASE_CREATE_FEED);
 			db.execSQL(DATABASE_CREATE_CP);
+			createIndexes(db);
 		}
 
 		// Will be called when the version is increased
 		@Override
 		public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-			// Keep previous data
+			// Version 4 to 7 have same tables except insert time and poll state. Keep user data.
+			if(oldVersion >= 4) {
+				if(oldVersion < 7) {
+					db.execSQL("ALTER TABLE " + TABLE_NAME_FEED_ITEM + " ADD COLUMN " + KEY_FEED_INSERTED + " Integer");
+					db.execSQL("UPDATE " + TABLE_NAME_FEED_ITEM + " SET " + KEY_FEED_INSERTED + "=" + SQL_NOW_MILLIS);
+					// Old versions replaced feed with bulk insert and could store same item twice.
+					// Keep the latest row of each (type, idstring) before making the unique index.
+					db.execSQL("DELETE FROM " + TABLE_NAME_FEED_ITEM + " WHERE " + KEY_FEED_ID + " NOT IN ("
+							+ "SELECT MAX(" + KEY_FEED_ID + ") FROM " + TABLE_NAME_FEED_ITEM
+							+ " GROUP BY " + KEY_FEED_TYPE + ", " + KEY_FEED_IDSTRING + ")");
+				}
+				if(oldVersion < 8) {
+					db.execSQL("ALTER TABLE " + TABLE_NAME_CONTENT_PROVIDER + " ADD COLUMN " + KEY_CP_POLL_STATE + " Text");
+				}
+				createIndexes(db);
+				return;
+			}
+			
+			// Unknown schema of very old versions
 			db.execSQL(DATABASE_DROP_FILTERS_TABLE);
 			db.execSQL(DATABASE_DROP_FEED_ITEM_TABLE);
 			db.execSQL(DATABASE_DROP_CONTENT_PROVIDER_TABLE);
@@ -796,6 +1082,14 @@ public class DBHelper {
 			db.execSQL(DATABASE_CREATE_FILTERS);
 			db.execSQL(DATABASE_CREATE_FEED);
 			db.execSQL(DATABASE_CREATE_CP);
+			createIndexes(db);
+		}
+		
+		private void createIndexes(SQLiteDatabase db) {
+			db.execSQL(DATABASE_CREATE_FILTERS_TYPE_INDEX);
+			db.execSQL(DATABASE_CREATE_FEED_ID_INDEX);
+			db.execSQL(DATABASE_CREATE_FEED_IDSTRING_INDEX);
+			db.execSQL(DATABASE_CREATE_FEED_INSERTED_INDEX);
 		}
 		
 	}	// End of class DatabaseHelper
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hardcopy.retrowatch.service;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+/**
+ * In-process channel between NotificationReceiverService and RetroWatchService.
+ * Both services live in the same process, so notifications are handed over as pooled typed events
+ * instead of broadcast Intents. Events are delivered in order on a dedicated worker looper.
+ * The queue is bounded. A queued ADD is updated in place when the same notification (same
+ * StatusBarNotification key) is posted again.
+ * When the queue is still full, the oldest ADD is dropped and EVENT_RESYNC is delivered once the queue
+ * is drained, so the listener can reload all active notifications. REMOVE and SNAPSHOT are never dropped.
+ */
+public class NotificationEventBus {
+	
+	// Event commands
+	public static final int EVENT_ADD = 1;
+	public static final int EVENT_REMOVE = 2;
+	public static final int EVENT_SNAPSHOT = 3;
+	public static final int EVENT_RESYNC = 4;		// Events were dropped on overflow. Reload active notifications.
+	
+	// Commands to NotificationReceiverService
+	public static final int COMMAND_CLEAR_ALL = 1;
+	public static final int COMMAND_LIST = 2;
+	
+	private static final int QUEUE_CAPACITY = 64;
+	private static final int POOL_SIZE = QUEUE_CAPACITY;
+	
+	private static NotificationEventBus mInstance = null;
+	
+	private final Object mLock = new Object();
+	private final ArrayDeque<NotificationEvent> mQueue = new ArrayDeque<NotificationEvent>(QUEUE_CAPACITY);
+	private final Handler mHandler;
+	
+	private INotificationEventListener mEventListener = null;
+	private INotificationCommandListener mCommandListener = null;
+	private boolean mDrainScheduled = false;
+	private boolean mResyncPending = false;
+	
+	// Event pool (guarded by mLock)
+	private NotificationEvent mPool = null;
+	private int mPoolSize = 0;
+	
+	// Statistics (guarded by mLock)
+	private long mPosted = 0;
+	private long mDelivered = 0;
+	private long mCoalesced = 0;
+	private long mOverflow = 0;
+	private long mResync = 0;
+	private long mNoListener = 0;
+	private int mMaxDepth = 0;
+	
+	
+	private NotificationEventBus() {
+		HandlerThread thread = new HandlerThread("NotificationEventBus", Process.THREAD_PRIORITY_FOREGROUND);
+		thread.start();
+		mHandler = new Handler(thread.getLooper());
+	}
+	
+	public synchronized static NotificationEventBus getInstance() {
+		if(mInstance == null)
+			mInstance = new NotificationEventBus();
+		return mInstance;
+	}
+	
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	/**
+	 * Set receiver of notification events. Called on the worker looper.
+	 * @param listener		null to stop receiving. Queued events are dropped.
+	 */
+	public void setEventListener(INotificationEventListener listener) {
+		synchronized(mLock) {
+			mEventListener = listener;
+		}
+	}
+	
+	/**
+	 * Set receiver of commands (clear all, list). Called on the worker looper.
+	 */
+	public void setCommandListener(INotificationCommandListener listener) {
+		synchronized(mLock) {
+			mCommandListener = listener;
+		}
+	}
+	
+	/**
+	 * Queue a notification event.
+	 * @param key		StatusBarNotification.getKey(). Unique for package, tag, id and user
+	 * @return	false if nobody is listening
+	 */
+	public boolean post(int event, String key, int id, String packageName, String text, long postedTime) {
+		return enqueue(event, key, id, packageName, text, postedTime, null);
+	}
+	
+	/**
+	 * Queue all active notifications as one EVENT_SNAPSHOT event.
+	 * @return	false if nobody is listening
+	 */
+	public boolean postSnapshot(NotificationSnapshot snapshot) {
+		return enqueue(EVENT_SNAPSHOT, null, -1, null, null, 0, snapshot);
+	}
+	
+	/**
+	 * Send command to NotificationReceiverService.
+	 * @return	false if listener service is not connected
+	 */
+	public boolean sendCommand(final int command) {
+		synchronized(mLock) {
+			if(mCommandListener == null)
+				return false;
+		}
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				INotificationCommandListener listener;
+				synchronized(mLock) {
+					listener = mCommandListener;
+				}
+				if(listener != null)
+					listener.OnNotificationCommand(command);
+			}
+		});
+		return true;
+	}
+	
+	public void dump(PrintWriter writer) {
+		synchronized(mLock) {
+			writer.println("Notification event bus");
+			writer.println("  posted=" + mPosted + ", delivered=" + mDelivered + ", coalesced=" + mCoalesced
+					+ ", overflow=" + mOverflow + ", resync=" + mResync + ", no listener=" + mNoListener);
+			writer.println("  queued=" + mQueue.size() + "/" + QUEUE_CAPACITY + ", max depth=" + mMaxDepth);
+		}
+	}
+	
+	public void resetStatistics() {
+		synchronized(mLock) {
+			mPosted = 0;
+			mDelivered = 0;
+			mCoalesced = 0;
+			mOverflow = 0;
+			mResync = 0;
+			mNoListener = 0;
+			mMaxDepth = mQueue.size();
+		}
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	private boolean enqueue(int event, String key, int id, String packageName, String text, long postedTime, 
+			NotificationSnapshot snapshot) {
+		synchronized(mLock) {
+			if(mEventListener == null) {
+				mNoListener++;
+				return false;
+			}
+			
+			mPosted++;
+			if(event == EVENT_ADD) {
+				NotificationEvent queued = findLastLocked(key);
+				if(queued != null && queued.mEvent == EVENT_ADD) {
+					// Same notification is posted again before delivery. Only the latest one matters.
+					queued.mText = text;
+					queued.mPostedTime = postedTime;
+					mCoalesced++;
+					return true;
+				}
+			}
+			
+			if(mQueue.size() >= QUEUE_CAPACITY && dropOldestAddLocked()) {
+				mOverflow++;
+				mResyncPending = true;
+			}
+			
+			NotificationEvent e = obtainLocked();
+			e.mEvent = event;
+			e.mKey = key;
+			e.mId = id;
+			e.mPackageName = packageName;
+			e.mText = text;
+			e.mPostedTime = postedTime;
+			e.mSnapshot = snapshot;
+			mQueue.addLast(e);
+			if(mQueue.size() > mMaxDepth)
+				mMaxDepth = mQueue.size();
+			
+			if(!mDrainScheduled) {
+				mDrainScheduled = true;
+				mHandler.post(mDrainRunnable);
+			}
+		}
+		return true;
+	}
+	
+	// Latest queued event of the notification, or null
+	private NotificationEvent findLastLocked(String key) {
+		if(key == null)
+			return null;
+		Iterator<NotificationEvent> it = mQueue.descendingIterator();
+		while(it.hasNext()) {
+			NotificationEvent e = it.next();
+			if(key.equals(e.mKey))
+				return e;
+		}
+		return null;
+	}
+	
+	// Returns false if nothing can be dropped. Then the queue grows by REMOVE and SNAPSHOT only.
+	private boolean dropOldestAddLocked() {
+		Iterator<NotificationEvent> it = mQueue.iterator();
+		while(it.hasNext()) {
+			NotificationEvent e = it.next();
+			if(e.mEvent == EVENT_ADD) {
+				it.remove();
+				recycleLocked(e);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private NotificationEvent obtainLocked() {
+		NotificationEvent e = mPool;
+		if(e == null)
+			return new NotificationEvent();
+		mPool = e.mNext;
+		e.mNext = null;
+		mPoolSize--;
+		return e;
+	}
+	
+	private void recycleLocked(NotificationEvent e) {
+		e.mKey = null;
+		e.mPackageName = null;
+		e.mText = null;
+		e.mSnapshot = null;
+		if(mPoolSize < POOL_SIZE) {
+			e.mNext = mPool;
+			mPool = e;
+			mPoolSize++;
+		}
+	}
+	
+	private final Runnable mDrainRunnable = new Runnable() {
+		@Override
+		public void run() {
+			while(true) {
+				NotificationEvent e;
+				INotificationEventListener listener;
+				synchronized(mLock) {
+					e = mQueue.pollFirst();
+					if(e == null) {
+						if(!mResyncPending) {
+							mDrainScheduled = false;
+							return;
+						}
+						// Everything queued is delivered. Now ask for a full reload.
+						mResyncPending = false;
+						mResync++;
+						e = obtainLocked();
+						e.mEvent = EVENT_RESYNC;
+						e.mId = -1;
+						e.mPostedTime = 0;
+					}
+					listener = mEventListener;
+				}
+				
+				if(listener != null) {
+					try {
+						listener.OnNotificationEvent(e);
+					} catch(Exception ex) {
+						ex.printStackTrace();
+					}
+				}
+				
+				synchronized(mLock) {
+					if(listener != null)
+						mDelivered++;
+					else
+						mNoListener++;
+					recycleLocked(e);
+				}
+			}
+		}
+	};
+	
+	
+	/*****************************************************
+	 *		Sub classes
+	 ******************************************************/
+	
+	/**
+	 * Notification event. Valid only inside OnNotificationEvent(), it is recycled after that.
+	 */
+	public static class NotificationEvent {
+		public int mEvent;
+		public String mKey;			// StatusBarNotification.getKey(). null for SNAPSHOT and RESYNC
+		public int mId;
+		public String mPackageName;
+		public String mText;
+		public long mPostedTime;		// LatencyTracer.now() when posted, 0 if unknown
+		public NotificationSnapshot mSnapshot;		// EVENT_SNAPSHOT only
+		
+		private NotificationEvent mNext;
+	}
+	
+	public interface INotificationEventListener {
+		public void OnNotificationEvent(NotificationEvent event);
+	}
+	
+	public interface INotificationCommandListener {
+		public void OnNotificationCommand(int command);
+	}
+	
+}
@@ -16,104 +16,155 @@
 
 package com.hardcopy.retrowatch.service;
 
-import com.hardcopy.retrowatch.utils.Constants;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import com.hardcopy.core.notification.NotificationIngestFilter;
+import com.hardcopy.retrowatch.utils.LatencyTracer;
 import com.hardcopy.retrowatch.utils.Logs;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
+import android.app.Notification;
+import android.os.SystemClock;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 
-public class NotificationReceiverService extends NotificationListenerService {
+public class NotificationReceiverService extends NotificationListenerService 
+		implements NotificationEventBus.INotificationCommandListener {
 
     private static final String TAG = "NotificationReceiverService";
-	
-    // Notification broadcast intent key
-    public static final String NOTIFICATION_KEY_CMD = "notification_command";
-    public static final String NOTIFICATION_KEY_ID = "notification_id";
-    public static final String NOTIFICATION_KEY_PACKAGE = "notification_package";
-    public static final String NOTIFICATION_KEY_TEXT = "notification_text";
     
-    // Notification command type
-    public static final int NOTIFICATION_CMD_ADD = 1;
-    public static final int NOTIFICATION_CMD_REMOVE = 2;
-    public static final int NOTIFICATION_CMD_LIST = 3;
+    // Ongoing, foreground service and group summary notifications are not sent to watch
+    private static final int INGEST_DROP_FLAGS = Notification.FLAG_ONGOING_EVENT
+            | Notification.FLAG_FOREGROUND_SERVICE | Notification.FLAG_GROUP_SUMMARY;
+    private static final int INGEST_MAX_KEYS = 128;
+    private static final long INGEST_TTL = 10 * 60 * 1000;
 	
-    private NLServiceReceiver nlservicereciver;
+    private NotificationEventBus mEventBus;
+    private final NotificationIngestFilter mIngestFilter = 
+            new NotificationIngestFilter(INGEST_DROP_FLAGS, INGEST_MAX_KEYS, INGEST_TTL);
     
     
     @Override
     public void onCreate() {
         super.onCreate();
-        nlservicereciver = new NLServiceReceiver();
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(Constants.NOTIFICATION_LISTENER_SERVICE);
-        
-        if (android.os.Build.VERSION.SDK_INT >= 33) { // Build.VERSION_CODES.TIRAMISU
-            registerReceiver(nlservicereciver, filter, Context.RECEIVER_NOT_EXPORTED);
-        } else {
-            registerReceiver(nlservicereciver, filter);
-        }
+        mEventBus = NotificationEventBus.getInstance();
+    }
+
+    @Override
+    public void onListenerConnected() {
+        super.onListenerConnected();
+        mEventBus.setCommandListener(this);
+    }
+
+    @Override
+    public void onListenerDisconnected() {
+        super.onListenerDisconnected();
+        mEventBus.setCommandListener(null);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        unregisterReceiver(nlservicereciver);
+        mEventBus.setCommandListener(null);
     }
 
     @Override
     public void onNotificationPosted(StatusBarNotification sbn) {
-        Logs.d(TAG,"**********  onNotificationPosted");
-        Logs.d(TAG,"ID :" + sbn.getId() + "t" + sbn.getNotification().tickerText + "t" + sbn.getPackageName());
+        long postedTime = LatencyTracer.now();
+        Notification noti = sbn.getNotification();
+        if(noti == null)
+            return;
         
-        Intent i = new  Intent(Constants.NOTIFICATION_LISTENER);
-        i.putExtra(NOTIFICATION_KEY_CMD, NOTIFICATION_CMD_ADD);
-        i.putExtra(NOTIFICATION_KEY_ID, sbn.getId());
-        i.putExtra(NOTIFICATION_KEY_PACKAGE, sbn.getPackageName());
-        i.putExtra(NOTIFICATION_KEY_TEXT, sbn.getNotification().tickerText);
-        sendBroadcast(i);
-
+        // Drop reposts which do not change what the watch shows
+        long fingerprint = NotificationIngestFilter.mix(NotificationIngestFilter.FINGERPRINT_SEED, sbn.getPackageName());
+        fingerprint = NotificationIngestFilter.mix(fingerprint, noti.tickerText);
+        int result = mIngestFilter.accept(sbn.getKey(), noti.flags, fingerprint, SystemClock.elapsedRealtime());
+        if(result != NotificationIngestFilter.RESULT_FORWARD) {
+            if(Logs.ENABLED)
+                Logs.v(TAG, "Notification dropped ({}): {}", result, sbn.getKey());
+            return;
+        }
+        
+        if(Logs.ENABLED) {
+            Logs.d(TAG,"**********  onNotificationPosted");
+            Logs.d(TAG,"ID :{}\t{}\t{}", sbn.getId(), noti.tickerText, sbn.getPackageName());
+        }
+        
+        mEventBus.post(NotificationEventBus.EVENT_ADD, sbn.getKey(), sbn.getId(), sbn.getPackageName(), 
+                getTickerText(sbn), postedTime);
     }
 
     @Override
     public void onNotificationRemoved(StatusBarNotification sbn) {
-        Logs.d(TAG,"********** onNOtificationRemoved");
-        Logs.d(TAG,"ID :" + sbn.getId() + "t" + sbn.getNotification().tickerText +"t" + sbn.getPackageName());
+        mIngestFilter.forget(sbn.getKey());
         
-        Intent i = new  Intent(Constants.NOTIFICATION_LISTENER);
-        i.putExtra(NOTIFICATION_KEY_CMD, NOTIFICATION_CMD_REMOVE);
-        i.putExtra(NOTIFICATION_KEY_ID, sbn.getId());
-        i.putExtra(NOTIFICATION_KEY_PACKAGE, sbn.getPackageName());
-        i.putExtra(NOTIFICATION_KEY_TEXT, sbn.getNotification().tickerText);
-        sendBroadcast(i);
+        if(Logs.ENABLED) {
+            Logs.d(TAG,"********** onNOtificationRemoved");
+            Logs.d(TAG,"ID :{}\t{}\t{}", sbn.getId(), sbn.getNotification().tickerText, sbn.getPackageName());
+        }
+        
+        mEventBus.post(NotificationEventBus.EVENT_REMOVE, sbn.getKey(), sbn.getId(), sbn.getPackageName(), 
+                getTickerText(sbn), 0);
     }
 
-    
-    class NLServiceReceiver extends BroadcastReceiver{
-
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent == null) return;
-            String command = intent.getStringExtra("command");
-            if (command == null) return;
-            if(command.equals("clearall")){
-            	NotificationReceiverService.this.cancelAllNotifications();
-            }
-            else if(command.equals("list")){
-                for (StatusBarNotification sbn : NotificationReceiverService.this.getActiveNotifications()) {
-                    Intent i2 = new  Intent(Constants.NOTIFICATION_LISTENER);
-                    i2.putExtra(NOTIFICATION_KEY_CMD, NOTIFICATION_CMD_LIST);
-                    i2.putExtra(NOTIFICATION_KEY_ID, sbn.getId());
-                    i2.putExtra(NOTIFICATION_KEY_PACKAGE, sbn.getPackageName());
-                    i2.putExtra(NOTIFICATION_KEY_TEXT, sbn.getNotification().tickerText);
-                    sendBroadcast(i2);
-                }
-            }
+    /**
+     * adb shell dumpsys activity service com.hardcopy.retrowatch/.service.NotificationReceiverService
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Notification ingest filter");
+        writer.println("  " + mIngestFilter);
+    }
 
+    /**
+     * Called on event bus worker looper
+     */
+    @Override
+    public void OnNotificationCommand(int command) {
+        switch(command) {
+        case NotificationEventBus.COMMAND_CLEAR_ALL:
+            cancelAllNotifications();
+            break;
+            
+        case NotificationEventBus.COMMAND_LIST:
+            mEventBus.postSnapshot(takeSnapshot());
+            break;
         }
-    }	// End of class NLServiceReceiver
+    }
+    
+    /**
+     * Collect all active notifications into one batch. Same drop policy as posted notifications.
+     */
+    private NotificationSnapshot takeSnapshot() {
+        StatusBarNotification[] active = getActiveNotifications();
+        int total = (active == null) ? 0 : active.length;
+        int[] ids = new int[total];
+        String[] packageNames = new String[total];
+        String[] texts = new String[total];
+        int count = 0;
+        for(int i = 0; i < total; i++) {
+            Notification noti = active[i].getNotification();
+            if(noti == null || (noti.flags & INGEST_DROP_FLAGS) != 0)
+                continue;
+            ids[count] = active[i].getId();
+            packageNames[count] = active[i].getPackageName();
+            texts[count] = getTickerText(active[i]);
+            count++;
+        }
+        if(count < total) {
+            ids = Arrays.copyOf(ids, count);
+            packageNames = Arrays.copyOf(packageNames, count);
+            texts = Arrays.copyOf(texts, count);
+        }
+        return new NotificationSnapshot(ids, packageNames, texts);
+    }
+    
+    private static String getTickerText(StatusBarNotification sbn) {
+        Notification noti = sbn.getNotification();
+        if(noti == null || noti.tickerText == null)
+            return null;
+        return noti.tickerText.toString();
+    }
     
 }
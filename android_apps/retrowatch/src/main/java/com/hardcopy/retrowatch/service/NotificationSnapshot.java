@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hardcopy.retrowatch.service;
+
+/**
+ * Immutable batch of notifications which were active when the snapshot was taken.
+ * Delivered as a single NotificationEventBus event instead of one event per notification.
+ */
+public final class NotificationSnapshot {
+	
+	private final int[] mIds;
+	private final String[] mPackageNames;
+	private final String[] mTexts;
+	
+	NotificationSnapshot(int[] ids, String[] packageNames, String[] texts) {
+		mIds = ids;
+		mPackageNames = packageNames;
+		mTexts = texts;
+	}
+	
+	public int size() {
+		return mIds.length;
+	}
+	
+	public int getId(int index) {
+		return mIds[index];
+	}
+	
+	public String getPackageName(int index) {
+		return mPackageNames[index];
+	}
+	
+	public String getText(int index) {
+		return mTexts[index];
+	}
+	
+}
@@ -16,6 +16,9 @@
 
 package com.hardcopy.retrowatch.service;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -32,7 +35,10 @@ import com.hardcopy.retrowatch.contents.objects.CPObject;
 import com.hardcopy.retrowatch.contents.objects.ContentObject;
 import com.hardcopy.retrowatch.contents.objects.EmergencyObject;
 import com.hardcopy.retrowatch.contents.objects.FilterObject;
+import com.hardcopy.retrowatch.contents.objects.NotificationObject;
 import com.hardcopy.retrowatch.utils.Constants;
+import com.hardcopy.retrowatch.utils.LatencyTracer;
+import com.hardcopy.retrowatch.utils.LogRingBuffer;
 import com.hardcopy.retrowatch.utils.Logs;
 import com.hardcopy.retrowatch.utils.Settings;
 
@@ -45,7 +51,6 @@ import android.bluetooth.BluetoothDevice;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.res.Configuration;
 import android.os.BatteryManager;
 import android.os.Binder;
@@ -69,6 +74,8 @@ public class RetroWatchService extends Service implements IContentManagerListene
 	
 	private static final long SENDING_CONTENTS_INTERVAL = 10*60*1000;
 	private static final long DEFAULT_UPDATE_DELAY = 10*1000;
+	private static final int LOG_RING_BUFFER_SIZE = 512;
+	private static final String LOG_FILE_NAME = "retrowatch.log";
 	
 	// Context, System
 	private Context mContext = null;
@@ -79,6 +86,9 @@ public class RetroWatchService extends Service implements IContentManagerListene
 	// Notification broadcast receiver
 	private NotificationReceiver mReceiver;
 	
+	// Cached battery and WiFi state
+	private SystemStateMonitor mSystemStateMonitor = null;
+	
 	// Bluetooth
 	private BluetoothAdapter mBluetoothAdapter = null;
 	private BluetoothManager mBtManager = null;
@@ -134,7 +144,7 @@ public class RetroWatchService extends Service implements IContentManagerListene
 					startForeground(FOREGROUND_NOTIFICATION_ID, notification);
 				}
 			} catch (Exception e) {
-				Logs.e(TAG, "Failed to start foreground service: " + e.getMessage());
+				Logs.e(TAG, "Failed to start foreground service: {}", e.getMessage());
 			}
 		}
 	}
@@ -163,6 +173,20 @@ public class RetroWatchService extends Service implements IContentManagerListene
 		finalizeService();
 	}
 	
+	/**
+	 * adb shell dumpsys activity service com.hardcopy.retrowatch/.service.RetroWatchService [reset]
+	 */
+	@Override
+	protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+		LatencyTracer.dump(writer);
+		NotificationEventBus.getInstance().dump(writer);
+		if(args != null && args.length > 0 && "reset".equals(args[0])) {
+			LatencyTracer.reset();
+			NotificationEventBus.getInstance().resetStatistics();
+			writer.println("Latency statistics reset");
+		}
+	}
+	
 	@Override
 	public void onLowMemory (){
 		Logs.d(TAG, "# Service - onLowMemory()");
@@ -196,6 +220,9 @@ public class RetroWatchService extends Service implements IContentManagerListene
 	 *
 	 ******************************************************/
 	private void initialize() {
+		// Keep recent logs in memory. Written to file when service finishes.
+		if(Logs.ENABLED && Logs.getRingBuffer() == null)
+			Logs.setRingBufferSize(LOG_RING_BUFFER_SIZE);
 		Logs.d(TAG, "# Service : initialize ---");
 		
 		// Get content manager instance
@@ -203,24 +230,13 @@ public class RetroWatchService extends Service implements IContentManagerListene
 		// Get connection info instance
 		mConnectionInfo = ConnectionInfo.getInstance(mContext);
 		
-		// Set notification broadcast receiver 
+		// Receive notifications from NotificationReceiverService
 		mReceiver = new NotificationReceiver();
-		IntentFilter filter = new IntentFilter();
-		filter.addAction(Constants.NOTIFICATION_LISTENER);
-		if (android.os.Build.VERSION.SDK_INT >= 33) {
-			registerReceiver(mReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
-		} else {
-			registerReceiver(mReceiver, filter);
-		}
+		NotificationEventBus.getInstance().setEventListener(mReceiver);
 		
-		// Set battery broadcast receiver
-		IntentFilter iFilter = new IntentFilter();
-		iFilter.addAction(Intent.ACTION_BATTERY_CHANGED);
-		if (android.os.Build.VERSION.SDK_INT >= 33) {
-			registerReceiver(mBatteryInfoReceiver, iFilter, Context.RECEIVER_EXPORTED);
-		} else {
-			registerReceiver(mBatteryInfoReceiver, iFilter);
-		}
+		// Receive battery and WiFi changes
+		mSystemStateMonitor = new SystemStateMonitor(mContext, new SystemStateListener());
+		mSystemStateMonitor.start();
 		
 		// Set telephony listener - only for older Android versions
 		// PhoneStateListener is deprecated in API 31 and can cause crashes
@@ -231,7 +247,7 @@ public class RetroWatchService extends Service implements IContentManagerListene
 				telephony.listen(telephonyListener, PhoneStateListener.LISTEN_SERVICE_STATE);
 				telephony.listen(telephonyListener, PhoneStateListener.LISTEN_CALL_STATE);
 			} catch (Exception e) {
-				Logs.d(TAG, "Could not register telephony listener: " + e.getMessage());
+				Logs.d(TAG, "Could not register telephony listener: {}", e.getMessage());
 			}
 		}
 		// TODO: For API 31+, should use TelephonyCallback instead of PhoneStateListener
@@ -258,10 +274,11 @@ public class RetroWatchService extends Service implements IContentManagerListene
 			}
 		} catch (SecurityException e) {
 			// Permission not granted yet - service will initialize BT later when permissions are granted
-			Logs.d(TAG, "Bluetooth permission not granted yet: " + e.getMessage());
+			Logs.d(TAG, "Bluetooth permission not granted yet: {}", e.getMessage());
 		}
 		
-		// Start service monitoring
+		// Start service monitoring. Follow 'run in background' setting changes.
+		Settings.getInstance(mContext).addListener(mSettingsListener);
 		startServiceMonitoring();
 	}
 	
@@ -367,12 +384,23 @@ public class RetroWatchService extends Service implements IContentManagerListene
 	}
 	
 	private boolean sendContentsToDevice(ContentObject obj) {
+		return sendContentsToDevice(obj, false);
+	}
+	
+	/**
+	 * @param priority	Send ahead of queued transactions
+	 */
+	private boolean sendContentsToDevice(ContentObject obj, boolean priority) {
 		if(obj == null || mTransactionBuilder==null || !obj.mIsEnabled
 				/*|| obj.mId < 0*/ || obj.mFilteredString == null || obj.mFilteredString.length() < 1)
 			return false;
 		
 		TransactionBuilder.Transaction transaction = mTransactionBuilder.makeTransaction();
 		transaction.begin();
+		transaction.setPriority(priority);
+		// Pending latency trace is finished when this transaction is written
+		transaction.setTrace(obj.mTrace);
+		obj.mTrace = null;
 
 		switch(obj.mContentType) {
 		case ContentObject.CONTENT_TYPE_NOTIFICATION:
@@ -420,6 +448,21 @@ public class RetroWatchService extends Service implements IContentManagerListene
 		return true;
 	}
 	
+	/**
+	 * Incoming call uses the priority lane. Refresh cycle being sent is cut at frame boundary
+	 * and sent again from the beginning, so it cannot reset the call object on device.
+	 */
+	private void sendCallToDevice(ContentObject obj, long ringingTime) {
+		if(mBtManager != null && mBtManager.cancelPendingWrites() > 0) {
+			Logs.d(TAG, "# Call preempted refresh cycle - reserve update");
+			reserveRemoteUpdate(DEFAULT_UPDATE_DELAY);
+		}
+		if(obj.mTrace != null)
+			obj.mTrace.discard();
+		obj.mTrace = LatencyTracer.beginCall(ringingTime);
+		sendContentsToDevice(obj, true);
+	}
+	
 	private void deleteEmergencyOfDevice(int type) {
 		if(mTransactionBuilder == null && mBtManager != null && mActivityHandler != null) {
 			mTransactionBuilder = new TransactionBuilder(mBtManager, mActivityHandler);
@@ -478,19 +521,28 @@ public class RetroWatchService extends Service implements IContentManagerListene
 	public void finalizeService() {
 		Logs.d(TAG, "# Service : finalize ---");
 		
+		LogRingBuffer ring = Logs.getRingBuffer();
+		if(ring != null)
+			ring.flush(new File(getFilesDir(), LOG_FILE_NAME));
+		
 		mBluetoothAdapter = null;
 		// Stop the bluetooth session
 		if (mBtManager != null)
 			mBtManager.stop();
 		mBtManager = null;
 		
-		// Unregister broadcast receiver
+		// Stop receiving notifications
 		if(mReceiver != null)
-			unregisterReceiver(mReceiver);
+			NotificationEventBus.getInstance().setEventListener(null);
 		mReceiver = null;
-		if(mBatteryInfoReceiver != null)
-			unregisterReceiver(mBatteryInfoReceiver);
-		mBatteryInfoReceiver = null;
+		
+		// Stop battery and WiFi callbacks
+		if(mSystemStateMonitor != null)
+			mSystemStateMonitor.stop();
+		mSystemStateMonitor = null;
+		
+		// Stop following setting changes
+		Settings.getInstance(mContext).removeListener(mSettingsListener);
 		
 		// Stop the timer
 		if(mRefreshTimer != null) {
@@ -554,7 +606,7 @@ public class RetroWatchService extends Service implements IContentManagerListene
 		try {
 			return mBluetoothAdapter.isEnabled();
 		} catch (SecurityException e) {
-			Logs.e(TAG, "# Service - Bluetooth permission not granted: " + e.getMessage());
+			Logs.e(TAG, "# Service - Bluetooth permission not granted: {}", e.getMessage());
 			return false;
 		}
 	}
@@ -568,7 +620,7 @@ public class RetroWatchService extends Service implements IContentManagerListene
 			try {
 				scanMode = mBluetoothAdapter.getScanMode();
 			} catch (SecurityException e) {
-				Logs.e(TAG, "# Service - Bluetooth permission not granted: " + e.getMessage());
+				Logs.e(TAG, "# Service - Bluetooth permission not granted: {}", e.getMessage());
 			}
 		}
 		
@@ -589,7 +641,7 @@ public class RetroWatchService extends Service implements IContentManagerListene
      * @param address  Device's MAC address to connect
      */
 	public void connectDevice(String address) {
-		Logs.d(TAG, "Service - connect to " + address);
+		Logs.d(TAG, "Service - connect to {}", address);
 		
 		// Get the BluetoothDevice object
 		if(mBluetoothAdapter != null) {
@@ -641,9 +693,7 @@ public class RetroWatchService extends Service implements IContentManagerListene
 	 */
 	public void sendClearAllNotificationsSignal() {
 		// Send command to NotificationListenerService
-		Intent i = new Intent(Constants.NOTIFICATION_LISTENER_SERVICE);
-		i.putExtra("command","clearall");
-		sendBroadcast(i);
+		NotificationEventBus.getInstance().sendCommand(NotificationEventBus.COMMAND_CLEAR_ALL);
 		
 		// Clear all contents in ContentManager
 		mContentManager.clearAllNotifications();
@@ -651,19 +701,17 @@ public class RetroWatchService extends Service implements IContentManagerListene
 	
 	/**
 	 * Extract all notifications currently registered.
-	 * NotificationReceiverService will send results one by one using broadcast.
-	 * And service send each notification to activity handler. 
+	 * NotificationReceiverService sends all of them as one snapshot using event bus.
+	 * And service sends the whole list to activity handler at once. 
 	 */
 	public void sendGetAllNotificationsSignal() {
-		// Send command to NotificationService
-		Intent i = new Intent(Constants.NOTIFICATION_LISTENER_SERVICE);
-		i.putExtra("command","list");
-		sendBroadcast(i);
-		
-		// Clear all contents in ContentManager
+		// Clear all contents in ContentManager before the snapshot arrives
 		mContentManager.clearAllNotifications();
 		
-		//----- Result will be delivered on broadcast receiver
+		// Send command to NotificationService
+		NotificationEventBus.getInstance().sendCommand(NotificationEventBus.COMMAND_LIST);
+		
+		//----- Result will be delivered on NotificationReceiver as one snapshot
 	}
 	
 	public ArrayList<CPObject> getRssAll() {
@@ -716,7 +764,7 @@ public class RetroWatchService extends Service implements IContentManagerListene
 		return mContentManager.deleteFilter(type, packageName);
 	}
 	
-	public void reserveRemoteUpdate(long delay) {
+	public synchronized void reserveRemoteUpdate(long delay) {
 		try {
 			if(mRefreshTimer != null)
 				mRefreshTimer.cancel();
@@ -774,7 +822,7 @@ public class RetroWatchService extends Service implements IContentManagerListene
 				// Give it a moment to send
 				Thread.sleep(200);
 			} catch (Exception e) {
-				Logs.e(TAG, "Error sending disconnect message: " + e.getMessage());
+				Logs.e(TAG, "Error sending disconnect message: {}", e.getMessage());
 			}
 		}
 		
@@ -823,7 +871,7 @@ public class RetroWatchService extends Service implements IContentManagerListene
 			switch(msg.what) {
 			case BluetoothManager.MESSAGE_STATE_CHANGE:
 				// Connection state Changed (Bluetooth)
-				Logs.d(TAG, "Service - MESSAGE_STATE_CHANGE: " + msg.arg1);
+				Logs.d(TAG, "Service - MESSAGE_STATE_CHANGE: {}", msg.arg1);
 				
 				switch (msg.arg1) {
 				case BluetoothManager.STATE_NONE:
@@ -907,24 +955,34 @@ public class RetroWatchService extends Service implements IContentManagerListene
 
 	
 	/**
-	 * Broadcast receiver class. Receives notification data
+	 * Receives notification events from NotificationReceiverService. Called on event bus worker looper.
 	 */
-	class NotificationReceiver extends BroadcastReceiver{
+	class NotificationReceiver implements NotificationEventBus.INotificationEventListener {
 
 		@Override
-		public void onReceive(Context context, Intent intent) {
-			int cmd = intent.getIntExtra(NotificationReceiverService.NOTIFICATION_KEY_CMD, 0);
-			int noti_id = intent.getIntExtra(NotificationReceiverService.NOTIFICATION_KEY_ID, -1);
-			String packageName = intent.getStringExtra(NotificationReceiverService.NOTIFICATION_KEY_PACKAGE);
-			String textTicker = intent.getStringExtra(NotificationReceiverService.NOTIFICATION_KEY_TEXT);
+		public void OnNotificationEvent(NotificationEventBus.NotificationEvent event) {
+			int cmd = event.mEvent;
+			int noti_id = event.mId;
+			String packageName = event.mPackageName;
+			String textTicker = event.mText;
 			
 			switch(cmd) {
-			case NotificationReceiverService.NOTIFICATION_CMD_LIST:
-			case NotificationReceiverService.NOTIFICATION_CMD_ADD:
+			case NotificationEventBus.EVENT_ADD:
 				if(packageName != null) {
-					Logs.d(TAG,"** Service - Add noti="+noti_id+", package="+packageName);
+					Logs.d(TAG,"** Service - Add noti={}, package={}", noti_id, packageName);
+					LatencyTracer.Trace trace = LatencyTracer.begin(event.mPostedTime);
+					
 					// Add notification and get converted content type object
 					ContentObject obj = mContentManager.addNotification(ContentObject.CONTENT_TYPE_MESSAGING, packageName, textTicker);
+					
+					if(obj != null) {
+						trace.mark(LatencyTracer.STAGE_CONTENT_ADDED);
+						if(obj.mTrace != null)
+							obj.mTrace.discard();		// Older one is replaced by this notification
+						obj.mTrace = trace;
+					} else {
+						trace.discard();
+					}
 						
 					if(obj != null) {
 						// notify to activity
@@ -936,8 +994,28 @@ public class RetroWatchService extends Service implements IContentManagerListene
 				}
 				break;
 				
-			case NotificationReceiverService.NOTIFICATION_CMD_REMOVE:
-				Logs.d(TAG,"** Service - Delete noti="+noti_id+", package="+packageName);
+			case NotificationEventBus.EVENT_SNAPSHOT:
+			{
+				NotificationSnapshot snapshot = event.mSnapshot;
+				ArrayList<NotificationObject> notiList = new ArrayList<NotificationObject>(snapshot.size());
+				for(int i = 0; i < snapshot.size(); i++) {
+					if(snapshot.getPackageName(i) != null)
+						notiList.add(new NotificationObject(ContentObject.CONTENT_TYPE_MESSAGING, 
+								snapshot.getPackageName(i), snapshot.getText(i)));
+				}
+				
+				// Add all at once, then notify activity and device only once
+				ArrayList<ContentObject> contents = mContentManager.addNotifications(notiList);
+				Logs.d(TAG,"** Service - Notification snapshot: {} active, {} added", snapshot.size(), contents.size());
+				if(!contents.isEmpty()) {
+					mActivityHandler.obtainMessage(Constants.MESSAGE_ADD_NOTIFICATION_LIST, contents).sendToTarget();
+					reserveRemoteUpdate(DEFAULT_UPDATE_DELAY);
+				}
+				break;
+			}
+				
+			case NotificationEventBus.EVENT_REMOVE:
+				Logs.d(TAG,"** Service - Delete noti={}, package={}", noti_id, packageName);
 				
 				// notify to Content manager
 				mContentManager.deleteNotification(noti_id);
@@ -948,8 +1026,14 @@ public class RetroWatchService extends Service implements IContentManagerListene
 			
 				reserveRemoteUpdate(DEFAULT_UPDATE_DELAY);
 				break;
+				
+			case NotificationEventBus.EVENT_RESYNC:
+				// Some events were dropped on overflow. Reload all active notifications.
+				Logs.w(TAG, "** Service - Notification events dropped, resync");
+				sendGetAllNotificationsSignal();
+				break;
 			}	// End of switch(cmd)
-		}	// End of onReceive()
+		}	// End of OnNotificationEvent()
 		
 	}	// End of class NotificationReceiver
 	
@@ -1004,18 +1088,19 @@ public class RetroWatchService extends Service implements IContentManagerListene
 				reserveRemoteUpdate(DEFAULT_UPDATE_DELAY);
 				break;
 			case TelephonyManager.CALL_STATE_RINGING:
+				long ringingTime = LatencyTracer.now();
 				ContentObject co = mContentManager.addCallObject(state, incomingNumber);
 				if(mActivityHandler != null)
 					mActivityHandler.obtainMessage(Constants.MESSAGE_CALL_STATE_RECEIVED, co).sendToTarget();
 				// send to device
 				if(co != null)
-					sendContentsToDevice(co);
+					sendCallToDevice(co, ringingTime);
 				//else
 				//	deleteEmergencyOfDevice(EmergencyObject.EMERGENCY_TYPE_CALL_STATE);
 				break;
 			case TelephonyManager.CALL_STATE_OFFHOOK:
 			default:
-				Logs.d(TAG, "PhoneStateListener - Default state="+state+", Number="+incomingNumber);
+				Logs.d(TAG, "PhoneStateListener - Default state={}, Number={}", state, incomingNumber);
 				break;
 			}
 		}
@@ -1046,13 +1131,20 @@ public class RetroWatchService extends Service implements IContentManagerListene
 		}
 	}	// End of TelephonyStateListener
 	
-	private BroadcastReceiver mBatteryInfoReceiver = new BroadcastReceiver() {
+	/**
+	 * Receives meaningful battery and WiFi transitions from SystemStateMonitor.
+	 */
+	class SystemStateListener implements SystemStateMonitor.ISystemStateListener {
 		@Override
-		public void onReceive(Context context, Intent intent) {
-			String action = intent.getAction();
-			if (Intent.ACTION_BATTERY_CHANGED.equals(action)) {
-				int plugType = intent.getIntExtra("plugged", 0);
-				int status = intent.getIntExtra("status", BatteryManager.BATTERY_STATUS_UNKNOWN);
+		public void OnSystemStateChanged(int state) {
+			if(mSystemStateMonitor == null || mContentManager == null)
+				return;
+			
+			switch(state) {
+			case SystemStateMonitor.STATE_BATTERY:
+				int level = mSystemStateMonitor.getBatteryLevel();
+				int status = mSystemStateMonitor.getBatteryStatus();
+				int plugType = mSystemStateMonitor.getBatteryPlugged();
 				
 				int chargingStatus = EmergencyObject.BATT_STATE_UNKNOWN;
 				if (status == BatteryManager.BATTERY_STATUS_CHARGING) {
@@ -1070,24 +1162,32 @@ public class RetroWatchService extends Service implements IContentManagerListene
 					chargingStatus = EmergencyObject.BATT_STATE_UNKNOWN;
 				}
 				
-				int level = intent.getIntExtra("level", 0);
-				int scale = intent.getIntExtra("scale", 100);
-				
-				Logs.d("# mBatteryInfoReceiver : level = " + level);
+				Logs.d(TAG, "# SystemStateListener : battery level = {}", level);
 				
-				// WARNING: Battery service makes too many broadcast.
-				// Process data only when there's change in battery level or status.
-				if(mContentManager.getBatteryLevel() == level
-						&& mContentManager.getBatteryChargingState() == status)
-					return;
+				ContentObject battery = mContentManager.setBatteryInfo(level, chargingStatus);
+				if(battery != null && level < 10) {
+					Logs.d("# SystemStateListener - reserve update");
+					reserveRemoteUpdate(DEFAULT_UPDATE_DELAY);
+				}
+				break;
 				
-				ContentObject co = mContentManager.setBatteryInfo(level, chargingStatus);
-				if(co != null && level < 10) {
-					Logs.d("# mBatteryInfoReceiver - reserve update");
+			case SystemStateMonitor.STATE_WIFI:
+				ContentObject wifi = mContentManager.setWiFiStatus(mSystemStateMonitor.isWiFiConnected());
+				if(wifi != null && wifi.mIsEnabled) {
+					Logs.d("# SystemStateListener - reserve update");
 					reserveRemoteUpdate(DEFAULT_UPDATE_DELAY);
 				}
+				break;
 			}
 		}
+	}	// End of SystemStateListener
+	
+	private final Settings.ISettingsListener mSettingsListener = new Settings.ISettingsListener() {
+		@Override
+		public void OnSettingChanged(String key) {
+			if(Settings.KEY_RUN_IN_BACKGROUND.equals(key))
+				startServiceMonitoring();
+		}
 	};
 	
     /**
@@ -1098,10 +1198,13 @@ public class RetroWatchService extends Service implements IContentManagerListene
 		
 		@Override
 		public void run() {
+			LatencyTracer.markPending(LatencyTracer.STAGE_TIMER_FIRED);
 			mServiceHandler.post(new Runnable() {
 				public void run() {
+					LatencyTracer.markPending(LatencyTracer.STAGE_DISPATCHED);
 					sendDataResetSignalToDevice();
 					sendEveryContentsToDevice();
+					LatencyTracer.dropUnsent();
 				}
 			});
 		}
@@ -1112,10 +1215,13 @@ public class RetroWatchService extends Service implements IContentManagerListene
 		
 		@Override
 		public void run() {
+			LatencyTracer.markPending(LatencyTracer.STAGE_TIMER_FIRED);
 			mServiceHandler.post(new Runnable() {
 				public void run() {
+					LatencyTracer.markPending(LatencyTracer.STAGE_DISPATCHED);
 					sendDataResetSignalToDevice();
 					sendEveryContentsToDevice();
+					LatencyTracer.dropUnsent();
 					mDeleteTimer = null;
 				}
 			});
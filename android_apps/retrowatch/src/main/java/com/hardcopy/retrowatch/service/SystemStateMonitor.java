@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hardcopy.retrowatch.service;
+
+import com.hardcopy.core.state.BatteryBandTracker;
+import com.hardcopy.retrowatch.utils.Logs;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Caches battery and Wi-Fi state from system callbacks, so nobody has to query them.
+ * Battery broadcasts are reduced to meaningful transitions (charge state, low level, 10% band)
+ * and Wi-Fi to connect/disconnect. Listener is called on main thread only for those.
+ */
+public class SystemStateMonitor {
+	
+	private static final String TAG = "SystemStateMonitor";
+	
+	public static final int STATE_BATTERY = 1;
+	public static final int STATE_WIFI = 2;
+	
+	private static final int BATTERY_BAND_WIDTH = 10;
+	private static final int BATTERY_LOW_LEVEL = 10;
+	private static final int BATTERY_HYSTERESIS = 1;
+	
+	private final Context mContext;
+	private final ISystemStateListener mListener;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final BatteryBandTracker mBattery = 
+			new BatteryBandTracker(BATTERY_BAND_WIDTH, BATTERY_LOW_LEVEL, BATTERY_HYSTERESIS);
+	
+	private ConnectivityManager mConnectivityManager = null;
+	private boolean mIsStarted = false;
+	private int mBatteryStatus = BatteryManager.BATTERY_STATUS_UNKNOWN;
+	private int mBatteryPlugged = 0;
+	private int mWiFiNetworks = 0;			// Main thread only
+	
+	
+	public SystemStateMonitor(Context c, ISystemStateListener l) {
+		mContext = c;
+		mListener = l;
+	}
+	
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	public void start() {
+		if(mIsStarted)
+			return;
+		mIsStarted = true;
+		
+		// Sticky intent delivers current battery state right away
+		IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+		if (android.os.Build.VERSION.SDK_INT >= 33) {
+			mContext.registerReceiver(mBatteryReceiver, filter, Context.RECEIVER_EXPORTED);
+		} else {
+			mContext.registerReceiver(mBatteryReceiver, filter);
+		}
+		
+		try {
+			mConnectivityManager = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+			NetworkRequest request = new NetworkRequest.Builder()
+					.addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
+					.build();
+			mConnectivityManager.registerNetworkCallback(request, mNetworkCallback);
+		} catch (Exception e) {
+			Logs.e(TAG, "Cannot register network callback: {}", e);
+			mConnectivityManager = null;
+		}
+	}
+	
+	public void stop() {
+		if(!mIsStarted)
+			return;
+		mIsStarted = false;
+		
+		try {
+			mContext.unregisterReceiver(mBatteryReceiver);
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+		}
+		if(mConnectivityManager != null) {
+			try {
+				mConnectivityManager.unregisterNetworkCallback(mNetworkCallback);
+			} catch (IllegalArgumentException e) {
+				e.printStackTrace();
+			}
+			mConnectivityManager = null;
+		}
+		mHandler.removeCallbacksAndMessages(null);
+	}
+	
+	/**
+	 * @return	battery level in percent, BatteryBandTracker.UNKNOWN before first broadcast
+	 */
+	public int getBatteryLevel() {
+		return mBattery.getPercent();
+	}
+	
+	/**
+	 * @return	BatteryManager.BATTERY_STATUS_*
+	 */
+	public int getBatteryStatus() {
+		return mBatteryStatus;
+	}
+	
+	/**
+	 * @return	BatteryManager.BATTERY_PLUGGED_*, 0 on battery
+	 */
+	public int getBatteryPlugged() {
+		return mBatteryPlugged;
+	}
+	
+	public boolean isWiFiConnected() {
+		return mWiFiNetworks > 0;
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	private void onWiFiChanged(int delta) {
+		boolean wasConnected = mWiFiNetworks > 0;
+		mWiFiNetworks = Math.max(0, mWiFiNetworks + delta);
+		if(wasConnected != (mWiFiNetworks > 0)) {
+			Logs.d(TAG, "# WiFi connected = {}", mWiFiNetworks > 0);
+			mListener.OnSystemStateChanged(STATE_WIFI);
+		}
+	}
+	
+	private final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			if (!Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction()))
+				return;
+			
+			int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, 0);
+			int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+			int percent = (scale > 0) ? level * 100 / scale : level;
+			mBatteryStatus = intent.getIntExtra(BatteryManager.EXTRA_STATUS, BatteryManager.BATTERY_STATUS_UNKNOWN);
+			mBatteryPlugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+			
+			// Battery service broadcasts on every small change. Report transitions only.
+			if(mBattery.update(percent, mBatteryStatus * 16 + mBatteryPlugged)) {
+				Logs.d(TAG, "# Battery : level = {}, status = {}", percent, mBatteryStatus);
+				mListener.OnSystemStateChanged(STATE_BATTERY);
+			}
+		}
+	};
+	
+	private final ConnectivityManager.NetworkCallback mNetworkCallback = new ConnectivityManager.NetworkCallback() {
+		@Override
+		public void onAvailable(Network network) {
+			mHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					onWiFiChanged(1);
+				}
+			});
+		}
+		
+		@Override
+		public void onLost(Network network) {
+			mHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					onWiFiChanged(-1);
+				}
+			});
+		}
+	};
+	
+	
+	public interface ISystemStateListener {
+		public void OnSystemStateChanged(int state);
+	}
+	
+}
@@ -19,10 +19,6 @@ package com.hardcopy.retrowatch.utils;
 public class Constants {
 
 	
-	// Notification intent action string
-	public static final String NOTIFICATION_LISTENER_SERVICE = "com.hardcopy.retrowatch.NOTIFICATION_LISTENER_SERVICE";
-	public static final String NOTIFICATION_LISTENER = "com.hardcopy.retrowatch.NOTIFICATION_LISTENER";
-	
 	// Service handler message key
 	public static final String SERVICE_HANDLER_MSG_KEY_DEVICE_NAME = "device_name";
 	public static final String SERVICE_HANDLER_MSG_KEY_DEVICE_ADDRESS = "device_address";
@@ -42,6 +38,7 @@ public class Constants {
     public static final int MESSAGE_BT_STATE_ERROR = 10;
     
     public static final int MESSAGE_ADD_NOTIFICATION = 101;
+    public static final int MESSAGE_ADD_NOTIFICATION_LIST = 102;
     public static final int MESSAGE_DELETE_NOTIFICATION = 105;
     public static final int MESSAGE_GMAIL_UPDATED = 111;
     public static final int MESSAGE_SMS_RECEIVED = 121;
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hardcopy.retrowatch.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram.
+ * Values are recorded in microseconds into log-linear buckets (8 sub-buckets per power of 2),
+ * so percentiles are accurate to about 12%.
+ */
+public class LatencyHistogram {
+	
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;		// About 12 days in micro-seconds
+	private static final int BUCKET_COUNT = SUB_BUCKET_COUNT * (MAX_EXPONENT - SUB_BUCKET_BITS + 2);
+	
+	private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong mCount = new AtomicLong();
+	private final AtomicLong mSum = new AtomicLong();
+	private final AtomicLong mMax = new AtomicLong();
+	
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	public void record(long micros) {
+		if(micros < 0) micros = 0;
+		mBuckets.incrementAndGet(getBucketIndex(micros));
+		mCount.incrementAndGet();
+		mSum.addAndGet(micros);
+		
+		long max = mMax.get();
+		while(micros > max) {
+			if(mMax.compareAndSet(max, micros))
+				break;
+			max = mMax.get();
+		}
+	}
+	
+	public long getCount() {
+		return mCount.get();
+	}
+	
+	public long getMax() {
+		return mMax.get();
+	}
+	
+	public long getMean() {
+		long count = mCount.get();
+		return (count > 0) ? mSum.get() / count : 0;
+	}
+	
+	/**
+	 * Returns upper bound of the bucket which contains the given percentile (0 ~ 100).
+	 * Recording threads are not blocked, so the result is a close estimate while recording.
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		for(int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = mBuckets.get(i);
+			total += counts[i];
+		}
+		if(total == 0)
+			return 0;
+		
+		long rank = (long) Math.ceil(percentile / 100.0 * total);
+		if(rank < 1) rank = 1;
+		long seen = 0;
+		for(int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts[i];
+			if(seen >= rank)
+				return Math.min(getBucketUpperBound(i), mMax.get());
+		}
+		return mMax.get();
+	}
+	
+	public void reset() {
+		for(int i = 0; i < BUCKET_COUNT; i++)
+			mBuckets.set(i, 0);
+		mCount.set(0);
+		mSum.set(0);
+		mMax.set(0);
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	private static int getBucketIndex(long value) {
+		if(value < SUB_BUCKET_COUNT)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if(exponent > MAX_EXPONENT)
+			return BUCKET_COUNT - 1;
+		int shift = exponent - SUB_BUCKET_BITS;
+		int sub = (int) ((value >> shift) & (SUB_BUCKET_COUNT - 1));
+		return SUB_BUCKET_COUNT * (shift + 1) + sub;
+	}
+	
+	private static long getBucketUpperBound(int index) {
+		if(index < SUB_BUCKET_COUNT)
+			return index;
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		int sub = index % SUB_BUCKET_COUNT;
+		long lower = (long) (SUB_BUCKET_COUNT + sub) << shift;
+		return lower + (1L << shift) - 1;
+	}
+	
+}
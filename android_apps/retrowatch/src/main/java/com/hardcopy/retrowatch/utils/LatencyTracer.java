@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hardcopy.retrowatch.utils;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import android.os.SystemClock;
+
+/**
+ * Traces each notification from the moment it is posted until its bytes are written to the watch.
+ * Every stage is stamped with monotonic time (elapsedRealtimeNanos, valid across processes)
+ * and the time spent since previous stage is aggregated into a histogram.
+ */
+public class LatencyTracer {
+	
+	// Stages. Keep in order of the sending path.
+	public static final int STAGE_POSTED = 0;			// NotificationReceiverService.onNotificationPosted()
+	public static final int STAGE_RECEIVED = 1;			// RetroWatchService.NotificationReceiver.OnNotificationEvent()
+	public static final int STAGE_CONTENT_ADDED = 2;	// ContentManager.addNotification() returned
+	public static final int STAGE_TIMER_FIRED = 3;		// Refresh timer fired
+	public static final int STAGE_DISPATCHED = 4;		// Service handler starts sending
+	public static final int STAGE_TRANSACTION = 5;		// Transaction.sendTransaction()
+	public static final int STAGE_WRITTEN = 6;			// Frame written to socket by writer thread
+	public static final int STAGE_COUNT = 7;
+	
+	private static final String[] STAGE_NAMES = {
+		"posted", "received", "content added", "timer fired", "dispatched", "transaction", "written"
+	};
+	
+	private static final LatencyHistogram[] mStageHistograms = new LatencyHistogram[STAGE_COUNT];
+	private static final LatencyHistogram mTotalHistogram = new LatencyHistogram();
+	private static final LatencyHistogram mWriteHistogram = new LatencyHistogram();
+	private static final LatencyHistogram mCallHistogram = new LatencyHistogram();
+	
+	// Call alert should reach the device well before the phone stops ringing
+	private static final long CALL_DEADLINE_US = 1000 * 1000;
+	
+	private static final AtomicLong mStarted = new AtomicLong();
+	private static final AtomicLong mCompleted = new AtomicLong();
+	private static final AtomicLong mUnsent = new AtomicLong();
+	private static final AtomicLong mWriteFailed = new AtomicLong();
+	private static final AtomicLong mCallStarted = new AtomicLong();
+	private static final AtomicLong mCallLate = new AtomicLong();
+	
+	private static final ConcurrentLinkedQueue<Trace> mPending = new ConcurrentLinkedQueue<Trace>();
+	
+	static {
+		for(int i = 0; i < STAGE_COUNT; i++)
+			mStageHistograms[i] = new LatencyHistogram();
+	}
+	
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	public static long now() {
+		return SystemClock.elapsedRealtimeNanos();
+	}
+	
+	/**
+	 * Start tracing a notification.
+	 * @param postedTime	Time stamped by now() when notification was posted. 0 if unknown.
+	 */
+	public static Trace begin(long postedTime) {
+		Trace trace = new Trace();
+		long current = now();
+		trace.mStamps.set(STAGE_POSTED, (postedTime > 0 && postedTime <= current) ? postedTime : current);
+		trace.mStamps.set(STAGE_RECEIVED, current);
+		mStarted.incrementAndGet();
+		mPending.add(trace);
+		return trace;
+	}
+	
+	/**
+	 * Start tracing an incoming call alert. Only ringing > written is recorded.
+	 * @param ringingTime	Time stamped by now() when CALL_STATE_RINGING arrived
+	 */
+	public static Trace beginCall(long ringingTime) {
+		Trace trace = new Trace();
+		trace.mIsCall = true;
+		trace.mStamps.set(STAGE_POSTED, ringingTime);
+		mCallStarted.incrementAndGet();
+		return trace;
+	}
+	
+	/**
+	 * Stamp every trace waiting to be sent. Used for the stages which are shared by all pending items.
+	 */
+	public static void markPending(int stage) {
+		for(Trace trace : mPending) {
+			trace.mark(stage);
+		}
+	}
+	
+	/**
+	 * Called after the sending loop. Traces not handed to a transaction at this point were filtered,
+	 * disabled or failed to send. Queued ones are finished or discarded by the writer thread.
+	 */
+	public static void dropUnsent() {
+		Iterator<Trace> iter = mPending.iterator();
+		while(iter.hasNext()) {
+			Trace trace = iter.next();
+			if(trace.mStamps.get(STAGE_DISPATCHED) != 0 && trace.mStamps.get(STAGE_TRANSACTION) == 0) {
+				iter.remove();
+				mUnsent.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * Record duration of single Bluetooth write.
+	 */
+	public static void recordWrite(long durationNanos, boolean success) {
+		mWriteHistogram.record(durationNanos / 1000);
+		if(!success)
+			mWriteFailed.incrementAndGet();
+	}
+	
+	public static void reset() {
+		for(int i = 0; i < STAGE_COUNT; i++)
+			mStageHistograms[i].reset();
+		mTotalHistogram.reset();
+		mWriteHistogram.reset();
+		mCallHistogram.reset();
+		mStarted.set(0);
+		mCompleted.set(0);
+		mUnsent.set(0);
+		mWriteFailed.set(0);
+		mCallStarted.set(0);
+		mCallLate.set(0);
+		mPending.clear();
+	}
+	
+	public static void dump(PrintWriter pw) {
+		pw.println("Notification latency (ms)");
+		pw.println(String.format(Locale.US, "%-28s %7s %9s %9s %9s %9s", 
+				"stage", "count", "p50", "p95", "p99", "max"));
+		for(int i = 1; i < STAGE_COUNT; i++) {
+			printHistogram(pw, STAGE_NAMES[i-1] + " > " + STAGE_NAMES[i], mStageHistograms[i]);
+		}
+		printHistogram(pw, "total (posted > written)", mTotalHistogram);
+		printHistogram(pw, "bluetooth write", mWriteHistogram);
+		printHistogram(pw, "call (ringing > written)", mCallHistogram);
+		pw.println(String.format(Locale.US, "started=%d, completed=%d, unsent=%d, pending=%d, write failed=%d",
+				mStarted.get(), mCompleted.get(), mUnsent.get(), mPending.size(), mWriteFailed.get()));
+		pw.println(String.format(Locale.US, "calls=%d, written=%d, over %dms=%d",
+				mCallStarted.get(), mCallHistogram.getCount(), CALL_DEADLINE_US / 1000, mCallLate.get()));
+	}
+	
+	public static String getReport() {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		dump(pw);
+		pw.flush();
+		return sw.toString();
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	private static void printHistogram(PrintWriter pw, String name, LatencyHistogram histogram) {
+		pw.println(String.format(Locale.US, "%-28s %7d %9.1f %9.1f %9.1f %9.1f", name, histogram.getCount(),
+				histogram.getPercentile(50) / 1000.0, histogram.getPercentile(95) / 1000.0,
+				histogram.getPercentile(99) / 1000.0, histogram.getMax() / 1000.0));
+	}
+	
+	private static void complete(Trace trace) {
+		if(trace.mIsCall) {
+			long elapsed = (trace.mStamps.get(STAGE_WRITTEN) - trace.mStamps.get(STAGE_POSTED)) / 1000;
+			mCallHistogram.record(elapsed);
+			if(elapsed > CALL_DEADLINE_US)
+				mCallLate.incrementAndGet();
+			return;
+		}
+		mPending.remove(trace);
+		
+		long previous = trace.mStamps.get(STAGE_POSTED);
+		for(int i = 1; i < STAGE_COUNT; i++) {
+			long stamp = trace.mStamps.get(i);
+			if(stamp == 0)
+				continue;		// Stage skipped. Next stage includes this interval.
+			mStageHistograms[i].record((stamp - previous) / 1000);
+			previous = stamp;
+		}
+		mTotalHistogram.record((trace.mStamps.get(STAGE_WRITTEN) - trace.mStamps.get(STAGE_POSTED)) / 1000);
+		mCompleted.incrementAndGet();
+	}
+	
+	
+	/**
+	 * Time stamps of one notification
+	 */
+	public static class Trace {
+		private final AtomicLongArray mStamps = new AtomicLongArray(STAGE_COUNT);
+		private boolean mIsCall = false;
+		
+		/**
+		 * Stamp the stage once. Later calls for the same stage are ignored.
+		 */
+		public void mark(int stage) {
+			if(stage <= STAGE_POSTED || stage >= STAGE_WRITTEN)
+				return;
+			mStamps.compareAndSet(stage, 0, now());
+		}
+		
+		/**
+		 * Stop tracing without recording. (ex: notification is ignored)
+		 */
+		public void discard() {
+			mPending.remove(this);
+		}
+		
+		/**
+		 * Bytes are written. Records every interval of this trace.
+		 */
+		public void finish() {
+			if(mStamps.compareAndSet(STAGE_WRITTEN, 0, now()))
+				complete(this);
+		}
+	}
+	
+}
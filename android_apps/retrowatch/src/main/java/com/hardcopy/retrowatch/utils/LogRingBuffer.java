@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2014 The Retro Watch - Open source smart watch project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hardcopy.retrowatch.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Fixed size in-memory log sink.
+ * Adding a line only stores references. Time formatting and file I/O are done
+ * by flush() on a background thread.
+ */
+public class LogRingBuffer {
+	
+	private static final String TAG = "LogRingBuffer";
+	private static final String LEVEL_CHARS = "??VDIWEA";
+	
+	private final int mCapacity;
+	private final long[] mTimes;
+	private final int[] mLevels;
+	private final String[] mTags;
+	private final String[] mMessages;
+	
+	private int mNext = 0;
+	private int mCount = 0;
+	private long mDropped = 0;
+	
+	private Thread mFlushThread = null;
+	
+	
+	public LogRingBuffer(int capacity) {
+		mCapacity = capacity;
+		mTimes = new long[capacity];
+		mLevels = new int[capacity];
+		mTags = new String[capacity];
+		mMessages = new String[capacity];
+	}
+	
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	public synchronized void add(int level, String tag, String msg) {
+		mTimes[mNext] = System.currentTimeMillis();
+		mLevels[mNext] = level;
+		mTags[mNext] = tag;
+		mMessages[mNext] = msg;
+		mNext = (mNext + 1) % mCapacity;
+		if(mCount < mCapacity)
+			mCount++;
+		else
+			mDropped++;		// Oldest line is overwritten
+	}
+	
+	public synchronized int getCount() {
+		return mCount;
+	}
+	
+	public synchronized void clear() {
+		for(int i = 0; i < mCapacity; i++) {
+			mTags[i] = null;
+			mMessages[i] = null;
+		}
+		mNext = 0;
+		mCount = 0;
+		mDropped = 0;
+	}
+	
+	/**
+	 * Append every buffered line to the file on a background thread and empty the buffer.
+	 * Returns false if previous flush is still running.
+	 */
+	public boolean flush(final File file) {
+		if(file == null)
+			return false;
+		
+		final Snapshot snapshot;
+		synchronized(this) {
+			if(mFlushThread != null && mFlushThread.isAlive())
+				return false;
+			snapshot = takeSnapshot();
+			
+			mFlushThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					writeSnapshot(snapshot, file);
+				}
+			}, TAG);
+			mFlushThread.setPriority(Thread.MIN_PRIORITY);
+			mFlushThread.start();
+		}
+		return true;
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	// Called with lock held
+	private Snapshot takeSnapshot() {
+		Snapshot snapshot = new Snapshot(mCount, mDropped);
+		int first = (mNext - mCount + mCapacity) % mCapacity;
+		for(int i = 0; i < mCount; i++) {
+			int index = (first + i) % mCapacity;
+			snapshot.mTimes[i] = mTimes[index];
+			snapshot.mLevels[i] = mLevels[index];
+			snapshot.mTags[i] = mTags[index];
+			snapshot.mMessages[i] = mMessages[index];
+			mTags[index] = null;
+			mMessages[index] = null;
+		}
+		mCount = 0;
+		mDropped = 0;
+		return snapshot;
+	}
+	
+	private static void writeSnapshot(Snapshot snapshot, File file) {
+		SimpleDateFormat formatter = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+		Date date = new Date();
+		BufferedWriter writer = null;
+		try {
+			writer = new BufferedWriter(new FileWriter(file, true));
+			if(snapshot.mDropped > 0) {
+				writer.write("--- " + snapshot.mDropped + " lines dropped ---");
+				writer.newLine();
+			}
+			for(int i = 0; i < snapshot.mCount; i++) {
+				date.setTime(snapshot.mTimes[i]);
+				int level = snapshot.mLevels[i];
+				writer.write(formatter.format(date));
+				writer.write(' ');
+				writer.write((level >= 0 && level < LEVEL_CHARS.length()) ? LEVEL_CHARS.charAt(level) : '?');
+				writer.write('/');
+				writer.write(String.valueOf(snapshot.mTags[i]));
+				writer.write(" : ");
+				writer.write(String.valueOf(snapshot.mMessages[i]));
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if(writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	private static class Snapshot {
+		final int mCount;
+		final long mDropped;
+		final long[] mTimes;
+		final int[] mLevels;
+		final String[] mTags;
+		final String[] mMessages;
+		
+		Snapshot(int count, long dropped) {
+			mCount = count;
+			mDropped = dropped;
+			mTimes = new long[count];
+			mLevels = new int[count];
+			mTags = new String[count];
+			mMessages = new String[count];
+		}
+	}
+	
+}
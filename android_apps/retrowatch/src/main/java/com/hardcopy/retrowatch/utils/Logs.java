@@ -14,62 +14,253 @@
  * limitations under the License.
  */
 
+
 package com.hardcopy.retrowatch.utils;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.hardcopy.retrowatch.BuildConfig;
+
 import android.util.Log;
 
+/**
+ * Logging facade.
+ * Messages are checked against per-tag level before anything is formatted.
+ * Parameterized messages use {} as placeholder and are built only when the level is enabled.
+ * ENABLED is a compile time constant, so release builds drop every logging body.
+ */
 public class Logs {
 	
 	private static final String TAG = "RetroWatch";
-	public static boolean mIsEnabled = true;
 	
+	// Compile time switch. Guard expensive call sites with (Logs.ENABLED && ...)
+	public static final boolean ENABLED = BuildConfig.LOG_ENABLED;
 	
-	public static void v(String msg) {
-		if(mIsEnabled) {
-			Log.v(TAG, msg);
+	public static final int LEVEL_VERBOSE = Log.VERBOSE;
+	public static final int LEVEL_DEBUG = Log.DEBUG;
+	public static final int LEVEL_INFO = Log.INFO;
+	public static final int LEVEL_WARN = Log.WARN;
+	public static final int LEVEL_ERROR = Log.ERROR;
+	public static final int LEVEL_NONE = Integer.MAX_VALUE;
+	
+	// Runtime switch
+	public static volatile boolean mIsEnabled = true;
+	
+	private static volatile int mDefaultLevel = LEVEL_DEBUG;
+	private static final ConcurrentHashMap<String, Integer> mTagLevels = new ConcurrentHashMap<String, Integer>();
+	
+	private static volatile LogRingBuffer mRingBuffer = null;
+	
+	private static final ThreadLocal<StringBuilder> sBuffer = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(256);
 		}
+	};
+	
+	
+	/*****************************************************
+	 *		Configuration
+	 ******************************************************/
+	
+	public static void setLevel(int level) {
+		mDefaultLevel = level;
+	}
+	
+	public static void setLevel(String tag, int level) {
+		if(tag == null) return;
+		mTagLevels.put(tag, level);
+	}
+	
+	public static void clearLevel(String tag) {
+		if(tag == null) return;
+		mTagLevels.remove(tag);
+	}
+	
+	public static boolean isLoggable(String tag, int level) {
+		if(!ENABLED || !mIsEnabled)
+			return false;
+		Integer tagLevel = (tag == null) ? null : mTagLevels.get(tag);
+		return level >= (tagLevel == null ? mDefaultLevel : tagLevel);
+	}
+	
+	/**
+	 * Keep recent log lines in memory. Pass 0 to disable.
+	 */
+	public static void setRingBufferSize(int capacity) {
+		mRingBuffer = (capacity > 0) ? new LogRingBuffer(capacity) : null;
+	}
+	
+	public static LogRingBuffer getRingBuffer() {
+		return mRingBuffer;
+	}
+	
+	
+	/*****************************************************
+	 *		Verbose
+	 ******************************************************/
+	
+	public static void v(String msg) {
+		if(ENABLED) log(LEVEL_VERBOSE, TAG, msg);
 	}
 	
 	public static void v(String tag, String msg) {
-		if(mIsEnabled) {
-			Log.v(TAG, msg);
-		}
+		if(ENABLED) log(LEVEL_VERBOSE, tag, msg);
+	}
+	
+	public static void v(String tag, String format, Object arg1) {
+		if(ENABLED && isLoggable(tag, LEVEL_VERBOSE)) write(LEVEL_VERBOSE, tag, format(format, arg1, null, null, null, 1));
 	}
 	
+	public static void v(String tag, String format, Object arg1, Object arg2) {
+		if(ENABLED && isLoggable(tag, LEVEL_VERBOSE)) write(LEVEL_VERBOSE, tag, format(format, arg1, arg2, null, null, 2));
+	}
+	
+	public static void v(String tag, String format, Object... args) {
+		if(ENABLED && isLoggable(tag, LEVEL_VERBOSE)) write(LEVEL_VERBOSE, tag, format(format, null, null, null, args, -1));
+	}
+	
+	
+	/*****************************************************
+	 *		Debug
+	 ******************************************************/
+	
 	public static void d(String msg) {
-		if(mIsEnabled) {
-			Log.d(TAG, msg);
-		}
+		if(ENABLED) log(LEVEL_DEBUG, TAG, msg);
 	}
 	
 	public static void d(String tag, String msg) {
-		if(mIsEnabled) {
-			Log.d(TAG, msg);
-		}
+		if(ENABLED) log(LEVEL_DEBUG, tag, msg);
 	}
 	
-	public static void e(String msg) {
-		if(mIsEnabled) {
-			Log.e(TAG, msg);
-		}
+	public static void d(String tag, String format, Object arg1) {
+		if(ENABLED && isLoggable(tag, LEVEL_DEBUG)) write(LEVEL_DEBUG, tag, format(format, arg1, null, null, null, 1));
 	}
 	
-	public static void e(String tag, String msg) {
-		if(mIsEnabled) {
-			Log.e(TAG, msg);
-		}
+	public static void d(String tag, String format, Object arg1, Object arg2) {
+		if(ENABLED && isLoggable(tag, LEVEL_DEBUG)) write(LEVEL_DEBUG, tag, format(format, arg1, arg2, null, null, 2));
+	}
+	
+	public static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+		if(ENABLED && isLoggable(tag, LEVEL_DEBUG)) write(LEVEL_DEBUG, tag, format(format, arg1, arg2, arg3, null, 3));
+	}
+	
+	public static void d(String tag, String format, Object... args) {
+		if(ENABLED && isLoggable(tag, LEVEL_DEBUG)) write(LEVEL_DEBUG, tag, format(format, null, null, null, args, -1));
 	}
 	
+	
+	/*****************************************************
+	 *		Info
+	 ******************************************************/
+	
 	public static void i(String msg) {
-		if(mIsEnabled) {
-			Log.e(TAG, msg);
-		}
+		if(ENABLED) log(LEVEL_INFO, TAG, msg);
 	}
 	
 	public static void i(String tag, String msg) {
-		if(mIsEnabled) {
-			Log.e(TAG, msg);
+		if(ENABLED) log(LEVEL_INFO, tag, msg);
+	}
+	
+	public static void i(String tag, String format, Object arg1) {
+		if(ENABLED && isLoggable(tag, LEVEL_INFO)) write(LEVEL_INFO, tag, format(format, arg1, null, null, null, 1));
+	}
+	
+	public static void i(String tag, String format, Object arg1, Object arg2) {
+		if(ENABLED && isLoggable(tag, LEVEL_INFO)) write(LEVEL_INFO, tag, format(format, arg1, arg2, null, null, 2));
+	}
+	
+	public static void i(String tag, String format, Object... args) {
+		if(ENABLED && isLoggable(tag, LEVEL_INFO)) write(LEVEL_INFO, tag, format(format, null, null, null, args, -1));
+	}
+	
+	
+	/*****************************************************
+	 *		Warning, Error
+	 *		Errors are kept in release build.
+	 ******************************************************/
+	
+	public static void w(String tag, String msg) {
+		log(LEVEL_WARN, tag, msg);
+	}
+	
+	public static void w(String tag, String format, Object... args) {
+		if(isLoggableRelease(tag, LEVEL_WARN)) write(LEVEL_WARN, tag, format(format, null, null, null, args, -1));
+	}
+	
+	public static void e(String msg) {
+		log(LEVEL_ERROR, TAG, msg);
+	}
+	
+	public static void e(String tag, String msg) {
+		log(LEVEL_ERROR, tag, msg);
+	}
+	
+	public static void e(String tag, String format, Object... args) {
+		if(isLoggableRelease(tag, LEVEL_ERROR)) write(LEVEL_ERROR, tag, format(format, null, null, null, args, -1));
+	}
+	
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	// Warnings and errors are not compiled out
+	private static boolean isLoggableRelease(String tag, int level) {
+		if(!ENABLED)
+			return mIsEnabled;
+		return isLoggable(tag, level);
+	}
+	
+	private static void log(int level, String tag, String msg) {
+		boolean loggable = (level >= LEVEL_WARN) ? isLoggableRelease(tag, level) : isLoggable(tag, level);
+		if(loggable)
+			write(level, tag, msg);
+	}
+	
+	private static void write(int level, String tag, String msg) {
+		if(msg == null) msg = "null";
+		// Every line goes to the same logcat tag so the existing filter keeps working
+		Log.println(level, TAG, (tag == null || TAG.equals(tag)) ? msg : tag + " : " + msg);
+		
+		LogRingBuffer ring = mRingBuffer;
+		if(ring != null)
+			ring.add(level, tag, msg);
+	}
+	
+	/**
+	 * Replace each {} with next argument.
+	 * Fixed arguments (count >= 0) avoid allocating an array for the common calls.
+	 */
+	private static String format(String format, Object arg1, Object arg2, Object arg3, Object[] args, int count) {
+		if(format == null)
+			return null;
+		if(count < 0) {
+			count = (args == null) ? 0 : args.length;
+		}
+		
+		StringBuilder sb = sBuffer.get();
+		sb.setLength(0);
+		int argIndex = 0;
+		int start = 0;
+		int index;
+		while(argIndex < count && (index = format.indexOf("{}", start)) >= 0) {
+			sb.append(format, start, index);
+			Object arg;
+			if(args != null)
+				arg = args[argIndex];
+			else
+				arg = (argIndex == 0) ? arg1 : (argIndex == 1) ? arg2 : arg3;
+			sb.append(arg);
+			argIndex++;
+			start = index + 2;
 		}
+		sb.append(format, start, format.length());
+		
+		String result = sb.toString();
+		if(sb.capacity() > 4096)
+			sBuffer.set(new StringBuilder(256));
+		return result;
 	}
 	
 }
@@ -16,65 +16,188 @@
 
 package com.hardcopy.retrowatch.utils;
 
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import android.content.Context;
 import android.content.SharedPreferences;
 
+/**
+ * Typed settings store.
+ * Values are loaded once and kept in an immutable snapshot, so reading is a volatile read.
+ * Setters publish a new snapshot and hand the write to SharedPreferences.apply(),
+ * which writes to disk in background and merges writes made in a row.
+ * Listeners are notified after the lock is released, so they may call back into Settings.
+ */
 public class Settings {
 	
-	private static Settings mSettings = null;
+	private static final String TAG = "Settings";
+	
+	public static final String KEY_GMAIL_ADDRESS = Constants.PREFERENCE_KEY_GMAIL_ADDRESS;
+	public static final String KEY_RUN_IN_BACKGROUND = Constants.PREFERENCE_KEY_RUN_IN_BG;
+	public static final String KEY_CONNECTION_INFO = Constants.PREFERENCE_CONN_INFO_ADDRESS;
+	public static final String KEY_IS_FIRST_EXEC = Constants.PREFERENCE_KEY_IS_FIRST_EXEC;
 	
-	private Context mContext;
+	private static volatile Settings mSettings = null;
 	
+	private final SharedPreferences mPrefs;
+	private volatile Values mValues;
+	private final CopyOnWriteArrayList<ISettingsListener> mListeners = new CopyOnWriteArrayList<ISettingsListener>();
 	
 	
-	public synchronized static Settings getInstance(Context c) {
-		if(mSettings == null) {
-			mSettings = new Settings(c);
+	public static Settings getInstance(Context c) {
+		Settings settings = mSettings;
+		if(settings == null) {
+			synchronized(Settings.class) {
+				settings = mSettings;
+				if(settings == null) {
+					settings = new Settings(c);
+					mSettings = settings;
+				}
+			}
 		}
-		return mSettings;
+		return settings;
+	}
+	
+	private Settings(Context c) {
+		mPrefs = c.getApplicationContext().getSharedPreferences(Constants.PREFERENCE_NAME, Context.MODE_PRIVATE);
+		mValues = new Values(
+				mPrefs.getString(Constants.PREFERENCE_KEY_GMAIL_ADDRESS, null),
+				mPrefs.getBoolean(Constants.PREFERENCE_KEY_RUN_IN_BG, false),
+				mPrefs.getString(Constants.PREFERENCE_CONN_INFO_ADDRESS, null),
+				mPrefs.getString(Constants.PREFERENCE_CONN_INFO_NAME, null),
+				mPrefs.getBoolean(Constants.PREFERENCE_KEY_IS_FIRST_EXEC, true));
 	}
 	
-	public Settings(Context c) {
-		if(mContext == null) {
-			mContext = c;
-			initialize();
+	
+	/*****************************************************
+	 *		Public methods
+	 ******************************************************/
+	
+	public synchronized void finalize() {
+		mListeners.clear();
+		mSettings = null;
+	}
+	
+	public void addListener(ISettingsListener l) {
+		if(l != null)
+			mListeners.addIfAbsent(l);
+	}
+	
+	public void removeListener(ISettingsListener l) {
+		mListeners.remove(l);
+	}
+	
+	public void setGmailAddress(String addr) {
+		if(addr == null || addr.isEmpty())
+			return;
+		synchronized(this) {
+			Values v = mValues;
+			if(addr.equals(v.mGmailAddress))
+				return;
+			mValues = new Values(addr, v.mRunInBackground, v.mDeviceAddress, v.mDeviceName, v.mIsFirstExec);
+			mPrefs.edit().putString(Constants.PREFERENCE_KEY_GMAIL_ADDRESS, addr).apply();
 		}
+		notifyChanged(KEY_GMAIL_ADDRESS);
 	}
 	
+	public String getGmailAddress() {
+		return mValues.mGmailAddress;
+	}
 	
-	private void initialize() {
+	public void setRunInBackground(boolean isTrue) {
+		synchronized(this) {
+			Values v = mValues;
+			if(v.mRunInBackground == isTrue)
+				return;
+			mValues = new Values(v.mGmailAddress, isTrue, v.mDeviceAddress, v.mDeviceName, v.mIsFirstExec);
+			mPrefs.edit().putBoolean(Constants.PREFERENCE_KEY_RUN_IN_BG, isTrue).apply();
+		}
+		notifyChanged(KEY_RUN_IN_BACKGROUND);
 	}
 	
+	public boolean getRunInBackground() {
+		return mValues.mRunInBackground;
+	}
 	
-	public synchronized void finalize() {
-		mContext = null;
-		mSettings = null;
+	/**
+	 * Save last connected device
+	 */
+	public void setConnectionInfo(String address, String name) {
+		synchronized(this) {
+			Values v = mValues;
+			if(equals(address, v.mDeviceAddress) && equals(name, v.mDeviceName))
+				return;
+			mValues = new Values(v.mGmailAddress, v.mRunInBackground, address, name, v.mIsFirstExec);
+			mPrefs.edit()
+				.putString(Constants.PREFERENCE_CONN_INFO_ADDRESS, address)
+				.putString(Constants.PREFERENCE_CONN_INFO_NAME, name)
+				.apply();
+		}
+		notifyChanged(KEY_CONNECTION_INFO);
+	}
+	
+	public String getDeviceAddress() {
+		return mValues.mDeviceAddress;
+	}
+	
+	public String getDeviceName() {
+		return mValues.mDeviceName;
 	}
 	
-	public synchronized void setGmailAddress(String addr) {
-		if(addr != null && !addr.isEmpty()) {
-			SharedPreferences prefs = mContext.getSharedPreferences(Constants.PREFERENCE_NAME, Context.MODE_PRIVATE);
-			SharedPreferences.Editor editor = prefs.edit();
-			editor.putString(Constants.PREFERENCE_KEY_GMAIL_ADDRESS, addr);
-			editor.commit();
+	public void setFirstExec(boolean isFirst) {
+		synchronized(this) {
+			Values v = mValues;
+			if(v.mIsFirstExec == isFirst)
+				return;
+			mValues = new Values(v.mGmailAddress, v.mRunInBackground, v.mDeviceAddress, v.mDeviceName, isFirst);
+			mPrefs.edit().putBoolean(Constants.PREFERENCE_KEY_IS_FIRST_EXEC, isFirst).apply();
 		}
+		notifyChanged(KEY_IS_FIRST_EXEC);
 	}
 	
-	public synchronized String getGmailAddress() {
-		SharedPreferences prefs = mContext.getSharedPreferences(Constants.PREFERENCE_NAME, Context.MODE_PRIVATE);
-		return prefs.getString(Constants.PREFERENCE_KEY_GMAIL_ADDRESS, null);
+	public boolean isFirstExec() {
+		return mValues.mIsFirstExec;
 	}
 	
-	public synchronized void setRunInBackground(boolean isTrue) {
-		SharedPreferences prefs = mContext.getSharedPreferences(Constants.PREFERENCE_NAME, Context.MODE_PRIVATE);
-		SharedPreferences.Editor editor = prefs.edit();
-		editor.putBoolean(Constants.PREFERENCE_KEY_RUN_IN_BG, isTrue);
-		editor.commit();
+	
+	/*****************************************************
+	 *		Private methods
+	 ******************************************************/
+	
+	// Called without lock. Iterating CopyOnWriteArrayList works on a snapshot of the listeners.
+	// Listeners get the key only and read the current value, so the latest one always wins.
+	private void notifyChanged(String key) {
+		Logs.d(TAG, "# Setting changed : {}", key);
+		for(ISettingsListener l : mListeners) {
+			l.OnSettingChanged(key);
+		}
+	}
+	
+	private static boolean equals(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+	
+	/**
+	 * Immutable snapshot of every setting
+	 */
+	private static class Values {
+		final String mGmailAddress;
+		final boolean mRunInBackground;
+		final String mDeviceAddress;
+		final String mDeviceName;
+		final boolean mIsFirstExec;
+		
+		Values(String gmailAddress, boolean runInBackground, String deviceAddress, String deviceName, boolean isFirstExec) {
+			mGmailAddress = gmailAddress;
+			mRunInBackground = runInBackground;
+			mDeviceAddress = deviceAddress;
+			mDeviceName = deviceName;
+			mIsFirstExec = isFirstExec;
+		}
 	}
 	
-	public synchronized boolean getRunInBackground() {
-		SharedPreferences prefs = mContext.getSharedPreferences(Constants.PREFERENCE_NAME, Context.MODE_PRIVATE);
-		return prefs.getBoolean(Constants.PREFERENCE_KEY_RUN_IN_BG, false);
+	public interface ISettingsListener {
+		public void OnSettingChanged(String key);
 	}
 	
 }
@@ -38,6 +38,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.util.Log;
 
+import com.hardcopy.core.text.TextSanitizer;
 import com.hardcopy.retrowatch.R;
 
 public class Utils {
@@ -372,13 +373,12 @@ public class Utils {
 	
 	
 	public static final String REG_EXP_IMAGE_URL = "(?i)http://[a-zA-Z0-9_.\\-%&=?!:;@\"'/]*(?i)(.gif|.jpg|.png|.jpeg)";
+	private static final Pattern PATTERN_IMAGE_URL = Pattern.compile(REG_EXP_IMAGE_URL);
 	
     // TODO: Not working correctly
     public static List<String> getImageURL(String str) {
-		Pattern nonValidPattern = Pattern.compile(REG_EXP_IMAGE_URL);
-
 		List<String> result = new ArrayList<String>();
-		Matcher matcher = nonValidPattern.matcher(str);
+		Matcher matcher = PATTERN_IMAGE_URL.matcher(str);
 		while (matcher.find()) {
 			result.add(matcher.group(0));
 			break;
@@ -460,9 +460,7 @@ public class Utils {
 	//============================================================
 	
 	public static String removeSpecialChars(String str){       
-		String match = "[^\uAC00-\uD7A3xfe0-9a-zA-Z\\s]";
-		str =str.replaceAll(match, " ");
-		return str;
+		return TextSanitizer.removeSpecialChars(str);
 	}
 	
 	
@@ -9,9 +9,12 @@ import android.app.Service;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothSocket;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
+import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
@@ -21,6 +24,10 @@ import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 
+import com.hardcopy.core.console.ConsoleBuffer;
+import com.hardcopy.core.state.BatteryBandTracker;
+import com.hardcopy.core.time.TimeSyncScheduler;
+import com.hardcopy.core.transport.PriorityFrameWriter;
 import com.hardcopy.smartglasses.R;
 import com.hardcopy.smartglasses.protocol.ProtoV2;
 import com.hardcopy.smartglasses.protocol.ProtoV2StreamDecoder;
@@ -54,21 +61,78 @@ public class CompanionForegroundService extends Service {
     private static volatile boolean runningHint = false;
     private static volatile CompanionForegroundService instance = null;
 
+    // Output console shown by MainActivity. Bounded, so long sessions do not grow the UI.
+    private static final int CONSOLE_CAPACITY = 500;
+    private static final ConsoleBuffer console = new ConsoleBuffer(CONSOLE_CAPACITY);
+
     private Handler mainHandler;
     private Thread ioThread;
     private Handler timerHandler;
-    private Runnable timeSender;
     private Handler notificationDelayHandler;
     private Runnable pendingNotificationSender;
 
     private BluetoothSocket socket;
     private InputStream in;
     private OutputStream out;
+    private PriorityFrameWriter writer;
+
+    // Incoming call alert: detection -> written
+    private static final long CALL_DEADLINE_MS = 1000;
+    private final Object callStatsLock = new Object();
+    private long callCount;
+    private long callLateCount;
+    private long callMaxMs;
+
+    // Time is resent at minute boundaries, on clock/zone changes and when drift exceeds the budget
+    private static final long TIME_DRIFT_BUDGET_MS = 1000;
+    private static final long TIME_DRIFT_PPM = 50;
+    private static final long TIME_UNACKED_ERROR_MS = 250;
+    private static final long TIME_SYNC_MIN_DELAY_MS = 50;
+    private static final long NOTIFICATION_HOLD_MS = 5000;
+    private final TimeSyncScheduler timeSync =
+            new TimeSyncScheduler(TIME_DRIFT_BUDGET_MS, TIME_DRIFT_PPM, TIME_UNACKED_ERROR_MS);
+    private final Runnable timeSyncTick = new Runnable() {
+        @Override
+        public void run() {
+            runTimeSync();
+        }
+    };
+    private final Runnable clockRestore = new Runnable() {
+        @Override
+        public void run() {
+            if (isConnected()) sendTimeMessage();
+        }
+    };
+    private final BroadcastReceiver timeChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            android.util.Log.d("CompanionService", "Clock changed: " + intent.getAction());
+            timeSync.requestFullSync();
+            runTimeSync();
+        }
+    };
+
+    // Battery state cached from ACTION_BATTERY_CHANGED; only meaningful transitions are sent
+    private final BatteryBandTracker battery = new BatteryBandTracker(10, 15, 1);
+    private boolean stateReceiversRegistered = false;
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (!Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) return;
+            if (updateBattery(intent) && isConnected()) {
+                sendBatteryStatus();
+            }
+        }
+    };
 
     private final ProtoV2StreamDecoder decoder = new ProtoV2StreamDecoder(new ProtoV2StreamDecoder.Listener() {
         @Override
         public void onFrame(byte ver, byte type, byte flags, byte seq, byte[] payload) {
-            // TODO: handle ACKs / device telemetry. For now, ignore.
+            // ACK payload: ackType ackSeq result. Only time sync ACKs are used for now.
+            if (type == ProtoV2.TYPE_ACK && payload != null && payload.length >= 2
+                    && payload[0] == ProtoV2.TYPE_TIME) {
+                timeSync.onAck(payload[1], System.nanoTime());
+            }
         }
 
         @Override
@@ -118,8 +182,8 @@ public class CompanionForegroundService extends Service {
             timerHandler = new Handler(Looper.getMainLooper());
             notificationDelayHandler = new Handler(Looper.getMainLooper());
             ensureNotificationChannel();
-            // Don't start periodic time sender until connected
-            // startPeriodicTimeSender();
+            registerStateReceivers();
+            // Time sync starts when connected
         } catch (Exception e) {
             android.util.Log.e("CompanionService", "Error in onCreate: " + e.getMessage(), e);
         }
@@ -166,7 +230,8 @@ public class CompanionForegroundService extends Service {
     public void onDestroy() {
         instance = null;
         runningHint = false;
-        stopPeriodicTimeSender();
+        stopTimeSync();
+        unregisterStateReceivers();
         // Cancel pending notification
         if (notificationDelayHandler != null && pendingNotificationSender != null) {
             notificationDelayHandler.removeCallbacks(pendingNotificationSender);
@@ -208,23 +273,16 @@ public class CompanionForegroundService extends Service {
             android.util.Log.w("CompanionService", "Cannot send plain text - not connected");
             return;
         }
-        try {
-            synchronized (this) {
-                if (out != null) {
-                    byte[] data = text.getBytes(StandardCharsets.UTF_8);
-                    out.write(data);
-                    out.flush();
-                    android.util.Log.d("CompanionService", "Sent plain text: " + text);
-                    
-                    // Print message in output box (remove newline for display)
-                    String displayText = text.trim();
-                    if (displayText.length() > 0) {
-                        com.hardcopy.smartglasses.ui.MainActivity.appendToOutput(displayText + "\n");
-                    }
+        synchronized (this) {
+            if (writer != null && writer.enqueue(text.getBytes(StandardCharsets.UTF_8), null)) {
+                android.util.Log.d("CompanionService", "Queued plain text: " + text);
+                
+                // Print message in output box (remove newline for display)
+                String displayText = text.trim();
+                if (displayText.length() > 0) {
+                    console.append(displayText);
                 }
             }
-        } catch (IOException e) {
-            android.util.Log.e("CompanionService", "Error sending plain text: " + e.getMessage(), e);
         }
     }
     
@@ -236,9 +294,10 @@ public class CompanionForegroundService extends Service {
             return;
         }
         
-        // Reset clock timer when notification arrives
-        android.util.Log.d("CompanionService", "Notification received - resetting clock timer");
-        startPeriodicTimeSender();
+        // Clock is shown again after the notification
+        if (timerHandler != null) {
+            timerHandler.removeCallbacks(clockRestore);
+        }
         
         // Cancel any pending notification send
         if (notificationDelayHandler != null && pendingNotificationSender != null) {
@@ -258,6 +317,9 @@ public class CompanionForegroundService extends Service {
                     if (isConnected()) {
                         sendPlainText(message);
                         android.util.Log.d("CompanionService", "Forwarded notification after 5s delay: " + message);
+                        if (timerHandler != null) {
+                            timerHandler.postDelayed(clockRestore, NOTIFICATION_HOLD_MS);
+                        }
                     }
                 } catch (Exception e) {
                     android.util.Log.e("CompanionService", "Error forwarding notification: " + e.getMessage(), e);
@@ -337,48 +399,63 @@ public class CompanionForegroundService extends Service {
             int minute = cal.get(java.util.Calendar.MINUTE);
             String timeStr = String.format("T:%02d:%02d\n", hour, minute);
             sendPlainText(timeStr);
+            timeSync.onMinuteSent(cal.getTimeInMillis(), cal.getTimeZone().getOffset(cal.getTimeInMillis()));
             android.util.Log.d("CompanionService", "Sent time message: " + timeStr);
         } catch (Exception e) {
             android.util.Log.e("CompanionService", "Error sending time message: " + e.getMessage(), e);
         }
     }
     
-    // Start periodic time sender (every few seconds like App Inventor Clock.Timer)
-    private void startPeriodicTimeSender() {
-        stopPeriodicTimeSender(); // Stop any existing timer
-        timeSender = new Runnable() {
-            @Override
-            public void run() {
-                if (isConnected()) {
-                    sendTimeMessage();
-                }
-                // Schedule next execution (every 5 seconds)
-                if (timerHandler != null) {
-                    timerHandler.postDelayed(this, 5000);
-                }
-            }
-        };
+    // Start time sync: full timestamp now, then only when needed
+    private void startTimeSync() {
+        timeSync.reset();
         if (timerHandler != null) {
-            timerHandler.postDelayed(timeSender, 5000);
+            timerHandler.removeCallbacks(timeSyncTick);
+            timerHandler.post(timeSyncTick);
         }
     }
     
-    // Stop periodic time sender
-    private void stopPeriodicTimeSender() {
-        if (timerHandler != null && timeSender != null) {
-            timerHandler.removeCallbacks(timeSender);
-            timeSender = null;
+    // Stop time sync
+    private void stopTimeSync() {
+        if (timerHandler != null) {
+            timerHandler.removeCallbacks(timeSyncTick);
+            timerHandler.removeCallbacks(clockRestore);
         }
+        android.util.Log.d("CompanionService", timeSync.dump());
+    }
+    
+    // Runs on the main looper. Sends what the scheduler asks for and sleeps until the next deadline.
+    private void runTimeSync() {
+        if (timerHandler == null) return;
+        timerHandler.removeCallbacks(timeSyncTick);
+        if (!isConnected()) return;
+
+        long wall = System.currentTimeMillis();
+        long offset = java.util.TimeZone.getDefault().getOffset(wall);
+        int action = timeSync.poll(wall, offset, System.nanoTime());
+        if (action == TimeSyncScheduler.ACTION_FULL) {
+            sendTime();
+            sendTimeMessage();
+        } else if (action == TimeSyncScheduler.ACTION_MINUTE) {
+            sendTimeMessage();
+        }
+
+        wall = System.currentTimeMillis();
+        offset = java.util.TimeZone.getDefault().getOffset(wall);
+        long delay = timeSync.nextDelayMillis(wall, offset, System.nanoTime());
+        timerHandler.postDelayed(timeSyncTick, Math.max(delay, TIME_SYNC_MIN_DELAY_MS));
     }
     
     public synchronized void sendCall(String callerInfo) {
+        long detectedAt = System.nanoTime();
         if (callerInfo == null) callerInfo = "Unknown";
         // Truncate to 64 bytes for protocol
         byte[] payload = callerInfo.getBytes(StandardCharsets.UTF_8);
         if (payload.length > 64) {
             payload = java.util.Arrays.copyOf(payload, 64);
         }
-        sendFrame(ProtoV2.TYPE_CALL, ProtoV2.FLAG_ACK_REQ, payload);
+        // Priority lane: a call alert is useless once the phone stops ringing
+        sendFrame(ProtoV2.TYPE_CALL, ProtoV2.FLAG_ACK_REQ, payload, true, detectedAt);
     }
     
     public synchronized void sendTime() {
@@ -392,31 +469,61 @@ public class CompanionForegroundService extends Service {
         payload[4] = (byte) cal.get(java.util.Calendar.HOUR_OF_DAY); // 0-23
         payload[5] = (byte) cal.get(java.util.Calendar.MINUTE); // 0-59
         payload[6] = (byte) cal.get(java.util.Calendar.SECOND); // 0-59
-        sendFrame(ProtoV2.TYPE_TIME, ProtoV2.FLAG_ACK_REQ, payload);
+        byte seq = txSeq;
+        if (sendFrame(ProtoV2.TYPE_TIME, ProtoV2.FLAG_ACK_REQ, payload)) {
+            long wall = cal.getTimeInMillis();
+            timeSync.onFullSyncSent(seq, wall, cal.getTimeZone().getOffset(wall), System.nanoTime());
+        }
     }
     
     public synchronized void sendBatteryStatus() {
         try {
-            android.content.IntentFilter ifilter = new android.content.IntentFilter(android.content.Intent.ACTION_BATTERY_CHANGED);
-            android.content.Context appContext = getApplicationContext();
-            if (appContext == null) {
-                android.util.Log.e("CompanionService", "Cannot get application context for battery status");
-                return;
-            }
-            android.content.Intent batteryStatus = appContext.registerReceiver(null, ifilter);
-            if (batteryStatus != null) {
-                int level = batteryStatus.getIntExtra(android.os.BatteryManager.EXTRA_LEVEL, -1);
-                int scale = batteryStatus.getIntExtra(android.os.BatteryManager.EXTRA_SCALE, -1);
-                if (scale > 0) {
-                    int batteryPct = (level * 100) / scale;
-                    String batteryText = "Battery: " + batteryPct + "%";
-                    sendFrame(ProtoV2.TYPE_NOTIFY, ProtoV2.FLAG_ACK_REQ, batteryText.getBytes(StandardCharsets.UTF_8));
-                }
+            if (battery.getPercent() == BatteryBandTracker.UNKNOWN) {
+                // Receiver has not delivered yet; read the sticky broadcast once
+                Intent sticky = getApplicationContext().registerReceiver(null,
+                        new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+                if (sticky == null || !updateBattery(sticky)) return;
             }
+            String batteryText = "Battery: " + battery.getPercent() + "%";
+            sendFrame(ProtoV2.TYPE_NOTIFY, ProtoV2.FLAG_ACK_REQ, batteryText.getBytes(StandardCharsets.UTF_8));
         } catch (Exception e) {
             android.util.Log.e("CompanionService", "Error getting battery status: " + e.getMessage(), e);
         }
     }
+
+    private void registerStateReceivers() {
+        // Sticky broadcast: the current battery state is delivered right after registering
+        IntentFilter batteryFilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        IntentFilter timeFilter = new IntentFilter(Intent.ACTION_TIME_CHANGED);
+        timeFilter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        if (Build.VERSION.SDK_INT >= 33) {
+            registerReceiver(batteryReceiver, batteryFilter, Context.RECEIVER_EXPORTED);
+            registerReceiver(timeChangeReceiver, timeFilter, Context.RECEIVER_EXPORTED);
+        } else {
+            registerReceiver(batteryReceiver, batteryFilter);
+            registerReceiver(timeChangeReceiver, timeFilter);
+        }
+        stateReceiversRegistered = true;
+    }
+
+    private void unregisterStateReceivers() {
+        if (!stateReceiversRegistered) return;
+        try {
+            unregisterReceiver(batteryReceiver);
+            unregisterReceiver(timeChangeReceiver);
+        } catch (IllegalArgumentException ignored) {
+        }
+        stateReceiversRegistered = false;
+    }
+
+    // Returns true on a charge state change, low level crossing or 10% band change
+    private boolean updateBattery(Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        if (level < 0 || scale <= 0) return false;
+        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, BatteryManager.BATTERY_STATUS_UNKNOWN);
+        return battery.update((level * 100) / scale, status);
+    }
     
     // Check if service is connected
     public boolean isConnected() {
@@ -513,6 +620,10 @@ public class CompanionForegroundService extends Service {
         return instance;
     }
 
+    public static ConsoleBuffer getConsole() {
+        return console;
+    }
+
     private void runIo(String mac) {
         updateNoti("Connecting...");
         BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
@@ -534,12 +645,14 @@ public class CompanionForegroundService extends Service {
                 socket = s;
                 in = s.getInputStream();
                 out = s.getOutputStream();
+                writer = new PriorityFrameWriter(out, "SmartGlasses-TX", writeListener);
+                writer.start();
             }
 
             updateNoti("Connected");
             sendStatusConnected();
-            // Restart periodic time sender when connected
-            startPeriodicTimeSender();
+            // Full timestamp now, then minute boundaries and drift-driven resyncs
+            startTimeSync();
             // Notify UI about connection (will be handled by status update)
             android.util.Log.d("CompanionService", "Connected successfully");
 
@@ -561,75 +674,71 @@ public class CompanionForegroundService extends Service {
         }
     }
 
-    private synchronized void sendFrame(byte type, byte flags, byte[] payload) {
-        // Get output stream from Bluetooth socket
-        OutputStream streamToUse = null;
-        
-        // Try stored reference first
-        if (out != null && socket != null) {
-            streamToUse = out;
-            android.util.Log.d("CompanionService", "Using stored output stream reference (Bluetooth)");
-        }
-        
-        // Try Bluetooth socket as fallback
-        if (streamToUse == null && socket != null) {
-            try {
-                streamToUse = socket.getOutputStream();
-                if (streamToUse != null) {
-                    synchronized (this) {
-                        out = streamToUse;
-                    }
-                    android.util.Log.d("CompanionService", "Recovered output stream from Bluetooth socket");
-                }
-            } catch (IOException e) {
-                android.util.Log.e("CompanionService", "Failed to get output stream from socket: " + e.getMessage());
-            }
+    private synchronized boolean sendFrame(byte type, byte flags, byte[] payload) {
+        return sendFrame(type, flags, payload, false, null);
+    }
+
+    /**
+     * Frames are queued to the writer thread, so callers never block on the socket.
+     * Priority frames go ahead of every queued frame and only wait for the one being written.
+     */
+    private synchronized boolean sendFrame(byte type, byte flags, byte[] payload, boolean priority, Object tag) {
+        if (writer == null) {
+            android.util.Log.e("CompanionService", "Cannot send frame - not connected");
+            return false;
         }
-        
-        // Final check - if still null, we can't send
-        if (streamToUse == null) {
-            android.util.Log.e("CompanionService", "Cannot send frame - output stream is null (not connected)");
-            android.util.Log.e("CompanionService", "  socket=" + (socket != null));
-            return;
+
+        byte[] frame = ProtoV2.encode(type, flags, txSeq++, payload);
+        android.util.Log.d("CompanionService", "Queue frame: type=" + type + ", flags=" + flags + ", seq=" + (txSeq-1) + ", payloadLen=" + (payload != null ? payload.length : 0) + ", frameSize=" + frame.length + " bytes" + (priority ? " (priority)" : ""));
+
+        boolean queued = priority ? writer.enqueuePriority(frame, tag) : writer.enqueue(frame, tag);
+        if (!queued) {
+            android.util.Log.w("CompanionService", "Frame dropped - writer stopped or full");
         }
-        
-        try {
-            byte[] frame = ProtoV2.encode(type, flags, txSeq++, payload);
-            
-            // Log frame details before sending
-            android.util.Log.d("CompanionService", "Sending frame: type=" + type + ", flags=" + flags + ", seq=" + (txSeq-1) + ", payloadLen=" + (payload != null ? payload.length : 0) + ", frameSize=" + frame.length + " bytes");
-            
-            // Write frame
-            streamToUse.write(frame);
-            
-            // CRITICAL: Flush immediately to ensure data is sent
-            // Flush must be called to ensure data is actually transmitted over the network
-            streamToUse.flush();
-            
-            android.util.Log.d("CompanionService", "Frame sent and flushed successfully - " + frame.length + " bytes transmitted");
-            
-            // Verify stream is still valid
-            if (streamToUse != out) {
-                android.util.Log.w("CompanionService", "Warning: stream reference changed after write");
+        return queued;
+    }
+
+    private final PriorityFrameWriter.Listener writeListener = new PriorityFrameWriter.Listener() {
+        @Override
+        public void onFrameWritten(PriorityFrameWriter.Frame frame, long queuedNanos, long writeNanos) {
+            if (frame.getTag() instanceof Long) {
+                recordCallLatency(System.nanoTime() - (Long) frame.getTag());
             }
-        } catch (java.net.SocketException e) {
-            android.util.Log.e("CompanionService", "Socket error sending frame: " + e.getMessage(), e);
-            // Connection is broken - clear output stream
-            synchronized (this) {
-                out = null;
+        }
+
+        @Override
+        public void onFrameDropped(PriorityFrameWriter.Frame frame) {
+            if (frame.isPriority()) {
+                android.util.Log.w("CompanionService", "Call frame dropped before it was written");
             }
-        } catch (IOException e) {
+        }
+
+        @Override
+        public void onWriteFailed(PriorityFrameWriter failed, PriorityFrameWriter.Frame frame, IOException e) {
             android.util.Log.e("CompanionService", "Error sending frame: " + e.getMessage(), e);
-            // Best effort: connection will be torn down by read loop or next write.
-            // Clear output stream on error
-            synchronized (this) {
-                if (streamToUse == out) {
+            // Best effort: connection will be torn down by read loop.
+            // A writer of an older connection may fail late, keep the current one then.
+            synchronized (CompanionForegroundService.this) {
+                if (writer == failed) {
                     out = null;
+                    writer = null;
                 }
             }
-        } catch (Exception e) {
-            android.util.Log.e("CompanionService", "Unexpected error sending frame: " + e.getMessage(), e);
         }
+    };
+
+    private void recordCallLatency(long nanos) {
+        long ms = nanos / 1000000;
+        String report;
+        synchronized (callStatsLock) {
+            callCount++;
+            if (ms > callMaxMs) callMaxMs = ms;
+            if (ms > CALL_DEADLINE_MS) callLateCount++;
+            report = "Call alert sent in " + ms + "ms (calls=" + callCount + ", max=" + callMaxMs
+                    + "ms, over " + CALL_DEADLINE_MS + "ms=" + callLateCount + ")";
+        }
+        android.util.Log.i("CompanionService", report);
+        console.append(report);
     }
 
     private void shutdownIo() {
@@ -638,6 +747,8 @@ public class CompanionForegroundService extends Service {
         if (t != null) t.interrupt();
 
         synchronized (this) {
+            if (writer != null) writer.stop();
+            writer = null;
             try { if (socket != null) socket.close(); } catch (IOException ignored) {}
             socket = null;
             in = null;
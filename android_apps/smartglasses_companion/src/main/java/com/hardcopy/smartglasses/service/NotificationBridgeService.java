@@ -1,5 +1,8 @@
 package com.hardcopy.smartglasses.service;
 
+import android.app.Notification;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import android.telephony.TelephonyManager;
@@ -7,14 +10,25 @@ import android.content.Context;
 import android.os.Build;
 import android.telephony.PhoneStateListener;
 
+import com.hardcopy.core.notification.NotificationIngestFilter;
+
 /**
  * Captures notifications (when user grants notification access) and forwards condensed text
  * to the companion transport. Also handles phone calls.
  */
 public class NotificationBridgeService extends NotificationListenerService {
 
+    // Ongoing, foreground service and group summary posts are not forwarded
+    private static final int INGEST_DROP_FLAGS = Notification.FLAG_ONGOING_EVENT
+            | Notification.FLAG_FOREGROUND_SERVICE | Notification.FLAG_GROUP_SUMMARY;
+    private static final int INGEST_MAX_KEYS = 128;
+    private static final long INGEST_TTL_MS = 10 * 60 * 1000L;
+
     private static PhoneStateListener phoneListener = null;
 
+    private final NotificationIngestFilter ingestFilter =
+            new NotificationIngestFilter(INGEST_DROP_FLAGS, INGEST_MAX_KEYS, INGEST_TTL_MS);
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -31,46 +45,50 @@ public class NotificationBridgeService extends NotificationListenerService {
     @Override
     public void onNotificationPosted(StatusBarNotification sbn) {
         try {
+            Notification notification = sbn.getNotification();
+            if (notification == null) return;
             String packageName = sbn.getPackageName();
-            String title = "";
-            String text = "";
-            
-            // Extract notification content (App Inventor format)
-            if (sbn.getNotification() != null) {
-                if (sbn.getNotification().extras != null) {
-                    CharSequence titleSeq = sbn.getNotification().extras.getCharSequence(android.app.Notification.EXTRA_TITLE);
-                    CharSequence textSeq = sbn.getNotification().extras.getCharSequence(android.app.Notification.EXTRA_TEXT);
-                    
-                    if (titleSeq != null) title = titleSeq.toString();
-                    if (textSeq != null) text = textSeq.toString();
-                    
-                    // Try to get big text if available
-                    if (text == null || text.isEmpty()) {
-                        CharSequence bigText = sbn.getNotification().extras.getCharSequence(android.app.Notification.EXTRA_BIG_TEXT);
-                        if (bigText != null) {
-                            text = bigText.toString();
-                        }
-                    }
+            boolean isCall = isCallPackage(packageName);
+
+            // Read extras once; only convert to String when the post is forwarded
+            CharSequence titleSeq = null;
+            CharSequence textSeq = null;
+            Bundle extras = notification.extras;
+            if (extras != null) {
+                titleSeq = extras.getCharSequence(Notification.EXTRA_TITLE);
+                textSeq = extras.getCharSequence(Notification.EXTRA_TEXT);
+                // Try to get big text if available
+                if (textSeq == null || textSeq.length() == 0) {
+                    textSeq = extras.getCharSequence(Notification.EXTRA_BIG_TEXT);
                 }
             }
-            
+
+            // Call notifications are ongoing, so they skip the drop policy but are still de-duplicated
+            long fingerprint = NotificationIngestFilter.mix(NotificationIngestFilter.FINGERPRINT_SEED, titleSeq);
+            fingerprint = NotificationIngestFilter.mix(fingerprint, textSeq);
+            int result = ingestFilter.accept(sbn.getKey(), isCall ? 0 : notification.flags,
+                    fingerprint, SystemClock.elapsedRealtime());
+            if (result != NotificationIngestFilter.RESULT_FORWARD) {
+                return;
+            }
+
+            String title = titleSeq != null ? titleSeq.toString() : "";
+            String text = textSeq != null ? textSeq.toString() : "";
+
             android.util.Log.d("NotificationBridge", "Notification received - Package: " + packageName + ", Title: " + title + ", Text: " + text);
             
             // Forward to CompanionForegroundService in App Inventor format: "N:text:title\n"
             // Only send if we have both title and text, or at least one of them
-            if ((title != null && !title.isEmpty()) || (text != null && !text.isEmpty())) {
+            if (!title.isEmpty() || !text.isEmpty()) {
                 if (CompanionForegroundService.getInstance() != null) {
                     CompanionForegroundService.getInstance().forwardNotification(packageName, title, text);
                 }
             }
             
             // Also handle phone calls separately
-            if (packageName != null && (packageName.equals("com.android.server.telecom") || 
-                packageName.equals("com.android.phone") ||
-                packageName.contains("dialer"))) {
+            if (isCall) {
                 if (!title.isEmpty() || !text.isEmpty()) {
-                    String callerInfo = (title != null ? title : "") + 
-                                      (text != null && !text.isEmpty() ? " " + text : "");
+                    String callerInfo = title + (!text.isEmpty() ? " " + text : "");
                     if (!callerInfo.trim().isEmpty()) {
                         CompanionForegroundService.sendCall(this, callerInfo);
                     }
@@ -84,6 +102,13 @@ public class NotificationBridgeService extends NotificationListenerService {
     @Override
     public void onNotificationRemoved(StatusBarNotification sbn) {
         // Optional: could send a "clear" message.
+        ingestFilter.forget(sbn.getKey());
+    }
+
+    private static boolean isCallPackage(String packageName) {
+        return packageName != null && (packageName.equals("com.android.server.telecom") ||
+                packageName.equals("com.android.phone") ||
+                packageName.contains("dialer"));
     }
 
     private void registerPhoneListener() {
@@ -0,0 +1,67 @@
+package com.hardcopy.smartglasses.ui;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.hardcopy.core.console.ConsoleBuffer;
+import com.hardcopy.smartglasses.R;
+
+/**
+ * Shows a console snapshot. Only visible rows are bound; a new snapshot is applied as
+ * removals at the top and insertions at the bottom, using line sequence numbers.
+ */
+class ConsoleAdapter extends RecyclerView.Adapter<ConsoleAdapter.LineHolder> {
+
+    private ConsoleBuffer.Snapshot snapshot = ConsoleBuffer.Snapshot.EMPTY;
+
+    void submit(ConsoleBuffer.Snapshot next) {
+        ConsoleBuffer.Snapshot prev = snapshot;
+        snapshot = next;
+
+        long prevEnd = prev.getFirstSeq() + prev.size();
+        long nextEnd = next.getFirstSeq() + next.size();
+        long removed = next.getFirstSeq() - prev.getFirstSeq();
+        if (next.getGeneration() != prev.getGeneration() || removed < 0 || removed >= prev.size()) {
+            notifyDataSetChanged();
+            return;
+        }
+        if (removed > 0) {
+            notifyItemRangeRemoved(0, (int) removed);
+        }
+        int inserted = (int) (nextEnd - prevEnd);
+        if (inserted > 0) {
+            notifyItemRangeInserted(next.size() - inserted, inserted);
+        }
+    }
+
+    @NonNull
+    @Override
+    public LineHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_console_line, parent, false);
+        return new LineHolder((TextView) v);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull LineHolder holder, int position) {
+        holder.text.setText(snapshot.get(position));
+    }
+
+    @Override
+    public int getItemCount() {
+        return snapshot.size();
+    }
+
+    static class LineHolder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        LineHolder(TextView v) {
+            super(v);
+            text = v;
+        }
+    }
+}
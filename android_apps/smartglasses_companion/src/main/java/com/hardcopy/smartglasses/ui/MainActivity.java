@@ -20,7 +20,10 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.hardcopy.core.console.ConsoleBuffer;
 import com.hardcopy.smartglasses.R;
 import com.hardcopy.smartglasses.service.CompanionForegroundService;
 
@@ -31,7 +34,8 @@ public class MainActivity extends AppCompatActivity {
     private static final int REQ_POST_NOTI = 12;
 
     private TextView statusText;
-    private TextView outputText;
+    private RecyclerView outputList;
+    private final ConsoleAdapter consoleAdapter = new ConsoleAdapter();
     private EditText messageInput;
     private Button selectDeviceBtn;
     private Button sendMessageBtn;
@@ -43,9 +47,11 @@ public class MainActivity extends AppCompatActivity {
     private Handler statusUpdateHandler;
     private Runnable statusUpdateRunnable;
     
-    // Static reference for service to update output
-    private static MainActivity instance = null;
-    private static Handler mainHandler = null;
+    // Console changes are drawn once per frame, however many lines arrive
+    private final ConsoleBuffer.Listener consoleListener = () -> {
+        RecyclerView list = outputList;
+        if (list != null) list.postOnAnimation(this::renderConsole);
+    };
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -53,14 +59,14 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         statusText = findViewById(R.id.statusText);
-        outputText = findViewById(R.id.outputText);
+        outputList = findViewById(R.id.outputList);
         messageInput = findViewById(R.id.messageInput);
         selectDeviceBtn = findViewById(R.id.selectDeviceBtn);
         sendMessageBtn = findViewById(R.id.sendMessageBtn);
         Button clearLogBtn = findViewById(R.id.clearLogBtn);
 
         // Safety check - ensure views are found
-        if (statusText == null || outputText == null || messageInput == null || 
+        if (statusText == null || outputList == null || messageInput == null || 
             selectDeviceBtn == null || sendMessageBtn == null || clearLogBtn == null) {
             android.util.Log.e("MainActivity", "Failed to find required views - layout issue");
             Toast.makeText(this, "App initialization error. Please restart.", Toast.LENGTH_LONG).show();
@@ -71,6 +77,12 @@ public class MainActivity extends AppCompatActivity {
         // Initialize status
         statusText.setText("disconnected");
         
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setStackFromEnd(true);
+        outputList.setLayoutManager(layoutManager);
+        outputList.setAdapter(consoleAdapter);
+        outputList.setItemAnimator(null);
+        
         try {
             // Start service automatically
             CompanionForegroundService.start(this);
@@ -90,19 +102,11 @@ public class MainActivity extends AppCompatActivity {
         
         // Set up clear log button
         if (clearLogBtn != null) {
-            clearLogBtn.setOnClickListener(v -> {
-                if (outputText != null) {
-                    outputText.setText("");
-                }
-            });
+            clearLogBtn.setOnClickListener(v -> CompanionForegroundService.getConsole().clear());
         }
         
         // Initialize handlers FIRST before using them
         statusUpdateHandler = new Handler(Looper.getMainLooper());
-        mainHandler = new Handler(Looper.getMainLooper());
-        
-        // Set static instance for service access
-        instance = this;
         
         // Delay permission request until after onCreate completes
         // This prevents crashes if activity isn't fully ready
@@ -126,11 +130,21 @@ public class MainActivity extends AppCompatActivity {
         startStatusUpdates();
     }
     
+    @Override
+    protected void onStart() {
+        super.onStart();
+        CompanionForegroundService.getConsole().setListener(consoleListener);
+    }
+    
+    @Override
+    protected void onStop() {
+        CompanionForegroundService.getConsole().setListener(null);
+        super.onStop();
+    }
+    
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        instance = null;
-        mainHandler = null;
         if (statusUpdateHandler != null && statusUpdateRunnable != null) {
             statusUpdateHandler.removeCallbacks(statusUpdateRunnable);
         }
@@ -230,27 +244,17 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void appendOutput(String text) {
-        if (outputText != null) {
-            String current = outputText.getText().toString();
-            outputText.setText(current + text);
-            // Auto-scroll to bottom
-            android.widget.ScrollView scrollView = findViewById(R.id.outputScrollView);
-            if (scrollView != null) {
-                scrollView.post(() -> {
-                    scrollView.fullScroll(android.view.View.FOCUS_DOWN);
-                });
-            }
-        }
+        CompanionForegroundService.getConsole().append(text);
     }
     
-    // Static method for service to append to output
-    public static void appendToOutput(String text) {
-        if (mainHandler != null && instance != null) {
-            mainHandler.post(() -> {
-                if (instance.outputText != null) {
-                    instance.appendOutput(text);
-                }
-            });
+    private void renderConsole() {
+        if (outputList == null) return;
+        // Follow new lines only if the user has not scrolled up
+        boolean atBottom = !outputList.canScrollVertically(1);
+        consoleAdapter.submit(CompanionForegroundService.getConsole().snapshot());
+        int count = consoleAdapter.getItemCount();
+        if (atBottom && count > 0) {
+            outputList.scrollToPosition(count - 1);
         }
     }
 
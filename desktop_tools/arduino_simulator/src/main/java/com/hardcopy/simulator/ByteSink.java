@@ -0,0 +1,8 @@
+package com.hardcopy.simulator;
+
+/**
+ * Receiving end of a byte stream.
+ */
+public interface ByteSink {
+    void onBytes(byte[] data, int len);
+}
@@ -0,0 +1,49 @@
+package com.hardcopy.simulator;
+
+import java.util.Random;
+
+/**
+ * Link impairments applied per byte (loss, corruption) and per write (latency, jitter).
+ */
+public final class FaultModel {
+
+    public static final FaultModel NONE = new FaultModel(0, 0, 0, 0, 0);
+
+    private final double lossRate;
+    private final double corruptRate;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final Random random;
+
+    public FaultModel(double lossRate, double corruptRate, long latencyMs, long jitterMs, long seed) {
+        this.lossRate = lossRate;
+        this.corruptRate = corruptRate;
+        this.latencyNanos = latencyMs * 1000000L;
+        this.jitterNanos = jitterMs * 1000000L;
+        this.random = new Random(seed);
+    }
+
+    public synchronized boolean shouldDrop() {
+        return lossRate > 0 && random.nextDouble() < lossRate;
+    }
+
+    public synchronized boolean shouldCorrupt() {
+        return corruptRate > 0 && random.nextDouble() < corruptRate;
+    }
+
+    /** Flip a single random bit. */
+    public synchronized byte corrupt(byte b) {
+        return (byte) (b ^ (1 << random.nextInt(8)));
+    }
+
+    public synchronized long nextDelayNanos() {
+        if (jitterNanos <= 0) return latencyNanos;
+        return latencyNanos + (long) (random.nextDouble() * jitterNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "loss=" + lossRate + ", corrupt=" + corruptRate
+                + ", latency=" + (latencyNanos / 1000000L) + "ms, jitter=" + (jitterNanos / 1000000L) + "ms";
+    }
+}
@@ -0,0 +1,47 @@
+package com.hardcopy.simulator;
+
+/**
+ * Both directions are simulated channels delivering straight to the receiver.
+ */
+public final class InMemoryTransport implements Transport {
+
+    private final SimulatedChannel downlink;
+    private final SimulatedChannel uplink;
+
+    public InMemoryTransport(int baudRate, FaultModel downFaults, FaultModel upFaults) {
+        downlink = new SimulatedChannel("downlink", baudRate, downFaults);
+        uplink = new SimulatedChannel("uplink", baudRate, upFaults);
+    }
+
+    @Override
+    public void start(ByteSink deviceRx, ByteSink hostRx) {
+        downlink.start(deviceRx);
+        uplink.start(hostRx);
+    }
+
+    @Override
+    public void sendToDevice(byte[] data) {
+        downlink.write(data);
+    }
+
+    @Override
+    public void sendToHost(byte[] data) {
+        uplink.write(data);
+    }
+
+    @Override
+    public boolean isIdle() {
+        return downlink.isIdle() && uplink.isIdle();
+    }
+
+    @Override
+    public String getStats() {
+        return downlink.getStats() + "\n" + uplink.getStats();
+    }
+
+    @Override
+    public void close() {
+        downlink.stop();
+        uplink.stop();
+    }
+}
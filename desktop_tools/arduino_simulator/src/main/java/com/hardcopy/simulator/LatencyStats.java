@@ -0,0 +1,37 @@
+package com.hardcopy.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples of one run and reports percentiles.
+ */
+public final class LatencyStats {
+
+    private long[] samples = new long[1024];
+    private int count;
+
+    public synchronized void add(long nanos) {
+        if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+        samples[count++] = nanos;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /** Percentile (0 ~ 100) in milliseconds. */
+    public synchronized double percentileMs(double percentile) {
+        if (count == 0) return 0;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        index = Math.max(0, Math.min(count - 1, index));
+        return sorted[index] / 1000000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, p50=%.1fms, p95=%.1fms, p99=%.1fms, max=%.1fms",
+                getCount(), percentileMs(50), percentileMs(95), percentileMs(99), percentileMs(100));
+    }
+}
@@ -0,0 +1,44 @@
+package com.hardcopy.simulator;
+
+import java.nio.charset.Charset;
+
+/**
+ * Packets of the 0xFC/0xFD protocol, laid out like retrowatch's TransactionBuilder.Transaction.
+ */
+public final class LegacyPacket {
+    private LegacyPacket() {}
+
+    public static final int MAX_MESSAGE_LENGTH = 16;
+
+    private static final byte START = (byte) LegacyWatchDevice.TRANSACTION_START_BYTE;
+    private static final byte END = (byte) LegacyWatchDevice.TRANSACTION_END_BYTE;
+
+    /** RESET_*, PING and other command-only transactions. */
+    public static byte[] command(int command) {
+        return new byte[] { START, (byte) command, END };
+    }
+
+    /** ADD_NORMAL_OBJ / ADD_EMERGENCY_OBJ */
+    public static byte[] message(int command, int id, int icon, String text) {
+        byte[] str = text.getBytes(Charset.forName("UTF-8"));
+        byte[] buffer = new byte[6 + str.length];
+        buffer[0] = START;
+        buffer[1] = (byte) command;
+        buffer[2] = (byte) 0xF0;        // Reserved for Arduino management
+        buffer[3] = (byte) id;
+        buffer[4] = (byte) icon;
+        System.arraycopy(str, 0, buffer, 5, Math.min(str.length, MAX_MESSAGE_LENGTH));
+        buffer[buffer.length - 1] = END;
+        return buffer;
+    }
+
+    public static byte[] time(int month, int day, int week, int noon, int hour, int minute) {
+        return new byte[] { START, (byte) LegacyWatchDevice.CMD_TYPE_SET_TIME,
+                (byte) month, (byte) day, (byte) week, (byte) noon, (byte) hour, (byte) minute, END };
+    }
+
+    /** SET_CLOCK_STYLE / SET_INDICATOR */
+    public static byte[] value(int command, int value) {
+        return new byte[] { START, (byte) command, (byte) value, END };
+    }
+}
@@ -0,0 +1,267 @@
+package com.hardcopy.simulator;
+
+/**
+ * Port of the receive path of hardware/arduino/RetroWatchArduino_ProMicro.
+ * Parser states, buffer sizes and quirks are kept as in the sketch, so mismatches
+ * seen here happen on the board as well.
+ */
+public final class LegacyWatchDevice extends SerialDevice {
+
+    // Transaction parser mode
+    private static final int TR_MODE_IDLE = 1;
+    private static final int TR_MODE_WAIT_CMD = 11;
+    private static final int TR_MODE_WAIT_MESSAGE = 101;
+    private static final int TR_MODE_WAIT_TIME = 111;
+    private static final int TR_MODE_WAIT_ID = 121;
+    private static final int TR_MODE_WAIT_COMPLETE = 201;
+
+    public static final int TRANSACTION_START_BYTE = 0xfc;
+    public static final int TRANSACTION_END_BYTE = 0xfd;
+
+    public static final int CMD_TYPE_NONE = 0x00;
+    public static final int CMD_TYPE_RESET_EMERGENCY_OBJ = 0x05;
+    public static final int CMD_TYPE_RESET_NORMAL_OBJ = 0x02;
+    public static final int CMD_TYPE_RESET_USER_MESSAGE = 0x03;
+    public static final int CMD_TYPE_ADD_EMERGENCY_OBJ = 0x11;
+    public static final int CMD_TYPE_ADD_NORMAL_OBJ = 0x12;
+    public static final int CMD_TYPE_ADD_USER_MESSAGE = 0x13;
+    public static final int CMD_TYPE_DELETE_EMERGENCY_OBJ = 0x21;
+    public static final int CMD_TYPE_DELETE_NORMAL_OBJ = 0x22;
+    public static final int CMD_TYPE_DELETE_USER_MESSAGE = 0x23;
+    public static final int CMD_TYPE_SET_TIME = 0x31;
+    public static final int CMD_TYPE_SET_CLOCK_STYLE = 0x33;
+    public static final int CMD_TYPE_SET_INDICATOR = 0x34;
+
+    public static final int MSG_COUNT_MAX = 7;
+    public static final int MSG_BUFFER_MAX = 19;
+    public static final int EMG_COUNT_MAX = 3;
+    public static final int EMG_BUFFER_MAX = 19;
+    public static final int TIME_BUFFER_MAX = 6;
+
+    private static final int INDICATOR_ENABLE = 0x01;
+
+    private final byte[][] msgBuffer = new byte[MSG_COUNT_MAX][MSG_BUFFER_MAX];
+    private final byte[][] emgBuffer = new byte[EMG_COUNT_MAX][EMG_BUFFER_MAX];
+    private final int[] timeBuffer = new int[TIME_BUFFER_MAX];
+
+    private int trPointer = TR_MODE_IDLE;
+    private int trCommand = CMD_TYPE_NONE;
+    private int msgParsingLine;
+    private int msgParsingChar;
+    private int emgParsingLine;
+    private int emgParsingChar;
+    private int timeParsingIndex;
+
+    private int clockStyle;
+    private boolean updateIndicator;
+
+    public LegacyWatchDevice(long loopIntervalMs) {
+        super(loopIntervalMs);
+    }
+
+    /** Text of every filled normal message slot, null for empty slots. */
+    public synchronized String[] getNormalSlots() {
+        return readSlots(msgBuffer);
+    }
+
+    public synchronized String[] getEmergencySlots() {
+        return readSlots(emgBuffer);
+    }
+
+    @Override
+    public synchronized String describeState() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("time=").append(timeBuffer[0]).append('/').append(timeBuffer[1])
+                .append(' ').append(timeBuffer[4]).append(':').append(timeBuffer[5])
+                .append(", clock style=").append(clockStyle).append(", indicator=").append(updateIndicator);
+        String[] slots = getNormalSlots();
+        for (int i = 0; i < slots.length; i++) sb.append("\n  msg[").append(i).append("] ").append(slots[i]);
+        slots = getEmergencySlots();
+        for (int i = 0; i < slots.length; i++) sb.append("\n  emg[").append(i).append("] ").append(slots[i]);
+        return sb.toString();
+    }
+
+    @Override
+    protected void parseByte(int c) {
+        // receiveBluetoothData() leaves the loop on 0xFF
+        if (c == 0xFF && trPointer != TR_MODE_WAIT_MESSAGE) return;
+
+        switch (trPointer) {
+            case TR_MODE_IDLE:
+                parseStartSignal(c);
+                break;
+            case TR_MODE_WAIT_CMD:
+                parseCommand(c);
+                break;
+            case TR_MODE_WAIT_MESSAGE:
+                parseMessage(c);
+                break;
+            case TR_MODE_WAIT_TIME:
+                parseTime(c);
+                break;
+            case TR_MODE_WAIT_ID:
+                parseId(c);
+                break;
+            case TR_MODE_WAIT_COMPLETE:
+                parseEndSignal(c);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void parseStartSignal(int c) {
+        if (c == TRANSACTION_START_BYTE) {
+            trPointer = TR_MODE_WAIT_CMD;
+            trCommand = CMD_TYPE_NONE;
+        }
+    }
+
+    private void parseCommand(int c) {
+        if (c == CMD_TYPE_RESET_EMERGENCY_OBJ || c == CMD_TYPE_RESET_NORMAL_OBJ || c == CMD_TYPE_RESET_USER_MESSAGE) {
+            trPointer = TR_MODE_WAIT_COMPLETE;
+            trCommand = c;
+            processTransaction();
+        } else if (c == CMD_TYPE_ADD_EMERGENCY_OBJ || c == CMD_TYPE_ADD_NORMAL_OBJ || c == CMD_TYPE_ADD_USER_MESSAGE) {
+            trPointer = TR_MODE_WAIT_MESSAGE;
+            trCommand = c;
+            if (c == CMD_TYPE_ADD_EMERGENCY_OBJ) {
+                emgParsingChar = 0;
+                // Sketch checks against MSG_COUNT_MAX here
+                if (emgParsingLine >= MSG_COUNT_MAX || emgParsingLine < 0) emgParsingLine = 0;
+            } else if (c == CMD_TYPE_ADD_NORMAL_OBJ) {
+                msgParsingChar = 0;
+                if (msgParsingLine >= MSG_COUNT_MAX || msgParsingLine < 0) msgParsingLine = 0;
+            }
+        } else if (c == CMD_TYPE_DELETE_EMERGENCY_OBJ || c == CMD_TYPE_DELETE_NORMAL_OBJ || c == CMD_TYPE_DELETE_USER_MESSAGE) {
+            trPointer = TR_MODE_WAIT_COMPLETE;
+            trCommand = c;
+        } else if (c == CMD_TYPE_SET_TIME) {
+            trPointer = TR_MODE_WAIT_TIME;
+            trCommand = c;
+        } else if (c == CMD_TYPE_SET_CLOCK_STYLE || c == CMD_TYPE_SET_INDICATOR) {
+            trPointer = TR_MODE_WAIT_ID;
+            trCommand = c;
+        } else {
+            trPointer = TR_MODE_IDLE;
+            trCommand = CMD_TYPE_NONE;
+        }
+    }
+
+    private void parseMessage(int c) {
+        if (c == TRANSACTION_END_BYTE) {
+            processTransaction();
+            trPointer = TR_MODE_IDLE;
+        }
+
+        if (trCommand == CMD_TYPE_ADD_EMERGENCY_OBJ) {
+            if (emgParsingChar < EMG_BUFFER_MAX - 1) {
+                if (emgParsingChar > 1) store(emgBuffer, "emgBuffer", emgParsingLine, emgParsingChar, c);
+                emgParsingChar++;
+            } else {
+                trPointer = TR_MODE_IDLE;
+                processTransaction();
+            }
+        } else if (trCommand == CMD_TYPE_ADD_NORMAL_OBJ) {
+            if (msgParsingChar < MSG_BUFFER_MAX - 1) {
+                if (msgParsingChar > 1) store(msgBuffer, "msgBuffer", msgParsingLine, msgParsingChar, c);
+                msgParsingChar++;
+            } else {
+                trPointer = TR_MODE_IDLE;
+                processTransaction();
+            }
+        } else if (trCommand == CMD_TYPE_ADD_USER_MESSAGE) {
+            trPointer = TR_MODE_WAIT_COMPLETE;
+        }
+    }
+
+    private void parseTime(int c) {
+        if (trCommand == CMD_TYPE_SET_TIME) {
+            if (timeParsingIndex >= 0 && timeParsingIndex < TIME_BUFFER_MAX) {
+                timeBuffer[timeParsingIndex] = c;
+                timeParsingIndex++;
+            } else {
+                processTransaction();
+                trPointer = TR_MODE_WAIT_COMPLETE;
+            }
+        }
+    }
+
+    private void parseId(int c) {
+        if (trCommand == CMD_TYPE_SET_CLOCK_STYLE) {
+            clockStyle = c;
+            processTransaction();
+        } else if (trCommand == CMD_TYPE_SET_INDICATOR) {
+            updateIndicator = (c == INDICATOR_ENABLE);
+            processTransaction();
+        }
+        trPointer = TR_MODE_WAIT_COMPLETE;
+    }
+
+    private void parseEndSignal(int c) {
+        if (c == TRANSACTION_END_BYTE) trPointer = TR_MODE_IDLE;
+    }
+
+    private void processTransaction() {
+        switch (trCommand) {
+            case CMD_TYPE_RESET_EMERGENCY_OBJ:
+                clear(emgBuffer);
+                emgParsingLine = 0;
+                emgParsingChar = 0;
+                break;
+            case CMD_TYPE_RESET_NORMAL_OBJ:
+                clear(msgBuffer);
+                msgParsingLine = 0;
+                msgParsingChar = 0;
+                break;
+            case CMD_TYPE_ADD_NORMAL_OBJ:
+                store(msgBuffer, "msgBuffer", msgParsingLine, 0, 0x01);
+                store(msgBuffer, "msgBuffer", msgParsingLine, MSG_BUFFER_MAX - 1, 0x00);
+                msgParsingChar = 0;
+                msgParsingLine++;
+                if (msgParsingLine >= MSG_COUNT_MAX) msgParsingLine = 0;
+                break;
+            case CMD_TYPE_ADD_EMERGENCY_OBJ:
+                store(emgBuffer, "emgBuffer", emgParsingLine, 0, 0x01);
+                store(emgBuffer, "emgBuffer", emgParsingLine, EMG_BUFFER_MAX - 1, 0x00);
+                emgParsingChar = 0;
+                emgParsingLine++;
+                if (emgParsingLine >= EMG_COUNT_MAX) emgParsingLine = 0;
+                break;
+            case CMD_TYPE_SET_TIME:
+                timeParsingIndex = 0;
+                break;
+            default:
+                break;
+        }
+        commandProcessed(trCommand);
+    }
+
+    private void store(byte[][] buffer, String name, int line, int index, int c) {
+        if (line < 0 || line >= buffer.length || index < 0 || index >= buffer[line].length) {
+            reportOverrun(name, line * buffer[0].length + index);
+            return;
+        }
+        buffer[line][index] = (byte) c;
+    }
+
+    private static void clear(byte[][] buffer) {
+        for (byte[] line : buffer) {
+            for (int i = 0; i < line.length; i++) line[i] = 0;
+        }
+    }
+
+    private static String[] readSlots(byte[][] buffer) {
+        String[] slots = new String[buffer.length];
+        for (int i = 0; i < buffer.length; i++) {
+            if (buffer[i][0] != 0x01) continue;
+            // [0] used flag, [1] reserved, [2] icon, [3..] text
+            int end = 3;
+            while (end < buffer[i].length && buffer[i][end] != 0) end++;
+            StringBuilder sb = new StringBuilder();
+            for (int j = 3; j < end; j++) sb.append((char) (buffer[i][j] & 0xFF));
+            slots[i] = sb.toString();
+        }
+        return slots;
+    }
+}
@@ -0,0 +1,261 @@
+package com.hardcopy.simulator;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.hardcopy.smartglasses.protocol.ProtoV2;
+import com.hardcopy.smartglasses.protocol.ProtoV2StreamDecoder;
+
+/**
+ * Sends a burst of notifications through a transport to a simulated device and measures
+ * delivered frames/s, ACK latency (ProtoV2 only, legacy has no ACK) and whether the device
+ * state converged to what the phone sent.
+ */
+public final class LoadDriver {
+
+    public static final String PROTOCOL_LEGACY = "legacy";
+    public static final String PROTOCOL_V2 = "v2";
+
+    // Legacy slots keep 15 characters. Same length for every message avoids stale tail bytes.
+    private static final String LEGACY_TEXT_FORMAT = "MSG-%05d-ABCDE";
+
+    private final String protocol;
+    private final int frames;
+    private final long intervalMs;
+    private final int window;
+    private final long ackTimeoutMs;
+    private final long settleTimeoutMs;
+
+    public LoadDriver(String protocol, int frames, long intervalMs, int window, long ackTimeoutMs, long settleTimeoutMs) {
+        this.protocol = protocol;
+        this.frames = frames;
+        this.intervalMs = intervalMs;
+        this.window = Math.max(1, Math.min(window, 128));
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.settleTimeoutMs = settleTimeoutMs;
+    }
+
+    public Report run(Transport transport, SerialDevice device) throws Exception {
+        return PROTOCOL_V2.equals(protocol) ? runV2(transport, (ProtoV2GlassesDevice) device)
+                : runLegacy(transport, (LegacyWatchDevice) device);
+    }
+
+    private Report runLegacy(Transport transport, LegacyWatchDevice device) throws Exception {
+        final Report report = new Report(protocol, frames);
+        final long[] lastProcessed = new long[1];
+        device.attach(transport, new SerialDevice.Listener() {
+            @Override
+            public void onCommandProcessed(int command, long timeNanos) {
+                if (command == LegacyWatchDevice.CMD_TYPE_ADD_NORMAL_OBJ) {
+                    synchronized (lastProcessed) {
+                        report.delivered++;
+                        lastProcessed[0] = timeNanos;
+                    }
+                }
+            }
+        });
+        transport.start(device, new ByteSink() {
+            @Override
+            public void onBytes(byte[] data, int len) {
+                // Legacy watch never answers
+            }
+        });
+        device.start();
+
+        String[] expected = new String[LegacyWatchDevice.MSG_COUNT_MAX];
+        long start = System.nanoTime();
+        transport.sendToDevice(LegacyPacket.command(LegacyWatchDevice.CMD_TYPE_RESET_NORMAL_OBJ));
+        for (int i = 0; i < frames; i++) {
+            String text = String.format(LEGACY_TEXT_FORMAT, i);
+            transport.sendToDevice(LegacyPacket.message(LegacyWatchDevice.CMD_TYPE_ADD_NORMAL_OBJ, i, 3, text));
+            expected[i % LegacyWatchDevice.MSG_COUNT_MAX] = text.substring(0, 15);
+            report.sent++;
+            if (intervalMs > 0) Thread.sleep(intervalMs);
+        }
+        long sendEnd = System.nanoTime();
+
+        report.convergeMs = waitForConvergence(transport, device, sendEnd, expected);
+        report.elapsedNanos = Math.max(1, (lastProcessed[0] > 0 ? lastProcessed[0] : System.nanoTime()) - start);
+        report.finish(device, transport);
+        return report;
+    }
+
+    private Report runV2(final Transport transport, ProtoV2GlassesDevice device) throws Exception {
+        final Report report = new Report(protocol, frames);
+        final long[] sendTimes = new long[256];
+        final Object lock = new Object();
+        final int[] outstanding = new int[1];
+
+        final ProtoV2StreamDecoder decoder = new ProtoV2StreamDecoder(new ProtoV2StreamDecoder.Listener() {
+            @Override
+            public void onFrame(byte ver, byte type, byte flags, byte seq, byte[] payload) {
+                if (type != ProtoV2.TYPE_ACK || payload.length < 2) return;
+                long now = System.nanoTime();
+                synchronized (lock) {
+                    int ackSeq = payload[1] & 0xFF;
+                    if (sendTimes[ackSeq] == 0) return;     // Timed out already or duplicated
+                    report.ackLatency.add(now - sendTimes[ackSeq]);
+                    sendTimes[ackSeq] = 0;
+                    report.delivered++;
+                    report.lastAckNanos = now;
+                    outstanding[0]--;
+                    lock.notifyAll();
+                }
+            }
+
+            @Override
+            public void onBadFrame(String reason) {
+                synchronized (lock) {
+                    report.badAcks++;
+                }
+            }
+        });
+
+        device.attach(transport, null);
+        transport.start(device, new ByteSink() {
+            @Override
+            public void onBytes(byte[] data, int len) {
+                decoder.feed(data, len);
+            }
+        });
+        device.start();
+
+        Charset utf8 = Charset.forName("UTF-8");
+        String expected = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            int seq = i & 0xFF;
+            byte[] payload = String.format("Notification %d", i).getBytes(utf8);
+            synchronized (lock) {
+                // Sliding window. Frames not acknowledged in time are counted as lost.
+                while (outstanding[0] >= window) {
+                    long oldest = oldestPending(sendTimes);
+                    long wait = (oldest + ackTimeoutMs * 1000000L - System.nanoTime()) / 1000000L;
+                    if (wait <= 0) {
+                        expire(sendTimes, oldest);
+                        outstanding[0]--;
+                        report.ackTimeouts++;
+                        continue;
+                    }
+                    lock.wait(wait);
+                }
+                sendTimes[seq] = System.nanoTime();
+                outstanding[0]++;
+            }
+            transport.sendToDevice(ProtoV2.encode(ProtoV2.TYPE_NOTIFY, ProtoV2.FLAG_ACK_REQ, (byte) seq, payload));
+            expected = ProtoV2GlassesDevice.expectedText(payload);
+            report.sent++;
+            if (intervalMs > 0) Thread.sleep(intervalMs);
+        }
+
+        // Wait for the remaining ACKs
+        long deadline = System.nanoTime() + ackTimeoutMs * 1000000L;
+        synchronized (lock) {
+            while (outstanding[0] > 0 && System.nanoTime() < deadline) {
+                lock.wait(Math.max(1, (deadline - System.nanoTime()) / 1000000L));
+            }
+            report.ackTimeouts += outstanding[0];
+        }
+        long sendEnd = System.nanoTime();
+
+        report.convergeMs = waitForConvergence(transport, device, sendEnd, new String[] { expected });
+        report.elapsedNanos = Math.max(1, (report.lastAckNanos > 0 ? report.lastAckNanos : System.nanoTime()) - start);
+        report.finish(device, transport);
+        return report;
+    }
+
+    /** Returns milliseconds from the end of sending until the device matched, -1 if it never did. */
+    private long waitForConvergence(Transport transport, SerialDevice device, long from, String[] expected) throws InterruptedException {
+        long deadline = System.nanoTime() + settleTimeoutMs * 1000000L;
+        while (true) {
+            boolean matched = (device instanceof LegacyWatchDevice)
+                    ? Arrays.equals(((LegacyWatchDevice) device).getNormalSlots(), expected)
+                    : expected[0] != null && expected[0].equals(((ProtoV2GlassesDevice) device).getLine2());
+            if (matched) return (System.nanoTime() - from) / 1000000L;
+            boolean quiet = transport.isIdle() && device.isRxEmpty();
+            if (System.nanoTime() > deadline || (quiet && System.nanoTime() > from + 2000000000L)) return -1;
+            Thread.sleep(5);
+        }
+    }
+
+    private static long oldestPending(long[] sendTimes) {
+        long oldest = Long.MAX_VALUE;
+        for (long t : sendTimes) {
+            if (t != 0 && t < oldest) oldest = t;
+        }
+        return oldest;
+    }
+
+    private static void expire(long[] sendTimes, long time) {
+        for (int i = 0; i < sendTimes.length; i++) {
+            if (sendTimes[i] == time) {
+                sendTimes[i] = 0;
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Result of one run.
+     */
+    public static final class Report {
+        final String protocol;
+        final int frames;
+        int sent;
+        int delivered;
+        int ackTimeouts;
+        int badAcks;
+        long lastAckNanos;
+        long elapsedNanos;
+        long convergeMs = -1;
+        final LatencyStats ackLatency = new LatencyStats();
+
+        long rxOverflow;
+        long overruns;
+        String deviceState;
+        String transportStats;
+
+        Report(String protocol, int frames) {
+            this.protocol = protocol;
+            this.frames = frames;
+        }
+
+        void finish(SerialDevice device, Transport transport) {
+            rxOverflow = device.getRxOverflow();
+            overruns = device.getOverrunCount();
+            deviceState = device.describeState();
+            transportStats = transport.getStats();
+        }
+
+        public double getFramesPerSecond() {
+            return delivered * 1000000000.0 / elapsedNanos;
+        }
+
+        public boolean isConverged() {
+            return convergeMs >= 0;
+        }
+
+        public long getOverruns() {
+            return overruns;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("protocol=").append(protocol).append(", sent=").append(sent)
+                    .append(", delivered=").append(delivered)
+                    .append(String.format(", %.1f frames/s", getFramesPerSecond()));
+            if (PROTOCOL_V2.equals(protocol)) {
+                sb.append("\nack latency: ").append(ackLatency)
+                        .append("\nack timeouts=").append(ackTimeouts).append(", bad frames from device=").append(badAcks);
+            }
+            sb.append("\nconverged=").append(isConverged());
+            if (isConverged()) sb.append(" (").append(convergeMs).append("ms after last send)");
+            sb.append("\nrx overflow=").append(rxOverflow).append(" bytes, buffer overruns=").append(overruns);
+            sb.append("\n").append(transportStats);
+            sb.append("\ndevice: ").append(deviceState);
+            return sb.toString();
+        }
+    }
+}
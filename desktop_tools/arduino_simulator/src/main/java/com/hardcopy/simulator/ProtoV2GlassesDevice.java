@@ -0,0 +1,171 @@
+package com.hardcopy.simulator;
+
+import com.hardcopy.smartglasses.protocol.ProtoV2;
+
+/**
+ * Port of the receive path of hardware/arduino/SmartGlasses_ProMicro_v2.
+ * Uses the sketch's own byte-at-a-time decoder (128 byte frame buffer) instead of
+ * ProtoV2StreamDecoder, and answers ACK_REQ frames with TYPE_ACK through the transport.
+ */
+public final class ProtoV2GlassesDevice extends SerialDevice {
+
+    private static final int FRAME_BUFFER_SIZE = 128;
+    private static final int TEXT_LINE_SIZE = 22;
+
+    private final byte[] frameBuf = new byte[FRAME_BUFFER_SIZE];
+    private int frameLen;
+    private boolean inFrame;
+    private boolean escaping;
+    private int txSeq;
+
+    private boolean linkUp;
+    private int year = 2025;
+    private int month = 1, day = 1, hour, minute, second;
+    private String line1 = "";
+    private String line2 = "";
+
+    private long badFrames;
+    private long frameOverflows;
+
+    public ProtoV2GlassesDevice(long loopIntervalMs) {
+        super(loopIntervalMs);
+    }
+
+    public synchronized String getLine1() {
+        return line1;
+    }
+
+    public synchronized String getLine2() {
+        return line2;
+    }
+
+    public synchronized long getBadFrames() {
+        return badFrames;
+    }
+
+    public synchronized long getFrameOverflows() {
+        return frameOverflows;
+    }
+
+    @Override
+    public synchronized String describeState() {
+        return String.format("link=%s, time=%04d-%02d-%02d %02d:%02d:%02d, line1=%s, line2=%s, bad frames=%d, frame overflows=%d",
+                linkUp, year, month, day, hour, minute, second, line1, line2, badFrames, frameOverflows);
+    }
+
+    @Override
+    protected void parseByte(int c) {
+        if (!inFrame) {
+            if (c == (ProtoV2.SOF & 0xFF)) {
+                inFrame = true;
+                escaping = false;
+                frameLen = 0;
+            }
+            return;
+        }
+
+        if (escaping) {
+            escaping = false;
+            c = c ^ ProtoV2.ESC_XOR;
+        } else if (c == ProtoV2.ESC) {
+            escaping = true;
+            return;
+        } else if (c == ProtoV2.SOF) {
+            // resync
+            escaping = false;
+            frameLen = 0;
+            return;
+        } else if (c == ProtoV2.EOF) {
+            handleFrame();
+            inFrame = false;
+            escaping = false;
+            frameLen = 0;
+            return;
+        }
+
+        if (frameLen < FRAME_BUFFER_SIZE) {
+            frameBuf[frameLen++] = (byte) c;
+        } else {
+            // overflow -> drop frame
+            frameOverflows++;
+            inFrame = false;
+            escaping = false;
+            frameLen = 0;
+        }
+    }
+
+    private void handleFrame() {
+        // Body: VER TYPE FLAGS SEQ LEN PAYLOAD CRC16H CRC16L
+        if (frameLen < 7 || frameBuf[0] != ProtoV2.VER) {
+            badFrames++;
+            return;
+        }
+        int type = frameBuf[1];
+        int flags = frameBuf[2];
+        int seq = frameBuf[3] & 0xFF;
+        int len = frameBuf[4] & 0xFF;
+        if (len > ProtoV2.MAX_PAYLOAD_LEN || frameLen != 5 + len + 2) {
+            badFrames++;
+            return;
+        }
+
+        byte[] crcData = new byte[frameLen - 2];
+        System.arraycopy(frameBuf, 0, crcData, 0, crcData.length);
+        int crcRead = ((frameBuf[frameLen - 2] & 0xFF) << 8) | (frameBuf[frameLen - 1] & 0xFF);
+        if (ProtoV2.crc16CcittFalse(crcData) != crcRead) {
+            badFrames++;
+            return;
+        }
+
+        int p = 5;
+        if (type == ProtoV2.TYPE_STATUS && len >= 1) {
+            if (frameBuf[p] == ProtoV2.STATUS_CONNECTED) linkUp = true;
+            else if (frameBuf[p] == ProtoV2.STATUS_DISCONNECTED) linkUp = false;
+        } else if (type == ProtoV2.TYPE_TIME && len >= 7) {
+            year = (frameBuf[p] & 0xFF) | ((frameBuf[p + 1] & 0xFF) << 8);
+            month = frameBuf[p + 2];
+            day = frameBuf[p + 3];
+            hour = frameBuf[p + 4];
+            minute = frameBuf[p + 5];
+            second = frameBuf[p + 6];
+        } else if (type == ProtoV2.TYPE_CALL) {
+            line1 = "CALL";
+            line2 = safeText(p, len);
+        } else if (type == ProtoV2.TYPE_NOTIFY) {
+            line1 = "NOTIFY";
+            line2 = safeText(p, len);
+        }
+
+        commandProcessed(type);
+        if ((flags & ProtoV2.FLAG_ACK_REQ) != 0) sendAck(type, seq, 0x00);
+    }
+
+    private void sendAck(int ackType, int ackSeq, int result) {
+        byte[] payload = new byte[] { (byte) ackType, (byte) ackSeq, (byte) result };
+        byte[] frame = ProtoV2.encode(ProtoV2.TYPE_ACK, (byte) 0x00, (byte) txSeq, payload);
+        txSeq = (txSeq + 1) & 0xFF;
+        if (transport != null) transport.sendToHost(frame);
+    }
+
+    /** Same as safe_copy_text(): truncate to the line buffer, printable ASCII only. */
+    private String safeText(int offset, int len) {
+        int n = Math.min(len, TEXT_LINE_SIZE - 1);
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            int c = frameBuf[offset + i] & 0xFF;
+            sb.append((c < 0x20 || c > 0x7E) ? ' ' : (char) c);
+        }
+        return sb.toString();
+    }
+
+    /** Text the device would show for the given notification payload. */
+    public static String expectedText(byte[] payload) {
+        int n = Math.min(Math.min(payload.length, ProtoV2.MAX_PAYLOAD_LEN), TEXT_LINE_SIZE - 1);
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            int c = payload[i] & 0xFF;
+            sb.append((c < 0x20 || c > 0x7E) ? ' ' : (char) c);
+        }
+        return sb.toString();
+    }
+}
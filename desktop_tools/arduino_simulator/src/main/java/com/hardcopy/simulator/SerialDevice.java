@@ -0,0 +1,137 @@
+package com.hardcopy.simulator;
+
+/**
+ * Common part of the simulated boards.
+ * Incoming bytes land in a fixed size RX buffer (64 bytes, same as the AVR serial buffer).
+ * A loop thread drains it every loop interval, like loop() does between display updates.
+ * Bytes arriving while the buffer is full are lost and counted as RX overflow.
+ */
+public abstract class SerialDevice implements ByteSink {
+
+    public static final int SERIAL_RX_BUFFER_SIZE = 64;
+
+    public interface Listener {
+        /** Called on the device loop thread after a command has been applied. */
+        void onCommandProcessed(int command, long timeNanos);
+    }
+
+    private final byte[] rxBuffer = new byte[SERIAL_RX_BUFFER_SIZE];
+    private int rxHead;
+    private int rxCount;
+
+    private final long loopIntervalMs;
+    private Thread loopThread;
+    private volatile boolean running;
+
+    protected Transport transport;
+    protected Listener listener;
+
+    private long rxOverflow;
+    private long overrunCount;
+    private long processedCount;
+
+    protected SerialDevice(long loopIntervalMs) {
+        this.loopIntervalMs = loopIntervalMs;
+    }
+
+    public void attach(Transport transport, Listener listener) {
+        this.transport = transport;
+        this.listener = listener;
+    }
+
+    public void start() {
+        running = true;
+        loopThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    drain();
+                    try {
+                        if (loopIntervalMs > 0) {
+                            Thread.sleep(loopIntervalMs);
+                        } else {
+                            synchronized (rxBuffer) {
+                                if (rxCount == 0 && running) rxBuffer.wait(10);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+        }, getClass().getSimpleName());
+        loopThread.setDaemon(true);
+        loopThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (loopThread != null) loopThread.interrupt();
+    }
+
+    @Override
+    public void onBytes(byte[] data, int len) {
+        synchronized (rxBuffer) {
+            for (int i = 0; i < len; i++) {
+                if (rxCount == SERIAL_RX_BUFFER_SIZE) {
+                    rxOverflow++;
+                    continue;
+                }
+                rxBuffer[(rxHead + rxCount) % SERIAL_RX_BUFFER_SIZE] = data[i];
+                rxCount++;
+            }
+            rxBuffer.notifyAll();
+        }
+    }
+
+    public boolean isRxEmpty() {
+        synchronized (rxBuffer) {
+            return rxCount == 0;
+        }
+    }
+
+    public long getRxOverflow() {
+        synchronized (rxBuffer) {
+            return rxOverflow;
+        }
+    }
+
+    public synchronized long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public synchronized long getProcessedCount() {
+        return processedCount;
+    }
+
+    public abstract String describeState();
+
+    /** Parse one byte. Called with the device lock held. */
+    protected abstract void parseByte(int c);
+
+    /** Out of bounds write detected (on the board this would corrupt memory). */
+    protected void reportOverrun(String where, int index) {
+        overrunCount++;
+        System.err.println("[" + getClass().getSimpleName() + "] buffer overrun: " + where + "[" + index + "]");
+    }
+
+    protected void commandProcessed(int command) {
+        processedCount++;
+        if (listener != null) listener.onCommandProcessed(command, System.nanoTime());
+    }
+
+    private void drain() {
+        while (true) {
+            int c;
+            synchronized (rxBuffer) {
+                if (rxCount == 0) return;
+                c = rxBuffer[rxHead] & 0xFF;
+                rxHead = (rxHead + 1) % SERIAL_RX_BUFFER_SIZE;
+                rxCount--;
+            }
+            synchronized (this) {
+                parseByte(c);
+            }
+        }
+    }
+}
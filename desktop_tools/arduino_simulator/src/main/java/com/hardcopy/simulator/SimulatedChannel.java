@@ -0,0 +1,130 @@
+package com.hardcopy.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+
+/**
+ * One direction of a serial link.
+ * Bytes are delivered in order, no faster than the baud rate allows (10 bits per byte, 8N1),
+ * after the configured latency. Loss and corruption are applied before queueing.
+ */
+public final class SimulatedChannel {
+
+    private final String name;
+    private final FaultModel faults;
+    private final long byteNanos;
+    private final ArrayDeque<long[]> queue = new ArrayDeque<long[]>();   // {deliverAt, byte}
+
+    private ByteSink sink;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile boolean delivering;
+    private long nextFreeTime;
+
+    private long bytesSent;
+    private long bytesDropped;
+    private long bytesCorrupted;
+    private long bytesDelivered;
+
+    public SimulatedChannel(String name, int baudRate, FaultModel faults) {
+        this.name = name;
+        this.faults = (faults == null) ? FaultModel.NONE : faults;
+        this.byteNanos = (baudRate > 0) ? (10L * 1000000000L / baudRate) : 0;
+    }
+
+    public void start(ByteSink sink) {
+        this.sink = sink;
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                deliverLoop();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        synchronized (queue) {
+            queue.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void write(byte[] data) {
+        if (data == null || data.length == 0) return;
+        long now = System.nanoTime();
+        long base = now + faults.nextDelayNanos();
+        synchronized (queue) {
+            for (byte b : data) {
+                bytesSent++;
+                if (faults.shouldDrop()) {
+                    bytesDropped++;
+                    continue;
+                }
+                if (faults.shouldCorrupt()) {
+                    b = faults.corrupt(b);
+                    bytesCorrupted++;
+                }
+                // Bytes leave the UART one after another
+                long at = Math.max(base, nextFreeTime);
+                nextFreeTime = at + byteNanos;
+                queue.addLast(new long[] { at + byteNanos, b });
+            }
+            queue.notifyAll();
+        }
+    }
+
+    /** Returns true when every queued byte has been delivered. */
+    public boolean isIdle() {
+        synchronized (queue) {
+            return queue.isEmpty() && !delivering;
+        }
+    }
+
+    public String getStats() {
+        synchronized (queue) {
+            return name + ": sent=" + bytesSent + ", delivered=" + bytesDelivered
+                    + ", dropped=" + bytesDropped + ", corrupted=" + bytesCorrupted;
+        }
+    }
+
+    private void deliverLoop() {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(64);
+        while (running) {
+            synchronized (queue) {
+                try {
+                    while (running && queue.isEmpty()) queue.wait();
+                    if (!running) break;
+                    long wait = queue.peekFirst()[0] - System.nanoTime();
+                    if (wait > 0) {
+                        queue.wait(wait / 1000000L, (int) (wait % 1000000L));
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    while (!queue.isEmpty() && queue.peekFirst()[0] <= now) {
+                        batch.write((int) queue.pollFirst()[1]);
+                    }
+                    bytesDelivered += batch.size();
+                    delivering = batch.size() > 0;
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            if (batch.size() > 0) {
+                byte[] bytes = batch.toByteArray();
+                batch.reset();
+                sink.onBytes(bytes, bytes.length);
+                delivering = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.hardcopy.simulator;
+
+/**
+ * Command line entry.
+ *
+ * Example:
+ *   gradle run --args="--protocol v2 --transport tcp --frames 500 --loss 0.001 --latency 30"
+ */
+public final class SimulatorMain {
+    private SimulatorMain() {}
+
+    private static final String USAGE =
+            "Options:\n"
+            + "  --protocol legacy|v2      protocol to drive (default legacy)\n"
+            + "  --transport memory|tcp    in-memory or loopback TCP link (default memory)\n"
+            + "  --frames N                notifications to send (default 100)\n"
+            + "  --interval MS             pause between sends (default 0)\n"
+            + "  --window N                v2 frames in flight before waiting for ACK (default 1)\n"
+            + "  --ack-timeout MS          v2 ACK timeout (default 1000)\n"
+            + "  --baud N                  serial pacing, 0 = unlimited (default 9600)\n"
+            + "  --loop MS                 device loop() period, RX buffer is drained once per loop (default 20)\n"
+            + "  --loss P                  per byte loss probability (default 0)\n"
+            + "  --corrupt P               per byte bit-flip probability (default 0)\n"
+            + "  --latency MS              one-way latency (default 0)\n"
+            + "  --jitter MS               additional random latency (default 0)\n"
+            + "  --seed N                  random seed (default 1)\n"
+            + "  --settle MS               max wait for device state to converge (default 30000)\n";
+
+    public static void main(String[] args) throws Exception {
+        String protocol = LoadDriver.PROTOCOL_LEGACY;
+        String transportType = "memory";
+        int frames = 100;
+        long interval = 0;
+        int window = 1;
+        long ackTimeout = 1000;
+        int baud = 9600;
+        long loop = 20;
+        double loss = 0;
+        double corrupt = 0;
+        long latency = 0;
+        long jitter = 0;
+        long seed = 1;
+        long settle = 30000;
+
+        for (int i = 0; i < args.length; i++) {
+            String key = args[i];
+            if ("--help".equals(key) || "-h".equals(key)) {
+                System.out.print(USAGE);
+                return;
+            }
+            if (i + 1 >= args.length) {
+                System.err.println("Missing value for " + key);
+                System.err.print(USAGE);
+                System.exit(2);
+            }
+            String value = args[++i];
+            if ("--protocol".equals(key)) protocol = value;
+            else if ("--transport".equals(key)) transportType = value;
+            else if ("--frames".equals(key)) frames = Integer.parseInt(value);
+            else if ("--interval".equals(key)) interval = Long.parseLong(value);
+            else if ("--window".equals(key)) window = Integer.parseInt(value);
+            else if ("--ack-timeout".equals(key)) ackTimeout = Long.parseLong(value);
+            else if ("--baud".equals(key)) baud = Integer.parseInt(value);
+            else if ("--loop".equals(key)) loop = Long.parseLong(value);
+            else if ("--loss".equals(key)) loss = Double.parseDouble(value);
+            else if ("--corrupt".equals(key)) corrupt = Double.parseDouble(value);
+            else if ("--latency".equals(key)) latency = Long.parseLong(value);
+            else if ("--jitter".equals(key)) jitter = Long.parseLong(value);
+            else if ("--seed".equals(key)) seed = Long.parseLong(value);
+            else if ("--settle".equals(key)) settle = Long.parseLong(value);
+            else {
+                System.err.println("Unknown option " + key);
+                System.err.print(USAGE);
+                System.exit(2);
+            }
+        }
+
+        FaultModel down = new FaultModel(loss, corrupt, latency, jitter, seed);
+        FaultModel up = new FaultModel(loss, corrupt, latency, jitter, seed + 1);
+        Transport transport = "tcp".equals(transportType)
+                ? new TcpLoopbackTransport(baud, down, up)
+                : new InMemoryTransport(baud, down, up);
+        SerialDevice device = LoadDriver.PROTOCOL_V2.equals(protocol)
+                ? new ProtoV2GlassesDevice(loop)
+                : new LegacyWatchDevice(loop);
+
+        System.out.println("# " + protocol + " over " + transportType + ", baud=" + baud + ", loop=" + loop + "ms, " + down);
+        LoadDriver driver = new LoadDriver(protocol, frames, interval, window, ackTimeout, settle);
+        LoadDriver.Report report;
+        try {
+            report = driver.run(transport, device);
+        } finally {
+            device.stop();
+            transport.close();
+        }
+        System.out.println(report);
+
+        // Non-zero exit lets scripts catch regressions
+        if (report.getOverruns() > 0) System.exit(3);
+    }
+}
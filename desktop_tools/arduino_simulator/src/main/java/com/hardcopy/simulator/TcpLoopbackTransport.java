@@ -0,0 +1,117 @@
+package com.hardcopy.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Same as InMemoryTransport, but the paced bytes travel over a real loopback TCP connection.
+ * Exercises socket buffering and read fragmentation the way the companion's TCP mode sees it.
+ */
+public final class TcpLoopbackTransport implements Transport {
+
+    private final SimulatedChannel downlink;
+    private final SimulatedChannel uplink;
+
+    private ServerSocket server;
+    private Socket hostSocket;
+    private Socket deviceSocket;
+    private volatile boolean closed;
+
+    public TcpLoopbackTransport(int baudRate, FaultModel downFaults, FaultModel upFaults) {
+        downlink = new SimulatedChannel("downlink", baudRate, downFaults);
+        uplink = new SimulatedChannel("uplink", baudRate, upFaults);
+    }
+
+    @Override
+    public void start(ByteSink deviceRx, ByteSink hostRx) throws IOException {
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        hostSocket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+        deviceSocket = server.accept();
+        hostSocket.setTcpNoDelay(true);
+        deviceSocket.setTcpNoDelay(true);
+
+        // Channel output goes into the socket, socket input feeds the receiver
+        downlink.start(socketWriter(hostSocket.getOutputStream()));
+        uplink.start(socketWriter(deviceSocket.getOutputStream()));
+        startReader("device-rx", deviceSocket.getInputStream(), deviceRx);
+        startReader("host-rx", hostSocket.getInputStream(), hostRx);
+    }
+
+    @Override
+    public void sendToDevice(byte[] data) {
+        downlink.write(data);
+    }
+
+    @Override
+    public void sendToHost(byte[] data) {
+        uplink.write(data);
+    }
+
+    @Override
+    public boolean isIdle() {
+        return downlink.isIdle() && uplink.isIdle();
+    }
+
+    @Override
+    public String getStats() {
+        return downlink.getStats() + "\n" + uplink.getStats() + "\ntcp port=" + server.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        downlink.stop();
+        uplink.stop();
+        closeQuietly(hostSocket);
+        closeQuietly(deviceSocket);
+        try {
+            if (server != null) server.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private ByteSink socketWriter(final OutputStream out) {
+        return new ByteSink() {
+            @Override
+            public void onBytes(byte[] data, int len) {
+                try {
+                    out.write(data, 0, len);
+                    out.flush();
+                } catch (IOException e) {
+                    if (!closed) System.err.println("TCP write failed: " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    private void startReader(String name, final InputStream in, final ByteSink sink) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buf = new byte[256];
+                try {
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        sink.onBytes(buf, n);
+                    }
+                } catch (IOException e) {
+                    if (!closed) System.err.println("TCP read failed: " + e.getMessage());
+                }
+            }
+        }, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        if (socket == null) return;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
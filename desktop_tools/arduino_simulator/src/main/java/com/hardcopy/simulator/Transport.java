@@ -0,0 +1,26 @@
+package com.hardcopy.simulator;
+
+import java.io.IOException;
+
+/**
+ * Connects the host side (phone) and the simulated device.
+ */
+public interface Transport {
+
+    /**
+     * @param deviceRx  receives bytes written by the host
+     * @param hostRx    receives bytes written by the device
+     */
+    void start(ByteSink deviceRx, ByteSink hostRx) throws IOException;
+
+    void sendToDevice(byte[] data);
+
+    void sendToHost(byte[] data);
+
+    /** True when no byte is waiting to be delivered in either direction. */
+    boolean isIdle();
+
+    String getStats();
+
+    void close();
+}